@@ -75,6 +75,7 @@ public class Main {
 		taskFactory.addTask("rehash", RehashTask.class);
 		taskFactory.addTask("rollback", RollbackTask.class);
 		taskFactory.addTask("spew", SpewTask.class);
+		taskFactory.addTask("pages", PagesTask.class);
 		taskFactory.addTask("tag", TagTask.class);
 		taskFactory.addTask("wipe-queue", WipeQueueTask.class);
 		taskFactory.addTask("wipe-report", WipeReportTask.class);
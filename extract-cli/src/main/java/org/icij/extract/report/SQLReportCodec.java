@@ -25,6 +25,14 @@ import java.util.Map;
 @Option(name = "reportStatusKey", description = "The table key for storing the report status.", parameter = "name")
 @Option(name = "reportExceptionKey", description = "The table key for storing processing exceptions.", parameter =
 		"name")
+@Option(name = "reportSizeKey", description = "The table key for storing the size of the file, for incremental " +
+		"extraction. Not stored unless given. Existing tables need a nullable BIGINT column added.", parameter = "name")
+@Option(name = "reportModifiedKey", description = "The table key for storing the modification time of the file in " +
+		"milliseconds, for incremental extraction. Not stored unless given. Existing tables need a nullable BIGINT " +
+		"column added.", parameter = "name")
+@Option(name = "reportDigestKey", description = "The table key for storing the digest of the file, for incremental " +
+		"extraction in digest mode. Not stored unless given. Existing tables need a nullable CHAR(64) column added.",
+		parameter = "name")
 @Option(name = "reportSuccessStatus", description = "The status for a successfully extracted file.", parameter =
 		"value")
 @Option(name = "reportFailureStatus", description = "A general failure status value to use instead of the more " +
@@ -37,6 +45,9 @@ public class SQLReportCodec implements SQLMapCodec<Path, Report> {
 	private final String pathKey;
 	private final String statusKey;
 	private final String exceptionKey;
+	private final String sizeKey;
+	private final String modifiedKey;
+	private final String digestKey;
 	private final String successStatus;
 	private final String failureStatus;
 
@@ -47,6 +58,9 @@ public class SQLReportCodec implements SQLMapCodec<Path, Report> {
 		this.pathKey = options.get("reportPathKey").value().orElse("path");
 		this.statusKey = options.get("reportStatusKey").value().orElse("extraction_status");
 		this.exceptionKey = options.get("reportExceptionKey").value().orElse("exception");
+		this.sizeKey = options.get("reportSizeKey").value().orElse(null);
+		this.modifiedKey = options.get("reportModifiedKey").value().orElse(null);
+		this.digestKey = options.get("reportDigestKey").value().orElse(null);
 		this.successStatus = options.get("reportSuccessStatus").value().orElse(null);
 		this.failureStatus = options.get("reportFailureStatus").value().orElse(null);
 	}
@@ -58,6 +72,9 @@ public class SQLReportCodec implements SQLMapCodec<Path, Report> {
 		this.pathKey = "path";
 		this.statusKey = "extraction_status";
 		this.exceptionKey = "exception";
+		this.sizeKey = null;
+		this.modifiedKey = null;
+		this.digestKey = null;
 		this.successStatus = null;
 		this.failureStatus = null;
 	}
@@ -121,6 +138,21 @@ public class SQLReportCodec implements SQLMapCodec<Path, Report> {
 			}
 		}
 
+		// As with the exception, put explicit nulls for a report without a fingerprint so that a stale one is reset.
+		final Fingerprint fingerprint = report.getFingerprint().orElse(null);
+
+		if (null != sizeKey) {
+			map.put(sizeKey, null == fingerprint ? null : fingerprint.getSize());
+		}
+
+		if (null != modifiedKey) {
+			map.put(modifiedKey, null == fingerprint ? null : fingerprint.getModified());
+		}
+
+		if (null != digestKey) {
+			map.put(digestKey, null == fingerprint ? null : fingerprint.getDigest());
+		}
+
 		return map;
 	}
 
@@ -148,20 +180,44 @@ public class SQLReportCodec implements SQLMapCodec<Path, Report> {
 			return null;
 		}
 
+		final Fingerprint fingerprint = decodeFingerprint(rs);
+
 		if (null != successStatus && status.equals(successStatus)) {
-			return new Report(ExtractionStatus.SUCCESS);
+			return new Report(ExtractionStatus.SUCCESS, null, fingerprint);
 		}
 
 		if (null != failureStatus && status.equals(failureStatus)) {
-			return new Report(ExtractionStatus.FAILURE_UNKNOWN, exception);
+			return new Report(ExtractionStatus.FAILURE_UNKNOWN, exception, fingerprint);
 		}
 
 		// Return null if the value can't be decoded into an enum. This allows arbitrary values to be stored in
 		// the status column.
 		try {
-			return new Report(ExtractionStatus.valueOf(status), exception);
+			return new Report(ExtractionStatus.valueOf(status), exception, fingerprint);
 		} catch (IllegalArgumentException e) {
 			return null;
 		}
 	}
+
+	// Rows written without incremental extraction, or before the columns were added, have nulls and decode to a
+	// report without a fingerprint.
+	private Fingerprint decodeFingerprint(final ResultSet rs) throws SQLException {
+		if (null == sizeKey || null == modifiedKey) {
+			return null;
+		}
+
+		final long size = rs.getLong(sizeKey);
+
+		if (rs.wasNull()) {
+			return null;
+		}
+
+		final long modified = rs.getLong(modifiedKey);
+
+		if (rs.wasNull()) {
+			return null;
+		}
+
+		return new Fingerprint(size, modified, null == digestKey ? null : rs.getString(digestKey));
+	}
 }
@@ -0,0 +1,54 @@
+package org.icij.extract.tasks;
+
+import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.extractor.Extractor;
+import org.icij.extract.extractor.PageRange;
+import org.icij.task.DefaultTask;
+import org.icij.task.annotation.Option;
+import org.icij.task.annotation.OptionsClass;
+import org.icij.task.annotation.Task;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Print the text of a range of pages of files.
+ */
+@Task("Extract the text of a range of pages from files. Pages are printed in order, each followed by a form feed.")
+@OptionsClass(Extractor.class)
+@OptionsClass(DocumentFactory.class)
+@Option(name = "firstPage", description = "The first page to extract, from 1. Defaults to 1.", parameter = "number")
+@Option(name = "lastPage", description = "The last page to extract. Defaults to the first page.",
+		parameter = "number")
+public class PagesTask extends DefaultTask<Integer> {
+
+	@Override
+	public Integer call() throws Exception {
+		throw new IllegalArgumentException("No paths supplied.");
+	}
+
+	@Override
+	public Integer call(final String[] paths) throws Exception {
+		final int firstPage = options.get("firstPage", "1").parse().asInteger().orElse(1);
+		final int lastPage = options.get("lastPage", String.valueOf(firstPage)).parse().asInteger().orElse(firstPage);
+		final PrintStream out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+		int pages = 0;
+
+		try (final Extractor extractor = new Extractor(new DocumentFactory(options), options)) {
+			for (String path : paths) {
+				final PageRange range = extractor.extractPageRange(Paths.get(path), firstPage, lastPage);
+
+				for (String page : range.pages()) {
+					out.print(page);
+					out.print('\f');
+				}
+
+				pages += range.pages().size();
+			}
+		}
+
+		out.flush();
+		return pages;
+	}
+}
@@ -5,6 +5,7 @@ import org.apache.commons.io.FileUtils;
 import org.icij.concurrent.BooleanSealableLatch;
 import org.icij.extract.Scanner;
 import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.extractor.DeferredOcrConsumer;
 import org.icij.extract.extractor.DocumentConsumer;
 import org.icij.extract.extractor.Extractor;
 import org.icij.extract.mysql.DataSourceFactory;
@@ -41,6 +42,7 @@ import java.util.concurrent.TimeUnit;
 @OptionsClass(Scanner.class)
 @OptionsClass(SpewerFactory.class)
 @OptionsClass(Extractor.class)
+@OptionsClass(Reporter.class)
 @OptionsClass(DocumentQueueDrainer.class)
 @OptionsClass(DocumentFactory.class)
 @Option(name = "jobs", description = "The number of documents to process at a time. Defaults to the number" +
@@ -91,51 +93,68 @@ public class SpewTask extends DefaultTask<Long> {
 			queue, final String[] paths, final int parallelism) throws Exception {
 		logger.info(String.format("Processing up to %d file(s) in parallel.", parallelism));
 
-		final Extractor extractor = new Extractor(options);
-		final DocumentConsumer consumer = new DocumentConsumer(spewer, extractor, parallelism);
-		final DocumentQueueDrainer<Path> drainer = new DocumentQueueDrainer<>(queue, consumer).configure(options);
+		try (final Extractor extractor = new Extractor(options)) {
+			final DocumentConsumer consumer = new DocumentConsumer(spewer, extractor, parallelism);
+			final DocumentQueueDrainer<Path> drainer = new DocumentQueueDrainer<>(queue, consumer).configure(options);
 
-		if (null != reportMap) {
-			consumer.setReporter(new Reporter(reportMap));
-		}
+			if (null != reportMap) {
+				consumer.setReporter(new Reporter(reportMap).configure(options));
+			}
 
-		final Future<Long> draining;
-		final Long drained;
+			// In a two-phase extraction, the OCR queue is drained alongside the extraction, into a spewer of its own as
+			// the consumer closes its spewer when it terminates.
+			final Spewer ocrSpewer = null != extractor.getDeferredOcrQueue() ? SpewerFactory.createSpewer(options) : null;
+			final DeferredOcrConsumer ocrConsumer = null != ocrSpewer ? new DeferredOcrConsumer(extractor,
+					extractor.getDeferredOcrQueue(), ocrSpewer, extractor.getOcrParallelism()) : null;
 
-		if (null != paths && paths.length > 0) {
-			final Scanner scanner = new Scanner(queue, new BooleanSealableLatch(), null).configure(options);
-			final List<Future<Long>> scanning = scanner.scan(paths);
+			if (null != ocrConsumer) {
+				ocrConsumer.start();
+			}
 
-			// Set the latch that will be waited on for polling, then start draining in the background.
-			drainer.setLatch(scanner.getLatch());
-			draining = drainer.drain();
+			final Future<Long> draining;
+			final Long drained;
 
-			// Start scanning in a background thread but block until every path has been scanned and queued.
-			for (Future<Long> scan : scanning) scan.get();
+			if (null != paths && paths.length > 0) {
+				final Scanner scanner = new Scanner(queue, new BooleanSealableLatch(), null).configure(options);
+				final List<Future<Long>> scanning = scanner.scan(paths);
 
-			// Only a short timeout is needed when awaiting termination, because the call to parse the result of each
-			// job is blocking and by the time `awaitTermination` is reached the jobs would have finished.
-			scanner.shutdown();
-			scanner.awaitTermination(1, TimeUnit.MINUTES);
-		} else {
+				// Set the latch that will be waited on for polling, then start draining in the background.
+				drainer.setLatch(scanner.getLatch());
+				draining = drainer.drain();
 
-			// Start draining in a background thread.
-			draining = drainer.drain();
-		}
+				// Start scanning in a background thread but block until every path has been scanned and queued.
+				for (Future<Long> scan : scanning) scan.get();
+
+				// Only a short timeout is needed when awaiting termination, because the call to parse the result of each
+				// job is blocking and by the time `awaitTermination` is reached the jobs would have finished.
+				scanner.shutdown();
+				scanner.awaitTermination(1, TimeUnit.MINUTES);
+			} else {
 
-		// Block until every path in the queue has been consumed.
-		drained = draining.get();
+				// Start draining in a background thread.
+				draining = drainer.drain();
+			}
 
-		logger.info(String.format("Drained %d files.", drained));
+			// Block until every path in the queue has been consumed.
+			drained = draining.get();
 
-		// Shut down the drainer. Use a short timeout because all jobs should have finished.
-		drainer.shutdown();
-		drainer.awaitTermination(1, TimeUnit.MINUTES);
+			logger.info(String.format("Drained %d files.", drained));
 
-		// Use a long timeout because some files might still be processing.
-		consumer.shutdown();
-		consumer.awaitTermination(7, TimeUnit.DAYS);
+			// Shut down the drainer. Use a short timeout because all jobs should have finished.
+			drainer.shutdown();
+			drainer.awaitTermination(1, TimeUnit.MINUTES);
 
-		return drained;
+			// Use a long timeout because some files might still be processing.
+			consumer.shutdown();
+			consumer.awaitTermination(7, TimeUnit.DAYS);
+
+			if (null != ocrConsumer) {
+				try (ocrSpewer) {
+					ocrConsumer.drain();
+				}
+			}
+
+			return drained;
+		}
 	}
 }
@@ -1,13 +1,22 @@
 package org.icij.extract.report;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.icij.extract.document.DocumentFactory;
 import org.icij.extract.document.PathIdentifier;
 import org.icij.extract.extractor.ExtractionStatus;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ReporterTest {
 
@@ -30,6 +39,9 @@ public class ReporterTest {
 		}
 	}
 
+	@Rule
+	public final TemporaryFolder tmp = new TemporaryFolder();
+
 	private final DocumentFactory factory = new DocumentFactory().withIdentifier(new PathIdentifier());
 
 	@Test
@@ -78,6 +90,119 @@ public class ReporterTest {
 		Assert.assertFalse(reporter.skip(Paths.get("/path/to/never-seen")));
 	}
 
+	@Test
+	public void testIncrementalSkipsUnchangedFileAndReExtractsChangedFile() throws Throwable {
+		final Path path = write("a.txt", "This is a test.");
+		final Reporter reporter = new Reporter(new HashMapReportMap());
+
+		reporter.setIncremental(Reporter.Incremental.ATTRIBUTES);
+
+		Assert.assertFalse(reporter.skip(path));
+		reporter.save(path, ExtractionStatus.SUCCESS);
+		Assert.assertEquals(Fingerprint.of(path), reporter.report(path).getFingerprint().get());
+		Assert.assertTrue(reporter.skip(path));
+
+		write("a.txt", "This is another test.");
+		Assert.assertFalse(reporter.skip(path));
+	}
+
+	@Test
+	public void testIncrementalDigestSkipsTouchedFileWithSameContent() throws Throwable {
+		final Path path = write("a.txt", "This is a test.");
+		final Reporter reporter = new Reporter(new HashMapReportMap());
+		final List<Path> digested = new ArrayList<>();
+		final Reporter.ContentDigester digester = p -> {
+			digested.add(p);
+			return digest(p);
+		};
+
+		reporter.setIncremental(Reporter.Incremental.DIGEST);
+
+		// The file isn't read before it's extracted: the extraction's digest is recorded instead.
+		Assert.assertFalse(reporter.skip(path, digester));
+		reporter.save(path, ExtractionStatus.SUCCESS, null, digest(path));
+		Assert.assertTrue(digested.isEmpty());
+		Assert.assertEquals(Fingerprint.of(path).withDigest(digest(path)),
+				reporter.report(path).getFingerprint().get());
+
+		// Unchanged: only the attributes are compared.
+		Assert.assertTrue(reporter.skip(path, digester));
+		Assert.assertTrue(digested.isEmpty());
+
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 60_000));
+
+		// Skipped, and the new modification time recorded so that the content isn't digested again.
+		Assert.assertTrue(reporter.skip(path, digester));
+		Assert.assertEquals(1, digested.size());
+		Assert.assertEquals(Files.getLastModifiedTime(path).toMillis(),
+				reporter.report(path).getFingerprint().get().getModified());
+
+		// Same size and new content.
+		write("a.txt", "This is a tess.");
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 120_000));
+		Assert.assertFalse(reporter.skip(path, digester));
+		Assert.assertEquals(2, digested.size());
+	}
+
+	@Test
+	public void testIncrementalDigestWithoutTheDigesterOnlyComparesAttributes() throws Throwable {
+		final Path path = write("a.txt", "This is a test.");
+		final Reporter reporter = new Reporter(new HashMapReportMap());
+
+		reporter.setIncremental(Reporter.Incremental.DIGEST);
+		Assert.assertFalse(reporter.skip(path));
+		reporter.save(path, ExtractionStatus.SUCCESS, null, digest(path));
+		Assert.assertTrue(reporter.skip(path));
+
+		// Same content, but the digest of the extraction can't be computed again to tell.
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 60_000));
+		Assert.assertFalse(reporter.skip(path));
+		Assert.assertEquals(digest(path), reporter.report(path).getFingerprint().get().getDigest());
+	}
+
+	@Test
+	public void testIncrementalDigestReExtractsChangedFileRecordedWithoutADigest() throws Throwable {
+		final Path path = write("a.txt", "This is a test.");
+		final Reporter reporter = new Reporter(new HashMapReportMap());
+
+		// Recorded before incremental mode was turned on, then adopted as a baseline from its attributes only.
+		reporter.save(path, ExtractionStatus.SUCCESS);
+		reporter.setIncremental(Reporter.Incremental.DIGEST);
+		Assert.assertTrue(reporter.skip(path));
+		Assert.assertNull(reporter.report(path).getFingerprint().get().getDigest());
+
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 60_000));
+		Assert.assertFalse(reporter.skip(path, ReporterTest::digest));
+	}
+
+	@Test
+	public void testIncrementalAdoptsLegacyReportAsBaseline() throws Throwable {
+		final Path path = write("a.txt", "This is a test.");
+		final Reporter reporter = new Reporter(new HashMapReportMap());
+
+		// Recorded before incremental mode was turned on.
+		reporter.save(path, ExtractionStatus.SUCCESS);
+		Assert.assertFalse(reporter.report(path).getFingerprint().isPresent());
+
+		reporter.setIncremental(Reporter.Incremental.ATTRIBUTES);
+		Assert.assertTrue(reporter.skip(path));
+		Assert.assertEquals(Fingerprint.of(path), reporter.report(path).getFingerprint().get());
+
+		write("a.txt", "This is another test.");
+		Assert.assertFalse(reporter.skip(path));
+	}
+
+	@Test
+	public void testIncrementalDoesNotSkipRetryableFailures() throws Throwable {
+		final Path path = write("a.txt", "This is a test.");
+		final Reporter reporter = new Reporter(new HashMapReportMap());
+
+		reporter.setIncremental(Reporter.Incremental.ATTRIBUTES);
+		reporter.save(path, ExtractionStatus.FAILURE_NOT_SAVED);
+
+		Assert.assertFalse(reporter.skip(path));
+	}
+
 	@Test
 	public void testCloseClosesReport() throws Throwable {
 		final ReportMap reportMap = new HashMapReportMap();
@@ -100,4 +225,13 @@ public class ReporterTest {
 
 		Assert.assertTrue(reporter.isClosed());
 	}
+
+	private Path write(final String name, final String content) throws Exception {
+		return Files.write(tmp.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// Digests as a configured digester does, with a project modifier, so not as a plain SHA-256 of the file.
+	private static String digest(final Path path) throws IOException {
+		return DigestUtils.sha256Hex(("project" + Files.readString(path)).getBytes(StandardCharsets.UTF_8));
+	}
 }
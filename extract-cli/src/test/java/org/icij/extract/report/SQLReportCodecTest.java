@@ -5,11 +5,13 @@ import org.icij.extract.document.PathIdentifier;
 import org.icij.extract.document.TikaDocument;
 import org.icij.extract.extractor.ExtractionStatus;
 import org.icij.extract.mysql.SQLMapCodec;
+import org.icij.task.Options;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.Map;
 
 public class SQLReportCodecTest {
@@ -40,4 +42,38 @@ public class SQLReportCodecTest {
 		Assert.assertNotNull(exception);
 		Assert.assertTrue(exception.toString().contains("Failed to parse."));
 	}
+
+	@Test
+	public void testEncodeValueWithFingerprint() throws Throwable {
+		final Map<String, Object> options = new HashMap<>();
+
+		options.put("reportSizeKey", "size");
+		options.put("reportModifiedKey", "modified");
+		options.put("reportDigestKey", "digest");
+
+		final SQLMapCodec<Path, Report> codec = new SQLReportCodec(documentFactory, Options.from(options));
+
+		final Map<String, Object> map = codec.encodeValue(new Report(ExtractionStatus.SUCCESS, null,
+				new Fingerprint(15, 1700000000000L, "abcdef")));
+
+		Assert.assertEquals(15L, map.get("size"));
+		Assert.assertEquals(1700000000000L, map.get("modified"));
+		Assert.assertEquals("abcdef", map.get("digest"));
+
+		// Columns are reset for a report without one.
+		final Map<String, Object> legacy = codec.encodeValue(new Report(ExtractionStatus.SUCCESS));
+
+		Assert.assertTrue(legacy.containsKey("size"));
+		Assert.assertNull(legacy.get("size"));
+	}
+
+	@Test
+	public void testEncodeValueWithoutFingerprintKeys() throws Throwable {
+		final SQLMapCodec<Path, Report> codec = new SQLReportCodec(documentFactory);
+
+		final Map<String, Object> map = codec.encodeValue(new Report(ExtractionStatus.SUCCESS, null,
+				new Fingerprint(15, 1700000000000L)));
+
+		Assert.assertEquals(2, map.size());
+	}
 }
@@ -24,7 +24,7 @@ public class DigestIdentifier extends AbstractIdentifier {
 
 	@Override
 	public String generateForEmbed(final EmbeddedTikaDocument embed) throws NoSuchAlgorithmException {
-		final MessageDigest digest = MessageDigest.getInstance(algorithm);
+		final MessageDigest digest = MessageDigest.getInstance(Identifier.messageDigestAlgorithm(algorithm));
 
 		// Embedded documents in different files or the same file could have the same hash. Therefore, to avoid ID
 		// collisions within the child document tree, the digest considers:
@@ -13,6 +13,11 @@ public class EmbeddedTikaDocument extends TikaDocument {
 		this.parent = parent;
 	}
 
+	EmbeddedTikaDocument(final TikaDocument parent, final String id, final Metadata metadata) {
+		super(id, parent.getIdentifier(), parent.getPath(), metadata);
+		this.parent = parent;
+	}
+
 	EmbeddedTikaDocument(final TikaDocument parent, final Identifier identifier, final Path path, final Metadata metadata) {
 		super(identifier, path, metadata);
 		this.parent = parent;
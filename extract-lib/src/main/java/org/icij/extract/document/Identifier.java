@@ -32,6 +32,37 @@ public interface Identifier {
 				.replace("-", "");
 	}
 
+	/**
+	 * Find the content digest set by a digester, whatever its algorithm.
+	 *
+	 * @param metadata the document's metadata
+	 * @return the value of the first digest key in the metadata, or {@code null} if there's none
+	 */
+	static String findDigest(final Metadata metadata) {
+		final String prefix = TikaCoreProperties.TIKA_META_PREFIX + "digest" +
+				TikaCoreProperties.NAMESPACE_PREFIX_DELIMITER;
+
+		for (String name : metadata.names()) {
+			if (name.startsWith(prefix)) {
+				return metadata.get(name);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * The {@link java.security.MessageDigest} algorithm to use for a digest algorithm name. Tree-hash names such as
+	 * {@code TREE-SHA-256} only apply to file content: IDs derived from other values are plain digests with the
+	 * underlying algorithm.
+	 *
+	 * @param algorithm the configured digest algorithm name
+	 * @return the name without any tree-hash prefix
+	 */
+	static String messageDigestAlgorithm(String algorithm) {
+		return algorithm.regionMatches(true, 0, "TREE-", 0, 5) ? algorithm.substring(5) : algorithm;
+	}
+
 	/**
 	 * Generate or retrieve (from metadata) a hash digest of the tikaDocument's underlying file data.
 	 *
@@ -15,7 +15,7 @@ public class PathDigestIdentifier extends AbstractIdentifier {
 
 	@Override
 	public String generate(final TikaDocument document) throws NoSuchAlgorithmException {
-		final MessageDigest digest = MessageDigest.getInstance(algorithm);
+		final MessageDigest digest = MessageDigest.getInstance(Identifier.messageDigestAlgorithm(algorithm));
 
 		digest.update(document.getPath().toString().getBytes(charset));
 		return DatatypeConverter.printHexBinary(digest.digest()).toLowerCase(ENGLISH);
@@ -205,6 +205,14 @@ public class TikaDocument {
 		return new EmbeddedTikaDocument(this, metadata);
 	}
 
+	/**
+	 * Create a detached embedded document with a pre-generated ID, for an embed written earlier that is written
+	 * again, as by the second phase of a two-phase extraction.
+	 */
+	public EmbeddedTikaDocument newDetachedEmbed(final String id, final Metadata metadata) {
+		return new EmbeddedTikaDocument(this, id, metadata);
+	}
+
 	private EmbeddedTikaDocument addEmbed(final Identifier identifier, final Path path, final Metadata metadata) {
 		return addEmbed(new EmbeddedTikaDocument(this, identifier, path, metadata));
 	}
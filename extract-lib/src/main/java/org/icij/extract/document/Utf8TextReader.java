@@ -0,0 +1,326 @@
+package org.icij.extract.document;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A reader of text that is already encoded in UTF-8, in memory or in a file. Text in memory can be held in
+ * segments, which are read in turn rather than copied together. Text in files can be a whole file, or extents of
+ * files that hold the text of other documents too (see {@link Extent}). It can be deflated, in which case it's
+ * inflated as it's read or transferred.
+ *
+ * <p>Until it's read, its bytes can be transferred as they are (see {@link #transferTo(WritableByteChannel)}), so
+ * that an output in UTF-8 needn't decode them and encode them again. Transferring consumes the reader as reading it
+ * to the end would.
+ */
+public class Utf8TextReader extends Reader {
+
+	private final List<ByteBuffer> segments;
+	private final Path file;
+	private final List<Extent> extents;
+	private final boolean deflated;
+	private final Runnable onClose;
+
+	private Reader decoded = null;
+	private boolean transferred = false;
+	private boolean closed = false;
+
+	private Utf8TextReader(final List<ByteBuffer> segments, final Path file, final List<Extent> extents,
+						   final boolean deflated, final Runnable onClose) {
+		this.segments = segments;
+		this.file = file;
+		this.extents = extents;
+		this.deflated = deflated;
+		this.onClose = onClose;
+	}
+
+	public static Utf8TextReader of(final byte[] bytes) {
+		return of(List.of(ByteBuffer.wrap(bytes)));
+	}
+
+	/**
+	 * @param segments the text, each segment from its position to its limit, which are left as they are
+	 */
+	public static Utf8TextReader of(final List<ByteBuffer> segments) {
+		return of(segments, () -> {});
+	}
+
+	/**
+	 * @param segments the text, each segment from its position to its limit, which are left as they are
+	 * @param onClose  called once, when the reader is first closed, after which the segments aren't touched again
+	 */
+	public static Utf8TextReader of(final List<ByteBuffer> segments, final Runnable onClose) {
+		return new Utf8TextReader(segments, null, null, false, onClose);
+	}
+
+	public static Utf8TextReader of(final Path file) {
+		return new Utf8TextReader(null, file, null, false, () -> {});
+	}
+
+	/**
+	 * @param file a file of text compressed in the zlib format, as {@link java.util.zip.DeflaterOutputStream} writes
+	 */
+	public static Utf8TextReader ofDeflated(final Path file) {
+		return new Utf8TextReader(null, file, null, true, () -> {});
+	}
+
+	/**
+	 * @param extents  the text, in the order of the extents
+	 * @param deflated whether the bytes of the extents, together, are compressed in the zlib format
+	 * @param onClose  called once, when the reader is first closed, after which the extents aren't touched again
+	 */
+	public static Utf8TextReader of(final List<Extent> extents, final boolean deflated, final Runnable onClose) {
+		return new Utf8TextReader(null, null, extents, deflated, onClose);
+	}
+
+	/**
+	 * @return whether the bytes can still be transferred, which is until the first read or transfer
+	 */
+	public synchronized boolean isUnread() {
+		return !closed && null == decoded && !transferred;
+	}
+
+	/**
+	 * Write the bytes of the text to the given channel. A file is transferred by its channel, which the system
+	 * copies without bringing the bytes into the JVM when the target is a file too, unless it must be inflated.
+	 *
+	 * @param target the channel to write to
+	 * @return the number of bytes written
+	 * @throws IOException if the text was read already, or can't be read or written
+	 */
+	public synchronized long transferTo(final WritableByteChannel target) throws IOException {
+		if (!isUnread()) {
+			throw new IOException("The text was read already.");
+		}
+
+		transferred = true;
+		if (null != segments) {
+			long count = 0;
+
+			for (ByteBuffer segment : segments) {
+				final ByteBuffer buffer = segment.duplicate();
+
+				count += buffer.remaining();
+				while (buffer.hasRemaining()) {
+					target.write(buffer);
+				}
+			}
+
+			return count;
+		}
+
+		if (deflated) {
+			try (final InputStream source = open()) {
+				return source.transferTo(Channels.newOutputStream(target));
+			}
+		}
+
+		if (null != extents) {
+			long count = 0;
+
+			for (Extent extent : extents) {
+				final FileChannel source = extent.source().channel();
+				final long end = extent.position() + extent.length();
+				long position = extent.position();
+
+				while (position < end) {
+					position += source.transferTo(position, end - position, target);
+				}
+				count += extent.length();
+			}
+
+			return count;
+		}
+
+		try (final FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+			final long size = source.size();
+			long position = 0;
+
+			// Transfers can be partial, for example of more than 2GiB at once.
+			while (position < size) {
+				position += source.transferTo(position, size - position, target);
+			}
+
+			return size;
+		}
+	}
+
+	/**
+	 * Write the bytes of the text to the given stream.
+	 *
+	 * @param target the stream to write to
+	 * @return the number of bytes written
+	 * @throws IOException if the text was read already, or can't be read or written
+	 */
+	public synchronized long transferTo(final OutputStream target) throws IOException {
+		if (null == segments && !deflated) {
+			return transferTo(Channels.newChannel(target));
+		}
+		if (!isUnread()) {
+			throw new IOException("The text was read already.");
+		}
+
+		transferred = true;
+		if (deflated) {
+			try (final InputStream source = open()) {
+				return source.transferTo(target);
+			}
+		}
+
+		long count = 0;
+
+		for (ByteBuffer segment : segments) {
+			target.write(segment.array(), segment.arrayOffset() + segment.position(), segment.remaining());
+			count += segment.remaining();
+		}
+
+		return count;
+	}
+
+	@Override
+	public synchronized int read(final char[] chars, final int off, final int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (transferred) {
+			return -1;
+		}
+		if (null == decoded) {
+			decoded = new InputStreamReader(open(), StandardCharsets.UTF_8);
+		}
+
+		return decoded.read(chars, off, len);
+	}
+
+	private InputStream open() throws IOException {
+		if (null == segments) {
+			final InputStream source = null != extents ? new ExtentInputStream(extents) : Files.newInputStream(file);
+			return deflated ? new InflaterInputStream(new BufferedInputStream(source, 64 * 1024)) : source;
+		}
+
+		final List<InputStream> streams = new ArrayList<>(segments.size());
+		for (ByteBuffer segment : segments) {
+			streams.add(new ByteArrayInputStream(segment.array(), segment.arrayOffset() + segment.position(),
+					segment.remaining()));
+		}
+
+		return new SequenceInputStream(Collections.enumeration(streams));
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		try {
+			if (null != decoded) {
+				decoded.close();
+			}
+		} finally {
+			onClose.run();
+		}
+	}
+
+	/**
+	 * A range of bytes of a file.
+	 *
+	 * @param source   the file
+	 * @param position the position of the first byte
+	 * @param length   the number of bytes
+	 */
+	public record Extent(Source source, long position, long length) {
+	}
+
+	/**
+	 * A file that extents are read from, by position. Its channel may be replaced, for example when a thread
+	 * interrupted while using it closed it.
+	 */
+	public interface Source {
+
+		/**
+		 * @return an open channel to the file
+		 * @throws IOException if the file was deleted
+		 */
+		FileChannel channel() throws IOException;
+	}
+
+	private static class ExtentInputStream extends InputStream {
+
+		private final List<Extent> extents;
+		private int index = 0;
+		private long read = 0;
+
+		private ExtentInputStream(final List<Extent> extents) {
+			this.extents = extents;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			while (index < extents.size() && read == extents.get(index).length()) {
+				index++;
+				read = 0;
+			}
+			if (index == extents.size()) {
+				return -1;
+			}
+
+			final Extent extent = extents.get(index);
+			final ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, extent.length() - read));
+			final int n = read(extent, buffer, extent.position() + read);
+
+			if (n < 0) {
+				throw new IOException("The file ended before the end of the extent.");
+			}
+
+			read += n;
+			return n;
+		}
+
+		// A positional read can be done again, so it is when another thread closed the channel by being interrupted.
+		private static int read(final Extent extent, final ByteBuffer buffer, final long position) throws IOException {
+			while (true) {
+				try {
+					return extent.source().channel().read(buffer, position);
+				} catch (final ClosedByInterruptException e) {
+					throw e;
+				} catch (final ClosedChannelException e) {
+					if (Thread.currentThread().isInterrupted()) {
+						throw e;
+					}
+				}
+			}
+		}
+	}
+}
@@ -3,6 +3,8 @@ package org.icij.extract.extractor;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
 import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
 import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarFile;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.slf4j.Logger;
@@ -23,6 +25,10 @@ import java.util.zip.ZipEntry;
  * denominator. Any failure (unknown/unsupported format, corrupt or encrypted archive, no readable
  * file) yields {@link OptionalLong#empty()} so extraction proceeds with the count-only heartbeat.
  * Directory entries are excluded so the count matches the embeds Tika's PackageParser emits.
+ *
+ * During extraction the count is taken from the archive the parse itself opens (see
+ * {@link org.icij.extract.parser.ArchiveUnitsParser}), through {@link #countFiles(ZipFile)} and
+ * {@link #countFiles(SevenZFile)}; {@link #countTopLevelEntries(Path)} opens the archive on its own.
  */
 public final class ArchiveEntryCounter {
     private static final Logger logger = LoggerFactory.getLogger(ArchiveEntryCounter.class);
@@ -52,7 +58,6 @@ public final class ArchiveEntryCounter {
     private static OptionalLong countZip(final Path path) throws IOException {
         // ZipFile reads only the central directory; no entry data is decompressed.
         try (ZipFile zip = ZipFile.builder().setPath(path).get()) {
-            long count = 0;
             boolean isContainerDocument = false;
             final Enumeration<ZipArchiveEntry> entries = zip.getEntries();
             while (entries.hasMoreElements()) {
@@ -71,27 +76,63 @@ public final class ArchiveEntryCounter {
                 if ("[Content_Types].xml".equals(name)
                         || ("mimetype".equals(name) && entry.getMethod() == ZipEntry.STORED)) {
                     isContainerDocument = true;
-                }
-                if (!entry.isDirectory()) {
-                    count++;
+                    break;
                 }
             }
             if (isContainerDocument) {
                 return OptionalLong.empty();
             }
-            return OptionalLong.of(count);
+            return OptionalLong.of(countFiles(zip));
         }
     }
 
     private static OptionalLong countSevenZ(final Path path) throws IOException {
         try (SevenZFile sevenZ = SevenZFile.builder().setPath(path).get()) {
-            long count = 0;
-            for (final SevenZArchiveEntry e : sevenZ.getEntries()) {
-                if (!e.isDirectory()) {
-                    count++;
-                }
+            return OptionalLong.of(countFiles(sevenZ));
+        }
+    }
+
+    /**
+     * @param zip an open ZIP file; only its central directory (already read on open) is consulted
+     * @return the number of non-directory entries
+     */
+    public static long countFiles(final ZipFile zip) {
+        long count = 0;
+        final Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+        while (entries.hasMoreElements()) {
+            if (!entries.nextElement().isDirectory()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param sevenZ an open 7z file; only its header (already decoded on open) is consulted, and the
+     *               position of {@link SevenZFile#getNextEntry()} is left untouched
+     * @return the number of non-directory entries
+     */
+    public static long countFiles(final SevenZFile sevenZ) {
+        long count = 0;
+        for (final SevenZArchiveEntry e : sevenZ.getEntries()) {
+            if (!e.isDirectory()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param tar an open TAR file; only its headers (already read on open) are consulted
+     * @return the number of non-directory entries
+     */
+    public static long countFiles(final TarFile tar) {
+        long count = 0;
+        for (final TarArchiveEntry e : tar.getEntries()) {
+            if (!e.isDirectory()) {
+                count++;
             }
-            return OptionalLong.of(count);
         }
+        return count;
     }
 }
@@ -2,16 +2,20 @@ package org.icij.extract.extractor;
 
 import org.apache.tika.io.TemporaryResources;
 import org.icij.extract.document.TikaDocument.ReaderGenerator;
+import org.icij.extract.document.Utf8TextReader;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BooleanSupplier;
 
@@ -22,21 +26,45 @@ import java.util.function.BooleanSupplier;
  *
  * <p>The shared {@link AtomicLong} models the bytes currently resident in memory across all
  * of an extraction's buffers; it gates when spilling begins during the (single-threaded)
- * parse. Resident bytes are released from the counter when they are moved to disk or when
- * the embed is discarded on error.
+ * parse. Resident bytes are released from the counter when they are moved to disk, when
+ * the embed is discarded on error, or when they are returned to the pool (see below).
+ *
+ * <p>In memory, the text is held in segments that are never copied: neither to grow the buffer nor to read it
+ * back, readers iterating over the segments themselves. Segments double in size from {@link #MIN_SEGMENT_BYTES}
+ * up to {@link #SEGMENT_BYTES}, so that the text of small embeds doesn't cost a whole segment.
+ *
+ * <p>With a {@link SlabPool}, segments are borrowed from the pool instead, all of its size, and returned to it when
+ * the buffer spills, is discarded, or when the reader of its text is closed. The text is then read once: the memory
+ * is released along with the segments, and the buffer can't generate another reader.
+ *
+ * <p>With a {@link SpillCompression}, the temp file is deflated, and inflated again by its readers.
+ *
+ * <p>With a {@link SpillArena}, the text is spilled to the arena's shared files rather than to a temp file of its own.
+ * It's then read once too, its extents being released when the reader is closed.
  */
 class BudgetedEmbedBuffer extends OutputStream {
 
+    static final int MIN_SEGMENT_BYTES = 256;
+    static final int SEGMENT_BYTES = 64 * 1024;
+
     private final AtomicLong reserved;
     private final long budgetBytes;
     private final TemporaryResources tmp;
     private final BooleanSupplier memoryPressureHigh;
+    private final SlabPool pool;
+    private final SpillCompression compression;
+    private final SpillArena arena;
 
-    private ByteArrayOutputStream memory = new ByteArrayOutputStream(8192);
+    private List<byte[]> segments = new ArrayList<>();
+    private byte[] segment = null;
+    private int segmentLength = 0;
     private long memoryReserved = 0;
     private Path file = null;
+    private SpillArena.Spill spill = null;
     private OutputStream fileOut = null;
     private boolean closed = false;
+    private boolean released = false;
+    private long length = 0;
 
     BudgetedEmbedBuffer(final AtomicLong reserved, final long budgetBytes, final TemporaryResources tmp) {
         this(reserved, budgetBytes, tmp, () -> false);
@@ -44,32 +72,66 @@ class BudgetedEmbedBuffer extends OutputStream {
 
     BudgetedEmbedBuffer(final AtomicLong reserved, final long budgetBytes, final TemporaryResources tmp,
                         final BooleanSupplier memoryPressureHigh) {
+        this(reserved, budgetBytes, tmp, memoryPressureHigh, null, null, null);
+    }
+
+    /**
+     * @param pool        the pool to borrow segments from, or {@code null} to allocate them
+     * @param compression the compression of the spilled text, or {@code null} to write the text as it is
+     * @param arena       the arena to spill to, or {@code null} to spill to a temp file of {@code tmp}
+     */
+    BudgetedEmbedBuffer(final AtomicLong reserved, final long budgetBytes, final TemporaryResources tmp,
+                        final BooleanSupplier memoryPressureHigh, final SlabPool pool,
+                        final SpillCompression compression, final SpillArena arena) {
         this.reserved = reserved;
         this.budgetBytes = budgetBytes;
         this.tmp = tmp;
         this.memoryPressureHigh = memoryPressureHigh;
+        this.pool = pool;
+        this.compression = compression;
+        this.arena = arena;
     }
 
     @Override
     public synchronized void write(final int b) throws IOException {
-        write(new byte[]{(byte) b}, 0, 1);
+        if (!reserveMemory(1)) {
+            fileOut.write(b);
+            length++;
+            return;
+        }
+        length++;
+        if (null == segment || segmentLength == segment.length) {
+            nextSegment();
+        }
+        segment[segmentLength++] = (byte) b;
+        memoryReserved++;
     }
 
     @Override
-    public synchronized void write(final byte[] b, final int off, final int len) throws IOException {
+    public synchronized void write(final byte[] b, int off, int len) throws IOException {
+        if (!reserveMemory(len)) {
+            fileOut.write(b, off, len);
+            length += len;
+            return;
+        }
+        appendToMemoryReserved(b, off, len);
+        length += len;
+    }
+
+    // Whether the given number of bytes go to memory, in which case they are reserved in the shared budget, or to
+    // the file, in which case the buffer has spilled.
+    private boolean reserveMemory(final int len) throws IOException {
         if (closed) {
             throw new IOException("Stream closed");
         }
         // Once this buffer has spilled it stays on disk for the rest of its life.
         if (isSpilled()) {
-            fileOut.write(b, off, len);
-            return;
+            return false;
         }
         // Heap-pressure spill takes precedence and needs no reservation.
         if (memoryPressureHigh.getAsBoolean()) {
             spill();
-            fileOut.write(b, off, len);
-            return;
+            return false;
         }
         // Atomically reserve space in the shared budget. If this reservation pushes the total
         // over budget, roll it back and spill instead. This prevents the check-then-act race
@@ -79,33 +141,104 @@ class BudgetedEmbedBuffer extends OutputStream {
         if (newTotal > budgetBytes) {
             reserved.addAndGet(-len);
             spill();
-            fileOut.write(b, off, len);
-            return;
+            return false;
         }
-        appendToMemoryReserved(b, off, len);
+        return true;
     }
 
     // The reservation was already done atomically in write(); this method only records the bytes
-    // locally (memory buffer + memoryReserved) without touching the shared counter again.
-    private void appendToMemoryReserved(final byte[] b, final int off, final int len) throws IOException {
-        memory.write(b, off, len);
+    // locally (memory segments + memoryReserved) without touching the shared counter again.
+    private void appendToMemoryReserved(final byte[] b, int off, int len) {
         memoryReserved += len;
+        while (len > 0) {
+            if (null == segment || segmentLength == segment.length) {
+                nextSegment();
+            }
+            final int n = Math.min(len, segment.length - segmentLength);
+            System.arraycopy(b, off, segment, segmentLength, n);
+            segmentLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    // Each segment is as large as the text so far, to at most SEGMENT_BYTES, or is a slab of the pool.
+    private void nextSegment() {
+        if (null != segment) {
+            segments.add(segment);
+        }
+        segment = null != pool ? pool.borrow() :
+                new byte[(int) Math.min(SEGMENT_BYTES, Math.max(MIN_SEGMENT_BYTES, memoryReserved))];
+        segmentLength = 0;
     }
 
     private void spill() throws IOException {
-        // All per-embed buffers in an extraction share ONE TemporaryResources. With parallel OCR,
-        // multiple pool threads may spill concurrently; Tika's TemporaryResources.addResource mutates
-        // a plain LinkedList with no synchronization, so serialize only the temp-file creation (the
-        // shared resource-list mutation). Opening the stream and all writes below touch only this
-        // buffer's own file and stay outside the lock. Uncontended/harmless on the serial path.
-        synchronized (tmp) {
-            file = tmp.createTempFile();
-        }
-        fileOut = new BufferedOutputStream(Files.newOutputStream(file));
-        memory.writeTo(fileOut);
+        final OutputStream out;
+        if (null != arena) {
+            // The arena buffers its appends in chunks already.
+            spill = arena.open(pool);
+            out = spill;
+        } else {
+            // All per-embed buffers in an extraction share ONE TemporaryResources. With parallel OCR,
+            // multiple pool threads may spill concurrently; Tika's TemporaryResources.addResource mutates
+            // a plain LinkedList with no synchronization, so serialize only the temp-file creation (the
+            // shared resource-list mutation). Opening the stream and all writes below touch only this
+            // buffer's own file and stay outside the lock. Uncontended/harmless on the serial path.
+            synchronized (tmp) {
+                file = tmp.createTempFile();
+            }
+            out = Files.newOutputStream(file);
+        }
+        if (null != compression) {
+            fileOut = new BufferedOutputStream(compression.compress(out));
+        } else {
+            fileOut = null != spill ? out : new BufferedOutputStream(out);
+        }
+        if (null != segments) {
+            for (byte[] full : segments) {
+                fileOut.write(full);
+            }
+        }
+        if (null != segment) {
+            fileOut.write(segment, 0, segmentLength);
+        }
         reserved.addAndGet(-memoryReserved);
         memoryReserved = 0;
-        memory = null;
+        releaseSegments();
+    }
+
+    private void releaseSegments() {
+        if (null != pool) {
+            if (null != segments) {
+                segments.forEach(pool::release);
+            }
+            if (null != segment) {
+                pool.release(segment);
+            }
+        }
+        segments = null;
+        segment = null;
+        segmentLength = 0;
+    }
+
+    // Called when a reader of the text in memory or in the arena is closed. Without a pool the segments are left to the
+    // reader, which may be generated again.
+    private synchronized void release() {
+        if (released) {
+            return;
+        }
+        if (null != spill) {
+            released = true;
+            spill.release();
+            return;
+        }
+        if (null == pool || null == segments) {
+            return;
+        }
+        released = true;
+        reserved.addAndGet(-memoryReserved);
+        memoryReserved = 0;
+        releaseSegments();
     }
 
     @Override
@@ -125,7 +258,7 @@ class BudgetedEmbedBuffer extends OutputStream {
             reserved.addAndGet(-memoryReserved);
             memoryReserved = 0;
         }
-        memory = null;
+        releaseSegments();
         // Today discard() is only reached on the spool-failure path before any byte is written, so
         // fileOut is null. Stay robust to a future caller reaching it after a spill: release the open
         // stream so its descriptor isn't leaked. The temp file itself is owned by the shared
@@ -138,24 +271,96 @@ class BudgetedEmbedBuffer extends OutputStream {
             }
             fileOut = null;
         }
+        if (null != spill) {
+            spill.release();
+            spill = null;
+        }
     }
 
-    /** A lazy reader over the buffered text, from memory or the temp file. */
+    /**
+     * A lazy reader over the buffered text, from memory or the temp file. The text is in UTF-8, so a spewer writing
+     * UTF-8 can copy its bytes without decoding them (see {@link Utf8TextReader}).
+     */
     ReaderGenerator readerGenerator() {
         return () -> {
             synchronized (this) {
                 if (file != null) {
-                    return new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8);
+                    return null != compression ? Utf8TextReader.ofDeflated(file) : Utf8TextReader.of(file);
+                }
+                if (released) {
+                    throw new IOException("Embed buffer was released once its content was read");
                 }
-                if (memory == null) {
+                if (spill != null) {
+                    return Utf8TextReader.of(spill.extents(), null != compression, this::release);
+                }
+                if (segments == null) {
                     throw new IOException("Embed buffer was discarded; no content to read");
                 }
-                return new InputStreamReader(new ByteArrayInputStream(memory.toByteArray()), StandardCharsets.UTF_8);
+                return null != pool ? Utf8TextReader.of(view(), this::release) : Utf8TextReader.of(view());
             }
         };
     }
 
+    // The segments as they are now, without copying them. Bytes are only ever appended, so those in view don't change.
+    private List<ByteBuffer> view() {
+        final List<ByteBuffer> view = new ArrayList<>(segments.size() + 1);
+        for (byte[] full : segments) {
+            view.add(ByteBuffer.wrap(full));
+        }
+        if (null != segment) {
+            view.add(ByteBuffer.wrap(segment, 0, segmentLength));
+        }
+        return view;
+    }
+
+    /**
+     * The bytes written, from memory or the temp file, for a buffer that holds something other than text, written
+     * without a pool, compression or an arena.
+     */
+    synchronized InputStream bytes() throws IOException {
+        if (null != compression || null != pool || null != arena) {
+            throw new IOException("Embed buffer can't be read as bytes");
+        }
+        if (file != null) {
+            return Files.newInputStream(file);
+        }
+        if (null == segments) {
+            throw new IOException("Embed buffer was discarded; no content to read");
+        }
+        final List<InputStream> streams = new ArrayList<>();
+        for (ByteBuffer bytes : view()) {
+            streams.add(new ByteArrayInputStream(bytes.array(), bytes.position(), bytes.remaining()));
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * A copy of the text for the {@link EmbedResultCache}, taken once the embed is parsed rather than kept alongside
+     * the buffer while it's written, outside of the budget.
+     *
+     * @param limit the number of bytes above which no copy is made
+     * @return the text, or {@code null} if it's longer than the limit, or was spilled, read or discarded
+     */
+    synchronized byte[] copyInMemory(final int limit) {
+        if (length > limit || isSpilled() || released || null == segments) {
+            return null;
+        }
+        final byte[] copy = new byte[(int) length];
+        int position = 0;
+        for (ByteBuffer bytes : view()) {
+            final int n = bytes.remaining();
+            bytes.get(copy, position, n);
+            position += n;
+        }
+        return copy;
+    }
+
+    /** The number of bytes of text written to this buffer, in memory or spilled. */
+    synchronized long length() {
+        return length;
+    }
+
     synchronized boolean isSpilled() {
-        return file != null;
+        return file != null || spill != null;
     }
 }
@@ -0,0 +1,621 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ParserDecorator;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.EmbeddedContentHandler;
+import org.icij.extract.document.TikaDocument;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Serial;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Parses the embeds of a root document in parallel in {@link Extractor.EmbedHandling#CONCATENATE} mode, and stitches
+ * their text into the root's in document order, so that the root's text is the same as with {@link EmbedParser}.
+ *
+ * The root's parser still walks the root and hands its embeds here one after the other. The bytes of each embed are
+ * handed off ({@link SpoolHandOff}) and parsed on the shared executor into a recording of the SAX events that the
+ * serial parse would have written, and the walk carries on. Whatever the root writes from then on, its own text and
+ * the embeds that follow, is held back by the {@link Stitcher} at the root's handler, behind a slot left for the
+ * embed. Once the embed is parsed, the walking thread plays its recording back into the handler that the embed was
+ * given, which fills the slot; what's at the head of the output is written through.
+ *
+ * At most twice as many embeds as the executor runs at once are pending: the walk stitches the oldest before
+ * handing off another. The recordings, those of the embeds and the text held back behind their slots, are encoded
+ * into {@link BudgetedEmbedBuffer}s sharing the extractor's embed memory budget, and overflow to temporary files past
+ * it, so the memory they take is bounded whatever the size of the embeds. Embeds given as an open container, which
+ * can only be parsed from the objects their parent holds, are parsed in place, and the embeds of embeds are parsed by
+ * the task parsing their parent, serially.
+ *
+ * A failure to parse an embed that isn't a {@link TikaException}, which {@link EmbedParser} logs, is thrown by the
+ * walk when the embed is stitched, rather than from the embed's own {@link #parseEmbedded} call.
+ *
+ * The walking methods are not thread-safe: only the thread parsing the root calls them.
+ */
+final class ConcatenateFanout extends EmbedParser {
+
+	private final Supplier<ExecutorService> executor;
+	private final int maxPending;
+	private final long budgetBytes;
+	// The bytes of the recordings held in memory.
+	private final AtomicLong reserved = new AtomicLong();
+	private final TemporaryResources tmp = new TemporaryResources();
+	private final Deque<Slot> slots = new ArrayDeque<>();
+	private Stitcher stitcher = null;
+	private Thread walker = null;
+	// The depth of parses in place on the walking thread, whose nested embeds come back through this extractor.
+	private int serial = 0;
+
+	/**
+	 * @param budgetBytes the bytes of recordings held in memory, past which they overflow to temporary files
+	 */
+	ConcatenateFanout(final TikaDocument root, final ParseContext context, final int parallelism,
+	                  final long budgetBytes, final Supplier<ExecutorService> executor) {
+		super(root, context);
+		this.executor = executor;
+		this.maxPending = 2 * Math.max(1, parallelism);
+		this.budgetBytes = budgetBytes;
+	}
+
+	/**
+	 * Wrap the handler of the root's text, on the thread that parses the root, so that embeds are stitched into it.
+	 */
+	ContentHandler stitch(final ContentHandler handler) {
+		stitcher = new Stitcher(handler, this::record);
+		walker = Thread.currentThread();
+		return stitcher;
+	}
+
+	/**
+	 * Wrap the root's parser, so that the parse returns once every embed is stitched.
+	 */
+	Parser around(final Parser parser) {
+		return new Finishing(parser, this);
+	}
+
+	@Override
+	public void parseEmbedded(final InputStream input, final ContentHandler handler, final Metadata metadata,
+	                          final boolean outputHtml) throws SAXException, IOException {
+		if (null == stitcher || Thread.currentThread() != walker || serial > 0 ||
+				(input instanceof TikaInputStream tis && null != tis.getOpenContainer())) {
+			parseInPlace(input, handler, metadata, outputHtml);
+			return;
+		}
+
+		// Stitch the embeds parsed so far, and wait for the oldest if the window is full.
+		while (!slots.isEmpty() && slots.peekFirst().task.isDone()) {
+			stitchNext();
+		}
+		while (slots.size() >= maxPending) {
+			stitchNext();
+		}
+
+		final SpoolHandOff handOff = SpoolHandOff.of(input, tmp);
+
+		try {
+			if (outputHtml) {
+				writeStart(handler, metadata);
+			}
+		} catch (final SAXException | RuntimeException e) {
+			handOff.close();
+			throw e;
+		}
+
+		final Slot slot = new Slot(handler, stitcher.hold(), record());
+
+		// Nested embeds are parsed by the task, serially, rather than coming back here.
+		final ParseContext taskContext = new ParseContext();
+
+		EmbedSpawner.copyParsingConfig(context, taskContext);
+		taskContext.set(EmbeddedDocumentExtractor.class, new EmbedParser(root, taskContext));
+
+		slot.task = new FutureTask<>(() -> {
+			try (handOff; final TikaInputStream tis = TikaInputStream.get(handOff.path())) {
+				delegateParsing(tis, new EmbeddedContentHandler(new BodyContentHandler(slot.recording)), metadata,
+						taskContext);
+			}
+			return null;
+		});
+		slots.addLast(slot);
+
+		try {
+			executor.get().execute(slot.task);
+		} catch (final RejectedExecutionException e) {
+
+			// The executor was shut down, with the extractor: parse the embed here instead.
+			slot.task.run();
+		}
+
+		// Written after the slot, where the serial parse would have written it once the embed was parsed.
+		if (outputHtml) {
+			writeEnd(handler);
+		}
+	}
+
+	private void parseInPlace(final InputStream input, final ContentHandler handler, final Metadata metadata,
+	                          final boolean outputHtml) throws SAXException, IOException {
+		serial++;
+		try {
+			super.parseEmbedded(input, handler, metadata, outputHtml);
+		} finally {
+			serial--;
+		}
+	}
+
+	/**
+	 * Wait for the oldest pending embed and play its recording into its slot.
+	 */
+	private void stitchNext() throws SAXException, IOException {
+		final Slot slot = slots.peekFirst();
+		Throwable failure = null;
+
+		try {
+			slot.task.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("concatenated embed parse cancelled (thread interrupted)");
+		} catch (final ExecutionException e) {
+			failure = e.getCause();
+		} catch (final CancellationException e) {
+			failure = e;
+		}
+
+		slots.removeFirst();
+
+		// A cancelled task may still be writing its recording, so leave its slot empty.
+		stitcher.fill(slot.held, failure instanceof CancellationException ? record() : slot.recording,
+				slot.handler);
+
+		if (failure instanceof IOException io) {
+			throw io;
+		}
+		if (failure instanceof SAXException sax) {
+			throw sax;
+		}
+		if (failure instanceof RuntimeException runtime) {
+			throw runtime;
+		}
+		if (failure instanceof Error error) {
+			throw error;
+		}
+		if (null != failure) {
+			throw new IOException("Unable to parse an embedded document.", failure);
+		}
+	}
+
+	private Recording record() {
+		return new Recording(new BudgetedEmbedBuffer(reserved, budgetBytes, tmp));
+	}
+
+	/**
+	 * Stitch every pending embed, in order.
+	 */
+	private void finish() throws SAXException, IOException {
+		while (!slots.isEmpty()) {
+			stitchNext();
+		}
+	}
+
+	/**
+	 * Cancel the embeds still pending, after a failure, and delete the hand-offs.
+	 */
+	private void close() {
+		for (Slot slot : slots) {
+			slot.task.cancel(true);
+		}
+		slots.clear();
+
+		try {
+			tmp.close();
+		} catch (final IOException e) {
+			logger.warn("Unable to delete the embeds handed off from \"{}\".", root, e);
+		}
+	}
+
+	/**
+	 * An embed handed off: the handler it was given, the place it holds in the output, and its parse.
+	 */
+	private static final class Slot {
+
+		private final ContentHandler handler;
+		private final Recording held;
+		private final Recording recording;
+		private FutureTask<Void> task;
+
+		private Slot(final ContentHandler handler, final Recording held, final Recording recording) {
+			this.handler = handler;
+			this.held = held;
+			this.recording = recording;
+		}
+	}
+
+	/**
+	 * Runs the root's parser, then stitches the embeds it has handed off before returning.
+	 */
+	private static final class Finishing extends ParserDecorator {
+
+		@Serial
+		private static final long serialVersionUID = 4212608357640192735L;
+
+		private final transient ConcatenateFanout fanout;
+
+		private Finishing(final Parser parser, final ConcatenateFanout fanout) {
+			super(parser);
+			this.fanout = fanout;
+		}
+
+		@Override
+		public void parse(final InputStream stream, final ContentHandler handler, final Metadata metadata,
+		                  final ParseContext context) throws IOException, SAXException, TikaException {
+			try {
+				super.parse(stream, handler, metadata, context);
+				fanout.finish();
+			} finally {
+				fanout.close();
+			}
+		}
+	}
+
+	/**
+	 * Sits in front of the root's handler, and holds back what's written behind a slot until the slot is filled.
+	 *
+	 * The output is a queue of recordings, each either a slot left for an embed or what's written after it. Events
+	 * go to the last of them, or straight to the handler when none is pending.
+	 */
+	private static final class Stitcher implements ContentHandler {
+
+		private final ContentHandler out;
+		private final Supplier<Recording> recordings;
+		private final Deque<Recording> segments = new ArrayDeque<>();
+		private Recording target = null;
+
+		private Stitcher(final ContentHandler out, final Supplier<Recording> recordings) {
+			this.out = out;
+			this.recordings = recordings;
+		}
+
+		/**
+		 * Leave a slot for an embed, behind which whatever comes next is held back.
+		 */
+		private Recording hold() {
+			final Recording held = recordings.get();
+			final Recording after = recordings.get();
+
+			held.pending = true;
+			segments.addLast(held);
+			segments.addLast(after);
+			target = after;
+			return held;
+		}
+
+		/**
+		 * Play the recording of an embed into the handler it was given, filling the slot it holds, and write out
+		 * whatever is no longer held back.
+		 */
+		private void fill(final Recording held, final Recording recording, final ContentHandler handler)
+				throws SAXException {
+			final Recording after = target;
+
+			// A slot at the head of the output is written through.
+			target = segments.peekFirst() == held ? null : held;
+			try {
+				recording.replay(handler);
+			} finally {
+				target = after;
+				held.pending = false;
+			}
+
+			while (!segments.isEmpty() && !segments.peekFirst().pending) {
+				segments.removeFirst().replay(out);
+			}
+			if (segments.isEmpty()) {
+				target = null;
+			}
+		}
+
+		private ContentHandler to() {
+			return null == target ? out : target;
+		}
+
+		@Override
+		public void setDocumentLocator(final Locator locator) {
+			out.setDocumentLocator(locator);
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			to().startDocument();
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			to().endDocument();
+		}
+
+		@Override
+		public void startPrefixMapping(final String prefix, final String uri) throws SAXException {
+			to().startPrefixMapping(prefix, uri);
+		}
+
+		@Override
+		public void endPrefixMapping(final String prefix) throws SAXException {
+			to().endPrefixMapping(prefix);
+		}
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName,
+		                         final Attributes atts) throws SAXException {
+			to().startElement(uri, localName, qName, atts);
+		}
+
+		@Override
+		public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+			to().endElement(uri, localName, qName);
+		}
+
+		@Override
+		public void characters(final char[] ch, final int start, final int length) throws SAXException {
+			to().characters(ch, start, length);
+		}
+
+		@Override
+		public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
+			to().ignorableWhitespace(ch, start, length);
+		}
+
+		@Override
+		public void processingInstruction(final String instruction, final String data) throws SAXException {
+			to().processingInstruction(instruction, data);
+		}
+
+		@Override
+		public void skippedEntity(final String name) throws SAXException {
+			to().skippedEntity(name);
+		}
+	}
+
+	/**
+	 * SAX events, recorded to be played back in order.
+	 *
+	 * The events are encoded one after the other into a buffer, text included, rather than kept as objects: the
+	 * characters of a call are written to the buffer and read back into a single array when the recording is played.
+	 * A recording is written by one thread and played once, by the walking thread, after which its memory is released.
+	 */
+	private static final class Recording implements ContentHandler {
+
+		private static final int START_DOCUMENT = 0;
+		private static final int END_DOCUMENT = 1;
+		private static final int START_PREFIX_MAPPING = 2;
+		private static final int END_PREFIX_MAPPING = 3;
+		private static final int START_ELEMENT = 4;
+		private static final int END_ELEMENT = 5;
+		private static final int CHARACTERS = 6;
+		private static final int IGNORABLE_WHITESPACE = 7;
+		private static final int PROCESSING_INSTRUCTION = 8;
+		private static final int SKIPPED_ENTITY = 9;
+
+		// Characters are played back in chunks of at most this many, and encoded in chunks of at most half as many.
+		private static final int CHUNK_CHARS = 8 * 1024;
+
+		private final BudgetedEmbedBuffer buffer;
+		private final DataOutputStream out;
+		private byte[] encoded = null;
+		private boolean pending = false;
+
+		private Recording(final BudgetedEmbedBuffer buffer) {
+			this.buffer = buffer;
+			this.out = new DataOutputStream(new BufferedOutputStream(buffer, 1024));
+		}
+
+		void replay(final ContentHandler handler) throws SAXException {
+			try {
+				out.close();
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(buffer.bytes()))) {
+					replay(in, handler);
+				}
+			} catch (final IOException e) {
+				throw new SAXException("Unable to play back the recording of an embedded document.", e);
+			} finally {
+				buffer.discard();
+			}
+		}
+
+		private static void replay(final DataInputStream in, final ContentHandler handler)
+				throws IOException, SAXException {
+			final AttributesImpl atts = new AttributesImpl();
+			final byte[] bytes = new byte[2 * CHUNK_CHARS];
+			final char[] chars = new char[CHUNK_CHARS];
+			int event;
+
+			while (-1 != (event = in.read())) {
+				switch (event) {
+					case START_DOCUMENT -> handler.startDocument();
+					case END_DOCUMENT -> handler.endDocument();
+					case START_PREFIX_MAPPING -> handler.startPrefixMapping(readString(in), readString(in));
+					case END_PREFIX_MAPPING -> handler.endPrefixMapping(readString(in));
+					case START_ELEMENT -> {
+						final String uri = readString(in);
+						final String localName = readString(in);
+						final String qName = readString(in);
+
+						atts.clear();
+						for (int i = in.readInt(); i > 0; i--) {
+							atts.addAttribute(readString(in), readString(in), readString(in), readString(in),
+									readString(in));
+						}
+						handler.startElement(uri, localName, qName, atts);
+					}
+					case END_ELEMENT -> handler.endElement(readString(in), readString(in), readString(in));
+					case CHARACTERS, IGNORABLE_WHITESPACE -> {
+						for (int length = in.readInt(); length > 0; ) {
+							final int n = Math.min(length, CHUNK_CHARS);
+							in.readFully(bytes, 0, 2 * n);
+							for (int i = 0; i < n; i++) {
+								chars[i] = (char) ((bytes[2 * i] & 0xff) << 8 | bytes[2 * i + 1] & 0xff);
+							}
+							if (CHARACTERS == event) {
+								handler.characters(chars, 0, n);
+							} else {
+								handler.ignorableWhitespace(chars, 0, n);
+							}
+							length -= n;
+						}
+					}
+					case PROCESSING_INSTRUCTION -> handler.processingInstruction(readString(in), readString(in));
+					case SKIPPED_ENTITY -> handler.skippedEntity(readString(in));
+					default -> throw new IOException("Unknown event in recording: " + event);
+				}
+			}
+		}
+
+		private static String readString(final DataInputStream in) throws IOException {
+			final int length = in.readInt();
+
+			if (-1 == length) {
+				return null;
+			}
+
+			final char[] chars = new char[length];
+			for (int i = 0; i < length; i++) {
+				chars[i] = in.readChar();
+			}
+			return new String(chars);
+		}
+
+		private void writeString(final String string) throws IOException {
+			if (null == string) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(string.length());
+				out.writeChars(string);
+			}
+		}
+
+		private void writeChars(final int event, final char[] ch, final int start, final int length)
+				throws SAXException {
+			if (null == encoded) {
+				encoded = new byte[CHUNK_CHARS];
+			}
+			try {
+				out.write(event);
+				out.writeInt(length);
+				for (int i = start, end = start + length; i < end; ) {
+					final int n = Math.min(end - i, encoded.length / 2);
+					for (int j = 0; j < n; j++) {
+						final char c = ch[i + j];
+						encoded[2 * j] = (byte) (c >>> 8);
+						encoded[2 * j + 1] = (byte) c;
+					}
+					out.write(encoded, 0, 2 * n);
+					i += n;
+				}
+			} catch (final IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		private void write(final int event, final String... strings) throws SAXException {
+			try {
+				out.write(event);
+				for (String string : strings) {
+					writeString(string);
+				}
+			} catch (final IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void setDocumentLocator(final Locator locator) {
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			write(START_DOCUMENT);
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			write(END_DOCUMENT);
+		}
+
+		@Override
+		public void startPrefixMapping(final String prefix, final String uri) throws SAXException {
+			write(START_PREFIX_MAPPING, prefix, uri);
+		}
+
+		@Override
+		public void endPrefixMapping(final String prefix) throws SAXException {
+			write(END_PREFIX_MAPPING, prefix);
+		}
+
+		@Override
+		public void startElement(final String uri, final String localName, final String qName,
+		                         final Attributes atts) throws SAXException {
+			write(START_ELEMENT, uri, localName, qName);
+			try {
+				out.writeInt(atts.getLength());
+				for (int i = 0; i < atts.getLength(); i++) {
+					writeString(atts.getURI(i));
+					writeString(atts.getLocalName(i));
+					writeString(atts.getQName(i));
+					writeString(atts.getType(i));
+					writeString(atts.getValue(i));
+				}
+			} catch (final IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+			write(END_ELEMENT, uri, localName, qName);
+		}
+
+		@Override
+		public void characters(final char[] ch, final int start, final int length) throws SAXException {
+			writeChars(CHARACTERS, ch, start, length);
+		}
+
+		@Override
+		public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
+			writeChars(IGNORABLE_WHITESPACE, ch, start, length);
+		}
+
+		@Override
+		public void processingInstruction(final String target, final String data) throws SAXException {
+			write(PROCESSING_INSTRUCTION, target, data);
+		}
+
+		@Override
+		public void skippedEntity(final String name) throws SAXException {
+			write(SKIPPED_ENTITY, name);
+		}
+	}
+}
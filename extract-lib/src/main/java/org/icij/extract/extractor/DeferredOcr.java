@@ -0,0 +1,232 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.PDF;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.icij.extract.document.TikaDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the first phase of a two-phase extraction leaves to the second (see {@link DeferredOcrQueue}): image embeds,
+ * documents with inline images, whose parse is what would have OCR'd them, and PDFs that the configured strategy
+ * would have rendered and OCR'd.
+ *
+ * One instance is used per root. A deferred document is persisted to the queue before it's written, so that it's
+ * never left marked as waiting for OCR with nothing queued to OCR it, but its key is only offered by {@link #flush()},
+ * once the whole tree was written: otherwise the second phase could write a document before the first phase writes
+ * it without OCR, and be overwritten. The bytes of embeds are spooled right away, since they only exist while their
+ * container is parsed.
+ *
+ * The root is written last, once its parse ends, so it's deferred as soon as it's marked, by
+ * {@link #markPending(TikaDocument)}.
+ */
+class DeferredOcr {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredOcr.class);
+
+    // Set by the first phase on a document written without the OCR text of its inline images, so that it can be told
+    // apart in the output. The second phase parses from a snapshot taken before it was set, so its version hasn't it.
+    static final String OCR_PENDING = "X-EXTRACT:ocrPending";
+
+    // Under the AUTO strategy, Tika OCRs a page with fewer characters than this, or with more than this share of
+    // unmapped characters (see PDFParserConfig).
+    private static final int AUTO_MIN_CHARS_PER_PAGE = 10;
+    private static final double AUTO_MAX_UNMAPPED_RATIO = 0.1;
+
+    private final DeferredOcrQueue queue;
+    private final PDFParserConfig.OCR_STRATEGY pdfStrategy;
+    private final TikaDocument root;
+    private final Metadata rootSnapshot;
+    private final List<OcrWorkItem> deferred = new ArrayList<>();
+    private boolean rootDeferred = false;
+
+    /**
+     * @param queue        the queue to submit documents to
+     * @param pdfStrategy  the PDF OCR strategy of the second phase; the first phase parses PDFs without OCR
+     * @param root         the root whose tree is extracted
+     * @param rootSnapshot the root's metadata before the first phase parses it
+     */
+    DeferredOcr(final DeferredOcrQueue queue, final PDFParserConfig.OCR_STRATEGY pdfStrategy,
+                final TikaDocument root, final Metadata rootSnapshot) {
+        this.queue = queue;
+        this.pdfStrategy = pdfStrategy;
+        this.root = root;
+        this.rootSnapshot = rootSnapshot;
+    }
+
+    static void markPending(final Metadata metadata) {
+        metadata.set(OCR_PENDING, "true");
+    }
+
+    /**
+     * Mark a document being parsed as written without the OCR text of its inline images. An embed is deferred once
+     * parsed, but the root is deferred right away: it's only marked if that succeeds.
+     *
+     * @param document the document being parsed
+     */
+    void markPending(final TikaDocument document) {
+        if (document == root) {
+            try {
+                deferRoot();
+            } catch (final IOException e) {
+                logger.error("Unable to queue \"{}\" for OCR.", root.getPath(), e);
+                return;
+            }
+        }
+
+        markPending(document.getMetadata());
+    }
+
+    /**
+     * Defer the root, unless it already was.
+     *
+     * @throws IOException if it can't be persisted to the queue
+     */
+    synchronized void deferRoot() throws IOException {
+        if (rootDeferred) {
+            return;
+        }
+
+        copyUnparsed(root.getMetadata(), rootSnapshot);
+        defer(root, null, null, 0, rootSnapshot, root.getPath(), null);
+        rootDeferred = true;
+    }
+
+    static void unmarkPending(final Metadata metadata) {
+        metadata.remove(OCR_PENDING);
+    }
+
+    /**
+     * @param metadata the metadata of a document after the first phase parsed it
+     * @return whether the second phase must parse it again
+     */
+    boolean needsOcr(final Metadata metadata) {
+        if (null != metadata.get(OCR_PENDING)) {
+            return true;
+        }
+
+        final String contentType = metadata.get(Metadata.CONTENT_TYPE);
+        if (null == contentType || !contentType.startsWith("application/pdf")) {
+            return false;
+        }
+
+        return switch (pdfStrategy) {
+            case OCR_ONLY, OCR_AND_TEXT_EXTRACTION -> true;
+            case AUTO -> hasPagesWithoutText(metadata);
+            default -> false;
+        };
+    }
+
+    // Tika only sets these per-page counts on the document, so a document with one scanned page is OCR'd whole,
+    // where Tika would have OCR'd that page only. The text is the same, it just costs more.
+    private static boolean hasPagesWithoutText(final Metadata metadata) {
+        final int[] chars = metadata.getIntValues(PDF.CHARACTERS_PER_PAGE);
+        final int[] unmapped = metadata.getIntValues(PDF.UNMAPPED_UNICODE_CHARS_PER_PAGE);
+
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] < AUTO_MIN_CHARS_PER_PAGE) {
+                return true;
+            }
+            if (i < unmapped.length && chars[i] > 0 && (double) unmapped[i] / chars[i] > AUTO_MAX_UNMAPPED_RATIO) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Defer a document to the second phase, persisting it to the queue before it's written.
+     *
+     * @param document the document, with its ID
+     * @param parent   its parent, or {@code null} for a root
+     * @param root     its root, or {@code null} for a root
+     * @param level    its depth in the tree
+     * @param snapshot its metadata before the first phase parsed it, digest included
+     * @param input    the file to parse, or {@code null} to parse {@code bytes}
+     * @param bytes    the document's bytes, copied to the queue's spool directory, or {@code null} to parse
+     *                 {@code input}
+     * @throws IOException if the bytes can't be copied or the document persisted
+     */
+    void defer(final TikaDocument document, final TikaDocument parent, final TikaDocument root, final int level,
+               final Metadata snapshot, final Path input, final Path bytes) throws IOException {
+        final OcrWorkItem item = new OcrWorkItem(document.getId(), null == parent ? null : parent.getId(),
+                null == root ? null : root.getId(), document.getPath().toString(), level,
+                null == input ? null : input.toString(), OcrWorkItem.valuesOf(snapshot));
+
+        if (null != bytes) {
+            queue.spool(item, bytes);
+        }
+        try {
+            queue.persist(item);
+        } catch (final IOException e) {
+            try {
+                queue.discard(item);
+            } catch (final IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        synchronized (deferred) {
+            deferred.add(item);
+        }
+    }
+
+    /**
+     * Offer the deferred documents to the second phase, once the tree they belong to was written.
+     *
+     * @return the number of documents offered
+     */
+    int flush() {
+        final List<OcrWorkItem> items;
+        synchronized (deferred) {
+            items = new ArrayList<>(deferred);
+            deferred.clear();
+        }
+
+        items.forEach(queue::offer);
+        return items.size();
+    }
+
+    /**
+     * Drop the deferred documents of a tree that couldn't be written, with their persisted items and spooled bytes.
+     */
+    void discard() {
+        final List<OcrWorkItem> items;
+        synchronized (deferred) {
+            items = new ArrayList<>(deferred);
+            deferred.clear();
+        }
+
+        for (OcrWorkItem item : items) {
+            try {
+                queue.discard(item);
+            } catch (final IOException e) {
+                logger.warn("Unable to delete the spooled bytes of \"{}\".", item.id(), e);
+            }
+        }
+    }
+
+    /**
+     * Copy the metadata that the first phase set outside of the parse, like the digest, from the document to the
+     * snapshot its second parse starts from.
+     */
+    static void copyUnparsed(final Metadata metadata, final Metadata snapshot) {
+        final String digestPrefix = TikaCoreProperties.TIKA_META_PREFIX + "digest" +
+                TikaCoreProperties.NAMESPACE_PREFIX_DELIMITER;
+
+        for (String name : metadata.names()) {
+            if (name.startsWith(digestPrefix) || (Metadata.CONTENT_LENGTH.equals(name) && null == snapshot.get(name))) {
+                snapshot.set(name, metadata.getValues(name));
+            }
+        }
+    }
+}
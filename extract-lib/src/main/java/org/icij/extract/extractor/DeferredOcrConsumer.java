@@ -0,0 +1,163 @@
+package org.icij.extract.extractor;
+
+import org.icij.spewer.Spewer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The second phase of a two-phase extraction: a pool of workers that take the documents queued by the first phase
+ * from a {@link DeferredOcrQueue}, parse them again with OCR and write them over the versions written without it.
+ *
+ * <p>The workers run alongside the first phase, from {@link #start()}, and stop once {@link #finish()} was called
+ * and the queue is empty. A document is only deleted from the queue once written, so on a restart the documents
+ * left by the previous run are found again when the consumer starts. A document that fails is left in the queue for
+ * the next run, but isn't tried again in this one.
+ */
+public class DeferredOcrConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredOcrConsumer.class);
+    private static final long POLL_MILLIS = 500;
+
+    private final Extractor extractor;
+    private final DeferredOcrQueue queue;
+    private final Spewer spewer;
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    private final AtomicLong written = new AtomicLong();
+    private volatile boolean finished = false;
+
+    /**
+     * @param extractor   the extractor of the first phase, which parses documents with the same configuration
+     * @param queue       the queue to drain
+     * @param spewer      endpoint to write to
+     * @param parallelism the number of documents parsed at the same time
+     */
+    public DeferredOcrConsumer(final Extractor extractor, final DeferredOcrQueue queue, final Spewer spewer,
+                               final int parallelism) {
+        this.extractor = extractor;
+        this.queue = queue;
+        this.spewer = spewer;
+        this.parallelism = Math.max(1, parallelism);
+        this.executor = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+            @Override public Thread newThread(final Runnable r) {
+                final Thread t = new Thread(r, "extract-ocr-consumer-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Queue again the documents left by a previous run and start the workers.
+     *
+     * @throws IOException if the queue's directory can't be read
+     */
+    public void start() throws IOException {
+        final int recovered = queue.recover(Set.of());
+        if (recovered > 0) {
+            logger.info("Resuming OCR of {} documents queued by a previous run.", recovered);
+        }
+
+        for (int i = 0; i < parallelism; i++) {
+            executor.submit(this::work);
+        }
+    }
+
+    /**
+     * Signal that the first phase is done: the workers stop once the queue is empty.
+     */
+    public void finish() {
+        finished = true;
+        executor.shutdown();
+    }
+
+    /**
+     * Signal that the first phase is done and wait for the workers to empty the queue.
+     */
+    public void drain() throws InterruptedException {
+        finish();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        logger.info("OCR done: {} documents written, {} failed.", written.get(), failed.size());
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public int failed() {
+        return failed.size();
+    }
+
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final String key = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (null != key) {
+                    consume(key);
+                } else if (finished && recover() == 0) {
+                    return;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Queue the documents that are only on disk, those that didn't fit in a memory queue for instance, leaving out
+    // those being parsed, those that failed and those of other processes still running.
+    private int recover() {
+        final Set<String> exclude = new HashSet<>(failed);
+        exclude.addAll(inFlight);
+
+        try {
+            return queue.recover(exclude);
+        } catch (final IOException e) {
+            logger.error("Unable to look for queued OCR work.", e);
+            return 0;
+        }
+    }
+
+    private void consume(final String key) {
+        if (failed.contains(key) || !inFlight.add(key)) {
+            return;
+        }
+
+        try {
+            final OcrWorkItem item = queue.read(key);
+
+            // Already done, after being queued twice.
+            if (null == item) {
+                return;
+            }
+
+            try {
+                extractor.extractDeferred(item, queue.input(item), spewer);
+                queue.complete(key);
+                written.incrementAndGet();
+            } catch (final Exception e) {
+                logger.error("Unable to OCR \"{}\" (in \"{}\"); it's left in the queue.", item.id(), item.path(), e);
+                failed.add(key);
+            }
+        } catch (final IOException e) {
+            logger.error("Unable to read queued OCR work \"{}\".", key, e);
+            failed.add(key);
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+}
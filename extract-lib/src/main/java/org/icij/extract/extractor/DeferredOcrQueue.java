@@ -0,0 +1,336 @@
+package org.icij.extract.extractor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.icij.extract.queue.DocumentQueue;
+import org.icij.extract.queue.MemoryDocumentQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * The work queue of a two-phase extraction, in which the first phase extracts and writes the text that needs no OCR
+ * and leaves the documents that do for a second phase (see {@link DeferredOcrConsumer}).
+ *
+ * <p>Each {@link OcrWorkItem} is written to a spool directory as a JSON file, along with a copy of the document's
+ * bytes when it's an embed, whose bytes only exist while its container is being parsed. Only the item's key goes
+ * through the {@link DocumentQueue}, which may be in memory or in Redis. The spool directory is the durable record:
+ * an item is deleted from it only once the second phase has written the document, so whatever was queued but not
+ * done when a process stopped is found again by {@link #recover(Set)}. With a Redis queue shared by several
+ * processes, the spool directory must be shared by them too.
+ *
+ * <p>The first phase {@link #persist(OcrWorkItem) persists} an item before it writes the document marked as waiting
+ * for OCR, and only {@link #offer(OcrWorkItem) offers} its key once the whole tree is written. A process stopped in
+ * between leaves the item to be recovered, so that no document is left marked with nothing queued to OCR it.
+ *
+ * <p>An item is persisted with the queue as its owner, which holds a lease in the spool directory until it's closed.
+ * Items whose owner holds its lease are only recovered by that owner: another process sharing the directory would
+ * otherwise queue them while their tree is still being written, and the OCR'd document could be overwritten by the
+ * first phase. The lease is renewed by a file's modification time, so the clocks of the processes must roughly agree.
+ *
+ * This object is thread-safe.
+ */
+public class DeferredOcrQueue implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredOcrQueue.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String ITEM_SUFFIX = ".json";
+    private static final String BYTES_SUFFIX = ".bin";
+    private static final String LEASE_SUFFIX = ".lease";
+
+    // The lease of an owner that stopped without closing its queue runs out after this long.
+    static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Keys held by an in-memory queue. Past it, items wait on disk for recover().
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private final Path directory;
+    private final DocumentQueue<String> keys;
+    private final boolean ownsDirectory;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final String owner = UUID.randomUUID().toString();
+    private final ScheduledExecutorService lease;
+    private boolean leaseReleased = false;
+
+    /**
+     * @param directory the spool directory, created if it doesn't exist
+     * @param keys      the queue of item keys
+     * @throws IOException if the directory can't be created
+     */
+    public DeferredOcrQueue(final Path directory, final DocumentQueue<String> keys) throws IOException {
+        this(directory, keys, false);
+    }
+
+    private DeferredOcrQueue(final Path directory, final DocumentQueue<String> keys, final boolean ownsDirectory)
+            throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.keys = keys;
+        this.ownsDirectory = ownsDirectory;
+
+        renewLease();
+        this.lease = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "extract-ocr-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lease.scheduleAtFixedRate(this::renewLeaseQuietly, LEASE_MILLIS / 4, LEASE_MILLIS / 4,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a queue that lives as long as the process, in memory and in a temporary spool directory that is deleted
+     * when the queue is closed. Nothing survives a restart.
+     *
+     * @param capacity the number of keys held in memory; items past it wait on disk for {@link #recover(Set)}
+     */
+    public static DeferredOcrQueue inMemory(final String name, final int capacity) throws IOException {
+        return new DeferredOcrQueue(Files.createTempDirectory("extract-ocr-"),
+                new MemoryDocumentQueue<>(name, capacity), true);
+    }
+
+    /**
+     * Copy the bytes of a document into the spool directory, ahead of its {@link #persist(OcrWorkItem)}. Until then,
+     * the copy is ignored by {@link #recover(Set)}.
+     *
+     * @throws IOException if the bytes can't be copied
+     */
+    public void spool(final OcrWorkItem item, final Path bytes) throws IOException {
+        write(item.key() + BYTES_SUFFIX, temp -> Files.copy(bytes, temp, StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    /**
+     * Queue a document for OCR: {@link #persist(OcrWorkItem)} then {@link #offer(OcrWorkItem)}.
+     *
+     * @param item the document, whose bytes must have been spooled if it has no input
+     * @throws IOException if the item can't be written
+     */
+    public void submit(final OcrWorkItem item) throws IOException {
+        persist(item);
+        offer(item);
+    }
+
+    /**
+     * Write an item to the spool directory, owned by this queue, where {@link #recover(Set)} finds it if its key is
+     * never offered.
+     *
+     * @param item the document, whose bytes must have been spooled if it has no input
+     * @throws IOException if the item can't be written
+     */
+    public void persist(final OcrWorkItem item) throws IOException {
+        write(item.key() + ITEM_SUFFIX, temp -> MAPPER.writeValue(temp.toFile(), item.ownedBy(owner)));
+    }
+
+    /**
+     * Queue the key of a {@link #persist(OcrWorkItem) persisted} item. The item is on disk before its key is queued,
+     * so a document is never queued without its item; if the key can't be queued, the item is left for
+     * {@link #recover(Set)}.
+     *
+     * @param item the persisted document
+     */
+    public void offer(final OcrWorkItem item) {
+        submitted.incrementAndGet();
+
+        if (!keys.offer(item.key())) {
+            logger.warn("The OCR queue is full; \"{}\" is left in \"{}\" until it's recovered.", item.id(), directory);
+        }
+    }
+
+    /**
+     * @return the key of the next item, or {@code null} if none was queued before the timeout
+     */
+    public String poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return keys.poll(timeout, unit);
+    }
+
+    /**
+     * @return the item, or {@code null} if it was completed in the meantime
+     */
+    public OcrWorkItem read(final String key) throws IOException {
+        try {
+            return MAPPER.readValue(directory.resolve(key + ITEM_SUFFIX).toFile(), OcrWorkItem.class);
+        } catch (final FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the file to parse for the item: its input, or the copy of its bytes in the spool directory
+     */
+    public Path input(final OcrWorkItem item) {
+        return null != item.input() ? Path.of(item.input()) : directory.resolve(item.key() + BYTES_SUFFIX);
+    }
+
+    /**
+     * Delete a done item from the spool directory.
+     */
+    public void complete(final String key) throws IOException {
+        delete(key);
+        completed.incrementAndGet();
+    }
+
+    /**
+     * Delete the item and the bytes spooled for a document that won't be offered after all.
+     */
+    public void discard(final OcrWorkItem item) throws IOException {
+        delete(item.key());
+    }
+
+    // The item goes first, so that a process stopped in between never finds an item without its bytes.
+    private void delete(final String key) throws IOException {
+        Files.deleteIfExists(directory.resolve(key + ITEM_SUFFIX));
+        Files.deleteIfExists(directory.resolve(key + BYTES_SUFFIX));
+    }
+
+    /**
+     * Queue again the items found in the spool directory, typically those left by a process that stopped before
+     * the second phase was done with them. An item that is also still in the queue is then done twice, which is
+     * harmless, as the second phase overwrites documents.
+     *
+     * <p>Only the items of this queue, and those whose owner no longer holds its lease, are queued: the items of
+     * another process are left to it until it stops.
+     *
+     * @param exclude the keys not to queue, for example those that already failed in this process
+     * @return the number of items queued
+     */
+    public int recover(final Set<String> exclude) throws IOException {
+        int recovered = 0;
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                final String name = file.getFileName().toString();
+
+                if (!name.endsWith(ITEM_SUFFIX)) {
+                    continue;
+                }
+
+                final String key = name.substring(0, name.length() - ITEM_SUFFIX.length());
+                if (!exclude.contains(key) && isOrphaned(file) && keys.offer(key)) {
+                    recovered++;
+                }
+            }
+        }
+
+        return recovered;
+    }
+
+    // Whether the item is this queue's, or its owner's lease ran out. An item that can't be read is queued all the
+    // same, to fail in the second phase rather than be left behind unnoticed.
+    private boolean isOrphaned(final Path file) {
+        final String itemOwner;
+
+        try {
+            itemOwner = MAPPER.readValue(file.toFile(), OcrWorkItem.class).owner();
+        } catch (final FileNotFoundException e) {
+            return false;
+        } catch (final IOException e) {
+            logger.warn("Unable to read the owner of queued OCR work \"{}\".", file, e);
+            return true;
+        }
+
+        if (null == itemOwner || owner.equals(itemOwner)) {
+            return true;
+        }
+
+        try {
+            final long renewed = Files.getLastModifiedTime(directory.resolve(itemOwner + LEASE_SUFFIX)).toMillis();
+            return renewed < System.currentTimeMillis() - LEASE_MILLIS;
+        } catch (final NoSuchFileException e) {
+            return true;
+        } catch (final IOException e) {
+            logger.warn("Unable to read the lease of \"{}\"; its OCR work is left to it.", itemOwner, e);
+            return false;
+        }
+    }
+
+    private synchronized void renewLease() throws IOException {
+        if (leaseReleased) {
+            return;
+        }
+
+        final Path path = directory.resolve(owner + LEASE_SUFFIX);
+
+        if (Files.exists(path)) {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            Files.createFile(path);
+        }
+    }
+
+    private void renewLeaseQuietly() {
+        try {
+            renewLease();
+        } catch (final IOException e) {
+            logger.warn("Unable to renew the lease of the OCR queue in \"{}\".", directory, e);
+        }
+    }
+
+    private synchronized void releaseLease() throws IOException {
+        leaseReleased = true;
+        lease.shutdownNow();
+        Files.deleteIfExists(directory.resolve(owner + LEASE_SUFFIX));
+    }
+
+    String owner() {
+        return owner;
+    }
+
+    public long submitted() {
+        return submitted.get();
+    }
+
+    public long completed() {
+        return completed.get();
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws Exception {
+        releaseLease();
+        keys.close();
+
+        if (ownsDirectory) {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    private interface Writer {
+        void write(Path temp) throws IOException;
+    }
+
+    // Write through a temporary file moved into place, so that a reader, or a recovery after a crash, never sees a
+    // partly written file. The suffix keeps the temporary file out of recover().
+    private void write(final String name, final Writer writer) throws IOException {
+        final Path temp = Files.createTempFile(directory, name, ".tmp");
+
+        try {
+            writer.write(temp);
+            Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (final IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+}
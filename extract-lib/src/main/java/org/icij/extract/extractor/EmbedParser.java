@@ -86,6 +86,13 @@ public class EmbedParser extends ParsingEmbeddedDocumentExtractor {
 	// supplied metadata (which, on that path, is the discardable clone), never the shared object.
 	void delegateParsing(final InputStream input, final ContentHandler handler, final Metadata metadata,
 	                     final ParseContext parseContext) throws IOException, SAXException {
+		delegateParsing(input, handler, metadata, parseContext, delegatingParser);
+	}
+
+	// Overload that parses with an explicit parser rather than the delegating one. EmbedSpawner uses it to skip
+	// the digesting wrapper for an embed it has already digested; nested embeds still go through the context's parser.
+	void delegateParsing(final InputStream input, final ContentHandler handler, final Metadata metadata,
+	                     final ParseContext parseContext, final Parser parser) throws IOException, SAXException {
 		// Cooperative cancellation point, mirroring EmbedSpawner.parseEmbedded: this method is the
 		// one place every embed-boundary parse (serial spawn, deferred OCR AND the ARTIFACT/download
 		// retrieval walk built on this class) funnels through to actually delegate a parse. The
@@ -108,7 +115,7 @@ public class EmbedParser extends ParsingEmbeddedDocumentExtractor {
 			}
 
 			// Use the delegate parser to parse this entry.
-			delegatingParser.parse(tis, handler, metadata, parseContext);
+			parser.parse(tis, handler, metadata, parseContext);
 		} catch (final EncryptedDocumentException e) {
 			logger.info("Encrypted document not extracted: \"{}\" ({}) (in \"{}\").",
 					metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY), metadata.get(Metadata.CONTENT_TYPE), root);
@@ -0,0 +1,276 @@
+package org.icij.extract.extractor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk store of the results of parsing embedded documents, keyed by the embed's content digest and a
+ * fingerprint of the extractor configuration that produced the result.
+ *
+ * <p>The same attachment (a disclaimer, a logo, a contract forwarded thousands of times) is otherwise parsed, and
+ * possibly OCR'd, every time it is found. With a cache, {@link EmbedSpawner} parses it the first time and afterwards
+ * only replays the stored text and the metadata that the parse added. Each copy still gets its own embed node, so
+ * its own ID and parent, and keeps the metadata given to it by its container (its name, its path in the container).
+ *
+ * <p>Only leaf embeds are stored: an embed whose parse spawned embeds of its own, or failed, is never cached, as
+ * replaying its text alone would lose its children or hide the error. The configuration fingerprint covers everything
+ * that changes the output of a parse (see {@link Extractor#embedCacheFingerprint()}), so changing the configuration
+ * never replays stale results.
+ *
+ * <p>Entries are written to a temporary file and moved into place, so the directory may be shared by several
+ * extractors. Once the total size of the entries exceeds the configured maximum, the least recently used are
+ * deleted. The size is tracked per process, so with a shared directory each process only accounts for the entries
+ * it knows of.
+ *
+ * This object is thread-safe.
+ */
+public class EmbedResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbedResultCache.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String SUFFIX = ".json";
+
+    // After an eviction, the total is brought down to this share of the maximum so that a full cache doesn't evict on
+    // every store.
+    private static final double LOW_WATERMARK = 0.9;
+
+    public static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final Map<Path, Long> sizes = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param directory     the directory holding the entries, created if it doesn't exist
+     * @param maxBytes      the size of the entries above which the least recently used are evicted
+     * @param maxEntryBytes the size of extracted text above which an embed's result isn't stored
+     * @throws IOException if the directory can't be created or listed
+     */
+    public EmbedResultCache(final Path directory, final long maxBytes, final int maxEntryBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+
+        Files.createDirectories(directory);
+        try (Stream<Path> entries = Files.list(directory)) {
+            entries.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).forEach(path -> {
+                try {
+                    track(path, Files.size(path));
+                } catch (final IOException e) {
+                    logger.warn("Unable to read the size of cache entry \"{}\".", path, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * A stored result.
+     *
+     * @param metadata the metadata names and values the parse set, which are to be set on each copy of the embed
+     * @param text     the extracted text, as written by the extractor's content handler
+     */
+    public record Entry(Map<String, List<String>> metadata, String text) {
+
+        /**
+         * Set the stored metadata on a copy of the embed, replacing what its container set for the same names, as
+         * the parse would have.
+         */
+        void applyTo(final Metadata target) {
+            metadata.forEach((name, values) -> {
+                target.remove(name);
+                values.forEach(value -> target.add(name, value));
+            });
+        }
+    }
+
+    /**
+     * @return the stored result, or {@code null} if there's none for the digest under this configuration
+     */
+    public Entry get(final String fingerprint, final String digest) {
+        final Path path = path(fingerprint, digest);
+
+        try {
+            final Entry entry = MAPPER.readValue(path.toFile(), Entry.class);
+
+            // The modification time orders entries for eviction. It's merely best effort.
+            try {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (final IOException ignored) {
+            }
+
+            hits.incrementAndGet();
+            return entry;
+        } catch (final FileNotFoundException e) {
+            // Evicted, possibly by another process.
+            untrack(path);
+        } catch (final IOException e) {
+            logger.warn("Unable to read cache entry \"{}\"; parsing instead.", path, e);
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store the result of a parse. Results whose text is larger than the entry limit are silently ignored.
+     *
+     * @param before the names of the metadata set before the parse, with their values
+     * @param after  the metadata after the parse
+     * @param text   the extracted text encoded as UTF-8
+     */
+    public void put(final String fingerprint, final String digest, final Metadata before, final Metadata after,
+                    final byte[] text) {
+        if (text.length > maxEntryBytes) {
+            return;
+        }
+
+        final Path path = path(fingerprint, digest);
+        Path temp = null;
+
+        try {
+            // Unique even across processes sharing the directory. The suffix keeps it out of the index.
+            temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            MAPPER.writeValue(temp.toFile(), new Entry(parsed(before, after),
+                    new String(text, StandardCharsets.UTF_8)));
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            track(path, Files.size(path));
+            stores.incrementAndGet();
+        } catch (final IOException e) {
+            logger.warn("Unable to write cache entry \"{}\".", path, e);
+            try {
+                if (null != temp) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (final IOException ignored) {
+            }
+        }
+
+        if (totalBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * @return the size of extracted text above which an embed's result isn't stored
+     */
+    int maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long stores() {
+        return stores.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    long totalBytes() {
+        return totalBytes.get();
+    }
+
+    // Delete the least recently used entries until the total is under the low watermark.
+    private synchronized void evict() {
+        if (totalBytes.get() <= maxBytes) {
+            return;
+        }
+
+        final List<Map.Entry<Path, FileTime>> entries = new ArrayList<>();
+        for (Path path : sizes.keySet()) {
+            try {
+                entries.add(Map.entry(path, Files.getLastModifiedTime(path)));
+            } catch (final IOException e) {
+                untrack(path);
+            }
+        }
+
+        entries.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+
+        final long target = (long) (maxBytes * LOW_WATERMARK);
+        for (Map.Entry<Path, FileTime> entry : entries) {
+            if (totalBytes.get() <= target) {
+                break;
+            }
+
+            try {
+                Files.deleteIfExists(entry.getKey());
+                evictions.incrementAndGet();
+            } catch (final IOException e) {
+                logger.warn("Unable to evict cache entry \"{}\".", entry.getKey(), e);
+                continue;
+            }
+
+            untrack(entry.getKey());
+        }
+    }
+
+    private void track(final Path path, final long size) {
+        final Long previous = sizes.put(path, size);
+        totalBytes.addAndGet(size - (null == previous ? 0 : previous));
+    }
+
+    private void untrack(final Path path) {
+        final Long previous = sizes.remove(path);
+        if (null != previous) {
+            totalBytes.addAndGet(-previous);
+        }
+    }
+
+    Path path(final String fingerprint, final String digest) {
+        return directory.resolve(DigestUtils.sha256Hex(fingerprint + ":" + digest) + SUFFIX);
+    }
+
+    // The metadata the parse added or changed. What the container set is specific to each copy of the embed, as is
+    // anything set before the parse (the digest, the OCR parser on the deferred path), and was left alone by it.
+    private static Map<String, List<String>> parsed(final Metadata before, final Metadata after) {
+        final Set<String> names = new HashSet<>(Arrays.asList(before.names()));
+        final Map<String, List<String>> parsed = new LinkedHashMap<>();
+
+        for (String name : after.names()) {
+            final String[] values = after.getValues(name);
+
+            if (!names.contains(name) || !Arrays.equals(values, before.getValues(name))) {
+                parsed.put(name, Arrays.asList(values));
+            }
+        }
+
+        return parsed;
+    }
+}
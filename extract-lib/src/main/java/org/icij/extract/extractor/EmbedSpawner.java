@@ -16,6 +16,7 @@ import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.EmbeddedContentHandler;
 import org.apache.tika.utils.ExceptionUtils;
 import org.icij.extract.document.EmbeddedTikaDocument;
+import org.icij.extract.document.Identifier;
 import org.icij.extract.document.TikaDocument;
 import org.icij.extract.ocr.OCRParser;
 import org.icij.spewer.SpewItem;
@@ -91,6 +92,13 @@ public class EmbedSpawner extends EmbedParser {
 	private final TemporaryResources tmp;
 	private final BooleanSupplier memoryPressureHigh;
 	private final AtomicLong reserved;
+	// The pool that embed buffers borrow their memory segments from, shared by the extractions of an Extractor through
+	// the ParseContext, or null for buffers to allocate their own.
+	private final SlabPool slabPool;
+	// The compression of the text that embed buffers spill, also from the ParseContext, or null to spill it as it is.
+	private final SpillCompression spillCompression;
+	// The files of the root that embed buffers spill to, also from the ParseContext, or null for a temp file each.
+	private final SpillArena spillArena;
 
 	// Supplies the OCR executor lazily; called only when an eligible image embed is deferred.
 	// The no-fan-out legacy constructor passes () -> null with ocrEnabled=false so this path
@@ -112,6 +120,19 @@ public class EmbedSpawner extends EmbedParser {
 	// embeds, on the OCR completion thread for deferred ones).
 	private final SpewSink sink;
 
+	// Store of leaf embed results, or null when caching is off. Entries are looked up by the embed's digest under
+	// resultCacheFingerprint, which identifies the extractor configuration that produced them (see EmbedResultCache).
+	private final EmbedResultCache resultCache;
+	private final String resultCacheFingerprint;
+	// Non-inline embeds seen by this spawner, refused ones included. An embed's result is only cached if this didn't
+	// move while it was parsed, that is if it has no children of its own.
+	private long embedsSeen = 0;
+
+	// Two-phase extraction, or null. When set, the OCR of image embeds and inline images is left to the second phase
+	// (see DeferredOcrQueue): images are written without text, documents whose inline images were skipped are marked
+	// pending, and both are deferred along with the PDFs the configured strategy would have OCR'd.
+	private final DeferredOcr deferredOcr;
+
 	// Same translator EmbeddedDocumentExtractor uses: delegates to all service-registered
 	// EmbeddedStreamTranslator implementations (e.g. MSEmbeddedStreamTranslator from
 	// tika-parser-microsoft-module), so this stays future-proof rather than hardcoded to MS.
@@ -185,6 +206,49 @@ public class EmbedSpawner extends EmbedParser {
 				 final boolean legacyUntitledNaming,
 				 final int maxEmbedDepth,
 				 final long maxEmbedSizeBytes) {
+		this(root, context, outputPath, handlerFunction, embedMemoryBudgetBytes, tmp, memoryPressureHigh,
+				ocrExecutorSupplier, ocrEnabled, progress, digester, ocrFanout, ocrMinImageBytes, ocrParserClassName,
+				sink, legacyUntitledNaming, maxEmbedDepth, maxEmbedSizeBytes, null, null);
+	}
+
+	EmbedSpawner(final TikaDocument root, final ParseContext context, final Path outputPath,
+				 final Function<Writer, ContentHandler> handlerFunction,
+				 final long embedMemoryBudgetBytes, final TemporaryResources tmp,
+				 final BooleanSupplier memoryPressureHigh,
+				 final Supplier<ExecutorService> ocrExecutorSupplier,
+				 final boolean ocrEnabled,
+				 final ExtractionProgress progress,
+				 final DigestingParser.Digester digester,
+				 final boolean ocrFanout, final long ocrMinImageBytes,
+				 final String ocrParserClassName,
+				 final SpewSink sink,
+				 final boolean legacyUntitledNaming,
+				 final int maxEmbedDepth,
+				 final long maxEmbedSizeBytes,
+				 final EmbedResultCache resultCache,
+				 final String resultCacheFingerprint) {
+		this(root, context, outputPath, handlerFunction, embedMemoryBudgetBytes, tmp, memoryPressureHigh,
+				ocrExecutorSupplier, ocrEnabled, progress, digester, ocrFanout, ocrMinImageBytes, ocrParserClassName,
+				sink, legacyUntitledNaming, maxEmbedDepth, maxEmbedSizeBytes, resultCache, resultCacheFingerprint, null);
+	}
+
+	EmbedSpawner(final TikaDocument root, final ParseContext context, final Path outputPath,
+				 final Function<Writer, ContentHandler> handlerFunction,
+				 final long embedMemoryBudgetBytes, final TemporaryResources tmp,
+				 final BooleanSupplier memoryPressureHigh,
+				 final Supplier<ExecutorService> ocrExecutorSupplier,
+				 final boolean ocrEnabled,
+				 final ExtractionProgress progress,
+				 final DigestingParser.Digester digester,
+				 final boolean ocrFanout, final long ocrMinImageBytes,
+				 final String ocrParserClassName,
+				 final SpewSink sink,
+				 final boolean legacyUntitledNaming,
+				 final int maxEmbedDepth,
+				 final long maxEmbedSizeBytes,
+				 final EmbedResultCache resultCache,
+				 final String resultCacheFingerprint,
+				 final DeferredOcr deferredOcr) {
 		super(root, context);
 		this.outputPath = outputPath;
 		this.handlerFunction = handlerFunction;
@@ -202,8 +266,16 @@ public class EmbedSpawner extends EmbedParser {
 		this.legacyUntitledNaming = legacyUntitledNaming;
 		this.maxEmbedDepth = maxEmbedDepth;
 		this.maxEmbedSizeBytes = maxEmbedSizeBytes;
+		// Caching needs the digest to look entries up by.
+		this.resultCache = null == digester ? null : resultCache;
+		this.resultCacheFingerprint = resultCacheFingerprint;
+		// Deferring OCR needs the digest: the second phase writes documents under the IDs the first phase gave them.
+		this.deferredOcr = ocrEnabled && null != digester ? deferredOcr : null;
 		this.baseDepthOffset = 0;
 		this.reserved = new AtomicLong();
+		this.slabPool = context.get(SlabPool.class);
+		this.spillCompression = context.get(SpillCompression.class);
+		this.spillArena = context.get(SpillArena.class);
 		tikaDocumentStack.add(root);
 	}
 
@@ -218,6 +290,9 @@ public class EmbedSpawner extends EmbedParser {
 		this.embedMemoryBudgetBytes = template.embedMemoryBudgetBytes;
 		this.tmp = template.tmp;
 		this.memoryPressureHigh = template.memoryPressureHigh;
+		this.slabPool = template.slabPool;
+		this.spillCompression = template.spillCompression;
+		this.spillArena = template.spillArena;
 		this.ocrExecutorSupplier = template.ocrExecutorSupplier;
 		this.ocrEnabled = template.ocrEnabled;
 		this.progress = template.progress;
@@ -229,6 +304,9 @@ public class EmbedSpawner extends EmbedParser {
 		this.legacyUntitledNaming = template.legacyUntitledNaming;
 		this.maxEmbedDepth = template.maxEmbedDepth; // forks enforce the same depth on their own stack
 		this.maxEmbedSizeBytes = template.maxEmbedSizeBytes; // and the same per-embed size cap
+		this.resultCache = template.resultCache;
+		this.resultCacheFingerprint = template.resultCacheFingerprint;
+		this.deferredOcr = template.deferredOcr;
 		// The fork re-adds `root` as size 1, discarding the depth the template's stack was actually
 		// at; capture that depth here so the guard measures ABSOLUTE nesting rather than
 		// depth-relative-to-the-fork. General form composes correctly if a fork is ever itself forked.
@@ -244,6 +322,20 @@ public class EmbedSpawner extends EmbedParser {
 		return new EmbedSpawner(this);
 	}
 
+	// A fork to parse one embed of this spawner's current parent, which must be the root. If the embed has no name,
+	// its ordinal among the nameless children of the root is taken here, in the order the container lists them, so
+	// that it's named as the serial walk would have named it whenever the fork gets to parse it.
+	public EmbedSpawner forkFor(final Metadata metadata) {
+		final EmbedSpawner fork = new EmbedSpawner(this);
+		final String name = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
+
+		if ((null == name || name.isEmpty()) && !legacyUntitledNaming) {
+			final String parentId = tikaDocumentStack.getLast().getId();
+			fork.untitledOrdinalsByParent.put(parentId, untitledOrdinalsByParent.merge(parentId, 1, Integer::sum) - 1);
+		}
+		return fork;
+	}
+
 	// Test accessors (package-private).
 	AtomicLong reservedBudget() { return reserved; }
 	int stackDepth() { return tikaDocumentStack.size(); }
@@ -257,6 +349,8 @@ public class EmbedSpawner extends EmbedParser {
 	void pushForTest(final org.icij.extract.document.TikaDocument doc) { tikaDocumentStack.add(doc); }
 	// Test accessor (package-private): the context this spawner runs nested parses against.
 	ParseContext parseContextForTest() { return context; }
+	// Test accessor (package-private): the name the next nameless child of the current parent gets.
+	String nextUntitledNameForTest() { return nextUntitledName(); }
 
 	// Deterministic, order-independent name for a non-inline embed that has no resource name.
 	// Derived from the immediate parent id + the embed's ordinal among its parent's children, so
@@ -282,8 +376,8 @@ public class EmbedSpawner extends EmbedParser {
 
 	// Record a refused embed on its parent: bump the parent's aggregate skip counter under metadataKey
 	// (indexed marker) and the per-file progress counter, then emit a once-per-parent WARN breadcrumb.
-	// Runs on the walk thread for this parent's subtree, so the read-increment-set is single-threaded
-	// with respect to this parent (consistent with how other embed metadata is set during the walk).
+	// Runs on the walk thread for this parent's subtree, except for the root, which is also the parent
+	// of the forks of an archive or PST fan-out: the read-increment-set holds the parent's metadata.
 	// Both skip guards (depth and size) route through here so their skip accounting can never diverge;
 	// only the marker key, the progress incrementer, and the breadcrumb wording differ. The breadcrumb
 	// is logged once per parent (on its first refused child): a wide bomb can have very many siblings
@@ -293,15 +387,18 @@ public class EmbedSpawner extends EmbedParser {
 	                        final Consumer<Metadata> logFirstBreadcrumb) {
 		final Metadata parent = tikaDocumentStack.getLast().getMetadata();
 		int count = 0;
-		final String existing = parent.get(metadataKey);
-		if (existing != null) {
-			try {
-				count = Integer.parseInt(existing);
-			} catch (final NumberFormatException ignored) {
-				// Treat an unparseable marker as zero and overwrite it.
+		final String existing;
+		synchronized (parent) {
+			existing = parent.get(metadataKey);
+			if (existing != null) {
+				try {
+					count = Integer.parseInt(existing);
+				} catch (final NumberFormatException ignored) {
+					// Treat an unparseable marker as zero and overwrite it.
+				}
 			}
+			parent.set(metadataKey, Integer.toString(count + 1));
 		}
-		parent.set(metadataKey, Integer.toString(count + 1));
 		if (progress != null) {
 			progressIncrement.run();
 		}
@@ -358,6 +455,13 @@ public class EmbedSpawner extends EmbedParser {
 		// There's no need to spawn inline embeds, like images in PDFs. These should be concatenated to the main
 		// document as usual.
 		if (TikaCoreProperties.EmbeddedResourceType.INLINE.toString().equals(metadata.get(TikaCoreProperties.EMBEDDED_RESOURCE_TYPE))) {
+			// In a two-phase extraction, an inline image is only parsed to OCR it, which is left to the second phase.
+			// The document it's in is marked so that it's deferred.
+			if (null != deferredOcr && isImage(metadata)) {
+				deferredOcr.markPending(tikaDocumentStack.getLast());
+				return;
+			}
+
 			final ContentHandler embedHandler = new EmbeddedContentHandler(new BodyContentHandler(handler));
 
 			if (outputHtml) {
@@ -383,6 +487,7 @@ public class EmbedSpawner extends EmbedParser {
 				}
 			}
 		} else {
+			embedsSeen++;
 			// Decompression-bomb guard: refuse embeds nested deeper than the limit BEFORE any spool or
 			// recursion. Refused embeds are not spooled, not added, and not recursed into; the skip is
 			// recorded on the parent and counted, so it is visible/alertable rather than silently lost.
@@ -417,7 +522,11 @@ public class EmbedSpawner extends EmbedParser {
 			// Defer only when fanout is on, OCR is enabled, the embed is an eligible image, and
 			// the stream translator would not rewrite its bytes (translatable embeds must take
 			// the serial path so their digest matches serial mode).
-			if (ocrFanout && ocrEnabled && isOcrEligible(metadata, ocrMinImageBytes)
+			// In a two-phase extraction, the same images are queued for the second phase instead, for the same reason.
+			if (null != deferredOcr && isOcrEligible(metadata, ocrMinImageBytes)
+					&& !streamTranslator.shouldTranslate(tis, metadata)) {
+				spawnEmbeddedQueued(tis, metadata);
+			} else if (ocrFanout && ocrEnabled && isOcrEligible(metadata, ocrMinImageBytes)
 					&& !streamTranslator.shouldTranslate(tis, metadata)) {
 				spawnEmbeddedDeferred(tis, metadata);
 			} else {
@@ -430,7 +539,9 @@ public class EmbedSpawner extends EmbedParser {
 		// Buffer the embed's extracted text in memory while the global budget allows,
 		// overflowing to a temp file once exceeded, so multi-GB containers (PSTs, zips,
 		// mailboxes) don't retain the whole tree's text in heap at once.
-		final BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(reserved, embedMemoryBudgetBytes, tmp, memoryPressureHigh);
+		final BudgetedEmbedBuffer buffer =
+				new BudgetedEmbedBuffer(reserved, embedMemoryBudgetBytes, tmp, memoryPressureHigh, slabPool,
+						spillCompression, spillArena);
 		final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
 
 		final ContentHandler embedHandler = handlerFunction.apply(writer);
@@ -455,8 +566,9 @@ public class EmbedSpawner extends EmbedParser {
 		}
 
 		try {
-			// Trigger spooling of the file to disk so that it can be copied.
-			if (null != this.outputPath) {
+			// Trigger spooling of the file to disk so that it can be copied, to the output path or, if the embed
+			// turns out to need OCR, to the deferred OCR queue.
+			if (null != this.outputPath || null != deferredOcr) {
 				tis.getPath();
 			}
 		} catch (final Exception e) {
@@ -474,21 +586,21 @@ public class EmbedSpawner extends EmbedParser {
 			return;
 		}
 
-		// Add to the stack only immediately before parsing and if there haven't been any fatal errors.
-		tikaDocumentStack.add(embed);
-
-		try {
-			delegateParsing(tis, embedHandler, metadata);
-		} catch (final Exception e) {
+		// With a result cache, digest the embed before it's parsed to look it up. A copy found in the cache isn't
+		// parsed at all: its text and parsed metadata are replayed from the cache.
+		final String digest = null != resultCache ? digestForCache(tis, metadata, name) : null;
+		final EmbedResultCache.Entry cached = null != digest ? resultCache.get(resultCacheFingerprint, digest) : null;
+		final Metadata snapshot = null != deferredOcr ? copyOf(metadata) : null;
 
-			// Note that even on exception, the document is intentionally NOT removed from the parent.
-			logger.error("Unable to parse embedded document: \"{}\" ({}) (in \"{}\").",
-					name, metadata.get(Metadata.CONTENT_TYPE), root, e);
-			metadata.add(TikaCoreProperties.TIKA_META_EXCEPTION_EMBEDDED_STREAM,
-					ExceptionUtils.getFilteredStackTrace(e));
-		} finally {
-			tikaDocumentStack.removeLast();
-			writer.close();
+		if (null != cached) {
+			try {
+				cached.applyTo(metadata);
+				writer.write(cached.text());
+			} finally {
+				writer.close();
+			}
+		} else {
+			parseAndCache(tis, embed, embedHandler, writer, name, digest, buffer);
 		}
 
 		// Write the embed file to the given outputPath directory. A write failure must NOT skip the
@@ -508,73 +620,219 @@ public class EmbedSpawner extends EmbedParser {
 			}
 		}
 
+		if (null != deferredOcr && deferredOcr.needsOcr(metadata)) {
+			defer(tis, embed, spewParent, spewLevel, snapshot, name);
+		}
+
 		// Text is fully buffered and the artifact (if any) is written: hand this embed to the spew worker.
 		if (sink != null) {
-			sink.ready(new SpewItem(embed, spewParent, root, spewLevel));
+			sink.ready(new SpewItem(embed, spewParent, root, spewLevel, buffer.length()));
 		}
 	}
 
-	// Eligible image attachment: build the embed node, name, digest and (optional) artifact file
-	// synchronously on the walk thread so the embed ID, content hash and artifact filename are
-	// byte-identical to serial mode, then defer ONLY the OCR text parse to the shared pool.
-	private void spawnEmbeddedDeferred(final TikaInputStream tis, final Metadata metadata) throws IOException {
-		final BudgetedEmbedBuffer buffer =
-				new BudgetedEmbedBuffer(reserved, embedMemoryBudgetBytes, tmp, memoryPressureHigh);
-		final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
-		final ContentHandler embedHandler = handlerFunction.apply(writer);
+	// Defer an embed written without its OCR text to the second phase, with a copy of its bytes. A failure leaves it
+	// as it is, recorded as an error on it.
+	private void defer(final TikaInputStream tis, final EmbeddedTikaDocument embed, final TikaDocument parent,
+					   final int level, final Metadata snapshot, final String name) {
+		final Metadata metadata = embed.getMetadata();
+		DeferredOcr.copyUnparsed(metadata, snapshot);
+
+		try {
+			deferredOcr.defer(embed, parent, root, level, snapshot, null, tis.getPath());
+		} catch (final IOException e) {
+			logger.error("Unable to queue embedded document \"{}\" for OCR (in \"{}\").", name, root, e);
+			DeferredOcr.unmarkPending(metadata);
+			metadata.add(TikaCoreProperties.TIKA_META_EXCEPTION_EMBEDDED_STREAM, ExceptionUtils.getFilteredStackTrace(e));
+		}
+	}
+
+	private void parseAndCache(final TikaInputStream tis, final EmbeddedTikaDocument embed,
+							   final ContentHandler embedHandler, final Writer writer, final String name,
+							   final String digest, final BudgetedEmbedBuffer buffer) throws IOException {
+		final Metadata metadata = embed.getMetadata();
+		final long seenBefore = embedsSeen;
+		final Metadata before = null != digest ? copyOf(metadata) : null;
+
+		// Add to the stack only immediately before parsing and if there haven't been any fatal errors.
+		tikaDocumentStack.add(embed);
+
+		// With a single-pass digester, parse through a tee so that the digest is computed by the spool's read of
+		// an over-mark-limit stream rather than by re-reading the spooled file (see SinglePassDigester). An embed
+		// digested for the cache is already digested, and is parsed without the digesting wrapper.
+		final TikaInputStream parseInput = null == digest && digester instanceof SinglePassDigester singlePass
+				? singlePass.teeing(tis, metadata) : tis;
+		try {
+			if (null != digest) {
+				delegateParsing(parseInput, embedHandler, metadata, context, undigestedParser());
+			} else {
+				delegateParsing(parseInput, embedHandler, metadata);
+			}
+		} catch (final Exception e) {
+
+			// Note that even on exception, the document is intentionally NOT removed from the parent.
+			logger.error("Unable to parse embedded document: \"{}\" ({}) (in \"{}\").",
+					name, metadata.get(Metadata.CONTENT_TYPE), root, e);
+			metadata.add(TikaCoreProperties.TIKA_META_EXCEPTION_EMBEDDED_STREAM,
+					ExceptionUtils.getFilteredStackTrace(e));
+		} finally {
+			tikaDocumentStack.removeLast();
+			writer.close();
+			if (parseInput != tis) {
+				// Shielded: releases only the tee's own resources, never the container's stream.
+				parseInput.close();
+			}
+		}
+
+		// Only a leaf that parsed cleanly is cached: replaying it must give exactly what parsing it gives. A leaf with
+		// inline images left to the second phase of a two-phase extraction isn't complete either.
+		if (null != digest && seenBefore == embedsSeen && null == metadata.get(TikaCoreProperties.TIKA_META_EXCEPTION_EMBEDDED_STREAM)
+				&& null == metadata.get(DeferredOcr.OCR_PENDING)) {
+			final byte[] text = buffer.copyInMemory(resultCache.maxEntryBytes());
+			if (null != text) {
+				resultCache.put(resultCacheFingerprint, digest, before, metadata, text);
+			}
+		}
+	}
+
+	// Digest an embed ahead of its parse, for the result cache. Returns null, leaving the digest to the parse, if
+	// that fails.
+	private String digestForCache(final TikaInputStream tis, final Metadata metadata, final String name) {
+		try {
+			digester.digest(tis, metadata, context);
+			return Identifier.findDigest(metadata);
+		} catch (final Exception e) {
+			logger.warn("Unable to digest embedded document \"{}\" (in \"{}\") for the result cache.", name, root, e);
+			return null;
+		}
+	}
+
+	// The context's parser without its digesting wrapper, for embeds that were digested ahead of the parse.
+	private Parser undigestedParser() {
+		final Parser parser = context.get(Parser.class);
+		return parser instanceof DigestingParser digesting ? digesting.getWrappedParser() : parser;
+	}
+
+	static Metadata copyOf(final Metadata metadata) {
+		final Metadata copy = new Metadata();
+		for (final String n : metadata.names()) {
+			for (final String v : metadata.getValues(n)) {
+				copy.add(n, v);
+			}
+		}
+		return copy;
+	}
+
+	// Eligible image attachment in a two-phase extraction: build the embed node, name, digest and (optional) artifact
+	// file as spawnEmbeddedDeferred does, and write the embed without text, deferring its parse to the second phase.
+	// Its metadata from the parse, content type and dimensions for instance, is only written by the second phase.
+	private void spawnEmbeddedQueued(final TikaInputStream tis, final Metadata metadata) {
 		final TikaDocument spewParent = tikaDocumentStack.getLast();
 		final int spewLevel = tikaDocumentStack.size();
 		if (sink != null) {
 			sink.promise();
 		}
-		// Streaming spew must not retain embeds under their parent (see the sibling spawn path).
 		final EmbeddedTikaDocument embed = sink != null
 				? spewParent.newDetachedEmbed(metadata)
 				: spewParent.addEmbed(metadata);
+		embed.setReader(() -> new StringReader(""));
 
 		String name = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
 		if (null == name || name.isEmpty()) {
 			name = nextUntitledName();
 		}
 
-		// Spool the bytes now (the stream is only valid during this call), then copy them into a
-		// temp file owned by the SHARED per-parse TemporaryResources (tmp). This is the critical
-		// spool-lifetime fix: tis.getPath() returns tis's OWN transient spool, which is deleted the
-		// moment the container parser (PST/zip/PackageParser) advances to the next entry and closes
-		// tis. But the OCR task below runs ASYNCHRONOUSLY on the shared pool and reads its input
-		// later, long after tis is gone: reading tis's spool directly hits NoSuchFileException and
-		// the OCR text is silently lost. The shared tmp is closed by ResourceClosingReader only AFTER
-		// the full spew completes, and every embed's OCR completes before the spew finishes (the
-		// per-embed reader backstop guarantees it), so a tmp-owned copy outlives the async OCR read.
-		final Path spooled;
 		try {
-			spooled = tis.getPath();
+			// Spool the bytes now, while the stream is valid: they're digested, and copied to the queue and the
+			// output path, from the spool.
+			final Path spooled = tis.getPath();
+
+			try (InputStream digestStream = Files.newInputStream(spooled)) {
+				digester.digest(digestStream, metadata, context);
+			} catch (final Exception e) {
+				logger.error("Unable to digest embedded image \"{}\" (in \"{}\").", name, root, e);
+			}
+
+			if (null != this.outputPath) {
+				try {
+					writeEmbed(tis, embed, name);
+				} catch (final IOException e) {
+					logger.error("Unable to write embed artifact for \"{}\" (in \"{}\").", name, root, e);
+				}
+			}
+
+			final Metadata snapshot = copyOf(metadata);
+			DeferredOcr.markPending(metadata);
+			defer(tis, embed, spewParent, spewLevel, snapshot, name);
 		} catch (final Exception e) {
 			logger.error("Unable to spool file to disk (\"{}\" in \"{}\").", name, root, e);
 			// Severe problem with the input stream. Abort this embed, mirroring spawnEmbedded.
 			tikaDocumentStack.getLast().removeEmbed(embed);
 			embed.clearReader();
-			buffer.discard();
-			writer.close();
+		} finally {
 			if (sink != null) {
 				sink.ready(new SpewItem(embed, spewParent, root, spewLevel));
 			}
-			return;
 		}
+	}
 
-		// Durable, parse-owned copy of the embed bytes for the async OCR read. Made synchronously on
-		// the parse thread while tis is still valid; lifetime spans until the root reader closes
-		// (post-spew), outliving the async OCR. Serialize the createTempFile() call: it mutates the
-		// shared tmp's resource list, which is also touched by BudgetedEmbedBuffer spill on the pool.
-		final Path ocrInput;
+	// Eligible image attachment: build the embed node, name, digest and (optional) artifact file
+	// synchronously on the walk thread so the embed ID, content hash and artifact filename are
+	// byte-identical to serial mode, then defer ONLY the OCR text parse to the shared pool.
+	private void spawnEmbeddedDeferred(final TikaInputStream tis, final Metadata metadata) throws IOException {
+		final BudgetedEmbedBuffer buffer =
+				new BudgetedEmbedBuffer(reserved, embedMemoryBudgetBytes, tmp, memoryPressureHigh, slabPool,
+						spillCompression, spillArena);
+		final Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+		final ContentHandler embedHandler = handlerFunction.apply(writer);
+		final TikaDocument spewParent = tikaDocumentStack.getLast();
+		final int spewLevel = tikaDocumentStack.size();
+		if (sink != null) {
+			sink.promise();
+		}
+		// Streaming spew must not retain embeds under their parent (see the sibling spawn path).
+		final EmbeddedTikaDocument embed = sink != null
+				? spewParent.newDetachedEmbed(metadata)
+				: spewParent.addEmbed(metadata);
+
+		String name = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
+		if (null == name || name.isEmpty()) {
+			name = nextUntitledName();
+		}
+
+		// Hand the bytes off now (the stream is only valid during this call) to a file of their own that
+		// the OCR task takes over. This is the critical spool-lifetime fix: tis.getPath() returns tis's
+		// OWN transient spool, which is deleted the moment the container parser (PST/zip/PackageParser)
+		// advances to the next entry and closes tis. But the OCR task below runs ASYNCHRONOUSLY on the
+		// shared pool and reads its input later, long after tis is gone: reading tis's spool directly hits
+		// NoSuchFileException and the OCR text is silently lost. The hand-off is deleted once the task is
+		// done with it, and registered with the SHARED per-parse tmp, which is closed by
+		// ResourceClosingReader only AFTER the full spew completes, as a backstop.
+		//
+		// With a single-pass digester, a stream that isn't file-backed is written straight to the
+		// hand-off through the digesting tee, in place of the spool: one read and one write, and the
+		// digest is set when the copy reaches the end. Otherwise the spool is linked where the file
+		// system allows it, costing no copy, and digested from the hand-off.
+		// NOTE: either way the digest is over the RAW bytes. The deferred path only ever sees embeds for
+		// which streamTranslator.shouldTranslate() is FALSE: translatable embeds (whose bytes serial mode
+		// would digest AFTER translation) are routed to the serial spawnEmbedded path in parseEmbedded. For
+		// every embed that reaches here, translation is a no-op, so digesting the raw bytes is
+		// byte-identical to serial mode.
+		final boolean teed = digester instanceof SinglePassDigester && !tis.hasFile()
+				&& null == tis.getOpenContainer();
+		final SpoolHandOff handOff;
 		try {
-			synchronized (tmp) {
-				ocrInput = tmp.createTempFile();
+			if (digester instanceof SinglePassDigester singlePass && teed) {
+				try (InputStream digesting = singlePass.teeing(tis, metadata)) {
+					handOff = SpoolHandOff.of(digesting, tmp);
+				}
+			} else {
+				// A stream that is file-backed before it's spooled may be an input file, not to be linked.
+				final boolean spooledHere = !tis.hasFile();
+				handOff = SpoolHandOff.of(tis.getPath(), spooledHere, tmp);
 			}
-			Files.copy(spooled, ocrInput, StandardCopyOption.REPLACE_EXISTING);
 		} catch (final Exception e) {
-			logger.error("Unable to copy embedded image to OCR temp file (\"{}\" in \"{}\").", name, root, e);
-			// Same severity as a spool failure: abort this embed, mirroring spawnEmbedded.
+			logger.error("Unable to spool file to disk (\"{}\" in \"{}\").", name, root, e);
+			// Severe problem with the input stream. Abort this embed, mirroring spawnEmbedded.
 			tikaDocumentStack.getLast().removeEmbed(embed);
 			embed.clearReader();
 			buffer.discard();
@@ -584,17 +842,15 @@ public class EmbedSpawner extends EmbedParser {
 			}
 			return;
 		}
+		final Path ocrInput = handOff.path();
 
 		// Digest synchronously so the embed ID and artifact filename are identical to serial mode.
-		// NOTE: this digests the RAW bytes (now read from the parse-owned copy, which is byte-identical
-		// to the spool). The deferred path only ever sees embeds for which streamTranslator.shouldTranslate()
-		// is FALSE: translatable embeds (whose bytes serial mode would digest AFTER translation) are
-		// routed to the serial spawnEmbedded path in parseEmbedded. For every embed that reaches here,
-		// translation is a no-op, so digesting the raw spooled bytes is byte-identical to serial mode.
-		try (InputStream digestStream = Files.newInputStream(ocrInput)) {
-			digester.digest(digestStream, metadata, context);
-		} catch (final Exception e) {
-			logger.error("Unable to digest embedded image \"{}\" (in \"{}\").", name, root, e);
+		if (!teed) {
+			try (InputStream digestStream = Files.newInputStream(ocrInput)) {
+				digester.digest(digestStream, metadata, context);
+			} catch (final Exception e) {
+				logger.error("Unable to digest embedded image \"{}\" (in \"{}\").", name, root, e);
+			}
 		}
 
 		// Set OCR_PARSER on the SHARED metadata SYNCHRONOUSLY (walk thread), before submit. In serial
@@ -615,12 +871,7 @@ public class EmbedSpawner extends EmbedParser {
 		//      EmbedBlocker as the EmbeddedDocumentExtractor, so a nested embed discovered inside the
 		//      image is ignored instead of re-entering parseEmbedded and mutating the shared
 		//      tikaDocumentStack from the pool thread.
-		final Metadata ocrMeta = new Metadata();
-		for (final String n : metadata.names()) {
-			for (final String v : metadata.getValues(n)) {
-				ocrMeta.add(n, v);
-			}
-		}
+		final Metadata ocrMeta = copyOf(metadata);
 		final ParseContext isolatedContext = buildIsolatedOcrContext();
 
 		// Back the reader with the OCR future so the spew walk blocks until text is ready (backstop;
@@ -645,16 +896,21 @@ public class EmbedSpawner extends EmbedParser {
 		// runs on the completing thread, so the worker never dequeues a deferred embed before its OCR is
 		// done -- it therefore never blocks on OCR.
 		if (sink != null) {
-			done.whenComplete((v, t) -> sink.ready(new SpewItem(embed, spewParent, root, spewLevel)));
+			done.whenComplete((v, t) -> sink.ready(new SpewItem(embed, spewParent, root, spewLevel, buffer.length())));
 		}
 
 		// Write the embed artifact file now, while the stream/container is still valid. A write failure
 		// must NOT fall through to submit the OCR task: complete `done` (which fires the whenComplete ->
 		// sink.ready, balancing the promise() above and releasing the reader backstop), close the writer
 		// best-effort, and abort this embed. Skipping this would leak a promise and hang awaitDrained().
+		// A teed stream was consumed by the hand-off, which then holds the only copy of the bytes.
 		if (null != this.outputPath) {
 			try {
-				writeEmbed(tis, embed, name);
+				if (teed) {
+					writeEmbed(ocrInput, embed, name);
+				} else {
+					writeEmbed(tis, embed, name);
+				}
 			} catch (final IOException e) {
 				logger.error("Unable to write embed artifact for \"{}\" (in \"{}\").", name, root, e);
 				try {
@@ -663,20 +919,49 @@ public class EmbedSpawner extends EmbedParser {
 					// best-effort: text already buffered
 				}
 				// Do NOT submit the OCR task or increment the submitted counter on this abort path.
+				handOff.close();
 				done.complete(null);
 				return;
 			}
 		}
 
+		// An image already OCR'd under this configuration isn't submitted: its text and parsed metadata are replayed
+		// from the result cache, here on the walk thread, before `done` is completed.
+		final String digest = null != resultCache ? Identifier.findDigest(metadata) : null;
+		final EmbedResultCache.Entry cached = null != digest ? resultCache.get(resultCacheFingerprint, digest) : null;
+		if (null != cached) {
+			cached.applyTo(metadata);
+			try {
+				writer.write(cached.text());
+			} catch (final IOException e) {
+				logger.error("Unable to buffer cached text for \"{}\" (in \"{}\").", name, root, e);
+			} finally {
+				try {
+					writer.close();
+				} catch (final IOException ignored) {
+					// best-effort: text already buffered
+				}
+			}
+			handOff.close();
+			done.complete(null);
+			return;
+		}
+		final Metadata beforeOcr = null != digest ? copyOf(ocrMeta) : null;
+
 		final String embedName = name;
 		// Resolve the executor lazily here; for the Extractor-backed path this triggers the
 		// synchronized lazy-creation in Extractor.ocrExecutor() on the first deferred embed.
 		final ExecutorService resolvedOcrExecutor = ocrExecutorSupplier.get();
+		// The task holds its own reference to the hand-off, released once it has read it, and the walk
+		// thread releases its reference below: the file is deleted by whichever is last.
+		final SpoolHandOff taskInput = handOff.retain();
 		try {
 			resolvedOcrExecutor.submit(() -> {
-				try (InputStream in = Files.newInputStream(ocrInput)) {
+				boolean parsed = false;
+				try (taskInput; InputStream in = Files.newInputStream(taskInput.path())) {
 					// Parse into the private clone + isolated context only. No write to shared state.
 					delegateParsing(TikaInputStream.get(in), embedHandler, ocrMeta, isolatedContext);
+					parsed = true;
 				} catch (final Throwable t) {
 					logger.error("Deferred OCR failed for \"{}\" (in \"{}\").", embedName, root, t);
 					// Record onto the clone; merged back onto the shared metadata on the spew thread.
@@ -688,6 +973,14 @@ public class EmbedSpawner extends EmbedParser {
 					} catch (final IOException ignored) {
 						// best-effort: text already buffered
 					}
+					// Nested embeds are blocked on this path, so any image that parsed cleanly is a leaf.
+					if (parsed && null != digest
+							&& null == ocrMeta.get(TikaCoreProperties.TIKA_META_EXCEPTION_EMBEDDED_STREAM)) {
+						final byte[] text = buffer.copyInMemory(resultCache.maxEntryBytes());
+						if (null != text) {
+							resultCache.put(resultCacheFingerprint, digest, beforeOcr, ocrMeta, text);
+						}
+					}
 					if (progress != null) {
 						progress.incrementOcrCompleted();
 					}
@@ -709,9 +1002,12 @@ public class EmbedSpawner extends EmbedParser {
 			} catch (final IOException ignored) {
 				// best-effort: nothing actionable on the rejection path
 			}
+			taskInput.close();
+			handOff.close();
 			done.complete(null);
 			return;
 		}
+		handOff.close();
 		// Submit succeeded: now it's safe to count it (keeps submitted/completed balanced).
 		if (progress != null) {
 			progress.incrementOcrSubmitted();
@@ -734,9 +1030,9 @@ public class EmbedSpawner extends EmbedParser {
 
 	// Copies the parsing collaborators every derived parse needs (parser + OCR/PDF/HTML config +
 	// selector) from `source` into `target`, WITHOUT the EmbeddedDocumentExtractor or PstFanoutConfig.
-	// Single maintenance point shared by fork() and buildIsolatedOcrContext(): if Extractor starts
+	// Single maintenance point shared by fork(), buildIsolatedOcrContext() and ConcatenateFanout: if Extractor starts
 	// setting a new parsing-config key on the context, add it here once.
-	private static void copyParsingConfig(final ParseContext source, final ParseContext target) {
+	static void copyParsingConfig(final ParseContext source, final ParseContext target) {
 		final Parser p = source.get(Parser.class);
 		if (p != null) { target.set(Parser.class, p); }
 		final TesseractOCRConfig tess = source.get(TesseractOCRConfig.class);
@@ -786,8 +1082,6 @@ public class EmbedSpawner extends EmbedParser {
 
 	private void writeEmbed(final TikaInputStream tis, final EmbeddedTikaDocument embed, final String name) throws IOException {
 		final Path source;
-
-		final Metadata metadata = embed.getMetadata();
 		final Object container = tis.getOpenContainer();
 
 		// If the input is a container, write it to a temporary file so that it can then be copied atomically.
@@ -806,6 +1100,12 @@ public class EmbedSpawner extends EmbedParser {
 			source = tis.getPath();
 		}
 
+		writeEmbed(source, embed, name);
+	}
+
+	private void writeEmbed(final Path source, final EmbeddedTikaDocument embed, final String name) throws IOException {
+		final Metadata metadata = embed.getMetadata();
+
 		// Set the content-length as it isn't (always?) set by Tika for embeds.
 		if (null == metadata.get(Metadata.CONTENT_LENGTH)) {
 			metadata.set(Metadata.CONTENT_LENGTH, Long.toString(Files.size(source)));
@@ -852,6 +1152,11 @@ public class EmbedSpawner extends EmbedParser {
 		return true;
 	}
 
+	private static boolean isImage(final Metadata metadata) {
+		final String contentType = metadata.get(Metadata.CONTENT_TYPE);
+		return contentType != null && contentType.startsWith("image/");
+	}
+
 	static boolean isOcrEligible(final Metadata metadata, final long minImageBytes) {
 		final String contentType = metadata.get(Metadata.CONTENT_TYPE);
 		if (contentType == null || !contentType.startsWith("image/")) {
@@ -3,15 +3,23 @@ package org.icij.extract.extractor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.Map;
 import java.util.Optional;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.TaggedIOException;
 import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.detect.Detector;
 import org.apache.tika.exception.EncryptedDocumentException;
 import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.ZeroByteFileException;
+import org.apache.tika.Tika;
 import org.apache.tika.extractor.DocumentSelector;
 import org.apache.tika.extractor.EmbeddedDocumentExtractor;
 import org.apache.tika.io.TemporaryResources;
 import org.apache.tika.io.TikaInputStream;
-import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MimeTypes;
 import org.apache.tika.parser.CompositeParser;
 import org.apache.tika.parser.DigestingParser;
 import org.apache.tika.parser.EmptyParser;
@@ -21,13 +29,16 @@ import org.apache.tika.parser.digestutils.CommonsDigester;
 import org.apache.tika.parser.digestutils.CommonsDigester.DigestAlgorithm;
 import org.apache.tika.parser.html.DefaultHtmlMapper;
 import org.apache.tika.parser.html.HtmlMapper;
+import org.apache.tika.parser.mbox.MboxParser;
 import org.apache.tika.parser.microsoft.pst.OutlookPSTParser;
 import org.apache.tika.parser.ocr.TesseractOCRConfig;
 import org.apache.tika.parser.pdf.PDFParserConfig;
+import org.apache.tika.parser.pkg.PackageParser;
 import org.apache.tika.sax.BodyContentHandler;
 import org.apache.tika.sax.ExpandedTitleContentHandler;
 import org.apache.tika.utils.ServiceLoaderUtils;
 import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.document.Identifier;
 import org.icij.extract.document.PathIdentifier;
 import org.icij.extract.document.TikaDocument;
 import org.icij.extract.ocr.ImageIOTranscodingOCRParser;
@@ -35,15 +46,23 @@ import org.icij.extract.ocr.OCRConfigAdapter;
 import org.icij.extract.ocr.OCRConfigRegistry;
 import org.icij.extract.ocr.OCRParserAdapter;
 import org.icij.extract.ocr.TesseractOCRConfigAdapter;
+import org.icij.extract.parser.ArchiveUnitsParser;
 import org.icij.extract.parser.CacheParserDecorator;
-import org.icij.extract.parser.FallbackParser;
 import org.icij.extract.parser.HTML5Serializer;
+import org.icij.extract.parser.MboxFanoutParser;
 import org.icij.extract.parser.ParsingReaderWithContentHandler;
 import org.icij.extract.parser.ResourceClosingReader;
 import org.icij.extract.parser.ResilientOutlookPSTParser;
+import org.icij.extract.queue.DocumentSet;
+import org.icij.extract.queue.MemoryDocumentQueue;
+import org.icij.extract.queue.MemoryDocumentSet;
+import org.icij.extract.redis.RedisDocumentQueue;
+import org.icij.extract.redis.RedisDocumentSet;
 import org.icij.extract.report.Reporter;
 import org.icij.spewer.MetadataTransformer;
+import org.icij.spewer.PushedContentSpewer;
 import org.icij.spewer.Spewer;
+import org.icij.spewer.SpewPool;
 import org.icij.spewer.SpewSink;
 import org.icij.spewer.StreamingSpewCoordinator;
 import org.icij.task.Options;
@@ -51,15 +70,20 @@ import org.icij.task.annotation.Option;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.io.ObjectOutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -73,7 +97,9 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -93,8 +119,15 @@ import static org.icij.extract.extractor.ArtifactUtils.getEmbeddedPath;
  *
  * @since 1.0.0-beta
  */
-@Option(name = "digestAlgorithm", description = "The hash digest method used for documents, for example \"SHA256\".", parameter = "name")
+@Option(name = "digestAlgorithm", description = "The hash digest method used for documents, for example \"SHA256\". " +
+        "Prefix it with \"TREE-\" (e.g. \"TREE-SHA-256\") to hash large files as a tree of 4MB chunks on several " +
+        "threads; tree hashes differ from plain digests of the same file.", parameter = "name")
+@Option(name = "treeHashParallelism", description = "Number of threads hashing the chunks of a single file with a " +
+        "tree-hash digest algorithm. Defaults to the number of processors.", parameter = "count")
 @Option(name = "digestProjectName", description = "Include the given project name in the document hash.", parameter = "name")
+@Option(name = "singlePassDigest", description = "Compute the digest of embedded documents larger than the digest " +
+        "mark limit (20MB) while they are spooled to disk, instead of reading the spooled file again. Digests are " +
+        "unchanged. Off by default.")
 @Option(name = "outputFormat", description = "Set the output format. Either \"text\" or \"HTML\". " +
         "Defaults to text output.", parameter = "type")
 @Option(name = "embedHandling", description = "Set the embed handling mode. Either \"ignore\", " +
@@ -104,6 +137,13 @@ import static org.icij.extract.extractor.ArtifactUtils.getEmbeddedPath;
 @Option(name = "embedOutput", description = "Path to a directory for outputting attachments en masse.",
         parameter = "path")
 @Option(name = "ocrCache", description = "Output path for OCR cache files.", parameter = "path")
+@Option(name = "embedCache", description = "Path to a directory for caching the text and metadata extracted from " +
+        "embedded documents, by content digest. A copy of an embed found in the cache is not parsed again.",
+        parameter = "path")
+@Option(name = "embedCacheMaxBytes", description = "Size of the embed cache above which the least recently used " +
+        "entries are evicted. Defaults to 1GiB.", parameter = "bytes")
+@Option(name = "embedCacheMaxEntryBytes", description = "Size of extracted text above which an embed isn't " +
+        "cached. Defaults to 1MiB.", parameter = "bytes")
 @Option(name = "ocrLanguage", description = "Set the languages used by Tesseract. Multiple  languages may be " +
         "specified, separated by plus characters. Tesseract uses 3-character ISO 639-2 language codes.", parameter =
         "language")
@@ -124,6 +164,13 @@ import static org.icij.extract.extractor.ArtifactUtils.getEmbeddedPath;
         "embedded-document text spills to temp files early, regardless of the byte budget, to keep " +
         "extraction within the available heap on very large containers. Defaults to 0.7; set to 0 or 1 to disable.",
         parameter = "ratio")
+@Option(name = "embedSlabPool", description = "Reuse the memory that the text of embedded documents is buffered in " +
+        "across documents, from a pool no larger than the embed memory budget, instead of allocating it for each " +
+        "document. Off by default.")
+@Option(name = "embedSpillCompression", description = "Compress the text of embedded documents that overflows the " +
+        "embed memory budget to temp files, trading a little CPU for much less temp disk I/O. Off by default.")
+@Option(name = "embedSpillArena", description = "Spill the text of the embedded documents of a file to a few shared " +
+        "temp files, rather than to a temp file for each embedded document. Off by default.")
 @Option(name = "ocrParallelism", description = "Number of OCR tasks run in parallel across all " +
         "extraction threads. Defaults to the number of available processors. Set to 1 for serial OCR.",
         parameter = "count")
@@ -136,14 +183,44 @@ import static org.icij.extract.extractor.ArtifactUtils.getEmbeddedPath;
 @Option(name = "streamingSpew", description = "Write embedded documents to the spewer as they are " +
         "parsed, instead of buffering the whole tree and writing it afterwards. On by default; set " +
         "to false to fall back to the legacy buffer-then-walk path.")
+@Option(name = "pushContent", description = "Parse each root document on the extraction thread and write its " +
+        "text to the spewer as it's parsed, instead of reading it from a parsing thread. Only used with spewers " +
+        "that accept it, such as the file spewer. Off by default.")
 @Option(name = "spewQueueCapacity", description = "Maximum number of parsed-but-not-yet-written " +
         "embedded documents held in the streaming-spew queue before the parse thread blocks " +
-        "(backpressure). Defaults to 1000.", parameter = "count")
+        "(backpressure). Not used with spewPoolThreads, where spewPoolQueueBytes bounds them instead. " +
+        "Defaults to 1000.", parameter = "count")
+@Option(name = "spewWriters", description = "Number of threads writing the embedded documents of a document " +
+        "to the spewer in streaming-spew mode. An embedded document is never written at the same time as, or " +
+        "out of order with, an ancestor or descendant. The spewer must accept concurrent writes. Defaults to 1.",
+        parameter = "count")
+@Option(name = "spewPoolThreads", description = "Number of threads writing the embedded documents of all the " +
+        "documents being extracted, in streaming-spew mode, in place of spewWriters threads per document. Documents " +
+        "take turns, one embedded document at a time. The spewer must accept concurrent writes. Defaults to 0, " +
+        "for threads per document.", parameter = "count")
+@Option(name = "spewPoolQueueBytes", description = "Bytes held by the embedded documents of all the documents " +
+        "being extracted, not yet written, beyond which parsing blocks (backpressure), in place of " +
+        "spewQueueCapacity. Each embedded document counts for its extracted text and 1KiB more. Only used with " +
+        "spewPoolThreads. Defaults to 256MiB.", parameter = "bytes")
 @Option(name = "pstFolderFanout", description = "Parse the folders of a single PST/OST mailbox " +
         "in parallel across a shared bounded pool, instead of one thread per file. Embed ids, " +
         "digests and artifact filenames are byte-identical to the serial walk.")
 @Option(name = "pstParseParallelism", description = "Number of PST/OST folder-walk tasks run in " +
         "parallel across all in-flight mailboxes. Separate from ocrParallelism.")
+@Option(name = "archiveEntryFanout", description = "Parse the entries of a ZIP or uncompressed TAR archive in " +
+        "parallel across a shared bounded pool, instead of one after the other. Embed ids, digests and artifact " +
+        "filenames are identical to the serial walk, but embeds are written in the order they finish. Off by default.")
+@Option(name = "mboxMessageFanout", description = "Parse the messages of an mbox mailbox in parallel across the " +
+        "archive entry pool, instead of one after the other. Embed ids, digests and artifact filenames are identical " +
+        "to the serial walk, but embeds are written in the order they finish. Off by default.")
+@Option(name = "archiveParseParallelism", description = "Number of archive entries or mbox messages parsed in " +
+        "parallel across all in-flight archives and mailboxes. Defaults to the number of available processors.",
+        parameter = "count")
+@Option(name = "concatenateFanout", description = "With the concatenate embed handling mode, parse the embeds " +
+        "of a document in parallel across a shared bounded pool, and stitch their text into the document's in " +
+        "order. The text is the same as when they're parsed one after the other. Off by default.")
+@Option(name = "concatenateParallelism", description = "Number of concatenated embeds parsed in parallel across " +
+        "all in-flight documents. Defaults to the number of available processors.", parameter = "count")
 @Option(name = "legacyUntitledNaming", description = "Name nameless non-inline embeds with the " +
         "pre-9.x global untitled_N counter instead of the per-parent scheme, for on-demand " +
         "resolution of corpora indexed before the per-parent change. Serial mode only.")
@@ -155,9 +232,30 @@ import static org.icij.extract.extractor.ArtifactUtils.getEmbeddedPath;
         "parsed) to guard against decompression-bomb archives whose entries expand to multi-GiB. Only " +
         "enforced when the embed's size is known. Disabled by default (0). Set to a positive byte " +
         "count to enable.", parameter = "bytes")
+@Option(name = "dedupRoots", description = "Digest each root document before parsing it and, if a root with " +
+        "the same content was already extracted, only write an alias record for it. Either \"memory\", to " +
+        "deduplicate within this process, or \"redis\", to deduplicate across every extractor sharing the " +
+        "\"dedupSetName\" set at \"redisAddress\". Off by default.", parameter = "type")
+@Option(name = "dedupSetName", description = "Name of the Redis set of extracted root digests used by " +
+        "\"dedupRoots\". Defaults to \"extract:digests\".", parameter = "name")
+@Option(name = "parserSnapshot", description = "Start faster by creating parsers on their first use, from a " +
+        "snapshot of the available parsers saved to the given file. The snapshot is taken by the first run, and " +
+        "again whenever Tika or the parsers on the class path change.", parameter = "path")
+@Option(name = "ocrQueue", description = "Extract in two phases: write all the text that needs no OCR first, and " +
+        "queue image attachments, documents with inline images and PDFs to OCR for a second phase that writes " +
+        "them again with their OCR text. Either \"memory\", for a queue that doesn't survive the process, " +
+        "\"file\", to keep the queue in \"ocrQueueDirectory\" and resume it after a restart, or \"redis\", " +
+        "to share it between processes through the \"ocrQueueName\" queue at \"redisAddress\". Off by default.",
+        parameter = "type")
+@Option(name = "ocrQueueDirectory", description = "Directory holding the queued OCR work and the bytes of " +
+        "queued attachments. Required by the \"file\" and \"redis\" OCR queues, and then shared by every " +
+        "process using the queue.", parameter = "path")
+@Option(name = "ocrQueueName", description = "Name of the Redis OCR queue. Defaults to \"extract:ocr\".",
+        parameter = "name")
 public class Extractor implements AutoCloseable {
 
     public static final String PAGES_JSON = "pages.json";
+    private static final ObjectMapper PAGES_MAPPER = new ObjectMapper();
 
     public enum OutputFormat {
         HTML, TEXT;
@@ -180,11 +278,22 @@ public class Extractor implements AutoCloseable {
     }
 
     private static final Logger logger = LoggerFactory.getLogger(Extractor.class);
+    // Whether a document was written by this process yet, to log the time it took to start.
+    private static final AtomicBoolean firstDocumentWritten = new AtomicBoolean(false);
 
     private boolean ocrDisabled = false;
+    private boolean singlePassDigest = false;
+    private int treeHashParallelism = Runtime.getRuntime().availableProcessors();
     private DigestingParser.Digester digester = null;
 
-    private Parser defaultParser = TikaConfig.getDefaultConfig().getParser();
+    private Parser defaultParser;
+    // The detector of the parser graph, or null for the one of Tika's default configuration.
+    private Detector detector = null;
+    // Built lazily from defaultParser and digester, then shared by every parse; dropped whenever either
+    // changes so the next parse rebuilds it (see parserGraph()).
+    private volatile ParserGraph parserGraph = null;
+    // Computed on first use, like the parser graph, and dropped with it or with any other setting it covers.
+    private volatile String embedCacheFingerprint = null;
     protected OCRConfigAdapter<? extends Parser> ocrConfig;
     private final PDFParserConfig pdfConfig = new PDFParserConfig();
     private final DocumentFactory documentFactory;
@@ -193,6 +302,12 @@ public class Extractor implements AutoCloseable {
     private Path embedOutput = null;
     private long embedMemoryBudgetBytes = 64L * 1024 * 1024;
     private double embedMemoryPressureThreshold = 0.7;
+    private boolean embedSlabPool = false;
+    // Null until first use; created lazily by slabPool(), once the memory budget that sizes it is configured.
+    private volatile SlabPool slabPool = null;
+    // Null unless spill compression is on, in which case it also counts the bytes it saves.
+    private SpillCompression spillCompression = null;
+    private boolean embedSpillArena = false;
     private Duration parseTimeout = Duration.ofDays(1);
     private final ExecutorService parseExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
         private final AtomicInteger counter = new AtomicInteger();
@@ -208,21 +323,45 @@ public class Extractor implements AutoCloseable {
     private long ocrMinImageBytes = 0L;
     private Duration progressHeartbeatInterval = Duration.ofSeconds(60);
     private boolean streamingSpew = true;
+    private boolean pushContent = false;
     // Bounded spew queue: caps how many ready-but-unwritten embeds (and thus their buffered text)
     // are held in flight, providing backpressure on the parse thread when the spewer lags.
     private int spewQueueCapacity = 1000;
+    private int spewWriters = 1;
+    private int spewPoolThreads = 0;
+    private long spewPoolQueueBytes = 256L * 1024 * 1024;
+    // Null until first use; created lazily by spewPool(), like the archive pool.
+    private volatile SpewPool spewPool = null;
     // Null until first use; created lazily by ocrExecutor() to avoid leaking threads in
     // Extractors that never actually defer OCR (OCR disabled, fanout off, or no eligible image).
     // Volatile so that close() on any thread sees the value written by the synchronized creator.
     private volatile ExecutorService ocrExecutor = null;
     private boolean pstFolderFanout = true;
     private int pstParseParallelism = Runtime.getRuntime().availableProcessors();
+    private boolean archiveEntryFanout = false;
+    private boolean mboxMessageFanout = false;
+    private boolean concatenateFanout = false;
+    private int concatenateParallelism = Runtime.getRuntime().availableProcessors();
+    private int archiveParseParallelism = Runtime.getRuntime().availableProcessors();
     private boolean legacyUntitledNaming = false;
     private int maxEmbedDepth = EmbedSpawner.DEFAULT_MAX_EMBED_DEPTH;
     private long maxEmbedSizeBytes = EmbedSpawner.DEFAULT_MAX_EMBED_SIZE_BYTES;
     // Null until first use; created lazily by parseExecutor(), mirroring the OCR pool.
     private volatile ExecutorService pstParseExecutor = null;
+    // Null until first use; created lazily by archiveParseExecutor(), like the PST pool.
+    private volatile ExecutorService archiveParseExecutor = null;
+    // Null until first use; created lazily by treeHashExecutor(), like the archive pool.
+    private volatile ExecutorService treeHashExecutor = null;
+    // Null until first use; created lazily by concatenateExecutor(), like the archive pool.
+    private volatile ExecutorService concatenateExecutor = null;
     private ExtractionProgressTracker progressTracker;
+    private RootDeduplicator rootDeduplicator = null;
+    private EmbedResultCache embedResultCache = null;
+    // Whether rootDeduplicator was created from the options, and so must be closed with this extractor.
+    private boolean ownsRootDeduplicator = false;
+    private DeferredOcrQueue deferredOcrQueue = null;
+    // Whether deferredOcrQueue was created from the options, and so must be closed with this extractor.
+    private boolean ownsDeferredOcrQueue = false;
 
     /**
      * Create a new extractor, which will OCR images by default if Tesseract is available locally, extract inline
@@ -238,6 +377,13 @@ public class Extractor implements AutoCloseable {
 
     public Extractor(final DocumentFactory factory, Options<String> options) {
         this.documentFactory = factory;
+        options = Optional.ofNullable(options).orElse(Options.from(Map.of()));
+        // Before anything else, since the configuration replaces parsers.
+        options.valueIfPresent("parserSnapshot").map(Paths::get).ifPresentOrElse(file -> {
+            this.defaultParser = ParserRegistrySnapshot.defaultParser(file);
+            // Tika's default configuration would instantiate every parser just to create its detector.
+            this.detector = new DefaultDetector(MimeTypes.getDefaultMimeTypes());
+        }, () -> this.defaultParser = TikaConfig.getDefaultConfig().getParser());
         // Calculate the SHA256 digest by default.
         setDigestAlgorithm(DigestAlgorithm.SHA256.toString());
 
@@ -253,15 +399,20 @@ public class Extractor implements AutoCloseable {
         ocrConfig = new TesseractOCRConfigAdapter();
         ocrConfig.setLanguages("eng");
         ocrConfig.setOcrTimeout(Duration.ofDays(1));
-        this.configure(Optional.ofNullable(options).orElse(Options.from(Map.of())));
+        this.configure(options);
         // Replace Tika's stock OutlookPSTParser, which silently aborts the rest
         // of a PST when one message fails, with the resilient parser.
         replaceParser(OutlookPSTParser.class, parser -> new ResilientOutlookPSTParser());
+        // Let root ZIP/7z archives report their entry count from the archive the parse opens.
+        replaceParser(PackageParser.class, ArchiveUnitsParser::new);
+        // Let the messages of a root mbox be parsed in parallel when mbox fan-out is on.
+        replaceParser(MboxParser.class, MboxFanoutParser::new);
         // The OCR pool is created lazily on first deferred-OCR use (see ocrExecutor()).
         // progressTracker.start() is deferred to the first begin() call so an Extractor
         // that is never used starts no scheduler thread.
         this.progressTracker = new ExtractionProgressTracker(progressHeartbeatInterval);
-        this.progressTracker.addListener(new LoggingProgressListener());
+        this.progressTracker.addListener(new LoggingProgressListener(System::currentTimeMillis,
+                () -> null == slabPool ? null : slabPool.stats()));
     }
 
     public Extractor() {
@@ -285,12 +436,27 @@ public class Extractor implements AutoCloseable {
                 .ifPresent(mb -> setEmbedMemoryBudgetBytes(mb * 1024L * 1024L));
         options.valueIfPresent("embedMemoryPressureThreshold")
                 .ifPresent(ratio -> setEmbedMemoryPressureThreshold(Double.parseDouble(ratio)));
-
+        options.get("embedSlabPool", "false").parse().asBoolean().ifPresent(b -> this.embedSlabPool = b);
+        options.get("embedSpillCompression", "false").parse().asBoolean()
+                .ifPresent(b -> this.spillCompression = b ? new SpillCompression() : null);
+        options.get("embedSpillArena", "false").parse().asBoolean().ifPresent(b -> this.embedSpillArena = b);
+
+        options.get("singlePassDigest", "false").parse().asBoolean().ifPresent(b -> this.singlePassDigest = b);
+        options.get("treeHashParallelism", String.valueOf(Runtime.getRuntime().availableProcessors()))
+                .parse().asInteger().ifPresent(n -> this.treeHashParallelism = Math.max(1, n));
         String algorithm = options.valueIfPresent("digestAlgorithm").orElse("SHA-256");
         setDigestAlgorithm(algorithm);
 
-        options.valueIfPresent("digestProjectName")
-                .ifPresent(digestProjectName -> this.setDigester(new UpdatableDigester(digestProjectName, algorithm)));
+        options.valueIfPresent("digestProjectName").ifPresent(digestProjectName -> {
+            // The project name prefixes the content in the digest, which a tree hash has no place for.
+            if (TreeHash.isTreeAlgorithm(algorithm)) {
+                throw new IllegalArgumentException(String.format("The digest project name can't be used with " +
+                        "the tree-hash algorithm \"%s\".", algorithm));
+            }
+            this.setDigester(singlePassDigest ?
+                    new SinglePassDigester(digestProjectName, algorithm) :
+                    new UpdatableDigester(digestProjectName, algorithm));
+        });
 
         if (options.get("ocr", String.valueOf(!this.ocrDisabled)).parse().isOff()) {
             disableOcr();
@@ -301,6 +467,18 @@ public class Extractor implements AutoCloseable {
             // re-run OCR on every extraction because the fallback holds its own OCR-parser reference.
             replaceParser(ImageIOTranscodingOCRParser.class, parser -> new CacheParserDecorator(parser, Paths.get(path)));
         });
+        options.valueIfPresent("embedCache").ifPresent(path -> {
+            final long maxBytes = options.valueIfPresent("embedCacheMaxBytes").map(Long::parseLong)
+                    .orElse(EmbedResultCache.DEFAULT_MAX_BYTES);
+            final int maxEntryBytes = options.get("embedCacheMaxEntryBytes",
+                    String.valueOf(EmbedResultCache.DEFAULT_MAX_ENTRY_BYTES)).parse().asInteger()
+                    .orElse(EmbedResultCache.DEFAULT_MAX_ENTRY_BYTES);
+            try {
+                setEmbedResultCache(new EmbedResultCache(Paths.get(path), maxBytes, maxEntryBytes));
+            } catch (final IOException e) {
+                throw new IllegalArgumentException(String.format("Unable to open the embed cache at \"%s\".", path), e);
+            }
+        });
         options.get("ocrParallelism", String.valueOf(Runtime.getRuntime().availableProcessors()))
                 .parse().asInteger().ifPresent(n -> this.ocrParallelism = Math.max(1, n));
         options.get("ocrFanout", "true").parse().asBoolean().ifPresent(b -> this.ocrFanout = b);
@@ -308,12 +486,59 @@ public class Extractor implements AutoCloseable {
         options.get("progressHeartbeatInterval", "60s").parse().asDuration()
                 .ifPresent(d -> this.progressHeartbeatInterval = d);
         options.get("streamingSpew", "true").parse().asBoolean().ifPresent(b -> this.streamingSpew = b);
+        options.get("pushContent", "false").parse().asBoolean().ifPresent(b -> this.pushContent = b);
         options.get("spewQueueCapacity", "1000").parse().asInteger()
                 .ifPresent(n -> this.spewQueueCapacity = Math.max(1, n));
+        options.get("spewWriters", "1").parse().asInteger().ifPresent(n -> this.spewWriters = Math.max(1, n));
+        options.get("spewPoolThreads", "0").parse().asInteger()
+                .ifPresent(n -> this.spewPoolThreads = Math.max(0, n));
+        options.valueIfPresent("spewPoolQueueBytes").map(Long::parseLong)
+                .ifPresent(n -> this.spewPoolQueueBytes = Math.max(1, n));
         options.get("pstFolderFanout", "true").parse().asBoolean()
                 .ifPresent(b -> this.pstFolderFanout = b);
         options.get("pstParseParallelism", String.valueOf(Runtime.getRuntime().availableProcessors()))
                 .parse().asInteger().ifPresent(n -> this.pstParseParallelism = Math.max(1, n));
+        options.get("archiveEntryFanout", "false").parse().asBoolean()
+                .ifPresent(b -> this.archiveEntryFanout = b);
+        options.get("mboxMessageFanout", "false").parse().asBoolean()
+                .ifPresent(b -> this.mboxMessageFanout = b);
+        options.get("concatenateFanout", "false").parse().asBoolean()
+                .ifPresent(b -> this.concatenateFanout = b);
+        options.get("concatenateParallelism", String.valueOf(Runtime.getRuntime().availableProcessors()))
+                .parse().asInteger().ifPresent(n -> this.concatenateParallelism = Math.max(1, n));
+        options.get("archiveParseParallelism", String.valueOf(Runtime.getRuntime().availableProcessors()))
+                .parse().asInteger().ifPresent(n -> this.archiveParseParallelism = Math.max(1, n));
+        options.valueIfPresent("dedupRoots").ifPresent(type -> {
+            final String setName = options.valueIfPresent("dedupSetName").orElse("extract:digests");
+            final DocumentSet<String> digests = switch (type.toLowerCase(Locale.ROOT)) {
+                case "memory" -> new MemoryDocumentSet<>(setName);
+                case "redis" -> new RedisDocumentSet<>(setName,
+                        options.valueIfPresent("redisAddress").orElse("redis://127.0.0.1:6379"), String.class);
+                default -> throw new IllegalArgumentException(String.format("\"%s\" is not a valid dedup type.", type));
+            };
+            setRootDeduplicator(new RootDeduplicator(digests));
+            this.ownsRootDeduplicator = true;
+        });
+        options.valueIfPresent("ocrQueue").ifPresent(type -> {
+            final String name = options.valueIfPresent("ocrQueueName").orElse("extract:ocr");
+            final Supplier<Path> directory = () -> options.valueIfPresent("ocrQueueDirectory").map(Paths::get)
+                    .orElseThrow(() -> new IllegalArgumentException(String.format("The \"%s\" OCR queue needs " +
+                            "an OCR queue directory.", type)));
+            try {
+                setDeferredOcrQueue(switch (type.toLowerCase(Locale.ROOT)) {
+                    case "memory" -> DeferredOcrQueue.inMemory(name, DeferredOcrQueue.DEFAULT_CAPACITY);
+                    case "file" -> new DeferredOcrQueue(directory.get(),
+                            new MemoryDocumentQueue<>(name, DeferredOcrQueue.DEFAULT_CAPACITY));
+                    case "redis" -> new DeferredOcrQueue(directory.get(), new RedisDocumentQueue<>(name,
+                            options.valueIfPresent("redisAddress").orElse("redis://127.0.0.1:6379"), String.class));
+                    default -> throw new IllegalArgumentException(String.format("\"%s\" is not a valid OCR queue " +
+                            "type.", type));
+                });
+            } catch (final IOException e) {
+                throw new IllegalArgumentException("Unable to create the OCR queue directory.", e);
+            }
+            this.ownsDeferredOcrQueue = true;
+        });
         options.get("legacyUntitledNaming", "false").parse().asBoolean()
                 .ifPresent(b -> this.legacyUntitledNaming = b);
         options.get("maxEmbedDepth", String.valueOf(EmbedSpawner.DEFAULT_MAX_EMBED_DEPTH))
@@ -337,6 +562,15 @@ public class Extractor implements AutoCloseable {
             logger.warn("legacyUntitledNaming requires the serial PST walk; forcing pstFolderFanout=false.");
             pstFolderFanout = false;
         }
+        // Likewise for archive entries and mbox messages, which are each parsed by a fork with its own counter.
+        if (legacyUntitledNaming && archiveEntryFanout) {
+            logger.warn("legacyUntitledNaming requires the serial archive walk; forcing archiveEntryFanout=false.");
+            archiveEntryFanout = false;
+        }
+        if (legacyUntitledNaming && mboxMessageFanout) {
+            logger.warn("legacyUntitledNaming requires the serial mbox walk; forcing mboxMessageFanout=false.");
+            mboxMessageFanout = false;
+        }
         logger.info("extractor configured with digester {} and {}", digester.getClass(), documentFactory);
     }
 
@@ -345,8 +579,9 @@ public class Extractor implements AutoCloseable {
      *
      * @param outputFormat the output format
      */
-    public void setOutputFormat(final OutputFormat outputFormat) {
+    public synchronized void setOutputFormat(final OutputFormat outputFormat) {
         this.outputFormat = outputFormat;
+        this.embedCacheFingerprint = null;
     }
 
     /**
@@ -363,11 +598,12 @@ public class Extractor implements AutoCloseable {
      *
      * @param embedHandling the embed handling mode
      */
-    public void setEmbedHandling(final EmbedHandling embedHandling) {
+    public synchronized void setEmbedHandling(final EmbedHandling embedHandling) {
         this.embedHandling = embedHandling;
+        this.embedCacheFingerprint = null;
     }
 
-    public void setOcrConfig(final OCRConfigAdapter<?> ocrConfig) {
+    public synchronized void setOcrConfig(final OCRConfigAdapter<?> ocrConfig) {
         this.ocrConfig = ocrConfig;
         Parser ocrParser = ocrConfig.buildParser();
         replaceParser(ocrConfig.getParserClass(), parser -> ocrParser);
@@ -412,13 +648,40 @@ public class Extractor implements AutoCloseable {
     public boolean isOcrFanout() { return ocrFanout; }
     public long getOcrMinImageBytes() { return ocrMinImageBytes; }
     public boolean isStreamingSpew() { return streamingSpew; }
+    public int getSpewWriters() { return spewWriters; }
+    public int getSpewPoolThreads() { return spewPoolThreads; }
+    public long getSpewPoolQueueBytes() { return spewPoolQueueBytes; }
+    public boolean isPushContent() { return pushContent; }
+    public boolean isEmbedSlabPool() { return embedSlabPool; }
+    public boolean isEmbedSpillCompression() { return spillCompression != null; }
+    public boolean isEmbedSpillArena() { return embedSpillArena; }
     public boolean isPstFolderFanout() { return pstFolderFanout; }
     public int getPstParseParallelism() { return pstParseParallelism; }
+    public boolean isArchiveEntryFanout() { return archiveEntryFanout; }
+    public boolean isMboxMessageFanout() { return mboxMessageFanout; }
+    public int getArchiveParseParallelism() { return archiveParseParallelism; }
+    public boolean isConcatenateFanout() { return concatenateFanout; }
+    public int getConcatenateParallelism() { return concatenateParallelism; }
     public boolean isLegacyUntitledNaming() { return legacyUntitledNaming; }
     public int getMaxEmbedDepth() { return maxEmbedDepth; }
     public long getMaxEmbedSizeBytes() { return maxEmbedSizeBytes; }
 
     ExecutorService pstParseExecutorOrNull() { return pstParseExecutor; }
+    ExecutorService archiveParseExecutorOrNull() { return archiveParseExecutor; }
+    ExecutorService concatenateExecutorOrNull() { return concatenateExecutor; }
+    SpewPool spewPoolOrNull() { return spewPool; }
+    ExecutorService treeHashExecutorOrNull() { return treeHashExecutor; }
+
+    SlabPool slabPoolOrNull() { return slabPool; }
+    SpillCompression spillCompressionOrNull() { return spillCompression; }
+
+    // Lazily create the pool of embed text segments, holding at most the embed memory budget when idle.
+    synchronized SlabPool slabPool() {
+        if (slabPool == null) {
+            slabPool = SlabPool.ofBytes(embedMemoryBudgetBytes);
+        }
+        return slabPool;
+    }
 
     // Lazily create the shared PST folder-walk pool on first fan-out use, mirroring ocrExecutor().
     synchronized ExecutorService pstParseExecutor() {
@@ -436,6 +699,65 @@ public class Extractor implements AutoCloseable {
         return pstParseExecutor;
     }
 
+    // Lazily create the shared archive entry pool on first fan-out use, mirroring pstParseExecutor().
+    synchronized ExecutorService archiveParseExecutor() {
+        if (archiveParseExecutor == null) {
+            archiveParseExecutor = Executors.newFixedThreadPool(archiveParseParallelism, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+                @Override public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "extract-archive-walk-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return archiveParseExecutor;
+    }
+
+    // Lazily create the shared pool of concatenated embeds on first fan-out use, like archiveParseExecutor().
+    synchronized ExecutorService concatenateExecutor() {
+        if (concatenateExecutor == null) {
+            concatenateExecutor = Executors.newFixedThreadPool(concatenateParallelism, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+                @Override public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "extract-concatenate-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return concatenateExecutor;
+    }
+
+    // Lazily create the pool helping to hash the chunks of large files on first use, like archiveParseExecutor().
+    synchronized ExecutorService treeHashExecutor() {
+        if (treeHashExecutor == null) {
+            treeHashExecutor = Executors.newFixedThreadPool(treeHashParallelism, new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+                @Override public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "extract-tree-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return treeHashExecutor;
+    }
+
+    // Lazily create the spew workers shared by every document on first streaming spew, like concatenateExecutor().
+    synchronized SpewPool spewPool() {
+        if (spewPool == null) {
+            spewPool = new SpewPool(spewPoolThreads, spewPoolQueueBytes);
+        }
+        return spewPool;
+    }
+
+    // The coordinator of one document's streaming spew, writing with the shared pool if there is one.
+    private StreamingSpewCoordinator spewCoordinator(final Spewer spewer) {
+        return spewPoolThreads > 0 ? new StreamingSpewCoordinator(spewer, spewPool())
+                : new StreamingSpewCoordinator(spewer, spewQueueCapacity, spewWriters);
+    }
+
     /**
      * Returns the shared OCR executor, lazily CREATING it on the first call; callers that only
      * want to inspect whether a pool exists should use {@link #ocrExecutorOrNull()} instead.
@@ -482,8 +804,181 @@ public class Extractor implements AutoCloseable {
     public void close() {
         if (ocrExecutor != null) { ocrExecutor.shutdownNow(); ocrExecutor = null; }
         if (pstParseExecutor != null) { pstParseExecutor.shutdownNow(); pstParseExecutor = null; }
+        if (archiveParseExecutor != null) { archiveParseExecutor.shutdownNow(); archiveParseExecutor = null; }
+        if (concatenateExecutor != null) { concatenateExecutor.shutdownNow(); concatenateExecutor = null; }
+        if (spewPool != null) { spewPool.close(); spewPool = null; }
+        if (treeHashExecutor != null) { treeHashExecutor.shutdownNow(); treeHashExecutor = null; }
         if (progressTracker != null) { progressTracker.close(); }
         parseExecutor.shutdownNow();
+        if (ownsRootDeduplicator) {
+            try {
+                rootDeduplicator.close();
+            } catch (final Exception e) {
+                logger.warn("Unable to close the root digest set.", e);
+            }
+        }
+        if (embedResultCache != null) {
+            logger.info("Embed cache: {} hits, {} misses, {} stored, {} evicted.", embedResultCache.hits(),
+                    embedResultCache.misses(), embedResultCache.stores(), embedResultCache.evictions());
+        }
+        if (slabPool != null) {
+            logger.info("Embed text segments: {}.", slabPool.stats());
+        }
+        if (spillCompression != null) {
+            logger.info("Embed spill compression: {}.", spillCompression.stats());
+        }
+        if (deferredOcrQueue != null) {
+            logger.info("OCR queue: {} submitted, {} completed.", deferredOcrQueue.submitted(),
+                    deferredOcrQueue.completed());
+            if (ownsDeferredOcrQueue) {
+                try {
+                    deferredOcrQueue.close();
+                } catch (final Exception e) {
+                    logger.warn("Unable to close the OCR queue.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract in two phases: the documents that need OCR are written without it and submitted to the given queue,
+     * to be parsed again with OCR and written over by a {@link DeferredOcrConsumer}. Only applies when embeds are
+     * spawned, OCR is enabled and a digester is set. The caller remains responsible for closing the queue.
+     *
+     * @param deferredOcrQueue the queue, or {@code null} to OCR documents as they are extracted
+     */
+    public synchronized void setDeferredOcrQueue(final DeferredOcrQueue deferredOcrQueue) {
+        this.deferredOcrQueue = deferredOcrQueue;
+        this.ownsDeferredOcrQueue = false;
+        this.embedCacheFingerprint = null;
+    }
+
+    public DeferredOcrQueue getDeferredOcrQueue() {
+        return deferredOcrQueue;
+    }
+
+    private boolean isOcrDeferred() {
+        return null != deferredOcrQueue && !ocrDisabled && null != digester && EmbedHandling.SPAWN == embedHandling;
+    }
+
+    // The PDF configuration of the first phase of a two-phase extraction: pages are never OCR'd, and inline images
+    // are only extracted to find the documents that have some (see EmbedSpawner).
+    private PDFParserConfig firstPhasePdfConfig() {
+        final PDFParserConfig config = new PDFParserConfig();
+        config.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.NO_OCR);
+        config.setExtractInlineImages(pdfConfig.isExtractInlineImages());
+        config.setExtractUniqueInlineImagesOnly(pdfConfig.isExtractUniqueInlineImagesOnly());
+        return config;
+    }
+
+    /**
+     * Replay the results of embedded documents already parsed under the same configuration from the given cache,
+     * instead of parsing them again. Only applies when embeds are spawned and a digester is set.
+     *
+     * @param embedResultCache the cache, or {@code null} to turn caching off
+     */
+    public void setEmbedResultCache(final EmbedResultCache embedResultCache) {
+        this.embedResultCache = embedResultCache;
+    }
+
+    public EmbedResultCache getEmbedResultCache() {
+        return embedResultCache;
+    }
+
+    /**
+     * A digest of everything in this extractor's configuration that changes what the parse of an embedded document
+     * gives, so that embed cache entries are only shared between extractors with the same fingerprint: the Tika
+     * version, the output format, the digester, the limits on embeds, the full PDF and Tesseract configurations and
+     * every parser with its own configuration, taken from their serialized form.
+     *
+     * <p>A setting of the extractor that changes the output of a parse must be added here, and its setter must drop
+     * the fingerprint computed before.
+     */
+    String embedCacheFingerprint() {
+        // Serializing the whole configuration for each root would cost more than parsing most embeds, so it's
+        // only done again once a setting changed.
+        String fingerprint = embedCacheFingerprint;
+        if (null == fingerprint) {
+            synchronized (this) {
+                fingerprint = embedCacheFingerprint;
+                if (null == fingerprint) {
+                    fingerprint = fingerprint();
+                    embedCacheFingerprint = fingerprint;
+                }
+            }
+        }
+        return fingerprint;
+    }
+
+    private String fingerprint() {
+        final StringBuilder configuration = new StringBuilder()
+                .append("tika=").append(Tika.getString())
+                .append(";format=").append(outputFormat)
+                .append(";embeds=").append(embedHandling).append(',')
+                .append(maxEmbedDepth).append(',')
+                .append(maxEmbedSizeBytes).append(',')
+                .append(legacyUntitledNaming)
+                .append(";digester=").append(null == digester ? null : digester.getClass().getName())
+                .append(";pdf=").append(serializedConfiguration(pdfConfig));
+
+        // The first phase of a two-phase extraction writes documents without the text that's left to the second.
+        if (isOcrDeferred()) {
+            configuration.append(";ocrDeferred");
+        }
+
+        if (ocrDisabled) {
+            configuration.append(";ocr=off");
+        } else {
+            configuration.append(";ocr=").append(ocrConfig.getParserClass().getName()).append(',')
+                    .append(serializedConfiguration(ocrConfig.getConfig())).append(',')
+                    .append(ocrFanout).append(',')
+                    .append(ocrMinImageBytes);
+        }
+
+        final Stream<Parser> parsers = defaultParser instanceof CompositeParser composite
+                ? getAllSubParsers(composite) : Stream.of(defaultParser);
+
+        configuration.append(";parsers=");
+        parsers.map(Extractor::serializedConfiguration).sorted()
+                .forEach(parser -> configuration.append(parser).append(','));
+        configuration.append(";detector=").append(null == detector ? null : detector.getClass().getName());
+
+        return DigestUtils.sha256Hex(configuration.toString());
+    }
+
+    // The class of a configuration object with a digest of its serialized form. A parser that can't be serialized is
+    // only known by its class, and its configuration by the settings of the extractor that it's built from.
+    private static String serializedConfiguration(final Object configuration) {
+        final String name = configuration instanceof Parser parser
+                ? ParserRegistrySnapshot.parserClass(parser).getName() : configuration.getClass().getName();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(configuration);
+        } catch (final IOException e) {
+            logger.debug("Unable to serialize {}; its class stands for its configuration in the embed cache key.",
+                    name, e);
+            return name;
+        }
+
+        return name + '@' + DigestUtils.sha256Hex(bytes.toByteArray());
+    }
+
+    /**
+     * Skip the parse of root documents whose content was already extracted, writing an alias for them through
+     * {@link Spewer#writeAlias(TikaDocument, String)} instead. The caller remains responsible for closing the
+     * deduplicator.
+     *
+     * @param rootDeduplicator the set of extracted digests to check roots against, or {@code null} to turn
+     *                         deduplication off
+     */
+    public void setRootDeduplicator(final RootDeduplicator rootDeduplicator) {
+        this.rootDeduplicator = rootDeduplicator;
+        this.ownsRootDeduplicator = false;
+    }
+
+    public RootDeduplicator getRootDeduplicator() {
+        return rootDeduplicator;
     }
 
     public long getEmbedMemoryBudgetBytes() {
@@ -555,7 +1050,7 @@ public class Extractor implements AutoCloseable {
      *
      * @param strategy the strategy name, case-insensitive
      */
-    public void setOcrStrategy(final String strategy) {
+    public synchronized void setOcrStrategy(final String strategy) {
         PDFParserConfig.OCR_STRATEGY parsed;
         try {
             parsed = PDFParserConfig.OCR_STRATEGY.valueOf(strategy.trim().toUpperCase(Locale.ROOT));
@@ -570,6 +1065,7 @@ public class Extractor implements AutoCloseable {
         }
         pdfConfig.setOcrStrategy(parsed);
         pdfConfig.setExtractInlineImages(!ocrDisabled && parsed == PDFParserConfig.OCR_STRATEGY.NO_OCR);
+        embedCacheFingerprint = null;
     }
 
     /**
@@ -587,17 +1083,38 @@ public class Extractor implements AutoCloseable {
     }
 
     public void setDigestAlgorithm(final String digestAlgorithm) {
-        setDigester(new CommonsDigester(20 * 1024 * 1024, digestAlgorithm.replace("-", "")));
+        if (TreeHash.isTreeAlgorithm(digestAlgorithm)) {
+            setDigester(new TreeHashDigester(digestAlgorithm, treeHashParallelism, this::treeHashExecutor));
+        } else if (singlePassDigest) {
+            // Same digest and metadata key as CommonsDigester: the modifier is empty.
+            setDigester(new SinglePassDigester("", digestAlgorithm));
+        } else {
+            setDigester(new CommonsDigester(20 * 1024 * 1024, digestAlgorithm.replace("-", "")));
+        }
+    }
+
+    public boolean isSinglePassDigest() {
+        return singlePassDigest;
+    }
+
+    public int getTreeHashParallelism() {
+        return treeHashParallelism;
     }
 
-    public void setDigester(final DigestingParser.Digester digester) {
+    public synchronized void setDigester(final DigestingParser.Digester digester) {
         this.digester = digester;
+        this.parserGraph = null;
+        this.embedCacheFingerprint = null;
+    }
+
+    public DigestingParser.Digester getDigester() {
+        return digester;
     }
 
     /**
      * Disable OCR. This method only has an effect if Tesseract is installed.
      */
-    public void disableOcr() {
+    public synchronized void disableOcr() {
         if (!ocrDisabled) {
             excludeParser(OCRParserAdapter.class);
             excludeParser(ImageIOTranscodingOCRParser.class);
@@ -606,6 +1123,7 @@ public class Extractor implements AutoCloseable {
             // Drop any rendering strategy: with the OCR parsers excluded it would only make Tika
             // render pages and discard their text, silently losing content on born-digital PDFs.
             pdfConfig.setOcrStrategy(PDFParserConfig.OCR_STRATEGY.NO_OCR);
+            embedCacheFingerprint = null;
         }
     }
 
@@ -618,22 +1136,24 @@ public class Extractor implements AutoCloseable {
      * @throws IOException if there was an error reading or writing the document
      */
     public void extract(final Path path, final Spewer spewer) throws IOException {
+        extractDigested(path, spewer);
+    }
+
+    // Returns the digest of the root's content computed by the extraction, or null if there's no digester.
+    private String extractDigested(final Path path, final Spewer spewer) throws IOException {
         if (parseTimeout == null || parseTimeout.isZero() || parseTimeout.isNegative()) {
-            doExtract(path, spewer);
-            return;
+            return doExtract(path, spewer);
         }
 
-        final Future<?> future = parseExecutor.submit(() -> {
-            doExtract(path, spewer);
-            return null;
-        });
+        final Future<String> future = parseExecutor.submit(() -> doExtract(path, spewer));
 
         try {
-            future.get(parseTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            return future.get(parseTimeout.toMillis(), TimeUnit.MILLISECONDS);
         } catch (final TimeoutException e) {
             // Interrupt the worker: it unblocks any pipe read, Spewer.write's finally closes the
             // reader, and the background parse thread stops on its next write. A parser in a tight
             // CPU loop that never touches the pipe cannot be killed and leaks until the next restart.
+            // A pushed parse runs on the worker itself and stops on its next write (see PushedContentWriter).
             future.cancel(true);
             throw new ParseTimeoutException(path, parseTimeout);
         } catch (final ExecutionException e) {
@@ -645,44 +1165,204 @@ public class Extractor implements AutoCloseable {
             future.cancel(true);
             throw new IOException("Extraction interrupted: " + path, e);
         }
+        return null;
     }
 
-    private void doExtract(final Path path, final Spewer spewer) throws IOException {
+    private String doExtract(final Path path, final Spewer spewer) throws IOException {
         long before = currentTimeMillis();
         progressTracker.begin(path);
         try {
-            if (streamingSpew && EmbedHandling.SPAWN == embedHandling) {
-                try (StreamingSpewCoordinator coordinator = new StreamingSpewCoordinator(spewer, spewQueueCapacity)) {
-                    // Start the spew worker BEFORE extract(): extract() constructs the pull-parser and
-                    // blocks on Tika's first-character read of the ROOT pipe, which for a PST/OST never
-                    // emits root text until the parse ends. The parse meanwhile produces embeds onto the
-                    // bounded queue, so the worker must already be draining or the queue fills and the
-                    // parse deadlocks (the first-char read can never complete). The worker drains embeds
-                    // throughout the parse; spew() below writes the root last and awaits the worker.
-                    coordinator.start();
-                    final TikaDocument document = extract(path, coordinator);
-                    logger.info("{} streaming-spew started in {}ms", path, currentTimeMillis() - before);
-                    // Foreground writes the root (driving the rest of the parse), then the coordinator
-                    // awaits every embed and closes the root reader (temp cleanup). start() is idempotent.
-                    coordinator.spew(document);
-                }
-            } else {
-                final TikaDocument document = extract(path);
-                logger.info("{} extracted in {}ms", path, currentTimeMillis() - before);
-                spewer.write(document);
+            final TikaDocument root = documentFactory.create(path);
+            final String digest = null == rootDeduplicator ? null : digestRoot(root);
+
+            if (null != digest && rootDeduplicator.isDuplicate(digest)) {
+                logger.info("{} is a duplicate of an extracted document; writing an alias", path);
+                spewer.writeAlias(root, digest);
+                return digest;
             }
+
+            doExtract(root, null != digest, spewer, before);
+
+            // Only now that the root and its embeds were written may copies be aliased to it.
+            if (null != digest) {
+                rootDeduplicator.record(digest);
+            }
+            return Identifier.findDigest(root.getMetadata());
         } finally {
             progressTracker.end(path);
         }
     }
 
+    private void doExtract(final TikaDocument root, final boolean rootDigested, final Spewer spewer,
+                           final long before) throws IOException {
+        final DeferredOcr deferredOcr = isOcrDeferred() ? new DeferredOcr(deferredOcrQueue,
+                pdfConfig.getOcrStrategy(), root, EmbedSpawner.copyOf(root.getMetadata())) : null;
+
+        try {
+            doExtract(root, rootDigested, spewer, before, deferredOcr);
+        } catch (final Throwable t) {
+            if (null != deferredOcr) {
+                deferredOcr.discard();
+            }
+            throw t;
+        }
+
+        if (firstDocumentWritten.compareAndSet(false, true)) {
+            logger.info("First document written {}ms after the process started.",
+                    currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+        }
+
+        // Only once the whole tree is written, so that none of it is written over by its own version without OCR. A
+        // root marked as waiting for OCR was deferred before it was written; one that needs it for its PDF pages
+        // carries no mark, and is deferred now.
+        if (null != deferredOcr) {
+            if (deferredOcr.needsOcr(root.getMetadata())) {
+                deferredOcr.deferRoot();
+            }
+            final int deferred = deferredOcr.flush();
+            if (deferred > 0) {
+                logger.info("{} had {} documents queued for OCR", root.getPath(), deferred);
+            }
+        }
+    }
+
+    private void doExtract(final TikaDocument root, final boolean rootDigested, final Spewer spewer,
+                           final long before, final DeferredOcr deferredOcr) throws IOException {
+        final Path path = root.getPath();
+
+        // Capture the root's page indices from the parse that the spewer drives, so that its pages are then read
+        // without parsing it again. Not in the first phase of a two-phase extraction, whose text isn't final.
+        final AtomicReference<PageIndicesContentHandler> pageIndices = new AtomicReference<>();
+        final Function<Writer, ContentHandler> rootHandler = null == embedOutput || null != deferredOcr
+                ? outputHandler() : writer -> {
+                    final PageIndicesContentHandler handler = new PageIndicesContentHandler(
+                            outputHandler().apply(writer));
+                    pageIndices.set(handler);
+                    return handler;
+                };
+
+        if (pushContent && spewer instanceof PushedContentSpewer pushed) {
+            extractPushed(root, rootDigested, spewer, pushed, before, deferredOcr, rootHandler);
+        } else if (streamingSpew && EmbedHandling.SPAWN == embedHandling) {
+            try (StreamingSpewCoordinator coordinator = spewCoordinator(spewer)) {
+                // Start the spew worker BEFORE extract(): extract() constructs the pull-parser and
+                // blocks on Tika's first-character read of the ROOT pipe, which for a PST/OST never
+                // emits root text until the parse ends. The parse meanwhile produces embeds onto the
+                // bounded queue, so the worker must already be draining or the queue fills and the
+                // parse deadlocks (the first-char read can never complete). The worker drains embeds
+                // throughout the parse; spew() below writes the root last and awaits the worker.
+                coordinator.start();
+                final TikaDocument document = extract(root, rootDigested, coordinator, deferredOcr, rootHandler);
+                logger.info("{} streaming-spew started in {}ms", path, currentTimeMillis() - before);
+                // Foreground writes the root (driving the rest of the parse), then the coordinator
+                // awaits every embed and closes the root reader (temp cleanup). start() is idempotent.
+                coordinator.spew(document);
+            }
+        } else {
+            final TikaDocument document = extract(root, rootDigested, null, deferredOcr, rootHandler);
+            logger.info("{} extracted in {}ms", path, currentTimeMillis() - before);
+            spewer.write(document);
+        }
+
+        // Only complete if the spewer read the whole text.
+        final PageIndicesContentHandler handler = pageIndices.get();
+        if (null != handler && handler.isComplete()) {
+            try {
+                savePageIndices(root.getId(), handler.getPageIndices());
+            } catch (final IOException e) {
+                logger.warn("Unable to save the page indices of {}.", path, e);
+            }
+        }
+    }
+
+    /**
+     * Parse a root on this thread, its handlers writing its text straight to the spewer, then write the rest of it
+     * and its embeds. There's no parsing thread, so the embeds are written as by the reader-based extraction, and
+     * streamed to the spewer as they are parsed if streaming spew is on.
+     */
+    private void extractPushed(final TikaDocument root, final boolean rootDigested, final Spewer spewer,
+                               final PushedContentSpewer pushed, final long before, final DeferredOcr deferredOcr,
+                               final Function<Writer, ContentHandler> rootHandler) throws IOException {
+        final boolean streaming = streamingSpew && EmbedHandling.SPAWN == embedHandling;
+        final ParserGraph graph = parserGraph();
+        final Parser rootParser = rootDigested ? graph.autoDetectParser() : graph.parser();
+
+        // Spilled embed text is deleted once the coordinator, closed first, has written the embeds.
+        try (TemporaryResources embedTextResources = new TemporaryResources();
+             StreamingSpewCoordinator coordinator = streaming
+                     ? spewCoordinator(spewer) : null) {
+            if (null != coordinator) {
+                coordinator.start();
+            }
+
+            final ParseContext context = parseContext(root, graph, outputHandler(), metadata -> true, coordinator,
+                    deferredOcr, embedTextResources);
+
+            try (PushedContentWriter writer = new PushedContentWriter(pushed.openPushedContent(root))) {
+                parsePushed(rootParser, root, context, rootHandler.apply(writer), writer);
+            }
+            logger.info("{} extracted and pushed in {}ms", root.getPath(), currentTimeMillis() - before);
+
+            if (null != coordinator) {
+                coordinator.spewPushed(pushed, root);
+            } else {
+                pushed.writePushed(root);
+            }
+        }
+    }
+
+    // Fails as reading the text of a parsing reader would.
+    private static void parsePushed(final Parser parser, final TikaDocument root, final ParseContext context,
+                                    final ContentHandler handler, final PushedContentWriter writer)
+            throws IOException {
+        final Metadata metadata = root.getMetadata();
+
+        try (TikaInputStream tis = TikaInputStream.get(root.getPath(), metadata)) {
+            parser.parse(tis, handler, metadata, context);
+        } catch (final ZeroByteFileException e) {
+            NoContentReason.stamp(metadata, NoContentReason.EMPTY_FILE);
+        } catch (final IOException | SAXException | TikaException | RuntimeException e) {
+            if (null != writer.getFailure()) {
+                throw writer.getFailure();
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw new IOException("", e);
+        }
+    }
+
+    // Digest the root up front with the configured digester, into the root's own metadata so that the parse
+    // doesn't digest it again. Returns null when there's no digester or it sets no digest.
+    private String digestRoot(final TikaDocument root) throws IOException {
+        final DigestingParser.Digester digester = this.digester;
+
+        if (null == digester) {
+            return null;
+        }
+
+        final Metadata metadata = root.getMetadata();
+
+        try (TikaInputStream tis = TikaInputStream.get(root.getPath(), metadata)) {
+            digester.digest(tis, metadata, new ParseContext());
+        }
+
+        return Identifier.findDigest(metadata);
+    }
+
+    // The digest the extraction would compute for the file, for the reporter to compare with the one it recorded.
+    private String digest(final Path path) throws IOException {
+        return digestRoot(documentFactory.create(path));
+    }
+
     /**
      * Extract and spew content from a document. This method is the same as {@link #extract(Path, Spewer)} with
      * the exception that the document will be skipped if the reporter returns {@literal false} for a call to
-     * {@link Reporter#skip(Path)}.
+     * {@link Reporter#skip(Path, Reporter.ContentDigester)}.
      * <p>
-     * If the document is not skipped, then the result of the extraction is passed to the reporter in a call to
-     * {@link Reporter#save(Path, ExtractionStatus, Exception)}.
+     * If the document is not skipped, then the result of the extraction and the digest of the document's content it
+     * computed are passed to the reporter in a call to {@link Reporter#save(Path, ExtractionStatus, Exception, String)}.
+     * The reporter digests the document itself only if it changed since it was recorded, with the configured digester.
      *
      * @param path     document to extract from
      * @param spewer   endpoint to write to
@@ -691,7 +1371,7 @@ public class Extractor implements AutoCloseable {
     public void extract(final Path path, final Spewer spewer, final Reporter reporter) {
         Objects.requireNonNull(reporter);
 
-        if (reporter.skip(path)) {
+        if (reporter.skip(path, this::digest)) {
             logger.info(String.format("File already extracted; skipping: \"%s\".", path));
             return;
         }
@@ -699,9 +1379,10 @@ public class Extractor implements AutoCloseable {
         ExtractionStatus status = ExtractionStatus.SUCCESS;
         Exception exception = null;
         Throwable fatal = null;
+        String digest = null;
 
         try {
-            extract(path, spewer);
+            digest = extractDigested(path, spewer);
         } catch (final Throwable t) {
             if (t instanceof Exception) {
                 exception = (Exception) t;
@@ -725,7 +1406,7 @@ public class Extractor implements AutoCloseable {
 
         // Record best-effort. A fatal error may leave the JVM unable to record; never let that mask the original.
         try {
-            reporter.save(path, status, exception);
+            reporter.save(path, status, exception, digest);
         } catch (final Throwable recordingFailure) {
             if (fatal == null) {
                 throw recordingFailure;
@@ -836,29 +1517,102 @@ public class Extractor implements AutoCloseable {
     }
 
     public TikaDocument extract(final Path path, final SpewSink sink) throws IOException {
-        final Function<Writer, ContentHandler> handler;
+        return extract(documentFactory.create(path), false, sink, null, outputHandler());
+    }
+
+    /**
+     * @param rootHandler the handler of the root's text; embeds get the handler of the output format
+     */
+    private TikaDocument extract(final TikaDocument rootDocument, final boolean rootDigested, final SpewSink sink,
+                                 final DeferredOcr deferredOcr, final Function<Writer, ContentHandler> rootHandler)
+            throws IOException {
+        return getTikaDocument(rootDocument, rootDigested, outputHandler(), rootHandler, metadata -> true, sink,
+                deferredOcr);
+    }
+
+    private Function<Writer, ContentHandler> outputHandler() {
         if (OutputFormat.HTML == outputFormat) {
-            handler = (writer) -> new ExpandedTitleContentHandler(new HTML5Serializer(writer));
+            return (writer) -> new ExpandedTitleContentHandler(new HTML5Serializer(writer));
         } else {
-            handler = BodyContentHandler::new;
+            return BodyContentHandler::new;
         }
-        return getTikaDocument(path, handler, metadata -> true, sink);
     }
 
+    /**
+     * The second phase of a two-phase extraction: parse a document queued by the first phase again, with OCR, and
+     * write it over the version written without it. Only the document itself is parsed, with its inline images: its
+     * other embeds were written by the first phase.
+     *
+     * @param item   the queued document
+     * @param input  the file to parse
+     * @param spewer endpoint to write to
+     * @throws IOException if there was an error reading or writing the document
+     */
+    void extractDeferred(final OcrWorkItem item, final Path input, final Spewer spewer) throws IOException {
+        final Path path = Paths.get(item.path());
+        final Metadata metadata = item.toMetadata();
+        final TikaDocument parent = null == item.parentId() ? null : documentFactory.create(item.parentId(), path);
+        final TikaDocument root = null == item.rootId() ? null : documentFactory.create(item.rootId(), path);
+        final TikaDocument document = null == parent ? documentFactory.create(item.id(), path, metadata)
+                : parent.newDetachedEmbed(item.id(), metadata);
+
+        final ParseContext context = new ParseContext();
+        final ParserGraph graph = parserGraph();
+
+        context.set(TesseractOCRConfig.class, ocrConfig.getConfig());
+        context.set(PDFParserConfig.class, pdfConfig);
+        context.set(DocumentSelector.class, selected -> true);
+        context.set(HtmlMapper.class, DefaultHtmlMapper.INSTANCE);
+        context.set(Parser.class, graph.parser());
+        context.set(EmbeddedDocumentExtractor.class, new InlineEmbedParser(document, context));
+
+        // A root is opened with its metadata, as by the first phase. The bytes of an embed are in a file of the
+        // queue's, which must not name it.
+        final TikaInputStream tis = null == parent ? TikaInputStream.get(input, metadata) : TikaInputStream.get(input);
+
+        // The digest is in the metadata already.
+        document.setReader(new ParsingReaderWithContentHandler(graph.autoDetectParser(), tis, metadata, context,
+                outputHandler()));
+        spewer.writeUpdate(document, parent, root, item.level());
+    }
+
+    /**
+     * Get the page indices of a document from the embed output directory, where they are saved when the document
+     * is extracted, or extract them and save them there.
+     *
+     * @param path             the path of the root document
+     * @param documentSelector selects the embeds to parse
+     * @param docId            the ID of the document, under which its page indices are saved
+     * @return the page indices
+     * @throws IOException if the document can't be parsed or the page indices can't be read or saved
+     */
     public PageIndices extractPageIndices(final Path path, DocumentSelector documentSelector, String docId) throws IOException {
         Path cachedDirectory = ofNullable(embedOutput).map(p -> getEmbeddedPath(p, docId)).orElse(null);
         if (cachedDirectory != null && cachedDirectory.resolve(PAGES_JSON).toFile().exists()) {
-            return new ObjectMapper().readValue(cachedDirectory.resolve(PAGES_JSON).toFile(),  PageIndices.class);
+            return PAGES_MAPPER.readValue(cachedDirectory.resolve(PAGES_JSON).toFile(), PageIndices.class);
         } else {
             PageIndices pageIndices = extractPageIndices(path, documentSelector);
             if (cachedDirectory != null) {
-                Files.createDirectories(cachedDirectory);
-                new ObjectMapper().writeValue(cachedDirectory.resolve(PAGES_JSON).toFile(), pageIndices);
+                savePageIndices(docId, pageIndices);
             }
             return pageIndices;
         }
     }
 
+    // Written to a temporary file first, so that a concurrent reader never reads a partial file.
+    private void savePageIndices(final String docId, final PageIndices pageIndices) throws IOException {
+        final Path file = getEmbeddedPath(embedOutput, docId).resolve(PAGES_JSON);
+        Files.createDirectories(file.getParent());
+
+        final Path temporary = Files.createTempFile(file.getParent(), "pages", ".json.tmp");
+        try {
+            PAGES_MAPPER.writeValue(temporary.toFile(), pageIndices);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
     public PageIndices extractPageIndices(final Path path) throws IOException {
         return extractPageIndices(path, metadata -> true);
     }
@@ -910,6 +1664,72 @@ public class Extractor implements AutoCloseable {
         return contentHandler.getPageIndices();
     }
 
+    /**
+     * Extract the text of a range of pages. A PDF is cut to these pages before it's parsed, so that the time taken
+     * depends on the size of the range rather than that of the document. Documents in other formats are parsed
+     * whole and the pages of the range picked from their text, if the parser marks pages.
+     *
+     * The extractor's configuration applies, OCR included.
+     *
+     * @param path      the document
+     * @param firstPage the first page of the range, from 1
+     * @param lastPage  the last page of the range, which may be past the end of the document
+     * @return the text of the pages of the range that are in the document
+     * @throws IOException if the document can't be parsed
+     */
+    public PageRange extractPageRange(final Path path, final int firstPage, final int lastPage) throws IOException {
+        if (firstPage < 1 || lastPage < firstPage) {
+            throw new IllegalArgumentException(String.format("Invalid page range: %d to %d.", firstPage, lastPage));
+        }
+
+        if (isPdf(path)) {
+            try (final TemporaryResources tmp = new TemporaryResources()) {
+                final Path range = tmp.createTempFile(".pdf");
+                final int count;
+
+                try {
+                    count = PageRange.copyPdfPages(path, firstPage, lastPage, range);
+                } catch (final IOException e) {
+                    logger.warn("Unable to cut {} to pages {} to {}; parsing it whole.", path, firstPage, lastPage, e);
+                    return pickPages(extractPageTexts(path), firstPage, lastPage);
+                }
+
+                if (firstPage > count) {
+                    return new PageRange(firstPage, List.of());
+                }
+
+                return new PageRange(firstPage, extractPageTexts(range));
+            }
+        }
+
+        return pickPages(extractPageTexts(path), firstPage, lastPage);
+    }
+
+    private List<String> extractPageTexts(final Path path) throws IOException {
+        final PageRange.PagesCollector collector = new PageRange.PagesCollector();
+        final TikaDocument tikaDocument = getTikaDocument(path, writer -> collector, metadata -> true);
+        try (final Reader reader = tikaDocument.getReader()) {
+            Spewer.copy(reader, Writer.nullWriter());
+        }
+        return collector.getPages();
+    }
+
+    private static PageRange pickPages(final List<String> pages, final int firstPage, final int lastPage) {
+        if (firstPage > pages.size()) {
+            return new PageRange(firstPage, List.of());
+        }
+        return new PageRange(firstPage, List.copyOf(pages.subList(firstPage - 1, Math.min(lastPage, pages.size()))));
+    }
+
+    private static boolean isPdf(final Path path) throws IOException {
+        final Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, path.getFileName().toString());
+
+        try (final TikaInputStream tis = TikaInputStream.get(path)) {
+            return MediaType.application("pdf").equals(MimeTypes.getDefaultMimeTypes().detect(tis, metadata));
+        }
+    }
+
     private PagesContentHandler createContentHandlerForPages() {
         if (OutputFormat.HTML == outputFormat) {
             return new PagesContentHandler(new ExpandedTitleContentHandler(new HTML5Serializer(Writer.nullWriter())));
@@ -927,48 +1747,84 @@ public class Extractor implements AutoCloseable {
     }
 
     private TikaDocument getTikaDocument(Path path, final Function<Writer, ContentHandler> handlerProvider, DocumentSelector documentSelector) throws IOException {
-        return getTikaDocument(path, handlerProvider, documentSelector, null);
+        return getTikaDocument(documentFactory.create(path), false, handlerProvider, handlerProvider, documentSelector,
+                null, null);
     }
 
-    private TikaDocument getTikaDocument(Path path, final Function<Writer, ContentHandler> handlerProvider, DocumentSelector documentSelector, final SpewSink sink) throws IOException {
-        final TikaDocument rootDocument = documentFactory.create(path);
+    /**
+     * @param rootDigested whether the root's digest is already in its metadata (see {@link #digestRoot}), in
+     *                     which case the root is parsed without digesting it again; embeds are still digested
+     * @param rootHandlerProvider the handler of the root's text, {@code handlerProvider} being that of embeds
+     */
+    private TikaDocument getTikaDocument(final TikaDocument rootDocument, final boolean rootDigested, final Function<Writer, ContentHandler> handlerProvider, final Function<Writer, ContentHandler> rootHandlerProvider, DocumentSelector documentSelector, final SpewSink sink, final DeferredOcr deferredOcr) throws IOException {
+        final Path path = rootDocument.getPath();
         TikaInputStream tikaInputStream = TikaInputStream.get(path, rootDocument.getMetadata());
-        final ParseContext context = new ParseContext();
-        final AutoDetectParser autoDetectParser = new AutoDetectParser(defaultParser);
-
-        // Set a fallback parser that outputs an empty tikaDocument for empty files,
-        // otherwise throws an exception.
-        autoDetectParser.setFallback(FallbackParser.INSTANCE);
-        final Parser parser;
+        final ParserGraph graph = parserGraph();
+        Parser rootParser = rootDigested ? graph.autoDetectParser() : graph.parser();
+        Function<Writer, ContentHandler> rootHandler = rootHandlerProvider;
+        final TemporaryResources embedTextResources = EmbedHandling.SPAWN == embedHandling
+                ? new TemporaryResources() : null;
+        final ParseContext context = parseContext(rootDocument, graph, handlerProvider, documentSelector, sink,
+                deferredOcr, embedTextResources);
+
+        // Concatenated embeds parsed in parallel are stitched into the root's text before its parse returns.
+        if (context.get(EmbeddedDocumentExtractor.class) instanceof ConcatenateFanout fanout) {
+            rootParser = fanout.around(rootParser);
+            rootHandler = rootHandlerProvider.andThen(fanout::stitch);
+        }
 
-        if (null != digester) {
-            parser = new DigestingParser(autoDetectParser, digester, false);
-        } else {
-            parser = autoDetectParser;
+        try {
+            Reader reader = new ParsingReaderWithContentHandler(rootParser, tikaInputStream, rootDocument.getMetadata(), context, rootHandler);
+            if (null != embedTextResources) {
+                // Delete spilled embed-text temp files when the root reader is closed.
+                reader = new ResourceClosingReader(reader, embedTextResources);
+            }
+            rootDocument.setReader(reader);
+            return rootDocument;
+        } catch (final Exception e) {
+            if (null != embedTextResources) {
+                try {
+                    embedTextResources.close();
+                } catch (final IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
         }
+    }
+
+    /**
+     * @param embedTextResources holds the text of spawned embeds spilled to disk, {@code null} unless they're
+     *                           spawned
+     */
+    private ParseContext parseContext(final TikaDocument rootDocument, final ParserGraph graph,
+                                      final Function<Writer, ContentHandler> handlerProvider,
+                                      final DocumentSelector documentSelector, final SpewSink sink,
+                                      final DeferredOcr deferredOcr, final TemporaryResources embedTextResources) {
+        final Path path = rootDocument.getPath();
+        final ParseContext context = new ParseContext();
+        final Parser parser = graph.parser();
 
         if (!ocrDisabled) {
             context.set(TesseractOCRConfig.class, ocrConfig.getConfig());
         }
 
-        context.set(PDFParserConfig.class, pdfConfig);
+        context.set(PDFParserConfig.class, null != deferredOcr ? firstPhasePdfConfig() : pdfConfig);
         context.set(DocumentSelector.class, documentSelector);
 
         // Only include "safe" tags in the HTML output from Tika's HTML parser.
         // This excludes script tags and objects.
         context.set(HtmlMapper.class, DefaultHtmlMapper.INSTANCE);
 
-        TemporaryResources embedTextResources = null;
         if (EmbedHandling.SPAWN == embedHandling) {
             context.set(Parser.class, parser);
-            embedTextResources = new TemporaryResources();
             // Live progress for this path (null when called outside doExtract, e.g. page extraction).
             final ExtractionProgress currentProgress = progressTracker.get(path);
             if (currentProgress != null) {
                 // PST parser reads this back from the context to publish its message total/numerator.
+                // Archives (ZIP/7z) publish their total from it too (ArchiveUnitsParser), and EmbedSpawner
+                // supplies their numerator.
                 context.set(ExtractionProgress.class, currentProgress);
-                // Archives (ZIP/7z) get their total here; EmbedSpawner supplies their numerator.
-                applyArchiveUnitCount(path, currentProgress);
             }
             // Class name of the configured OCR parser, set SYNCHRONOUSLY on the shared embed metadata
             // by the deferred-OCR path so the indexed OCR_PARSER matches what serial mode produces
@@ -976,6 +1832,17 @@ public class Extractor implements AutoCloseable {
             // configured OCR parser class). Datashare's on-demand SourceExtractor.useOcr() reads this.
             final String ocrParserClassName =
                     (ocrDisabled || ocrConfig == null) ? null : ocrConfig.getParserClass().getName();
+            // Embed buffers borrow their segments from the pool shared by this extractor's extractions.
+            if (embedSlabPool) {
+                context.set(SlabPool.class, slabPool());
+            }
+            if (spillCompression != null) {
+                context.set(SpillCompression.class, spillCompression);
+            }
+            // Closed with the embed text resources, once the embeds are written.
+            if (embedSpillArena) {
+                context.set(SpillArena.class, SpillArena.in(embedTextResources));
+            }
             // Pass the lazy supplier so the OCR pool is created only when an eligible image
             // is actually deferred, not at Extractor construction time.
             context.set(EmbeddedDocumentExtractor.class,
@@ -983,42 +1850,28 @@ public class Extractor implements AutoCloseable {
                             embedTextResources, new MemoryPressureGauge(embedMemoryPressureThreshold),
                             this::ocrExecutor, !ocrDisabled, currentProgress, digester,
                             ocrFanout, ocrMinImageBytes, ocrParserClassName, sink, legacyUntitledNaming,
-                            maxEmbedDepth, maxEmbedSizeBytes));
+                            maxEmbedDepth, maxEmbedSizeBytes, embedResultCache,
+                            null == embedResultCache ? null : embedCacheFingerprint(), deferredOcr));
             context.set(org.icij.extract.parser.PstFanoutConfig.class,
                     new org.icij.extract.parser.PstFanoutConfig(pstFolderFanout, this::pstParseExecutor));
+            context.set(org.icij.extract.parser.ArchiveFanoutConfig.class,
+                    new org.icij.extract.parser.ArchiveFanoutConfig(archiveEntryFanout, path,
+                            archiveParseParallelism, this::archiveParseExecutor));
+            context.set(org.icij.extract.parser.MboxFanoutConfig.class,
+                    new org.icij.extract.parser.MboxFanoutConfig(mboxMessageFanout, path,
+                            archiveParseParallelism, this::archiveParseExecutor));
         } else if (EmbedHandling.CONCATENATE == embedHandling) {
             context.set(Parser.class, parser);
-            context.set(EmbeddedDocumentExtractor.class, new EmbedParser(rootDocument, context));
+            context.set(EmbeddedDocumentExtractor.class, concatenateFanout ?
+                    new ConcatenateFanout(rootDocument, context, concatenateParallelism,
+                            embedMemoryBudgetBytes, this::concatenateExecutor) :
+                    new EmbedParser(rootDocument, context));
         } else {
             context.set(Parser.class, EmptyParser.INSTANCE);
             context.set(EmbeddedDocumentExtractor.class, new EmbedBlocker());
         }
 
-        try {
-            Reader reader = new ParsingReaderWithContentHandler(parser, tikaInputStream, rootDocument.getMetadata(), context, handlerProvider);
-            if (null != embedTextResources) {
-                // Delete spilled embed-text temp files when the root reader is closed.
-                reader = new ResourceClosingReader(reader, embedTextResources);
-            }
-            rootDocument.setReader(reader);
-            return rootDocument;
-        } catch (final Exception e) {
-            if (null != embedTextResources) {
-                try {
-                    embedTextResources.close();
-                } catch (final IOException suppressed) {
-                    e.addSuppressed(suppressed);
-                }
-            }
-            throw e;
-        }
-    }
-
-    // Best-effort: give the progress heartbeat a denominator for catalog archives (ZIP/7z). Any
-    // failure leaves expectedUnits unknown (-1) and the heartbeat stays count-only. Package-private
-    // for direct testing.
-    void applyArchiveUnitCount(final Path path, final ExtractionProgress progress) {
-        ArchiveEntryCounter.countTopLevelEntries(path).ifPresent(progress::setExpectedUnits);
+        return context;
     }
 
     private void excludeParser(final Class<? extends Parser> exclude) {
@@ -1028,8 +1881,11 @@ public class Extractor implements AutoCloseable {
     public static CompositeParser replaceParser(Parser parser, final Class<? extends Parser> exclude, final Function<Parser, Parser> parserFn) {
         if (parser instanceof CompositeParser composite) {
             final List<Parser> parsers = new ArrayList<>();
+            final boolean fromSnapshot = getAllSubParsers(composite)
+                    .anyMatch(ParserRegistrySnapshot.LazyParser.class::isInstance);
             getAllSubParsers(composite).forEach(p -> {
-                if (p.getClass().equals(exclude) || exclude.isAssignableFrom(p.getClass())) {
+                final Class<? extends Parser> parserClass = ParserRegistrySnapshot.parserClass(p);
+                if (parserClass.equals(exclude) || exclude.isAssignableFrom(parserClass)) {
                     if (parserFn != null) {
                         parsers.add(parserFn.apply(p));
                     }
@@ -1037,7 +1893,12 @@ public class Extractor implements AutoCloseable {
                     parsers.add(p);
                 }
             });
-            ServiceLoaderUtils.sortLoadedClasses(parsers);
+            // Parsers created from a snapshot are sorted by the class they stand for, as Tika would have loaded them.
+            if (fromSnapshot) {
+                ParserRegistrySnapshot.sort(parsers);
+            } else {
+                ServiceLoaderUtils.sortLoadedClasses(parsers);
+            }
             //reverse the order of parsers so that custom ones come last
             //this will prevent them from being overwritten in getParsers(ParseContext ..)
             Collections.reverse(parsers);
@@ -1069,11 +1930,36 @@ public class Extractor implements AutoCloseable {
         return null;
     }
 
-    private void addParser(final Parser toAdd) {
+    private synchronized void addParser(final Parser toAdd) {
         defaultParser = addParser(defaultParser, toAdd);
+        parserGraph = null;
+        embedCacheFingerprint = null;
     }
 
-    private void replaceParser(final Class<? extends Parser> exclude, final Function<Parser, Parser> parserFn) {
+    private synchronized void replaceParser(final Class<? extends Parser> exclude,
+                                            final Function<Parser, Parser> parserFn) {
         defaultParser = replaceParser(defaultParser, exclude, parserFn);
+        parserGraph = null;
+        embedCacheFingerprint = null;
+    }
+
+    /**
+     * The shared parser graph for the current configuration, built on first use after any change to
+     * the parser set or digester. Package-private for tests.
+     */
+    ParserGraph parserGraph() {
+        // Every parse reads the graph, so the lock is only taken to build it.
+        ParserGraph graph = parserGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = parserGraph;
+                if (graph == null) {
+                    graph = null == detector ? ParserGraph.build(defaultParser, digester)
+                            : ParserGraph.build(defaultParser, digester, detector);
+                    parserGraph = graph;
+                }
+            }
+        }
+        return graph;
     }
 }
@@ -0,0 +1,67 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.EmbeddedContentHandler;
+import org.icij.extract.document.TikaDocument;
+import org.icij.extract.ocr.OCRParser;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses the inline embeds of a document, like images in PDFs, into the document's own text, and ignores the others.
+ *
+ * Used by the second phase of a two-phase extraction (see {@link DeferredOcrConsumer}) to parse a document again with
+ * OCR: its inline images were skipped by the first phase, while its other embeds were already written as documents
+ * of their own. Inline embeds are handled exactly as {@link EmbedSpawner} handles them.
+ */
+class InlineEmbedParser extends EmbedParser {
+
+	private final TikaDocument document;
+
+	InlineEmbedParser(final TikaDocument document, final ParseContext context) {
+		super(document, context);
+		this.document = document;
+	}
+
+	@Override
+	public boolean shouldParseEmbedded(final Metadata metadata) {
+		return isInline(metadata) && super.shouldParseEmbedded(metadata);
+	}
+
+	@Override
+	public void parseEmbedded(final InputStream input, final ContentHandler handler, final Metadata metadata,
+	                          final boolean outputHtml) throws SAXException, IOException {
+		if (!isInline(metadata)) {
+			return;
+		}
+
+		if (outputHtml) {
+			writeStart(handler, metadata);
+		}
+
+		try {
+			delegateParsing(input, new EmbeddedContentHandler(new BodyContentHandler(handler)), metadata);
+
+			// If OCR was used for this embedded leaf item, bubble up to the document metadata, as EmbedSpawner does.
+			final String ocrParser = metadata.get(OCRParser.OCR_PARSER);
+			if (ocrParser != null) {
+				document.getMetadata().set(OCRParser.OCR_PARSER, ocrParser);
+			}
+		} finally {
+			if (outputHtml) {
+				writeEnd(handler);
+			}
+		}
+	}
+
+	static boolean isInline(final Metadata metadata) {
+		return TikaCoreProperties.EmbeddedResourceType.INLINE.toString()
+				.equals(metadata.get(TikaCoreProperties.EMBEDDED_RESOURCE_TYPE));
+	}
+}
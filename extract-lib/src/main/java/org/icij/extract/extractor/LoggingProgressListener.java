@@ -5,14 +5,24 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
 import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
-/** Default progress listener: logs one INFO line per in-flight file each heartbeat. */
+/**
+ * Default progress listener: logs one INFO line per in-flight file each heartbeat, then one with the statistics of
+ * the embed text segments pool, if the extractor has one.
+ */
 public class LoggingProgressListener implements ProgressListener {
     private static final Logger logger = LoggerFactory.getLogger(LoggingProgressListener.class);
     private final LongSupplier clock;
+    private final Supplier<SlabPool.Stats> slabPoolStats;
 
     public LoggingProgressListener() { this(System::currentTimeMillis); }
-    public LoggingProgressListener(final LongSupplier clock) { this.clock = clock; }
+    public LoggingProgressListener(final LongSupplier clock) { this(clock, () -> null); }
+
+    LoggingProgressListener(final LongSupplier clock, final Supplier<SlabPool.Stats> slabPoolStats) {
+        this.clock = clock;
+        this.slabPoolStats = slabPoolStats;
+    }
 
     static String formatLine(final ExtractionProgress p, final long now) {
         final long seconds = p.elapsedMillis(now) / 1000L;
@@ -46,5 +56,9 @@ public class LoggingProgressListener implements ProgressListener {
         for (final ExtractionProgress p : inFlight) {
             logger.info(formatLine(p, now));
         }
+        final SlabPool.Stats stats = slabPoolStats.get();
+        if (stats != null) {
+            logger.info("Embed text segments: {}", stats);
+        }
     }
 }
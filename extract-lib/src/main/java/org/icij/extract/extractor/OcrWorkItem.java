@@ -0,0 +1,59 @@
+package org.icij.extract.extractor;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.tika.metadata.Metadata;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A document whose OCR was deferred to the second phase of a two-phase extraction (see {@link DeferredOcrQueue}).
+ * It holds what the second phase needs to parse the document again, OCR included, and to write it over the version
+ * written without OCR: its place in the tree and its metadata as it was before the first phase parsed it.
+ *
+ * @param id       the ID of the document
+ * @param parentId the ID of its parent, or {@code null} for a root
+ * @param rootId   the ID of its root, or {@code null} for a root
+ * @param path     the path of its root
+ * @param level    its depth in the tree, 0 for a root
+ * @param input    the file to parse, or {@code null} if its bytes were copied into the queue's directory
+ * @param metadata its metadata before the parse, digest included
+ * @param owner    the queue that persisted it, or {@code null} before it's persisted (see
+ *                 {@link DeferredOcrQueue#recover(java.util.Set)})
+ */
+public record OcrWorkItem(String id, String parentId, String rootId, String path, int level, String input,
+                          Map<String, List<String>> metadata, String owner) {
+
+    public OcrWorkItem(final String id, final String parentId, final String rootId, final String path,
+                       final int level, final String input, final Map<String, List<String>> metadata) {
+        this(id, parentId, rootId, path, level, input, metadata, null);
+    }
+
+    /**
+     * The key of the item in the queue. The same document submitted again, for example when the first phase is
+     * restarted, has the same key and replaces the earlier submission.
+     */
+    String key() {
+        return DigestUtils.sha256Hex(rootId + "/" + parentId + "/" + id);
+    }
+
+    OcrWorkItem ownedBy(final String owner) {
+        return new OcrWorkItem(id, parentId, rootId, path, level, input, metadata, owner);
+    }
+
+    Metadata toMetadata() {
+        final Metadata copy = new Metadata();
+        metadata.forEach((name, values) -> values.forEach(value -> copy.add(name, value)));
+        return copy;
+    }
+
+    static Map<String, List<String>> valuesOf(final Metadata metadata) {
+        final Map<String, List<String>> values = new LinkedHashMap<>();
+        for (String name : metadata.names()) {
+            values.put(name, Arrays.asList(metadata.getValues(name)));
+        }
+        return values;
+    }
+}
@@ -21,6 +21,7 @@ public class PageIndicesContentHandler extends ContentHandlerDecorator {
     private long pageStartIndex = 0;
     private boolean bodyStarted = false;
     private int embeddedLevel = -1;
+    private boolean complete = false;
 
     protected boolean startPageCalled = false;
     protected long charIndex = 0;
@@ -49,6 +50,14 @@ public class PageIndicesContentHandler extends ContentHandlerDecorator {
     public void endDocument() throws SAXException {
         super.endDocument();
         embeddedLevel--;
+        complete = embeddedLevel < 0;
+    }
+
+    /**
+     * @return whether the end of the root document was reached, after which the page indices are final
+     */
+    boolean isComplete() {
+        return complete;
     }
 
     @Override
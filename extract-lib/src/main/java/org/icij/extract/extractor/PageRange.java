@@ -0,0 +1,147 @@
+package org.icij.extract.extractor;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The text of a range of pages of a document, as returned by {@link Extractor#extractPageRange(Path, int, int)}.
+ *
+ * Pages are numbered from 1, as in the document, and every page of the range is there, empty ones included, so
+ * that {@code pages().get(i)} is always the text of page {@code firstPage() + i}. The range stops at the last page
+ * of the document.
+ *
+ * @param firstPage the number of the first page
+ * @param pages     the text of each page
+ */
+public record PageRange(int firstPage, List<String> pages) {
+
+    /**
+     * @return the number of the last page, or {@code firstPage() - 1} if the range is empty
+     */
+    public int lastPage() {
+        return firstPage + pages.size() - 1;
+    }
+
+    /**
+     * Copy a range of pages of a PDF to a new PDF, so that only they are parsed. Only the objects of these pages
+     * are read from the source.
+     *
+     * @param source    the PDF
+     * @param firstPage the first page to copy, from 1
+     * @param lastPage  the last page to copy, past the end of the document for all the following pages
+     * @param target    the file to save the copy to, which is only written if the document has the first page
+     * @return the number of pages of the document
+     * @throws IOException if the PDF can't be read or the copy saved
+     */
+    static int copyPdfPages(final Path source, final int firstPage, final int lastPage, final Path target)
+            throws IOException {
+        try (final PDDocument document = Loader.loadPDF(source.toFile())) {
+            final int count = document.getNumberOfPages();
+
+            if (firstPage > count) {
+                return count;
+            }
+
+            // Documents that can be opened without a password can be copied without their encryption.
+            document.setAllSecurityToBeRemoved(true);
+
+            try (final PDDocument range = new PDDocument()) {
+                for (int i = firstPage; i <= Math.min(lastPage, count); i++) {
+                    range.importPage(document.getPage(i - 1));
+                }
+
+                range.save(target.toFile());
+            }
+
+            return count;
+        }
+    }
+
+    /**
+     * Collects the text of each page that a parser marks, with a {@code div} of class {@code page}, including the
+     * text of the embeds inlined in it. Unlike {@link PagesContentHandler}, empty pages are kept, so that pages keep
+     * their number.
+     */
+    static class PagesCollector extends ContentHandlerDecorator {
+
+        private final List<String> pages = new ArrayList<>();
+        private StringBuilder page = null;
+        private int embeddedLevel = -1;
+        private int divDepth = 0;
+
+        PagesCollector() {
+            super(new DefaultHandler());
+        }
+
+        List<String> getPages() {
+            return pages;
+        }
+
+        @Override
+        public void startDocument() throws SAXException {
+            super.startDocument();
+            embeddedLevel++;
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            super.endDocument();
+            embeddedLevel--;
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName,
+                                 final Attributes atts) throws SAXException {
+            super.startElement(uri, localName, qName, atts);
+            if (0 != embeddedLevel || !"div".equals(qName)) {
+                return;
+            }
+
+            if (null != page) {
+                divDepth++;
+            } else if ("page".equals(atts.getValue("class"))) {
+                page = new StringBuilder();
+            }
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+            super.endElement(uri, localName, qName);
+            if (0 != embeddedLevel || !"div".equals(qName) || null == page) {
+                return;
+            }
+
+            if (divDepth > 0) {
+                divDepth--;
+            } else {
+                pages.add(page.toString());
+                page = null;
+            }
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) throws SAXException {
+            super.characters(ch, start, length);
+            if (null != page) {
+                page.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException {
+            super.ignorableWhitespace(ch, start, length);
+            if (null != page) {
+                page.append(ch, start, length);
+            }
+        }
+    }
+}
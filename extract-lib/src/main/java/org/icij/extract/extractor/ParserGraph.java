@@ -0,0 +1,113 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.DigestingParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.icij.extract.parser.FallbackParser;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The fully-wired parser an {@link Extractor} hands to every parse: an {@link AutoDetectParser} over
+ * the configured composite, with the {@link FallbackParser} set, optionally wrapped in a
+ * {@link DigestingParser}.
+ *
+ * <p>Built once per extractor configuration and shared by every root and embedded document on every
+ * extraction thread, instead of being rebuilt per document. Constructing an {@link AutoDetectParser}
+ * without a detector instantiates a new {@code DefaultDetector}, which re-runs the detector service
+ * lookup, and {@link CompositeParser#getParsers(ParseContext)} rebuilds the media-type map by asking
+ * every leaf parser for its supported types on each call. Here the detector is taken from the default
+ * {@link TikaConfig} once and the media-type map is resolved once and then memoized.
+ *
+ * <p>Immutable once built, and every collaborator is a thread-safe Tika parser, so a single instance is
+ * safely shared across threads. {@link Extractor} drops its graph whenever the parser set or the
+ * digester changes and builds a new one on next use.
+ */
+final class ParserGraph {
+
+    private final Parser autoDetectParser;
+    private final Parser parser;
+
+    private ParserGraph(final Parser autoDetectParser, final Parser parser) {
+        this.autoDetectParser = autoDetectParser;
+        this.parser = parser;
+    }
+
+    /**
+     * @param defaultParser the extractor's configured composite parser
+     * @param digester      digester for document ids, or {@code null} to skip digesting
+     * @return a new, immutable parser graph
+     */
+    static ParserGraph build(final Parser defaultParser, final DigestingParser.Digester digester) {
+        return build(defaultParser, digester, TikaConfig.getDefaultConfig().getDetector());
+    }
+
+    static ParserGraph build(final Parser defaultParser, final DigestingParser.Digester digester,
+                             final Detector detector) {
+        final Parser resolved = defaultParser instanceof CompositeParser composite
+                ? new MemoizedCompositeParser(composite.getMediaTypeRegistry(),
+                        Extractor.getAllSubParsers(composite).collect(Collectors.toList()))
+                : defaultParser;
+        final AutoDetectParser autoDetectParser = new AutoDetectParser(detector, resolved);
+
+        // Set a fallback parser that outputs an empty document for empty files, otherwise throws an exception.
+        // Done before the graph is published: the parser is never mutated after build().
+        autoDetectParser.setFallback(FallbackParser.INSTANCE);
+        final Parser parser = null == digester ? autoDetectParser
+                : new DigestingParser(autoDetectParser, digester, false);
+        return new ParserGraph(autoDetectParser, parser);
+    }
+
+    /** The parser to run root documents through, and to register as the context's {@link Parser}. */
+    Parser parser() {
+        return parser;
+    }
+
+    /** The detecting parser underneath the digesting wrapper (the same instance when not digesting). */
+    Parser autoDetectParser() {
+        return autoDetectParser;
+    }
+
+    /**
+     * A flat {@link CompositeParser} that resolves its media-type map once instead of on every lookup.
+     *
+     * <p>Leaf parsers may vary their supported types with the OCR configuration in the context (the OCR
+     * parsers report none when OCR is skipped), so the memoized map is keyed on the identity of the
+     * context's {@link TesseractOCRConfig}. An extractor always passes the same instance, so in practice
+     * the map is computed on the first parse and reused for the life of the graph.
+     */
+    static final class MemoizedCompositeParser extends CompositeParser {
+
+        private static final long serialVersionUID = -3520734581062387406L;
+
+        private transient volatile Resolved resolved;
+
+        MemoizedCompositeParser(final MediaTypeRegistry registry, final List<Parser> parsers) {
+            super(registry, parsers);
+        }
+
+        @Override
+        public Map<MediaType, Parser> getParsers(final ParseContext context) {
+            final TesseractOCRConfig ocrConfig = context.get(TesseractOCRConfig.class);
+            final Resolved current = resolved;
+            if (current != null && current.ocrConfig == ocrConfig) {
+                return current.parsers;
+            }
+            final Map<MediaType, Parser> parsers = Collections.unmodifiableMap(super.getParsers(context));
+            resolved = new Resolved(ocrConfig, parsers);
+            return parsers;
+        }
+
+        private record Resolved(TesseractOCRConfig ocrConfig, Map<MediaType, Parser> parsers) {}
+    }
+}
@@ -0,0 +1,335 @@
+package org.icij.extract.extractor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.tika.Tika;
+import org.apache.tika.config.ServiceLoader;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.detect.DefaultEncodingDetector;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.mime.MediaTypeRegistry;
+import org.apache.tika.parser.AbstractEncodingDetectorParser;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.RenderingParser;
+import org.apache.tika.renderer.CompositeRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A snapshot of the parsers of Tika's default configuration and of the media types each supports, saved to a file so
+ * that later processes can start without loading them all.
+ *
+ * <p>Creating Tika's default configuration instantiates every parser found on the class path, which takes seconds
+ * and is paid by every process before its first document. A process that finds an up-to-date snapshot builds its
+ * composite parser from {@link LazyParser}s instead: each knows the media types of the parser it stands for and
+ * only instantiates it on its first parse, so that a batch of PDFs never loads the parsers of spreadsheets or fonts.
+ *
+ * <p>A snapshot is only used if it was taken from the same Tika version and the same parser services on the class
+ * path, otherwise it is taken again. It's never used with a custom Tika configuration (see
+ * {@link TikaConfig#getDefaultConfig()}).
+ */
+record ParserRegistrySnapshot(String fingerprint, List<Entry> parsers) {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParserRegistrySnapshot.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String SERVICES = "META-INF/services/" + Parser.class.getName();
+
+    /**
+     * @param parser the class of a leaf parser
+     * @param types  the media types it supports
+     */
+    record Entry(String parser, List<String> types) {}
+
+    /**
+     * The parser of Tika's default configuration, built from the snapshot in the given file if it's up to date, or
+     * from the configuration itself otherwise, in which case the snapshot is taken for the next process.
+     *
+     * @param file the snapshot file
+     * @return a composite parser
+     */
+    static Parser defaultParser(final Path file) {
+        final String fingerprint = fingerprint();
+
+        if (null == fingerprint) {
+            logger.info("A custom Tika configuration is set: not using the parser snapshot.");
+            return TikaConfig.getDefaultConfig().getParser();
+        }
+
+        try {
+            final ParserRegistrySnapshot snapshot = read(file);
+            if (null != snapshot && fingerprint.equals(snapshot.fingerprint())) {
+                return snapshot.toParser();
+            }
+        } catch (final IOException e) {
+            logger.warn("Unable to read the parser snapshot at \"{}\"; taking it again.", file, e);
+        }
+
+        final Parser parser = TikaConfig.getDefaultConfig().getParser();
+        final ParserRegistrySnapshot snapshot = of(fingerprint, parser);
+
+        if (null == snapshot) {
+            logger.info("Some parsers can't be created lazily: not taking a parser snapshot.");
+        } else {
+            try {
+                snapshot.write(file);
+                logger.info("Saved a snapshot of {} parsers to \"{}\".", snapshot.parsers().size(), file);
+            } catch (final IOException e) {
+                logger.warn("Unable to save the parser snapshot to \"{}\".", file, e);
+            }
+        }
+
+        return parser;
+    }
+
+    /**
+     * @return the snapshot of the given parser, or {@code null} if any of its leaves can't be created lazily
+     */
+    static ParserRegistrySnapshot of(final String fingerprint, final Parser parser) {
+        if (!(parser instanceof CompositeParser composite)) {
+            return null;
+        }
+
+        final List<Parser> leaves = Extractor.getAllSubParsers(composite).collect(Collectors.toCollection(ArrayList::new));
+        final ParseContext context = new ParseContext();
+        final List<Entry> entries = new ArrayList<>(leaves.size());
+
+        sort(leaves);
+        for (Parser leaf : leaves) {
+            if (!isInstantiable(leaf.getClass())) {
+                return null;
+            }
+
+            entries.add(new Entry(leaf.getClass().getName(), leaf.getSupportedTypes(context).stream()
+                    .map(MediaType::toString).sorted().collect(Collectors.toList())));
+        }
+
+        return new ParserRegistrySnapshot(fingerprint, entries);
+    }
+
+    static ParserRegistrySnapshot read(final Path file) throws IOException {
+        try (final InputStream input = Files.newInputStream(file)) {
+            return MAPPER.readValue(input, ParserRegistrySnapshot.class);
+        } catch (final NoSuchFileException | FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    // Written to a temporary file first, so that a process reading the snapshot never sees it half-written.
+    void write(final Path file) throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        final Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            MAPPER.writeValue(temporary.toFile(), this);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (final IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return a composite of lazy parsers, in the order of the snapshot
+     */
+    CompositeParser toParser() {
+        final List<Parser> lazy = new ArrayList<>(parsers.size());
+
+        for (Entry entry : parsers) {
+            lazy.add(new LazyParser(entry.parser(), entry.types().stream().map(MediaType::parse)
+                    .collect(Collectors.toUnmodifiableSet())));
+        }
+
+        return new CompositeParser(MediaTypeRegistry.getDefaultRegistry(), lazy);
+    }
+
+    /**
+     * The Tika version and the parser services on the class path, which determine the default parsers.
+     *
+     * @return the fingerprint, or {@code null} if a custom Tika configuration is set
+     */
+    static String fingerprint() {
+        if (null != System.getProperty("tika.config") || null != System.getenv("TIKA_CONFIG")) {
+            return null;
+        }
+
+        final StringBuilder services = new StringBuilder(Tika.getString());
+
+        try {
+            final Enumeration<URL> resources = ParserRegistrySnapshot.class.getClassLoader().getResources(SERVICES);
+            final List<String> contents = new ArrayList<>();
+
+            for (URL url : Collections.list(resources)) {
+                try (final InputStream input = url.openStream()) {
+                    contents.add(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+
+            contents.stream().sorted().forEach(content -> services.append('\n').append(content));
+        } catch (final IOException e) {
+            logger.warn("Unable to list the parser services.", e);
+            return null;
+        }
+
+        return DigestUtils.sha256Hex(services.toString());
+    }
+
+    /**
+     * Sort parsers the way Tika sorts the parsers it loads (see
+     * {@link org.apache.tika.utils.ServiceLoaderUtils#sortLoadedClasses(List)}): Tika's own first, then by class
+     * name. Lazy parsers are sorted by the class of the parser they stand for.
+     */
+    static void sort(final List<Parser> parsers) {
+        parsers.sort((a, b) -> {
+            final String first = parserClassName(a);
+            final String second = parserClassName(b);
+            final boolean firstIsTika = first.startsWith("org.apache.tika.");
+            final boolean secondIsTika = second.startsWith("org.apache.tika.");
+
+            if (firstIsTika == secondIsTika) {
+                return first.compareTo(second);
+            }
+            return firstIsTika ? -1 : 1;
+        });
+    }
+
+    /**
+     * @return the class of the given parser, or of the parser it stands for if it's lazy
+     */
+    static Class<? extends Parser> parserClass(final Parser parser) {
+        return parser instanceof LazyParser lazy ? lazy.getParserClass() : parser.getClass();
+    }
+
+    private static String parserClassName(final Parser parser) {
+        return parser instanceof LazyParser lazy ? lazy.getParserClassName() : parser.getClass().getName();
+    }
+
+    private static boolean isInstantiable(final Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers()) || Modifier.isAbstract(type.getModifiers())) {
+            return false;
+        }
+
+        try {
+            return Modifier.isPublic(type.getConstructor().getModifiers());
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stands for a parser that is only instantiated on its first parse. It's set up the way Tika's default
+     * configuration sets up the parsers it loads.
+     */
+    static final class LazyParser implements Parser {
+
+        @Serial
+        private static final long serialVersionUID = -1420945203842135796L;
+
+        private static final ServiceLoader loader = new ServiceLoader();
+
+        private final String className;
+        private final Set<MediaType> types;
+        private transient volatile Parser parser = null;
+
+        LazyParser(final String className, final Set<MediaType> types) {
+            this.className = className;
+            this.types = types;
+        }
+
+        @Override
+        public Set<MediaType> getSupportedTypes(final ParseContext context) {
+            return types;
+        }
+
+        @Override
+        public void parse(final InputStream stream, final ContentHandler handler, final Metadata metadata,
+                          final ParseContext context) throws IOException, SAXException, TikaException {
+            getParser().parse(stream, handler, metadata, context);
+        }
+
+        String getParserClassName() {
+            return className;
+        }
+
+        // Loaded without being initialized: matching the parser against a class mustn't cost its creation.
+        Class<? extends Parser> getParserClass() {
+            try {
+                return Class.forName(className, false, LazyParser.class.getClassLoader()).asSubclass(Parser.class);
+            } catch (final ClassNotFoundException e) {
+                throw new IllegalStateException(String.format("Parser class \"%s\" not found.", className), e);
+            }
+        }
+
+        boolean isLoaded() {
+            return null != parser;
+        }
+
+        Parser getParser() throws TikaException {
+            Parser current = parser;
+
+            if (null == current) {
+                synchronized (this) {
+                    current = parser;
+                    if (null == current) {
+                        parser = current = create();
+                    }
+                }
+            }
+
+            return current;
+        }
+
+        private Parser create() throws TikaException {
+            final Parser created;
+
+            try {
+                created = getParserClass().getConstructor().newInstance();
+            } catch (final ReflectiveOperationException | IllegalStateException e) {
+                throw new TikaException(String.format("Unable to create parser \"%s\".", className), e);
+            }
+
+            if (created instanceof AbstractEncodingDetectorParser encodingDetectorParser) {
+                encodingDetectorParser.setEncodingDetector(new DefaultEncodingDetector(loader));
+            }
+            if (created instanceof RenderingParser renderingParser) {
+                renderingParser.setRenderer(new CompositeRenderer(loader));
+            }
+
+            logger.debug("Created parser \"{}\" on first use.", className);
+            return created;
+        }
+
+        @Override
+        public String toString() {
+            return "LazyParser[" + className + "]";
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.icij.extract.extractor;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+
+/**
+ * The writer that a parse pushes the text of a root to, in front of the writer of the spewer.
+ *
+ * <p>It keeps the failure it threw: parsers wrap the failures of their content handlers, so this is how the
+ * extraction reports an output failure as such rather than as a parse failure. It also stops the parse when its
+ * thread is interrupted, as closing the reader stops a parse that isn't pushed.
+ */
+class PushedContentWriter extends FilterWriter {
+
+    private IOException failure = null;
+
+    PushedContentWriter(final Writer writer) {
+        super(writer);
+    }
+
+    /**
+     * @return the first failure thrown to the parse, or {@code null}
+     */
+    IOException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        checkInterrupted();
+        try {
+            out.write(c);
+        } catch (final IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public void write(final char[] chars, final int off, final int len) throws IOException {
+        checkInterrupted();
+        try {
+            out.write(chars, off, len);
+        } catch (final IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public void write(final String string, final int off, final int len) throws IOException {
+        checkInterrupted();
+        try {
+            out.write(string, off, len);
+        } catch (final IOException e) {
+            throw failed(e);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        try {
+            out.flush();
+        } catch (final IOException e) {
+            throw failed(e);
+        }
+    }
+
+    private void checkInterrupted() throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw failed(new InterruptedIOException("The parse was interrupted."));
+        }
+    }
+
+    private IOException failed(final IOException e) {
+        if (null == failure) {
+            failure = e;
+        }
+        return e;
+    }
+}
@@ -0,0 +1,82 @@
+package org.icij.extract.extractor;
+
+import org.icij.extract.queue.DocumentSet;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the content digests of the root documents that have been extracted, so that further copies of the
+ * same file found at other paths are recorded as aliases instead of being parsed, OCR'd and spewed again.
+ *
+ * The digests are kept in a {@link DocumentSet}. A {@link org.icij.extract.queue.MemoryDocumentSet} only
+ * deduplicates within a process; a {@link org.icij.extract.redis.RedisDocumentSet} deduplicates across every
+ * extractor sharing it.
+ *
+ * A digest is only recorded once its root and embeds were spewed ({@link #record(String)}), so that a copy is never
+ * aliased to a document that failed, or whose extractor crashed, before it was written. Copies extracted at the same
+ * time are therefore all extracted, as without deduplication.
+ *
+ * This object is thread-safe.
+ */
+public class RootDeduplicator implements AutoCloseable {
+
+    private final DocumentSet<String> digests;
+    private final AtomicLong extracted = new AtomicLong();
+    private final AtomicLong aliased = new AtomicLong();
+
+    public RootDeduplicator(final DocumentSet<String> digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * Check whether content with the given digest was already extracted.
+     *
+     * @param digest the root's content digest
+     * @return {@code true} if the root is a duplicate, to be aliased, or {@code false} if it must be extracted
+     */
+    public boolean isDuplicate(final String digest) {
+        final boolean duplicate;
+
+        // The in-memory set isn't thread-safe. The lock is merely redundant for the shared sets.
+        synchronized (digests) {
+            duplicate = digests.contains(digest);
+        }
+
+        if (duplicate) {
+            aliased.incrementAndGet();
+        }
+        return duplicate;
+    }
+
+    /**
+     * Record that the root with the given digest was extracted and written, its further copies being aliased to it.
+     *
+     * @param digest the root's content digest
+     */
+    public void record(final String digest) {
+        synchronized (digests) {
+            digests.add(digest);
+        }
+
+        extracted.incrementAndGet();
+    }
+
+    /**
+     * @return the number of roots recorded as extracted by this deduplicator
+     */
+    public long extracted() {
+        return extracted.get();
+    }
+
+    /**
+     * @return the number of roots found to be duplicates by this deduplicator
+     */
+    public long aliased() {
+        return aliased.get();
+    }
+
+    @Override
+    public void close() throws Exception {
+        digests.close();
+    }
+}
@@ -0,0 +1,56 @@
+package org.icij.extract.extractor;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+
+import java.util.Locale;
+
+/**
+ * An {@link UpdatableDigester} that can compute its digest as a side effect of the single read the spool performs,
+ * for embedded documents whose stream is longer than the mark limit.
+ *
+ * <p>Without it, such an embed is read once to be spooled to a temporary file, read again from that file for the
+ * digest, and read a third time by the parser. {@link EmbedSpawner} instead parses the stream returned by
+ * {@link #teeing(TikaInputStream, Metadata)}: the digest is updated as the spool copies the bytes and is set on the
+ * metadata when the copy reaches the end, before the parser starts, so the embed's ID is final before it is spewed.
+ * The digest value and metadata key are identical to {@link UpdatableDigester} with the same modifier, and with an
+ * empty modifier to Tika's {@code CommonsDigester}.
+ *
+ * <p>File-backed streams (root documents, or embeds already spooled to write an artifact) have no spool to piggyback
+ * on and are digested from their file as before.
+ */
+public class SinglePassDigester extends UpdatableDigester {
+
+    public SinglePassDigester(final String modifier, final String algorithm) {
+        super(modifier, javaAlgorithmName(algorithm));
+    }
+
+    SinglePassDigester(final int markLimit, final String modifier, final String algorithm) {
+        super(markLimit, modifier, javaAlgorithmName(algorithm));
+    }
+
+    /**
+     * Wrap an embed's stream so that the digest is computed by the read that spools it. The returned stream must be
+     * parsed in place of {@code tis} and closed afterwards; closing it never closes {@code tis}, which belongs to the
+     * container parser.
+     *
+     * @param tis      the embed's stream, not yet read
+     * @param metadata the embed's metadata, which receives the digest
+     * @return a new stream over {@code tis}, or {@code tis} itself when it is file-backed or carries an open container
+     * (whose parser may never read the stream to the end)
+     */
+    TikaInputStream teeing(final TikaInputStream tis, final Metadata metadata) {
+        if (tis.hasFile() || null != tis.getOpenContainer()) {
+            return tis;
+        }
+        return inputStreamDigester.teeing(CloseShieldInputStream.wrap(tis), metadata);
+    }
+
+    // Accept the dash-less names used for CommonsDigester (e.g. "SHA256") as well as Java names ("SHA-256"), so the
+    // MessageDigest lookup succeeds and the metadata key (the name without dashes) matches the CommonsDigester key.
+    static String javaAlgorithmName(final String algorithm) {
+        final String name = algorithm.toUpperCase(Locale.ROOT).replace("-", "");
+        return name.startsWith("SHA") ? "SHA-" + name.substring(3) : name;
+    }
+}
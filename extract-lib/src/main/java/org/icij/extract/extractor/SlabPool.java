@@ -0,0 +1,111 @@
+package org.icij.extract.extractor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of the byte segments that {@link BudgetedEmbedBuffer}s hold the text of embeds in, shared by every
+ * extraction of an {@link Extractor}.
+ *
+ * <p>A container with hundreds of thousands of embeds otherwise allocates and drops the segments of as many buffers,
+ * which are short-lived but often outlive a young collection while they wait to be written. A buffer borrows its
+ * segments from the pool and returns them once its text is written, when its reader is closed, or once it spills.
+ * A segment that isn't returned, because the embed was never written, is collected as any other array: the pool
+ * only counts it as outstanding.
+ *
+ * <p>The pool holds at most {@code capacity} idle segments. When it's empty a segment is allocated, and a segment
+ * returned to a full pool is dropped.
+ */
+class SlabPool {
+
+    static final int SLAB_BYTES = 16 * 1024;
+
+    private final int slabBytes;
+    private final BlockingQueue<byte[]> idle;
+
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param slabBytes the size of each segment
+     * @param capacity  the maximum number of idle segments
+     */
+    SlabPool(final int slabBytes, final int capacity) {
+        if (slabBytes < 1 || capacity < 1) {
+            throw new IllegalArgumentException("The slab size and the capacity of the pool must be at least 1.");
+        }
+
+        this.slabBytes = slabBytes;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * A pool that holds at most the given number of bytes in idle segments.
+     */
+    static SlabPool ofBytes(final long bytes) {
+        return new SlabPool(SLAB_BYTES, (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / SLAB_BYTES)));
+    }
+
+    int slabBytes() {
+        return slabBytes;
+    }
+
+    /**
+     * @return an idle segment, or a new one if there's none, with the bytes of its previous borrower
+     */
+    byte[] borrow() {
+        borrowed.increment();
+
+        final byte[] slab = idle.poll();
+        if (null != slab) {
+            return slab;
+        }
+
+        allocated.increment();
+        return new byte[slabBytes];
+    }
+
+    void release(final byte[] slab) {
+        if (slab.length != slabBytes) {
+            throw new IllegalArgumentException("The segment wasn't borrowed from this pool.");
+        }
+
+        returned.increment();
+        if (!idle.offer(slab)) {
+            dropped.increment();
+        }
+    }
+
+    Stats stats() {
+        final long borrowed = this.borrowed.sum();
+        final long returned = this.returned.sum();
+
+        return new Stats(borrowed, allocated.sum(), borrowed - returned, idle.size(), dropped.sum());
+    }
+
+    /**
+     * @param borrowed    the number of segments borrowed
+     * @param allocated   the number of segments allocated because the pool was empty
+     * @param outstanding the number of segments borrowed and not returned
+     * @param idle        the number of segments in the pool
+     * @param dropped     the number of segments returned to a full pool
+     */
+    record Stats(long borrowed, long allocated, long outstanding, int idle, long dropped) {
+
+        /**
+         * @return the share of borrowed segments that were reused rather than allocated, from 0 to 1
+         */
+        double reuseRatio() {
+            return 0 == borrowed ? 0 : (double) (borrowed - allocated) / borrowed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d segments borrowed (%.0f%% reused), %d outstanding, %d idle, %d dropped",
+                    borrowed, reuseRatio() * 100, outstanding, idle, dropped);
+        }
+    }
+}
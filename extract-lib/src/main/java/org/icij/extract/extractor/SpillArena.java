@@ -0,0 +1,351 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.io.TemporaryResources;
+import org.icij.extract.document.Utf8TextReader.Extent;
+import org.icij.extract.document.Utf8TextReader.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The files that the {@link BudgetedEmbedBuffer}s of a root spill their text to, in place of a temp file each.
+ *
+ * <p>A container with hundreds of thousands of embeds that overflow the memory budget would otherwise create and
+ * delete as many files, each under the lock of the shared {@link TemporaryResources}. Here, buffers append their text
+ * to the current segment file in chunks, each at a position reserved by adding its length to the end of the file, and
+ * written there without a lock. A buffer's text is the list of its chunks' extents.
+ *
+ * <p>Once a segment file reaches {@link #SEGMENT_FILE_BYTES}, a new one is started. Each file counts the buffers with
+ * text in it, plus one while it's current, and is deleted when the count drops to zero: as the readers of those
+ * buffers are closed, once their embeds are written. Closing the arena deletes the files that are left.
+ */
+class SpillArena implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillArena.class);
+
+    static final long SEGMENT_FILE_BYTES = 256L * 1024 * 1024;
+    static final int CHUNK_BYTES = 64 * 1024;
+
+    private final long segmentFileBytes;
+    private final AtomicReference<SegmentFile> current = new AtomicReference<>();
+    private final Set<SegmentFile> files = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    private final LongAdder filesCreated = new LongAdder();
+    private final LongAdder filesDeleted = new LongAdder();
+    private final LongAdder bytesAppended = new LongAdder();
+
+    SpillArena(final long segmentFileBytes) {
+        this.segmentFileBytes = segmentFileBytes;
+    }
+
+    /**
+     * An arena that is closed along with the given resources.
+     */
+    static SpillArena in(final TemporaryResources tmp) {
+        final SpillArena arena = new SpillArena(SEGMENT_FILE_BYTES);
+
+        // TemporaryResources isn't thread-safe; see BudgetedEmbedBuffer#spill.
+        synchronized (tmp) {
+            tmp.addResource(arena);
+        }
+        return arena;
+    }
+
+    /**
+     * Open a stream appending to the arena. Once closed, its text is read from {@link Spill#extents()}, until it's
+     * released.
+     *
+     * @param pool the pool to borrow the chunk from, or {@code null} to allocate it
+     */
+    Spill open(final SlabPool pool) {
+        return new Spill(pool);
+    }
+
+    long filesCreated() {
+        return filesCreated.sum();
+    }
+
+    long filesDeleted() {
+        return filesDeleted.sum();
+    }
+
+    long bytesAppended() {
+        return bytesAppended.sum();
+    }
+
+    // The file to append to, starting one if there's none.
+    private SegmentFile current() throws IOException {
+        final SegmentFile file = current.get();
+        if (null != file) {
+            return file;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("The spill arena was closed.");
+            }
+            if (null == current.get()) {
+                final SegmentFile created = new SegmentFile(Files.createTempFile("extract-spill-", ".arena"));
+
+                files.add(created);
+                filesCreated.increment();
+                current.set(created);
+            }
+            return current.get();
+        }
+    }
+
+    // Stop appending to the given file, which is deleted once the buffers with text in it are released.
+    private void retire(final SegmentFile file) {
+        if (current.compareAndSet(file, null)) {
+            file.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            current.set(null);
+        }
+        for (SegmentFile file : files) {
+            file.delete();
+        }
+    }
+
+    private class SegmentFile implements Source {
+
+        private final Path path;
+        private final AtomicLong end = new AtomicLong();
+        // The arena's reference while the file is current, and one per buffer with text in it.
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile FileChannel channel;
+        private boolean deleted = false;
+
+        private SegmentFile(final Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        // A channel is closed by any thread interrupted while using it, so it's opened again for the other threads.
+        @Override
+        public FileChannel channel() throws IOException {
+            final FileChannel open = channel;
+            if (open.isOpen()) {
+                return open;
+            }
+
+            synchronized (this) {
+                if (deleted) {
+                    throw new IOException("The spill file \"" + path + "\" was deleted.");
+                }
+                if (!channel.isOpen()) {
+                    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                return channel;
+            }
+        }
+
+        private boolean retain() {
+            int count;
+            do {
+                count = references.get();
+                if (0 == count) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        private void release() {
+            if (0 == references.decrementAndGet()) {
+                delete();
+            }
+        }
+
+        private synchronized void delete() {
+            if (deleted) {
+                return;
+            }
+            deleted = true;
+            files.remove(this);
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+                filesDeleted.increment();
+            } catch (final IOException e) {
+                logger.warn("Unable to delete spill file \"{}\".", path, e);
+            }
+        }
+    }
+
+    /**
+     * The text of one buffer, appended to the arena in chunks. Consecutive chunks of the same file are merged into
+     * one extent.
+     */
+    class Spill extends OutputStream {
+
+        private final SlabPool pool;
+        private final List<Extent> extents = new ArrayList<>();
+        private final List<SegmentFile> retained = new ArrayList<>(1);
+        private byte[] chunk = null;
+        private int chunkLength = 0;
+        private boolean closed = false;
+        private boolean released = false;
+
+        private Spill(final SlabPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (null == chunk || chunkLength == chunk.length) {
+                nextChunk();
+            }
+            chunk[chunkLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) throws IOException {
+            // Large writes are appended as they are rather than copied to the chunk.
+            if (len >= CHUNK_BYTES && 0 == chunkLength) {
+                append(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+
+            while (len > 0) {
+                if (null == chunk || chunkLength == chunk.length) {
+                    nextChunk();
+                }
+                final int n = Math.min(len, chunk.length - chunkLength);
+                System.arraycopy(b, off, chunk, chunkLength, n);
+                chunkLength += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void nextChunk() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (null == chunk) {
+                chunk = null != pool ? pool.borrow() : new byte[CHUNK_BYTES];
+            } else {
+                append(ByteBuffer.wrap(chunk, 0, chunkLength));
+            }
+            chunkLength = 0;
+        }
+
+        private void append(final ByteBuffer bytes) throws IOException {
+            final int length = bytes.remaining();
+            SegmentFile file;
+
+            // A file is retained once per spill. It may have been retired and deleted since it was current.
+            do {
+                file = current();
+            } while (!retained.contains(file) && !retain(file));
+
+            final long position = file.end.getAndAdd(length);
+            if (position + length >= segmentFileBytes) {
+                retire(file);
+            }
+
+            write(file, bytes, position);
+            bytesAppended.add(length);
+
+            final Extent last = extents.isEmpty() ? null : extents.get(extents.size() - 1);
+            if (null != last && last.source() == file && last.position() + last.length() == position) {
+                extents.set(extents.size() - 1, new Extent(file, last.position(), last.length() + length));
+            } else {
+                extents.add(new Extent(file, position, length));
+            }
+        }
+
+        private boolean retain(final SegmentFile file) {
+            if (!file.retain()) {
+                return false;
+            }
+            retained.add(file);
+            return true;
+        }
+
+        // Positional writes can be done again, so they are when another thread closed the channel by being
+        // interrupted.
+        private void write(final SegmentFile file, final ByteBuffer bytes, final long position) throws IOException {
+            final int start = bytes.position();
+
+            while (bytes.hasRemaining()) {
+                try {
+                    file.channel().write(bytes, position + bytes.position() - start);
+                } catch (final ClosedByInterruptException e) {
+                    throw e;
+                } catch (final ClosedChannelException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (chunkLength > 0) {
+                    append(ByteBuffer.wrap(chunk, 0, chunkLength));
+                }
+            } finally {
+                if (null != chunk && null != pool) {
+                    pool.release(chunk);
+                }
+                chunk = null;
+                chunkLength = 0;
+            }
+        }
+
+        /**
+         * @return the extents of the text appended so far
+         */
+        List<Extent> extents() {
+            return Collections.unmodifiableList(extents);
+        }
+
+        /**
+         * Give up the text, deleting the files that no other spill has text in.
+         */
+        void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            for (SegmentFile file : retained) {
+                file.release();
+            }
+            retained.clear();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.icij.extract.extractor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Compresses the text that {@link BudgetedEmbedBuffer}s spill to temp files, and counts what it saves across the
+ * extractions of an {@link Extractor}.
+ *
+ * <p>Text is deflated at the fastest level, which still shrinks most extracted text to a third or less of its size
+ * and costs far less than writing and reading the difference on a slow or shared disk. Readers inflate it
+ * transparently (see {@link org.icij.extract.document.Utf8TextReader#ofDeflated(java.nio.file.Path)}).
+ */
+class SpillCompression {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder textBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+
+    /**
+     * @return a stream deflating what's written to it into the given stream, which it closes
+     */
+    OutputStream compress(final OutputStream out) {
+        return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), BUFFER_BYTES) {
+
+            private boolean closed = false;
+
+            // The deflater isn't the stream's default one, so it's ended here rather than left to the cleaner.
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    files.increment();
+                    textBytes.add(def.getBytesRead());
+                    compressedBytes.add(def.getBytesWritten());
+                    def.end();
+                }
+            }
+        };
+    }
+
+    Stats stats() {
+        return new Stats(files.sum(), textBytes.sum(), compressedBytes.sum());
+    }
+
+    /**
+     * @param files           the number of spill files closed
+     * @param textBytes       the number of bytes of text written to them
+     * @param compressedBytes the number of bytes that text took once compressed
+     */
+    record Stats(long files, long textBytes, long compressedBytes) {
+
+        long savedBytes() {
+            return textBytes - compressedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files, %d bytes of text written as %d (%d%% saved)", files, textBytes,
+                    compressedBytes, 0 == textBytes ? 0 : savedBytes() * 100 / textBytes);
+        }
+    }
+}
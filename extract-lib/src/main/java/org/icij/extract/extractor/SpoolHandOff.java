@@ -0,0 +1,112 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.io.TemporaryResources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bytes of an embedded document, handed from the parse thread to a task that parses it later, in a file of their
+ * own, since the embed's stream and its spool are gone by the time the task runs: the deferred OCR of an image, or
+ * the parse of an embed concatenated in parallel ({@link ConcatenateFanout}).
+ *
+ * <p>The file is a hard link to the spool where the file system allows it, which costs no write and no read, and a
+ * copy otherwise. It can also be written from the embed's stream directly, in place of the spool.
+ *
+ * <p>Each holder of the hand-off releases it once done: the parse thread, and the task it's given to, which
+ * {@link #retain()}s it first. The file is deleted with the last release, rather than with the root's temp files,
+ * and in any case once those are closed.
+ */
+class SpoolHandOff implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpoolHandOff.class);
+
+    private final Path path;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean deleted = new AtomicBoolean(false);
+
+    private SpoolHandOff(final Path path, final TemporaryResources tmp) {
+        this.path = path;
+
+        // TemporaryResources isn't thread-safe; see BudgetedEmbedBuffer#spill.
+        synchronized (tmp) {
+            tmp.addResource(this::delete);
+        }
+    }
+
+    /**
+     * Hand off the bytes of a spool, by linking it where possible.
+     *
+     * @param spooled the spool, which is deleted with the embed's stream
+     * @param link    whether the spool may be linked; it mustn't be when it's an input file rather than a temp file,
+     *                to leave its directory as it is
+     */
+    static SpoolHandOff of(final Path spooled, final boolean link, final TemporaryResources tmp) throws IOException {
+        if (link) {
+            // A link must be in the same file system, so it's next to the spool, in the temp directory.
+            final Path linked = spooled.resolveSibling("extract-embed-" + UUID.randomUUID() + ".tmp");
+
+            try {
+                return new SpoolHandOff(Files.createLink(linked, spooled), tmp);
+            } catch (final UnsupportedOperationException | FileSystemException e) {
+                logger.debug("Unable to link spool \"{}\"; copying it.", spooled, e);
+            }
+        }
+
+        final Path copy = Files.createTempFile("extract-embed-", ".tmp");
+        final SpoolHandOff handOff = new SpoolHandOff(copy, tmp);
+
+        Files.copy(spooled, copy, StandardCopyOption.REPLACE_EXISTING);
+        return handOff;
+    }
+
+    /**
+     * Hand off the bytes of a stream, read to its end.
+     */
+    static SpoolHandOff of(final InputStream input, final TemporaryResources tmp) throws IOException {
+        final Path copy = Files.createTempFile("extract-embed-", ".tmp");
+        final SpoolHandOff handOff = new SpoolHandOff(copy, tmp);
+
+        Files.copy(input, copy, StandardCopyOption.REPLACE_EXISTING);
+        return handOff;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    SpoolHandOff retain() {
+        references.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Release this holder's reference, deleting the file with the last one.
+     */
+    @Override
+    public void close() {
+        if (0 == references.decrementAndGet()) {
+            delete();
+        }
+    }
+
+    private void delete() {
+        if (deleted.compareAndSet(false, true)) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (final IOException e) {
+                logger.warn("Unable to delete the OCR input \"{}\".", path, e);
+            }
+        }
+    }
+}
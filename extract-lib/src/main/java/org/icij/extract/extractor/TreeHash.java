@@ -0,0 +1,227 @@
+package org.icij.extract.extractor;
+
+import org.icij.extract.document.Identifier;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A Merkle tree hash over fixed-size chunks of a file, so that the chunks of a very large file can be hashed on
+ * several cores at once instead of being bound by a single-threaded digest.
+ *
+ * The tree has the shape of the RFC 6962 Merkle tree hash, with fixed {@value #CHUNK_SIZE}-byte chunks as leaves
+ * (only the last one may be shorter):
+ * <pre>
+ * MTH({})       = H()
+ * MTH({c0})     = H(0x00 || c0)
+ * MTH(c0..cn-1) = H(0x01 || MTH(c0..ck-1) || MTH(ck..cn-1)), k the largest power of two smaller than n
+ * </pre>
+ * Each leaf is computed independently and stored by its index, so the result only depends on the bytes and the
+ * chunk size, never on the number of threads or the order in which they finish. The result differs from the plain
+ * digest of the same bytes, so tree-hash algorithms have their own names and metadata keys
+ * (e.g. {@code TREE-SHA-256} and {@code X-TIKA:digest:TREESHA256}).
+ */
+public class TreeHash {
+
+    public static final String PREFIX = "TREE-";
+    public static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    // The size of the buffer chunks are read into from a stream, so that hashing a small stream doesn't cost a chunk.
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte LEAF = 0x00;
+    private static final byte NODE = 0x01;
+
+    private final String algorithm;
+    private final int chunkSize;
+
+    /**
+     * @param algorithm a tree-hash algorithm name such as {@code TREE-SHA-256}, or the name of the underlying
+     *                  {@link MessageDigest} algorithm
+     */
+    public TreeHash(final String algorithm) {
+        this(algorithm, CHUNK_SIZE);
+    }
+
+    TreeHash(final String algorithm, final int chunkSize) {
+        this.algorithm = SinglePassDigester.javaAlgorithmName(Identifier.messageDigestAlgorithm(algorithm));
+        this.chunkSize = chunkSize;
+
+        // Fail on construction, not half-way through hashing a large file.
+        newMessageDigest();
+    }
+
+    /**
+     * @return whether the given digest algorithm name designates a tree hash, e.g. {@code TREE-SHA-256}
+     */
+    public static boolean isTreeAlgorithm(final String algorithm) {
+        return algorithm.toUpperCase(Locale.ROOT).startsWith(PREFIX);
+    }
+
+    int chunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Hash a file, reading and hashing its chunks on up to {@code parallelism} threads, the calling thread
+     * included. The executor is only used for files of more than one chunk. Its threads help the calling thread
+     * when they are free: chunks left to hash when the calling thread is done are hashed by it alone.
+     *
+     * @param path        the file to hash
+     * @param parallelism the maximum number of threads
+     * @param executor    the executor shared by the files being hashed
+     * @return the root hash
+     * @throws IOException if the file can't be read
+     */
+    public byte[] hash(final Path path, final int parallelism, final Supplier<ExecutorService> executor)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final byte[][] leaves = new byte[Math.toIntExact((size + chunkSize - 1) / chunkSize)][];
+            final AtomicInteger next = new AtomicInteger();
+            final int threads = Math.max(1, Math.min(parallelism, leaves.length));
+
+            if (threads == 1) {
+                hashChunks(channel, size, leaves, next);
+                return root(leaves, 0, leaves.length);
+            }
+
+            final List<Future<Void>> futures = new ArrayList<>(threads - 1);
+
+            try {
+                for (int i = 1; i < threads; i++) {
+                    futures.add(executor.get().submit(() -> {
+                        hashChunks(channel, size, leaves, next);
+                        return null;
+                    }));
+                }
+
+                hashChunks(channel, size, leaves, next);
+
+                // A task still waiting for a thread has nothing left to hash. Waiting on the others also publishes
+                // the leaves they wrote.
+                for (Future<Void> future : futures) {
+                    if (!future.cancel(false)) {
+                        future.get();
+                    }
+                }
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+
+                throw new IOException(e.getCause());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while hashing " + path);
+            } finally {
+                futures.forEach(future -> future.cancel(false));
+            }
+
+            return root(leaves, 0, leaves.length);
+        }
+    }
+
+    /**
+     * Hash a stream sequentially, chunk by chunk. Gives the same result as {@link #hash(Path, int)} for the same
+     * bytes. The stream is read to the end but not closed.
+     *
+     * @param in the stream to hash
+     * @return the root hash
+     * @throws IOException if the stream can't be read
+     */
+    public byte[] hash(final InputStream in) throws IOException {
+        final MessageDigest digest = newMessageDigest();
+        final List<byte[]> leaves = new ArrayList<>();
+        final byte[] buffer = new byte[Math.min(chunkSize, BUFFER_SIZE)];
+        int inChunk;
+
+        // Each chunk is digested as it's read, a buffer at a time.
+        do {
+            int length;
+            inChunk = 0;
+
+            while (inChunk < chunkSize
+                    && (length = in.read(buffer, 0, Math.min(buffer.length, chunkSize - inChunk))) >= 0) {
+                if (0 == inChunk) {
+                    digest.update(LEAF);
+                }
+                digest.update(buffer, 0, length);
+                inChunk += length;
+            }
+
+            if (inChunk > 0) {
+                leaves.add(digest.digest());
+            }
+        } while (inChunk == chunkSize);
+
+        return root(leaves.toArray(new byte[0][]), 0, leaves.size());
+    }
+
+    private void hashChunks(final FileChannel channel, final long size, final byte[][] leaves,
+                            final AtomicInteger next) throws IOException {
+        final MessageDigest digest = newMessageDigest();
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(chunkSize, size));
+        int i;
+
+        while ((i = next.getAndIncrement()) < leaves.length) {
+            final long position = (long) i * chunkSize;
+
+            buffer.clear().limit((int) Math.min(chunkSize, size - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("File truncated while being hashed.");
+                }
+            }
+
+            buffer.flip();
+            digest.update(LEAF);
+            digest.update(buffer);
+            leaves[i] = digest.digest();
+        }
+    }
+
+    private byte[] root(final byte[][] leaves, final int from, final int to) {
+        final int n = to - from;
+
+        if (n == 0) {
+            return newMessageDigest().digest();
+        }
+
+        if (n == 1) {
+            return leaves[from];
+        }
+
+        final int k = Integer.highestOneBit(n - 1);
+        final MessageDigest digest = newMessageDigest();
+
+        digest.update(NODE);
+        digest.update(root(leaves, from, from + k));
+        digest.update(root(leaves, from + k, to));
+        return digest.digest();
+    }
+
+    private MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
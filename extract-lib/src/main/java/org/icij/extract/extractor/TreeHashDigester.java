@@ -0,0 +1,81 @@
+package org.icij.extract.extractor;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.DigestingParser;
+import org.apache.tika.parser.ParseContext;
+import org.icij.extract.document.Identifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * A digester that sets a {@link TreeHash} of the document on its metadata, under the key of the tree-hash
+ * algorithm (e.g. {@code X-TIKA:digest:TREESHA256} for {@code TREE-SHA-256}), where {@link
+ * org.icij.extract.document.DigestIdentifier} picks it up as it would a plain digest.
+ *
+ * File-backed streams, which include every root document, are hashed from their file on several threads, with
+ * the help of the executor. Streams
+ * that fit in a single chunk are hashed in memory and reset, and longer ones are spooled to a temporary file first,
+ * as {@link UpdatableInputStreamDigester} does for streams over its mark limit.
+ */
+public class TreeHashDigester implements DigestingParser.Digester {
+
+    private final TreeHash treeHash;
+    private final int parallelism;
+    private final Supplier<ExecutorService> executor;
+    private final String metadataKey;
+
+    /**
+     * @param algorithm   a tree-hash algorithm name such as {@code TREE-SHA-256}
+     * @param parallelism the maximum number of threads hashing a single file
+     * @param executor    the executor helping to hash files of more than one chunk, shared by every file
+     */
+    public TreeHashDigester(final String algorithm, final int parallelism, final Supplier<ExecutorService> executor) {
+        this(new TreeHash(algorithm), algorithm, parallelism, executor);
+    }
+
+    TreeHashDigester(final TreeHash treeHash, final String algorithm, final int parallelism,
+                     final Supplier<ExecutorService> executor) {
+        this.treeHash = treeHash;
+        this.parallelism = Math.max(1, parallelism);
+        this.executor = executor;
+        this.metadataKey = Identifier.getKey(algorithm);
+    }
+
+    /**
+     * @param is           the stream to digest. A {@link TikaInputStream} is left readable from the start; any other
+     *                     stream is read to the end.
+     * @param metadata     metadata in which to store the digest
+     * @param parseContext not used
+     * @throws IOException if the stream can't be read
+     */
+    @Override
+    public void digest(final InputStream is, final Metadata metadata, final ParseContext parseContext)
+            throws IOException {
+        final TikaInputStream tis = TikaInputStream.cast(is);
+        final byte[] hash;
+
+        if (null == tis) {
+            hash = treeHash.hash(is);
+        } else if (tis.hasFile()) {
+            hash = treeHash.hash(tis.getPath(), parallelism, executor);
+        } else {
+            tis.mark(treeHash.chunkSize() + 1);
+            final byte[] head = tis.readNBytes(treeHash.chunkSize() + 1);
+            tis.reset();
+
+            if (head.length <= treeHash.chunkSize()) {
+                hash = treeHash.hash(new ByteArrayInputStream(head));
+            } else {
+                hash = treeHash.hash(tis.getPath(), parallelism, executor);
+            }
+        }
+
+        metadata.set(metadataKey, Hex.encodeHexString(hash));
+    }
+}
@@ -5,15 +5,25 @@ import org.apache.tika.parser.digest.CompositeDigester;
 
 public class UpdatableDigester extends CompositeDigester {
     final String algorithm;
+    final UpdatableInputStreamDigester inputStreamDigester;
 
     public UpdatableDigester(final String modifier, final String algorithm) {
-        super(new UpdatableInputStreamDigester(20 * 1024 * 1024,
+        this(20 * 1024 * 1024, modifier, algorithm);
+    }
+
+    UpdatableDigester(final int markLimit, final String modifier, final String algorithm) {
+        this(new UpdatableInputStreamDigester(markLimit,
                 algorithm, algorithm.replace("-", ""), Hex::encodeHexString) {
             @Override
             protected String getDigestUpdateModifier() {
                 return modifier;
             }
-        });
+        }, algorithm);
+    }
+
+    private UpdatableDigester(final UpdatableInputStreamDigester inputStreamDigester, final String algorithm) {
+        super(inputStreamDigester);
+        this.inputStreamDigester = inputStreamDigester;
         this.algorithm = algorithm;
     }
 }
@@ -7,11 +7,18 @@ import org.apache.tika.metadata.Metadata;
 import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.DigestingParser;
 import org.apache.tika.parser.ParseContext;
+import org.icij.extract.io.DigestTeeInputStream;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * copied from tika to customize digestStream
@@ -21,10 +28,14 @@ import java.security.Provider;
  */
 public abstract class UpdatableInputStreamDigester implements DigestingParser.Digester {
 
+    private static final int MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+
     private final String algorithm;
     private final String algorithmKeyName;
     private final DigestingParser.Encoder encoder;
     private final int markLimit;
+    // The tee under each stream returned by #teeing, until it's digested. Streams that aren't are let go by the GC.
+    private final Map<TikaInputStream, DigestTeeInputStream> tees = Collections.synchronizedMap(new WeakHashMap<>());
 
     /**
      * @param markLimit        limit in bytes to allow for mark/reset.  If the inputstream is longer
@@ -86,18 +97,12 @@ public abstract class UpdatableInputStreamDigester implements DigestingParser.Di
     public void digest(InputStream is, Metadata metadata,
                        ParseContext parseContext) throws IOException {
         TikaInputStream tis = TikaInputStream.cast(is);
-        if (tis != null && tis.hasFile()) {
-            long sz = -1;
-            if (tis.hasFile()) {
-                sz = tis.getLength();
-            }
-            //if the inputstream has a file,
-            //and its size is greater than its mark limit,
-            //just digest the underlying file.
-            if (sz > markLimit) {
-                digestFile(tis.getFile(), metadata);
-                return;
-            }
+        //if the inputstream has a file,
+        //and its size is greater than its mark limit,
+        //digest the underlying file through memory-mapped windows (see #digestFile).
+        if (tis != null && tis.hasFile() && tis.getLength() > markLimit) {
+            digestFile(tis.getFile(), metadata);
+            return;
         }
 
 
@@ -115,7 +120,15 @@ public abstract class UpdatableInputStreamDigester implements DigestingParser.Di
         //if the stream wasn't finished -- if the stream was longer than the mark limit --
         //spool to File and digest that.
         if (tis != null) {
-            digestFile(tis.getFile(), metadata);
+            //when a tee (see #teeing) sits under tis, the spool's own read of the stream
+            //completes the digest, so the spooled file doesn't need to be read a second time.
+            final DigestTeeInputStream tee = tees.remove(tis);
+            final File file = tis.getFile();
+            if (null != tee && tee.isComplete()) {
+                metadata.set(getMetadataKey(), encoder.encode(tee.digest()));
+                return;
+            }
+            digestFile(file, metadata);
         } else {
             TemporaryResources tmp = new TemporaryResources();
             try {
@@ -132,16 +145,69 @@ public abstract class UpdatableInputStreamDigester implements DigestingParser.Di
     }
 
 
+    /**
+     * Wrap a stream so that this digester's digest is computed from the bytes as they are read by
+     * whoever reads the stream (typically the temporary-file spool that {@link TikaInputStream} performs
+     * for streams longer than the mark limit), and stored in the metadata once the end is reached.
+     * {@link #digest(InputStream, Metadata, ParseContext)}, given the returned stream, asks the tee
+     * whether the spool read it to the end and then skips re-reading the spooled file.
+     *
+     * @param is       the raw stream, which must not have been read yet
+     * @param metadata metadata in which to store the digest information
+     * @return the stream to read in place of {@code is}
+     */
+    TikaInputStream teeing(InputStream is, Metadata metadata) {
+        MessageDigest messageDigest = newMessageDigest();
+        messageDigest.update(getDigestUpdateModifier().getBytes());
+        final DigestTeeInputStream tee = new DigestTeeInputStream(is, messageDigest,
+                digestBytes -> metadata.set(getMetadataKey(), encoder.encode(digestBytes)));
+        final TikaInputStream tis = TikaInputStream.get(tee);
+
+        tees.put(tis, tee);
+        return tis;
+    }
+
     private String getMetadataKey() {
         return TikaCoreProperties.TIKA_META_PREFIX +
                 "digest" + TikaCoreProperties.NAMESPACE_PREFIX_DELIMITER +
                 algorithmKeyName;
     }
 
-    private void digestFile(File f, Metadata m) throws IOException {
-        try (InputStream is = new FileInputStream(f)) {
-            digestStream(is, m);
+    /**
+     * @return the size of the memory-mapped windows in which files are digested
+     */
+    int getMapWindowSize() {
+        return MAP_WINDOW_SIZE;
+    }
+
+    /**
+     * Digest a file longer than the mark limit through consecutive read-only memory-mapped windows. The
+     * bytes are handed to the digest straight from the page cache, without the copies into a heap buffer
+     * that a stream read makes, and the sequential access lets the OS read ahead. The digest is the same as
+     * {@link #digestStream(InputStream, Metadata)} gives for the file's bytes.
+     */
+    void digestFile(File f, Metadata m) throws IOException {
+        final MessageDigest messageDigest = newMessageDigest();
+        final long window = getMapWindowSize();
+
+        messageDigest.update(getDigestUpdateModifier().getBytes());
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            for (long position = 0; position < size; position += window) {
+                messageDigest.update(map(channel, position, window, size));
+            }
+        } catch (InternalError e) {
+            // Accessing a mapping of a file that was truncated since being mapped faults.
+            throw new IOException("Unable to digest file, it may have been truncated: " + f, e);
         }
+
+        m.set(getMetadataKey(), encoder.encode(messageDigest.digest()));
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long window, long size)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, size - position));
     }
 
     /**
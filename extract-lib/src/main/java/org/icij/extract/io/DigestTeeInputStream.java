@@ -0,0 +1,119 @@
+package org.icij.extract.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.function.Consumer;
+
+/**
+ * A {@link FilterInputStream} that updates a {@link MessageDigest} with every byte read through it, and hands the
+ * finished digest to a callback when the end of the stream is reached.
+ *
+ * The digest only covers the whole stream if every byte is read exactly once, in order. For that reason mark/reset
+ * is not supported: wrapping this stream in a {@link java.io.BufferedInputStream} (as {@code TikaInputStream} does for
+ * non-markable streams) makes re-reads come from the buffer rather than from here. Skipped bytes are read and
+ * digested rather than skipped. If the stream is closed before the end is reached the callback is never called.
+ *
+ * This object is not thread-safe.
+ */
+public class DigestTeeInputStream extends FilterInputStream {
+
+	private final MessageDigest digest;
+	private final Consumer<byte[]> onComplete;
+	private byte[] result = null;
+
+	/**
+	 * @param in         the stream to read and digest
+	 * @param digest     the digest to update, which may already have been primed
+	 * @param onComplete receives the digest bytes once, when the end of the stream is reached
+	 */
+	public DigestTeeInputStream(final InputStream in, final MessageDigest digest, final Consumer<byte[]> onComplete) {
+		super(in);
+		this.digest = digest;
+		this.onComplete = onComplete;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int b = in.read();
+
+		if (-1 == b) {
+			complete();
+		} else {
+			digest.update((byte) b);
+		}
+
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		final int n = in.read(b, off, len);
+
+		if (-1 == n) {
+			complete();
+		} else if (n > 0) {
+			digest.update(b, off, n);
+		}
+
+		return n;
+	}
+
+	@Override
+	public long skip(final long n) throws IOException {
+		final byte[] buffer = new byte[(int) Math.min(8192, Math.max(0, n))];
+		long skipped = 0;
+
+		while (skipped < n) {
+			final int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+
+			if (-1 == read) {
+				break;
+			}
+
+			skipped += read;
+		}
+
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(final int readLimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * @return whether the end of the stream was reached and the digest handed to the callback
+	 */
+	public boolean isComplete() {
+		return null != result;
+	}
+
+	/**
+	 * @return the digest of the whole stream
+	 * @throws IllegalStateException if the end of the stream wasn't reached
+	 */
+	public byte[] digest() {
+		if (null == result) {
+			throw new IllegalStateException("The end of the stream wasn't reached.");
+		}
+		return result.clone();
+	}
+
+	private void complete() {
+		if (null == result) {
+			result = digest.digest();
+			onComplete.accept(result.clone());
+		}
+	}
+}
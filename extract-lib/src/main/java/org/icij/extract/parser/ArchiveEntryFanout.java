@@ -0,0 +1,42 @@
+package org.icij.extract.parser;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.icij.extract.extractor.EmbedSpawner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Parses the entries of a root archive in parallel (see {@link EmbedFanout}).
+ *
+ * {@code PackageParser} still walks the archive, from a catalog opened by {@link CatalogArchiveStreamFactory}, which
+ * hands off the data of each entry ({@link CatalogArchiveStreamFactory.EntryHandOff}).
+ *
+ * Entries that the catalog can't hand off (the archive is streamed, or is a 7z, whose solid blocks can only be
+ * decoded in order) and entries without a name are parsed serially on the walking thread. The catalog waits for the
+ * others before it closes the archive.
+ */
+final class ArchiveEntryFanout extends EmbedFanout {
+
+	private CatalogArchiveStreamFactory.EntryHandOff catalog = null;
+
+	ArchiveEntryFanout(final EmbedSpawner spawner, final int parallelism, final Supplier<ExecutorService> executor) {
+		super(spawner, parallelism, executor, "archive entry");
+	}
+
+	/**
+	 * @param catalog the catalog of the archive, which hands off the entries parsed from now on
+	 */
+	void attach(final CatalogArchiveStreamFactory.EntryHandOff catalog) {
+		this.catalog = catalog;
+	}
+
+	@Override
+	InputStream handOff(final InputStream stream, final Metadata metadata) throws IOException {
+		final String name = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
+		return null != catalog && null != name && !name.isEmpty() ? catalog.handOff() : null;
+	}
+}
@@ -0,0 +1,13 @@
+package org.icij.extract.parser;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Carries archive entry fan-out settings through the Tika ParseContext (see {@link ArchiveEntryFanout}).
+ *
+ * @param root        the root document, the only archive whose entries are fanned out
+ * @param parallelism the number of tasks the executor runs at once
+ */
+public record ArchiveFanoutConfig(boolean enabled, Path root, int parallelism, Supplier<ExecutorService> executor) {}
@@ -0,0 +1,96 @@
+package org.icij.extract.parser;
+
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ParserDecorator;
+import org.apache.tika.parser.PasswordProvider;
+import org.icij.extract.extractor.EmbedSpawner;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+
+/**
+ * Decorates Tika's {@code PackageParser} so that a root ZIP or 7z archive reports its entry count to the
+ * extraction progress from the same open of the archive that the parse then iterates.
+ *
+ * For the root document only, a one-shot {@link CatalogArchiveStreamFactory} is put in the context, which
+ * {@code PackageParser} asks for its archive stream. The factory opens the archive's catalog (the ZIP central
+ * directory or the 7z header) once, hands the count of file entries to
+ * {@link org.icij.extract.extractor.ExtractionProgress#setExpectedUnits(long)} and returns a stream that walks the
+ * entries of that same open archive. Before, the count came from a separate open of the archive before the parse,
+ * which for 7z meant reading and decoding the header twice.
+ *
+ * When archive fan-out is enabled ({@link ArchiveFanoutConfig}), the entries of a root ZIP or uncompressed TAR are
+ * also handed off from that catalog to be parsed in parallel (see {@link ArchiveEntryFanout}), and the parse returns
+ * once they all have been.
+ *
+ * Nested archives, and archives parsed with a password provider (which {@code PackageParser} must be left to
+ * apply), are parsed exactly as before and don't count towards progress.
+ */
+public class ArchiveUnitsParser extends ParserDecorator {
+
+	@Serial
+	private static final long serialVersionUID = 2684316950311622875L;
+
+	public ArchiveUnitsParser(final Parser parser) {
+		super(parser);
+	}
+
+	@Override
+	public void parse(final InputStream stream, final ContentHandler handler, final Metadata metadata,
+	                  final ParseContext context) throws IOException, SAXException, TikaException {
+		final org.icij.extract.extractor.ExtractionProgress progress =
+				context.get(org.icij.extract.extractor.ExtractionProgress.class);
+		final ArchiveFanoutConfig fanoutConfig = context.get(ArchiveFanoutConfig.class);
+		final EmbeddedDocumentExtractor extractor = context.get(EmbeddedDocumentExtractor.class);
+		final TikaInputStream tis = TikaInputStream.cast(stream);
+
+		if (null == tis || !tis.hasFile() || null != context.get(PasswordProvider.class)) {
+			super.parse(stream, handler, metadata, context);
+			return;
+		}
+
+		final boolean countUnits = null != progress && !progress.parserTracksUnits() &&
+				progress.path().equals(tis.getPath());
+		final boolean fanOut = null != fanoutConfig && fanoutConfig.enabled() &&
+				fanoutConfig.root().equals(tis.getPath()) && extractor instanceof EmbedSpawner;
+
+		if (!countUnits && !fanOut) {
+			super.parse(stream, handler, metadata, context);
+			return;
+		}
+
+		final ArchiveStreamFactory previous = context.get(ArchiveStreamFactory.class);
+		final ArchiveEntryFanout fanout = fanOut ? new ArchiveEntryFanout((EmbedSpawner) extractor,
+				fanoutConfig.parallelism(), fanoutConfig.executor()) : null;
+
+		context.set(ArchiveStreamFactory.class, new CatalogArchiveStreamFactory(tis.getPath(),
+				countUnits ? progress::setExpectedUnits : units -> {}, fanout));
+		if (fanOut) {
+			context.set(EmbeddedDocumentExtractor.class, fanout);
+		}
+
+		try {
+			super.parse(stream, handler, metadata, context);
+			if (fanOut) {
+				fanout.finish();
+			}
+		} finally {
+			if (fanOut) {
+				fanout.await();
+				context.set(EmbeddedDocumentExtractor.class, extractor);
+			}
+
+			// Embeds are parsed with the same context, so restore it for whatever is parsed after the root.
+			context.set(ArchiveStreamFactory.class, previous);
+		}
+	}
+}
@@ -0,0 +1,484 @@
+package org.icij.extract.parser;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarFile;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.icij.extract.extractor.ArchiveEntryCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.function.LongConsumer;
+
+/**
+ * An {@link ArchiveStreamFactory} whose first ZIP or 7z archive stream is read from the catalog of the archive at
+ * a known path, rather than from the stream it is given, so that the number of entries is known as soon as the
+ * archive is opened. See {@link ArchiveUnitsParser}.
+ *
+ * Only the first request is served this way, as the factory sits in a context that is shared with nested
+ * archives. If the catalog can't be read (a truncated ZIP without a central directory, an encrypted 7z header...)
+ * the request falls through to the default streaming behaviour and no count is reported.
+ *
+ * When the entries of the archive are fanned out (see {@link ArchiveEntryFanout}), a ZIP catalog, or the headers of
+ * an uncompressed TAR, can also hand the data of the current entry off to be read on another thread
+ * ({@link EntryHandOff}), and waits for the fan-out before it closes the archive.
+ *
+ * This object is not thread-safe.
+ */
+final class CatalogArchiveStreamFactory extends ArchiveStreamFactory {
+
+	private static final Logger logger = LoggerFactory.getLogger(CatalogArchiveStreamFactory.class);
+
+	private final Path path;
+	private final LongConsumer units;
+	private final ArchiveEntryFanout fanout;
+	private boolean used = false;
+
+	/**
+	 * @param path  the archive file that the first archive stream is requested for
+	 * @param units receives the number of file entries, once, when the catalog is opened
+	 */
+	CatalogArchiveStreamFactory(final Path path, final LongConsumer units) {
+		this(path, units, null);
+	}
+
+	/**
+	 * @param path   the archive file that the first archive stream is requested for
+	 * @param units  receives the number of file entries, once, when the catalog is opened
+	 * @param fanout the fan-out to attach a catalog that hands its entries off to, or {@code null}
+	 */
+	CatalogArchiveStreamFactory(final Path path, final LongConsumer units, final ArchiveEntryFanout fanout) {
+		this.path = path;
+		this.units = units;
+		this.fanout = fanout;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <I extends ArchiveInputStream<? extends ArchiveEntry>> I createArchiveInputStream(final String archiverName,
+	                                                                                      final InputStream in,
+	                                                                                      final String actualEncoding)
+			throws ArchiveException {
+		if (!used) {
+			used = true;
+
+			final ArchiveInputStream<?> catalog = openCatalog(archiverName, actualEncoding);
+
+			if (null != catalog) {
+				return (I) catalog;
+			}
+		}
+
+		return super.createArchiveInputStream(archiverName, in, actualEncoding);
+	}
+
+	private ArchiveInputStream<?> openCatalog(final String archiverName, final String encoding) {
+		try {
+			if (ZIP.equals(archiverName)) {
+				final ZipFile.Builder builder = ZipFile.builder().setPath(path);
+
+				if (null != encoding) {
+					builder.setCharset(encoding);
+				}
+
+				final ZipFile zip = builder.get();
+
+				units.accept(ArchiveEntryCounter.countFiles(zip));
+				return attach(new ZipCatalogInputStream(zip, fanout));
+			}
+
+			if (SEVEN_Z.equals(archiverName)) {
+				final SevenZFile sevenZ = SevenZFile.builder().setPath(path).get();
+
+				units.accept(ArchiveEntryCounter.countFiles(sevenZ));
+				return new SevenZCatalogInputStream(sevenZ);
+			}
+
+			// The headers of an uncompressed TAR are read up front only for a fan-out, which needs the entries'
+			// offsets. A compressed TAR is parsed as an embed of its compressor, and streamed.
+			if (TAR.equals(archiverName) && null != fanout) {
+				final TarFile tar = new TarFile(path);
+
+				units.accept(ArchiveEntryCounter.countFiles(tar));
+				return attach(new TarCatalogInputStream(path, tar, fanout));
+			}
+		} catch (final IOException e) {
+			logger.debug("Unable to read the catalog of \"{}\", falling back to streaming: {}", path, e.toString());
+		}
+
+		return null;
+	}
+
+	private ArchiveInputStream<?> attach(final EntryHandOff catalog) {
+		if (null != fanout) {
+			fanout.attach(catalog);
+		}
+		return (ArchiveInputStream<?>) catalog;
+	}
+
+	/**
+	 * A catalog whose current entry can be read on another thread than the one walking the archive.
+	 */
+	interface EntryHandOff {
+
+		/**
+		 * Take the data of the current entry, which is then no longer read from the archive stream.
+		 *
+		 * @return a stream that may be read and closed on any thread while the walk goes on, until the archive
+		 * stream is closed, or {@code null} if the entry can't be handed off and must be read from the archive
+		 * stream
+		 */
+		InputStream handOff() throws IOException;
+	}
+
+	/**
+	 * Reads the entries of an open {@link ZipFile} in the order they are stored, as a streaming parse would.
+	 *
+	 * An entry is handed off as the stream that {@link ZipFile} opened for it, which reads the file by position and
+	 * so can be read alongside the others.
+	 */
+	static class ZipCatalogInputStream extends ArchiveInputStream<ZipArchiveEntry> implements EntryHandOff {
+
+		private final ZipFile zip;
+		private final Enumeration<ZipArchiveEntry> entries;
+		private final ArchiveEntryFanout fanout;
+		private InputStream current = null;
+
+		ZipCatalogInputStream(final ZipFile zip) {
+			this(zip, null);
+		}
+
+		ZipCatalogInputStream(final ZipFile zip, final ArchiveEntryFanout fanout) {
+			this.zip = zip;
+			this.entries = zip.getEntriesInPhysicalOrder();
+			this.fanout = fanout;
+		}
+
+		@Override
+		public InputStream handOff() {
+			final InputStream entry = current;
+
+			current = null;
+			return entry;
+		}
+
+		@Override
+		public ZipArchiveEntry getNextEntry() throws IOException {
+			closeCurrent();
+
+			if (!entries.hasMoreElements()) {
+				return null;
+			}
+
+			final ZipArchiveEntry entry = entries.nextElement();
+
+			if (zip.canReadEntryData(entry)) {
+				current = zip.getInputStream(entry);
+			}
+
+			return entry;
+		}
+
+		@Override
+		public boolean canReadEntryData(final ArchiveEntry entry) {
+			return entry instanceof ZipArchiveEntry zipEntry && zip.canReadEntryData(zipEntry);
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			return null == current ? -1 : current.read(b, off, len);
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			return IOUtils.skip(this, n);
+		}
+
+		@Override
+		public int available() {
+			return 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				closeCurrent();
+			} finally {
+				if (null != fanout) {
+					fanout.await();
+				}
+				zip.close();
+			}
+		}
+
+		private void closeCurrent() throws IOException {
+			if (null != current) {
+				current.close();
+				current = null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the entries of an open {@link SevenZFile}, like Tika's own wrapper for the file it opens.
+	 */
+	static class SevenZCatalogInputStream extends ArchiveInputStream<SevenZArchiveEntry> {
+
+		private final SevenZFile sevenZ;
+
+		SevenZCatalogInputStream(final SevenZFile sevenZ) {
+			this.sevenZ = sevenZ;
+		}
+
+		@Override
+		public SevenZArchiveEntry getNextEntry() throws IOException {
+			return sevenZ.getNextEntry();
+		}
+
+		@Override
+		public int read() throws IOException {
+			return sevenZ.read();
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			return sevenZ.read(b, off, len);
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			return IOUtils.skip(this, n);
+		}
+
+		@Override
+		public int available() {
+			return 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			sevenZ.close();
+		}
+	}
+
+	/**
+	 * Reads the entries of an uncompressed TAR from the headers that {@link TarFile} read when it was opened.
+	 *
+	 * The data of an entry is contiguous in the file, and is handed off as a stream reading that range of the file
+	 * by position, from a channel shared by the handed-off entries. Sparse entries, whose data is scattered, are
+	 * read from the archive stream.
+	 *
+	 * A channel is closed for every thread by one that is interrupted while reading it, as a cancelled fan-out task
+	 * is, so it's opened again for the entries still being read.
+	 */
+	static class TarCatalogInputStream extends ArchiveInputStream<TarArchiveEntry> implements EntryHandOff {
+
+		private final TarFile tar;
+		private final Iterator<TarArchiveEntry> entries;
+		private final ArchiveEntryFanout fanout;
+		private final SharedChannel channel;
+		private TarArchiveEntry entry = null;
+		private InputStream current = null;
+
+		TarCatalogInputStream(final Path path, final TarFile tar, final ArchiveEntryFanout fanout) throws IOException {
+			this.tar = tar;
+			this.entries = tar.getEntries().iterator();
+			this.fanout = fanout;
+			this.channel = new SharedChannel(path);
+		}
+
+		@Override
+		public TarArchiveEntry getNextEntry() throws IOException {
+			closeCurrent();
+
+			entry = entries.hasNext() ? entries.next() : null;
+			return entry;
+		}
+
+		@Override
+		public boolean canReadEntryData(final ArchiveEntry entry) {
+			return entry instanceof TarArchiveEntry;
+		}
+
+		@Override
+		public InputStream handOff() {
+			if (null == entry || entry.isSparse() || null != current) {
+				return null;
+			}
+
+			final InputStream range = new RangeInputStream(channel, entry.getDataOffset(), entry.getSize());
+
+			entry = null;
+			return range;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (null == entry) {
+				return -1;
+			}
+			if (null == current) {
+				current = tar.getInputStream(entry);
+			}
+			return current.read(b, off, len);
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			return IOUtils.skip(this, n);
+		}
+
+		@Override
+		public int available() {
+			return 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				closeCurrent();
+			} finally {
+				fanout.await();
+				try {
+					channel.close();
+				} finally {
+					tar.close();
+				}
+			}
+		}
+
+		private void closeCurrent() throws IOException {
+			if (null != current) {
+				current.close();
+				current = null;
+			}
+		}
+	}
+
+	/**
+	 * A read channel of a file, opened again if a thread closed it by being interrupted, until it's closed for good.
+	 */
+	private static class SharedChannel {
+
+		private final Path path;
+		private volatile FileChannel channel;
+		private boolean closed = false;
+
+		private SharedChannel(final Path path) throws IOException {
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		}
+
+		private FileChannel channel() throws IOException {
+			final FileChannel open = channel;
+			if (open.isOpen()) {
+				return open;
+			}
+
+			synchronized (this) {
+				if (closed) {
+					throw new IOException("The archive \"" + path + "\" was closed.");
+				}
+				if (!channel.isOpen()) {
+					channel = FileChannel.open(path, StandardOpenOption.READ);
+				}
+				return channel;
+			}
+		}
+
+		private synchronized void close() throws IOException {
+			closed = true;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads a range of a file by position, so that any number of ranges can be read from the same channel at once.
+	 *
+	 * Positional reads can be done again, so they are when another thread closed the channel by being interrupted.
+	 */
+	private static class RangeInputStream extends InputStream {
+
+		private final SharedChannel channel;
+		private final long end;
+		private long position;
+
+		private RangeInputStream(final SharedChannel channel, final long position, final long length) {
+			this.channel = channel;
+			this.position = position;
+			this.end = position + length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (0 == len) {
+				return 0;
+			}
+			if (position >= end) {
+				return -1;
+			}
+
+			final int n = read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)));
+
+			if (n < 0) {
+				throw new IOException("The archive ended before the end of the entry.");
+			}
+
+			position += n;
+			return n;
+		}
+
+		private int read(final ByteBuffer buffer) throws IOException {
+			final int start = buffer.position();
+
+			while (true) {
+				try {
+					return channel.channel().read(buffer, position);
+				} catch (final ClosedByInterruptException e) {
+					throw e;
+				} catch (final ClosedChannelException e) {
+					if (Thread.currentThread().isInterrupted()) {
+						throw e;
+					}
+					buffer.position(start);
+				}
+			}
+		}
+
+		@Override
+		public long skip(final long n) {
+			final long skipped = Math.max(0, Math.min(n, end - position));
+
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, end - position);
+		}
+	}
+}
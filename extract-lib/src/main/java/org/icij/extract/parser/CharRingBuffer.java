@@ -0,0 +1,310 @@
+package org.icij.extract.parser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded buffer of characters between one writing thread and one reading thread, used in place of a
+ * {@link java.io.PipedWriter} and {@link java.io.PipedReader} pair to hand the text of a parse over to its reader.
+ *
+ * The pipe synchronizes every call, holds 1024 characters and, when a side waits, polls every second instead of
+ * being woken. Here each side only writes its own position, so neither takes a lock, and a side that waits is parked
+ * until the other side makes progress, closes, or fails. Waits still time out every second, only to detect that
+ * the other thread died without closing its end, as the pipe does.
+ *
+ * Closing the {@link #reader()} makes the next write fail, which stops the parse. Closing the {@link #writer()}
+ * makes reads return the remaining characters, then the end of the stream.
+ */
+public class CharRingBuffer {
+
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+	private static final long LIVENESS_CHECK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final char[] buffer;
+	private final int capacity;
+
+	// The number of characters ever written and read. Each is only written by its own side.
+	private volatile long written = 0;
+	private volatile long read = 0;
+
+	private volatile boolean writerClosed = false;
+	private volatile boolean readerClosed = false;
+
+	// The threads last seen on each side, and whether they are waiting for the other side, to be unparked.
+	private volatile Thread writerThread = null;
+	private volatile Thread readerThread = null;
+	private volatile boolean writerWaiting = false;
+	private volatile boolean readerWaiting = false;
+
+	private final Reader reader = new RingReader();
+	private final Writer writer = new RingWriter();
+
+	public CharRingBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public CharRingBuffer(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1.");
+		}
+
+		this.capacity = capacity;
+		this.buffer = new char[capacity];
+	}
+
+	public Reader reader() {
+		return reader;
+	}
+
+	public Writer writer() {
+		return writer;
+	}
+
+	/**
+	 * Wait until there are characters to read, or the writer was closed, without reading any.
+	 *
+	 * @throws InterruptedIOException if the thread is interrupted, even if it needn't wait
+	 * @throws IOException if the reader was closed or the writing thread died without closing the writer
+	 */
+	public void awaitReadable() throws IOException {
+		if (Thread.interrupted()) {
+			throw new InterruptedIOException();
+		}
+
+		while (written == read && !writerClosed) {
+			awaitWriter();
+		}
+	}
+
+	private void awaitWriter() throws IOException {
+		if (readerClosed) {
+			throw new IOException("Pipe closed");
+		}
+
+		final Thread writing = writerThread;
+		if (null != writing && !writing.isAlive() && !writerClosed) {
+			throw new IOException("Write end dead");
+		}
+
+		readerThread = Thread.currentThread();
+		readerWaiting = true;
+
+		// Checked again after the flag is set: the writer either sees the flag or was seen by this check.
+		if (written == read && !writerClosed) {
+			LockSupport.parkNanos(this, LIVENESS_CHECK_NANOS);
+		}
+
+		readerWaiting = false;
+		if (Thread.interrupted()) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void awaitReader() throws IOException {
+		final Thread reading = readerThread;
+		if (null != reading && !reading.isAlive() && !readerClosed) {
+			throw new IOException("Read end dead");
+		}
+
+		writerThread = Thread.currentThread();
+		writerWaiting = true;
+
+		if (written - read == capacity && !readerClosed) {
+			LockSupport.parkNanos(this, LIVENESS_CHECK_NANOS);
+		}
+
+		writerWaiting = false;
+		if (Thread.interrupted()) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void signalReader() {
+		if (readerWaiting) {
+			LockSupport.unpark(readerThread);
+		}
+	}
+
+	private void signalWriter() {
+		if (writerWaiting) {
+			LockSupport.unpark(writerThread);
+		}
+	}
+
+	private class RingWriter extends Writer {
+
+		@Override
+		public void write(final int c) throws IOException {
+			final long position = reserve();
+
+			buffer[(int) (position % capacity)] = (char) c;
+			written = position + 1;
+			signalReader();
+		}
+
+		@Override
+		public void write(final char[] chars, int off, int len) throws IOException {
+			while (len > 0) {
+				final long position = reserve();
+				final int n = Math.min(len, free(position));
+				final int index = (int) (position % capacity);
+				final int first = Math.min(n, capacity - index);
+
+				System.arraycopy(chars, off, buffer, index, first);
+				if (first < n) {
+					System.arraycopy(chars, off + first, buffer, 0, n - first);
+				}
+
+				written = position + n;
+				signalReader();
+				off += n;
+				len -= n;
+			}
+		}
+
+		// Copied straight from the string, where Writer would copy it to an array first.
+		@Override
+		public void write(final String string, int off, int len) throws IOException {
+			while (len > 0) {
+				final long position = reserve();
+				final int n = Math.min(len, free(position));
+				final int index = (int) (position % capacity);
+				final int first = Math.min(n, capacity - index);
+
+				string.getChars(off, off + first, buffer, index);
+				if (first < n) {
+					string.getChars(off + first, off + n, buffer, 0);
+				}
+
+				written = position + n;
+				signalReader();
+				off += n;
+				len -= n;
+			}
+		}
+
+		// Wait for room to write and return the position to write at.
+		private long reserve() throws IOException {
+			if (null == writerThread) {
+				writerThread = Thread.currentThread();
+			}
+
+			while (true) {
+				if (writerClosed) {
+					throw new IOException("Write end closed");
+				}
+				if (readerClosed) {
+					throw new IOException("Pipe closed");
+				}
+
+				final long position = written;
+				if (free(position) > 0) {
+					return position;
+				}
+
+				awaitReader();
+			}
+		}
+
+		private int free(final long position) {
+			return (int) (capacity - (position - read));
+		}
+
+		// The characters are visible to the reader on each write already.
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+			writerClosed = true;
+			signalReader();
+		}
+	}
+
+	private class RingReader extends Reader {
+
+		@Override
+		public int read() throws IOException {
+			final long position = awaitCharacters();
+			if (position < 0) {
+				return -1;
+			}
+
+			final char c = buffer[(int) (position % capacity)];
+			read = position + 1;
+			signalWriter();
+			return c;
+		}
+
+		@Override
+		public int read(final char[] chars, final int off, final int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+
+			final long position = awaitCharacters();
+			if (position < 0) {
+				return -1;
+			}
+
+			final int n = (int) Math.min(len, written - position);
+			final int index = (int) (position % capacity);
+			final int first = Math.min(n, capacity - index);
+
+			System.arraycopy(buffer, index, chars, off, first);
+			if (first < n) {
+				System.arraycopy(buffer, 0, chars, off + first, n - first);
+			}
+
+			read = position + n;
+			signalWriter();
+			return n;
+		}
+
+		@Override
+		public boolean ready() throws IOException {
+			if (readerClosed) {
+				throw new IOException("Pipe closed");
+			}
+			return written != read;
+		}
+
+		// Wait for characters to read and return the position to read from, or -1 at the end of the stream.
+		private long awaitCharacters() throws IOException {
+			readerThread = Thread.currentThread();
+
+			while (true) {
+				if (readerClosed) {
+					throw new IOException("Pipe closed");
+				}
+
+				final long position = read;
+				if (written != position) {
+					return position;
+				}
+
+				// Everything written before the writer was closed is visible once it is seen closed.
+				if (writerClosed) {
+					if (written != position) {
+						continue;
+					}
+					return -1;
+				}
+
+				awaitWriter();
+			}
+		}
+
+		@Override
+		public void close() {
+			readerClosed = true;
+			signalWriter();
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package org.icij.extract.parser;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.icij.extract.extractor.EmbedSpawner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Parses the children of a root container in parallel, in place of the {@link EmbedSpawner} that the container's
+ * parser would hand them to one after the other.
+ *
+ * The container's parser still walks the container and builds the metadata of each child as it always does. Rather
+ * than parsing the child there and then, its data is handed off ({@link #handOff(InputStream, Metadata)}) and the
+ * child is parsed on the shared executor by a {@link EmbedSpawner#forkFor(Metadata)} of the spawner, which shares its
+ * memory budget and links the child to the root as the spawner would have. Embed IDs, digests and names are the same
+ * as with the serial walk; only the order in which the children are parsed and spewed differs.
+ *
+ * Children that can't be handed off are parsed serially on the walking thread, as are the embeds nested in them.
+ *
+ * At most twice as many children as the executor runs at once are pending, so that the walk doesn't run ahead of
+ * the parse. {@link #await()} must be called before the container is closed.
+ *
+ * The walking methods are not thread-safe: only the thread parsing the container calls them.
+ */
+abstract class EmbedFanout implements EmbeddedDocumentExtractor {
+
+	private static final Logger logger = LoggerFactory.getLogger(EmbedFanout.class);
+
+	private final EmbedSpawner spawner;
+	private final Supplier<ExecutorService> executor;
+	private final String kind;
+	private final int maxPending;
+	private final Semaphore pending;
+	private final List<Future<?>> futures = new ArrayList<>();
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+	// The depth of serial parses on the walking thread, whose nested embeds come back through this extractor.
+	private int serial = 0;
+	// The number of children handed off so far, to tell them apart in the logs.
+	private int handedOff = 0;
+
+	/**
+	 * @param kind what the children are called in log messages, "archive entry" for example
+	 */
+	EmbedFanout(final EmbedSpawner spawner, final int parallelism, final Supplier<ExecutorService> executor,
+	            final String kind) {
+		this.spawner = spawner;
+		this.executor = executor;
+		this.kind = kind;
+		this.maxPending = 2 * Math.max(1, parallelism);
+		this.pending = new Semaphore(maxPending);
+	}
+
+	/**
+	 * Take the data of a child of the container, to be read on another thread after this method returns.
+	 *
+	 * @param stream the stream the container's parser would have the child parsed from
+	 * @param metadata the metadata of the child
+	 * @return a stream over the data of the child, or {@code null} to parse it serially from {@code stream}
+	 */
+	abstract InputStream handOff(InputStream stream, Metadata metadata) throws IOException;
+
+	@Override
+	public boolean shouldParseEmbedded(final Metadata metadata) {
+		return spawner.shouldParseEmbedded(metadata);
+	}
+
+	@Override
+	public void parseEmbedded(final InputStream stream, final ContentHandler handler, final Metadata metadata,
+	                          final boolean outputHtml) throws SAXException, IOException {
+		final InputStream child = 0 == serial ? handOff(stream, metadata) : null;
+
+		if (null == child) {
+			parseSerially(stream, handler, metadata, outputHtml);
+		} else {
+			submit(child, handler, metadata, outputHtml);
+		}
+	}
+
+	private void parseSerially(final InputStream stream, final ContentHandler handler, final Metadata metadata,
+	                           final boolean outputHtml) throws SAXException, IOException {
+		serial++;
+		try {
+			spawner.parseEmbedded(stream, handler, metadata, outputHtml);
+		} finally {
+			serial--;
+		}
+	}
+
+	private void submit(final InputStream child, final ContentHandler handler, final Metadata metadata,
+	                    final boolean outputHtml) throws SAXException, IOException {
+
+		// Forked here rather than in the task, while the spawner's stack holds the root alone and the children come
+		// in the order of the container.
+		final EmbedSpawner fork = spawner.forkFor(metadata);
+		final String description = describe(metadata, ++handedOff);
+
+		try {
+			pending.acquire();
+		} catch (final InterruptedException e) {
+			child.close();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(kind + " fan-out cancelled (thread interrupted): " + description);
+		}
+
+		final Future<?> future;
+
+		try {
+			future = executor.get().submit(() -> {
+				try (final TikaInputStream tis = TikaInputStream.get(child)) {
+					fork.parseEmbedded(tis, handler, metadata, outputHtml);
+				} catch (final Exception e) {
+					logger.warn("Unable to parse {} {}.", kind, description, e);
+					failure.compareAndSet(null, e);
+				} finally {
+					pending.release();
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+
+			// The executor was shut down, with the extractor: parse the child here instead.
+			pending.release();
+			try (final TikaInputStream tis = TikaInputStream.get(child)) {
+				parseSerially(tis, handler, metadata, outputHtml);
+			}
+			return;
+		}
+
+		if (futures.size() >= maxPending) {
+			futures.removeIf(Future::isDone);
+		}
+		futures.add(future);
+	}
+
+	private static String describe(final Metadata metadata, final int ordinal) {
+		final String name = metadata.get(TikaCoreProperties.RESOURCE_NAME_KEY);
+		return null == name || name.isEmpty() ? "#" + ordinal : "#" + ordinal + " \"" + name + "\"";
+	}
+
+	/**
+	 * Wait for the children handed off so far to be parsed. Cancels them instead if this thread was interrupted, by
+	 * a parse timeout for example.
+	 */
+	void await() {
+		for (Future<?> future : futures) {
+			if (Thread.currentThread().isInterrupted()) {
+				future.cancel(true);
+				continue;
+			}
+			try {
+				future.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.cancel(true);
+			} catch (final ExecutionException | CancellationException e) {
+				logger.warn("A {} task failed.", kind, e);
+			}
+		}
+		futures.clear();
+	}
+
+	/**
+	 * Wait for every child, and throw the first failure of a child's parse, as the serial walk would have.
+	 */
+	void finish() throws IOException, SAXException, TikaException {
+		await();
+
+		final Exception e = failure.get();
+
+		if (e instanceof IOException io) {
+			throw io;
+		}
+		if (e instanceof SAXException sax) {
+			throw sax;
+		}
+		if (null != e) {
+			throw new TikaException("Unable to parse a " + kind + ".", e);
+		}
+	}
+}
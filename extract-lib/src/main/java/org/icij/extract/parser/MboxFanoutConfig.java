@@ -0,0 +1,13 @@
+package org.icij.extract.parser;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Carries mbox message fan-out settings through the Tika ParseContext (see {@link MboxFanoutParser}).
+ *
+ * @param root        the root document, the only mbox whose messages are fanned out
+ * @param parallelism the number of tasks the executor runs at once
+ */
+public record MboxFanoutConfig(boolean enabled, Path root, int parallelism, Supplier<ExecutorService> executor) {}
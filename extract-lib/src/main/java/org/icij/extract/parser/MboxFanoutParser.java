@@ -0,0 +1,62 @@
+package org.icij.extract.parser;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ParserDecorator;
+import org.icij.extract.extractor.EmbedSpawner;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serial;
+
+/**
+ * Decorates Tika's {@code MboxParser} so that, when mbox fan-out is enabled ({@link MboxFanoutConfig}), the
+ * messages of a root mbox are parsed in parallel (see {@link MboxMessageFanout}) while {@code MboxParser} reads
+ * through the mailbox, splitting it into messages as it always does. The parse returns once every message has
+ * been parsed.
+ *
+ * Nested mailboxes are parsed exactly as before.
+ */
+public class MboxFanoutParser extends ParserDecorator {
+
+	@Serial
+	private static final long serialVersionUID = -3719020585512474127L;
+
+	public MboxFanoutParser(final Parser parser) {
+		super(parser);
+	}
+
+	@Override
+	public void parse(final InputStream stream, final ContentHandler handler, final Metadata metadata,
+	                  final ParseContext context) throws IOException, SAXException, TikaException {
+		final MboxFanoutConfig config = context.get(MboxFanoutConfig.class);
+		final EmbeddedDocumentExtractor extractor = context.get(EmbeddedDocumentExtractor.class);
+		final TikaInputStream tis = TikaInputStream.cast(stream);
+
+		if (null == config || !config.enabled() || null == tis || !tis.hasFile() ||
+				!config.root().equals(tis.getPath()) || !(extractor instanceof EmbedSpawner)) {
+			super.parse(stream, handler, metadata, context);
+			return;
+		}
+
+		final MboxMessageFanout fanout = new MboxMessageFanout((EmbedSpawner) extractor, config.parallelism(),
+				config.executor());
+
+		context.set(EmbeddedDocumentExtractor.class, fanout);
+		try {
+			super.parse(stream, handler, metadata, context);
+			fanout.finish();
+		} finally {
+			fanout.await();
+
+			// Embeds are parsed with the same context, so restore it for whatever is parsed after the root.
+			context.set(EmbeddedDocumentExtractor.class, extractor);
+		}
+	}
+}
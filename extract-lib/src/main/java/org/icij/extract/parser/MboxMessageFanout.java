@@ -0,0 +1,29 @@
+package org.icij.extract.parser;
+
+import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.icij.extract.extractor.EmbedSpawner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Parses the messages of a root mbox in parallel (see {@link EmbedFanout}).
+ *
+ * {@code MboxParser} reads each message into a buffer of its own before handing it to be parsed, and then lets go
+ * of the buffer, so the buffer itself is handed off. A message that comes as any other stream is parsed serially.
+ */
+final class MboxMessageFanout extends EmbedFanout {
+
+	MboxMessageFanout(final EmbedSpawner spawner, final int parallelism, final Supplier<ExecutorService> executor) {
+		super(spawner, parallelism, executor, "mbox message");
+	}
+
+	@Override
+	InputStream handOff(final InputStream stream, final Metadata metadata) {
+		return stream instanceof ByteArrayInputStream || stream instanceof UnsynchronizedByteArrayInputStream ?
+				stream : null;
+	}
+}
@@ -27,14 +27,11 @@ import org.apache.tika.sax.BodyContentHandler;
 import org.icij.extract.extractor.NoContentReason;
 import org.xml.sax.ContentHandler;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedReader;
-import java.io.PipedWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.file.Files;
@@ -46,9 +43,9 @@ import java.util.function.Function;
  * Reader for the text content from a given binary stream. This class
  * uses a background parsing task with a {@link Parser}
  * ({@link AutoDetectParser} by default) to parse the text content from
- * a given input stream. The {@link BodyContentHandler} class and a pipe
- * is used to convert the push-based SAX event stream to the pull-based
- * character stream defined by the {@link Reader} interface.
+ * a given input stream. The {@link BodyContentHandler} class and a
+ * {@link CharRingBuffer} are used to convert the push-based SAX event stream
+ * to the pull-based character stream defined by the {@link Reader} interface.
  *
  * @since Apache Tika 0.2
  */
@@ -60,12 +57,17 @@ public class ParsingReaderWithContentHandler extends Reader {
     private final Parser parser;
 
     /**
-     * Buffered read end of the pipe.
+     * The buffer between the parsing thread and the reader.
+     */
+    private final CharRingBuffer buffer;
+
+    /**
+     * Read end of the buffer.
      */
     private final Reader reader;
 
     /**
-     * Write end of the pipe.
+     * Write end of the buffer.
      */
     private final Writer writer;
 
@@ -85,9 +87,10 @@ public class ParsingReaderWithContentHandler extends Reader {
     private final ParseContext context;
 
     /**
-     * An exception (if any) thrown by the parsing thread.
+     * An exception (if any) thrown by the parsing thread. Set before the write end is closed, so that it's seen
+     * by a read that reaches the end of the text.
      */
-    private transient Throwable throwable;
+    private transient volatile Throwable throwable;
 
     /**
      * Creates a reader for the text content of the given binary stream.
@@ -188,28 +191,22 @@ public class ParsingReaderWithContentHandler extends Reader {
     public ParsingReaderWithContentHandler(Parser parser, InputStream stream, Metadata metadata, ParseContext context,
                                            Function<Writer, ContentHandler> handlerProvider, Executor executor) throws IOException {
         this.parser = parser;
-        PipedReader pipedReader = new PipedReader();
-        this.reader = new BufferedReader(pipedReader);
-        try {
-            this.writer = new PipedWriter(pipedReader);
-        } catch (IOException e) {
-            throw new IllegalStateException(e); // Should never happen
-        }
+        this.buffer = new CharRingBuffer();
+        this.reader = buffer.reader();
+        this.writer = buffer.writer();
         this.stream = stream;
         this.metadata = metadata;
         this.context = context;
 
         executor.execute(new ParsingTask(handlerProvider));
 
-        // TIKA-203: Buffer first character to force metadata extraction
+        // TIKA-203: Wait for the first character to force metadata extraction
         try {
-            reader.mark(1);
-            reader.read();
-            reader.reset();
+            buffer.awaitReadable();
         } catch (IOException e) {
-            // The first-character read failed (e.g. the consuming thread was interrupted by a parse
+            // The first-character wait failed (e.g. the consuming thread was interrupted by a parse
             // watchdog). Close the read end so the half-constructed reader is not orphaned: this
-            // releases the pipe and unblocks the background parse thread on its next write rather
+            // releases the buffer and unblocks the background parse thread on its next write rather
             // than leaving it stranded.
             try {
                 close();
@@ -236,33 +233,51 @@ public class ParsingReaderWithContentHandler extends Reader {
     }
 
     /**
-     * Reads parsed text from the pipe connected to the parsing thread.
+     * Reads parsed text from the buffer connected to the parsing thread.
      * Fails if the parsing thread has thrown an exception.
      *
      * @param cbuf character buffer
      * @param off  start offset within the buffer
      * @param len  maximum number of characters to read
      * @throws IOException if the parsing thread has failed or
-     *                     if for some reason the pipe does not work properly
+     *                     if for some reason the buffer does not work properly
      */
     @Override
     public int read(char[] cbuf, int off, int len) throws IOException {
-        if (throwable instanceof ZeroByteFileException) {
+        if (hasFailed()) {
             return -1;
-        } else if (throwable instanceof IOException) {
-            throw (IOException) throwable;
-        } else if (throwable != null) {
-            throw new IOException("", throwable);
         }
-        return reader.read(cbuf, off, len);
+        final int n = reader.read(cbuf, off, len);
+
+        // The parse may have failed while this read waited, leaving the end of the text.
+        if (n < 0) {
+            hasFailed();
+        }
+        return n;
+    }
+
+    /**
+     * @return true if the parsing thread found an empty file, which has no text
+     * @throws IOException if the parsing thread has thrown any other exception
+     */
+    private boolean hasFailed() throws IOException {
+        final Throwable t = throwable;
+        if (t instanceof ZeroByteFileException) {
+            return true;
+        } else if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t != null) {
+            throw new IOException("", t);
+        }
+        return false;
     }
 
     /**
-     * Closes the read end of the pipe. If the parsing thread is still
-     * running, next write to the pipe will fail and cause the thread
+     * Closes the read end of the buffer. If the parsing thread is still
+     * running, next write to the buffer will fail and cause the thread
      * to stop. Thus there is no need to explicitly terminate the thread.
      *
-     * @throws IOException if the pipe can not be closed
+     * @throws IOException if the buffer can not be closed
      */
     @Override
     public void close() throws IOException {
@@ -282,7 +297,7 @@ public class ParsingReaderWithContentHandler extends Reader {
 
         /**
          * Parses the given binary stream and writes the text content
-         * to the write end of the pipe. Potential exceptions (including
+         * to the write end of the buffer. Potential exceptions (including
          * the one caused if the read end is closed unexpectedly) are
          * stored before the input stream is closed and processing is stopped.
          */
@@ -2,6 +2,7 @@ package org.icij.extract.redis;
 
 import io.netty.buffer.ByteBuf;
 import org.icij.extract.extractor.ExtractionStatus;
+import org.icij.extract.report.Fingerprint;
 import org.icij.extract.report.Report;
 import org.redisson.client.handler.State;
 import org.redisson.client.protocol.Decoder;
@@ -14,14 +15,17 @@ import java.io.ObjectInputStream;
 import java.nio.charset.StandardCharsets;
 
 /**
- * Decoder for converting the wire format {@code <statusCode>[|<serialized-exception>]} written by
- * {@link ResultEncoder} back into a {@link Report}.
+ * Decoder for converting the wire format {@code <statusCode>[;<size>;<modified>[;<digest>]][|<serialized-exception>]}
+ * written by {@link ResultEncoder} back into a {@link Report}.
  * <p>
  * The status code is read as every byte up to the {@code |} separator (or the end of the buffer),
  * so multi-digit codes such as {@code FAILURE_FATAL(10)} and {@code FAILURE_TIMEOUT(11)} decode
  * correctly. Reading a single byte (the previous behaviour) silently truncated those to the wrong
  * status. The buffer's readable region is delimited by reader/writer indices rather than capacity,
  * which a pooled allocator pads beyond the actual data length.
+ * <p>
+ * The fingerprint is only written in incremental mode. Values written without it, including those written before it
+ * existed, decode to a report without a fingerprint.
  */
 public class ResultDecoder implements Decoder<Object> {
 	Logger logger = LoggerFactory.getLogger(getClass());
@@ -32,21 +36,23 @@ public class ResultDecoder implements Decoder<Object> {
 		final int separator = buffer.indexOf(start, end, (byte) '|');
 		final int statusEnd = (separator == -1) ? end : separator;
 
-		final String code = buffer.toString(start, statusEnd - start, StandardCharsets.US_ASCII);
-		final ExtractionStatus extractionStatus = ExtractionStatus.parse(code);
+		final String[] fields = buffer.toString(start, statusEnd - start, StandardCharsets.US_ASCII).split(";");
+		final ExtractionStatus extractionStatus = ExtractionStatus.parse(fields[0]);
+		final Fingerprint fingerprint = fields.length < 3 ? null : new Fingerprint(Long.parseLong(fields[1]),
+				Long.parseLong(fields[2]), fields.length > 3 ? fields[3] : null);
 
 		if (separator == -1) {
-			return new Report(extractionStatus);
+			return new Report(extractionStatus, null, fingerprint);
 		}
 
 		final byte[] exceptionPayload = new byte[end - (separator + 1)];
 		buffer.getBytes(separator + 1, exceptionPayload);
 		try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(exceptionPayload))) {
 			Exception ex = (Exception) objectInputStream.readObject();
-			return new Report(extractionStatus, ex);
+			return new Report(extractionStatus, ex, fingerprint);
 		} catch (ClassNotFoundException|IOException e) {
 			logger.warn("cannot read object : ", e);
-			return new Report(extractionStatus, e);
+			return new Report(extractionStatus, e, fingerprint);
 		}
 	}
 }
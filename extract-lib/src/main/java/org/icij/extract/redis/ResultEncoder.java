@@ -18,6 +18,12 @@ public class ResultEncoder implements Encoder {
 		Report report = (Report) in;
 		ByteBuf out = ByteBufAllocator.DEFAULT.buffer();
 		out.writeBytes(String.valueOf(report.getStatus().getCode()).getBytes());
+		report.getFingerprint().ifPresent(fingerprint -> {
+			out.writeBytes((";" + fingerprint.getSize() + ";" + fingerprint.getModified()).getBytes());
+			if (null != fingerprint.getDigest()) {
+				out.writeBytes((";" + fingerprint.getDigest()).getBytes());
+			}
+		});
 
 		ByteBuf exceptionPayload = ByteBufAllocator.DEFAULT.buffer();
 		try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(new ByteBufOutputStream(exceptionPayload))) {
@@ -0,0 +1,92 @@
+package org.icij.extract.report;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * A cheap summary of the state of a file when it was extracted, used by {@link Reporter} to tell whether a file
+ * recorded in a report has changed since.
+ *
+ * The size and modification time are enough to tell for almost every file, at the cost of a {@code stat}. The
+ * optional digest is the one computed when the file was extracted, to tell a file that was touched or copied over with
+ * identical content from one that really changed.
+ */
+public class Fingerprint {
+
+	private final long size;
+	private final long modified;
+	private final String digest;
+
+	public Fingerprint(final long size, final long modified, final String digest) {
+		this.size = size;
+		this.modified = modified;
+		this.digest = digest;
+	}
+
+	public Fingerprint(final long size, final long modified) {
+		this(size, modified, null);
+	}
+
+	/**
+	 * @param path the file to fingerprint
+	 * @return the size and modification time of the file, without a digest
+	 * @throws IOException if the file can't be read
+	 */
+	public static Fingerprint of(final Path path) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+		return new Fingerprint(attributes.size(), attributes.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * @param digest the digest of the file's content
+	 * @return a copy of this fingerprint with the given digest
+	 */
+	public Fingerprint withDigest(final String digest) {
+		return new Fingerprint(size, modified, digest);
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getModified() {
+		return modified;
+	}
+
+	/**
+	 * @return the digest of the content, or {@code null} if it wasn't computed
+	 */
+	public String getDigest() {
+		return digest;
+	}
+
+	/**
+	 * @param other the fingerprint to compare with
+	 * @return whether both have the same size and modification time, whatever their digests
+	 */
+	public boolean sameAttributes(final Fingerprint other) {
+		return size == other.size && modified == other.modified;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Fingerprint)) return false;
+		final Fingerprint that = (Fingerprint) o;
+		return size == that.size && modified == that.modified && Objects.equals(digest, that.digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(size, modified, digest);
+	}
+
+	@Override
+	public String toString() {
+		return "Fingerprint{size=" + size + ", modified=" + modified + ", digest=" + digest + '}';
+	}
+}
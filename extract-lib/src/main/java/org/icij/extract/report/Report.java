@@ -9,15 +9,20 @@ public class Report {
 
 	private final ExtractionStatus status;
 	private final Exception exception;
+	private final Fingerprint fingerprint;
 
-	public Report(final ExtractionStatus status, final Exception exception) {
+	public Report(final ExtractionStatus status, final Exception exception, final Fingerprint fingerprint) {
 		this.status = status;
 		this.exception = exception;
+		this.fingerprint = fingerprint;
+	}
+
+	public Report(final ExtractionStatus status, final Exception exception) {
+		this(status, exception, null);
 	}
 
 	public Report(final ExtractionStatus status) {
-		this.status = status;
-		this.exception = null;
+		this(status, null, null);
 	}
 
 	public ExtractionStatus getStatus() {
@@ -28,11 +33,30 @@ public class Report {
 		return Optional.ofNullable(exception);
 	}
 
+	/**
+	 * @return the state of the file when it was extracted, which is absent for reports recorded without
+	 * incremental extraction, or before it existed
+	 */
+	public Optional<Fingerprint> getFingerprint() {
+		return Optional.ofNullable(fingerprint);
+	}
+
+	/**
+	 * @param fingerprint the state of the file
+	 * @return a copy of this report with the given fingerprint
+	 */
+	public Report withFingerprint(final Fingerprint fingerprint) {
+		return new Report(status, exception, fingerprint);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
 		if (!(o instanceof Report)) return false;
 		Report report = (Report) o;
+		if (!Objects.equals(fingerprint, report.fingerprint)) {
+			return false;
+		}
 		if (!getException().isPresent()) {
 			return status == report.status;
 		} else {
@@ -45,7 +69,7 @@ public class Report {
 	@Override
 	public int hashCode() {
 		return exception == null ?
-				Objects.hash(status):
-				Objects.hash(status, exception.getClass(), exception.getMessage());
+				Objects.hash(status, fingerprint):
+				Objects.hash(status, exception.getClass(), exception.getMessage(), fingerprint);
 	}
 }
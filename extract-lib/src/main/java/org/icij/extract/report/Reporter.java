@@ -1,7 +1,12 @@
 package org.icij.extract.report;
 
 import org.icij.extract.extractor.ExtractionStatus;
+import org.icij.task.Options;
+import org.icij.task.annotation.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -10,13 +15,55 @@ import java.util.concurrent.Semaphore;
 /**
  * Records the extraction result of a file to the given {@link ReportMap}.
  *
+ * In incremental mode, each report also records a {@link Fingerprint} of the file as it was when it was extracted,
+ * and {@link #skip(Path)} only skips a file recorded with a terminal status if it hasn't changed since. In digest
+ * mode, the fingerprint holds the digest the extraction computed, passed to
+ * {@link #save(Path, ExtractionStatus, Exception, String)}: files are only read again to be digested by
+ * {@link #skip(Path, ContentDigester)} when their attributes changed.
+ *
  * @since 1.0.0-beta
  */
+@Option(name = "incremental", description = "Re-extract files that changed since they were recorded in the report " +
+		"and skip the others. Either \"off\" (the default: skip every file recorded as done), \"attributes\" " +
+		"(compare the size and modification time) or \"digest\" (also compare a digest of the content when those " +
+		"differ, so that a touched but identical file isn't re-extracted).", parameter = "mode")
 public class Reporter implements AutoCloseable {
 
+	private static final Logger logger = LoggerFactory.getLogger(Reporter.class);
+
+	public enum Incremental {
+		OFF, ATTRIBUTES, DIGEST;
+
+		public static Incremental parse(final String incremental) {
+			return valueOf(incremental.toUpperCase(Locale.ROOT));
+		}
+	}
+
+	/**
+	 * Digests the content of a file the same way as the extraction whose digest was recorded, so that both can be
+	 * compared.
+	 */
+	@FunctionalInterface
+	public interface ContentDigester {
+
+		/**
+		 * @param path the file to digest
+		 * @return the digest of the file's content, or {@code null} if none could be computed
+		 * @throws IOException if the file can't be read
+		 */
+		String digest(final Path path) throws IOException;
+	}
+
 	private Set<Class<? extends Exception>> journalableTypes = new HashSet<>();
 	private Map<Path, Report> journal = new ConcurrentHashMap<>();
 	private Semaphore flushing = new Semaphore(1);
+	private Incremental incremental = Incremental.OFF;
+
+	/**
+	 * Fingerprints taken by {@link #skip(Path)} for the files it lets through, saved with their report once they are
+	 * extracted. Taken before the extraction so that a change made during it is seen on the next run.
+	 */
+	private final Map<Path, Fingerprint> fingerprints = new ConcurrentHashMap<>();
 
 	/**
 	 * The report to save results to or check.
@@ -38,6 +85,25 @@ public class Reporter implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Configure the reporter from the given options.
+	 *
+	 * @param options the options to configure from
+	 * @return this reporter
+	 */
+	public Reporter configure(final Options<String> options) {
+		options.get("incremental", "off").parse().asEnum(Incremental::parse).ifPresent(this::setIncremental);
+		return this;
+	}
+
+	public void setIncremental(final Incremental incremental) {
+		this.incremental = incremental;
+	}
+
+	public Incremental getIncremental() {
+		return incremental;
+	}
+
 	/**
 	 * Check the extraction result of a given tikaDocument.
 	 *
@@ -55,11 +121,14 @@ public class Reporter implements AutoCloseable {
 	 * @param report the extraction report
 	 */
 	public void save(final Path path, final Report report) {
+		final Report saved = Incremental.OFF == incremental || report.getFingerprint().isPresent() ?
+				report : report.withFingerprint(takeFingerprint(path));
+
 		try {
-			reportMap.fastPut(path, report);
+			reportMap.fastPut(path, saved);
 		} catch (Exception e) {
 			if (journalableTypes.contains(e.getClass())) {
-				journal.put(path, report);
+				journal.put(path, saved);
 			}
 
 			throw e;
@@ -85,6 +154,28 @@ public class Reporter implements AutoCloseable {
 		save(path, new Report(status, exception));
 	}
 
+	/**
+	 * Save the extraction status and optional exception for the given tikaDocument, along with the digest of its
+	 * content computed by the extraction, recorded in digest mode.
+	 *
+	 * @param path the tikaDocument
+	 * @param status the extraction status
+	 * @param exception any exception caught during extraction
+	 * @param digest the digest of the tikaDocument's content, or {@code null} if it wasn't computed
+	 */
+	public void save(final Path path, final ExtractionStatus status, final Exception exception, final String digest) {
+		final Report report = new Report(status, exception);
+
+		if (Incremental.DIGEST != incremental || null == digest) {
+			save(path, report);
+			return;
+		}
+
+		final Fingerprint taken = takeFingerprint(path);
+
+		save(path, report.withFingerprint(null == taken ? null : taken.withDigest(digest)));
+	}
+
 	/**
 	 * Save the extraction status for the given tikaDocument.
 	 *
@@ -123,15 +214,79 @@ public class Reporter implements AutoCloseable {
 			ExtractionStatus.FAILURE_FATAL);
 
 	/**
-	 * Check whether a path should be skipped on resume.
+	 * Check whether a path should be skipped on resume, comparing only the attributes of the file, even in digest
+	 * mode: without the digester of the extraction, a digest couldn't be compared with the recorded one.
 	 *
 	 * @param path the tikaDocument to check
 	 * @return {@code true} if the tikaDocument has a terminal recorded status and should be skipped.
+	 * @see #skip(Path, ContentDigester)
 	 */
 	public boolean skip(final Path path) {
+		return skip(path, null);
+	}
+
+	/**
+	 * Check whether a path should be skipped on resume.
+	 *
+	 * In incremental mode, a file with a terminal status is only skipped if it's unchanged since it was recorded.
+	 * A file recorded before fingerprints were is assumed unchanged, and its current fingerprint is recorded as the
+	 * baseline, so that turning incremental mode on against an existing report doesn't re-extract everything.
+	 *
+	 * Only the attributes of the file are read, unless they differ from the recorded ones in digest mode: the file is
+	 * then digested, to be compared with the digest recorded when it was extracted.
+	 *
+	 * @param path the tikaDocument to check
+	 * @param digester digests the content the same way as the extraction, or {@code null} to compare attributes only
+	 * @return {@code true} if the tikaDocument has a terminal recorded status and should be skipped.
+	 */
+	public boolean skip(final Path path, final ContentDigester digester) {
 		final Report report = report(path);
+		final boolean done = null != report && TERMINAL_STATUSES.contains(report.getStatus());
 
-		return null != report && TERMINAL_STATUSES.contains(report.getStatus());
+		if (Incremental.OFF == incremental) {
+			return done;
+		}
+
+		final Fingerprint current;
+
+		try {
+			current = Fingerprint.of(path);
+		} catch (final IOException e) {
+			// Let the extraction run into the same error and record it.
+			return false;
+		}
+
+		if (!done) {
+			fingerprints.put(path, current);
+			return false;
+		}
+
+		final Fingerprint recorded = report.getFingerprint().orElse(null);
+
+		if (null == recorded) {
+			logger.debug(String.format("Recording a baseline fingerprint for \"%s\".", path));
+			save(path, report.withFingerprint(current));
+			return true;
+		}
+
+		if (recorded.sameAttributes(current)) {
+			return true;
+		}
+
+		// Touched or copied over, but with the same content: skip, and record the new attributes so that the next
+		// run doesn't digest it again.
+		if (Incremental.DIGEST == incremental && null != digester && null != recorded.getDigest()) {
+			final String digest = digest(path, digester);
+
+			if (recorded.getDigest().equals(digest)) {
+				save(path, report.withFingerprint(current.withDigest(digest)));
+				return true;
+			}
+		}
+
+		logger.info(String.format("File changed since it was extracted; re-extracting: \"%s\".", path));
+		fingerprints.put(path, current);
+		return false;
 	}
 
 	@Override
@@ -157,6 +312,31 @@ public class Reporter implements AutoCloseable {
 		journalableTypes.add(e);
 	}
 
+	// The fingerprint taken when the file was let through by skip(Path), or a new one if skip wasn't called.
+	private Fingerprint takeFingerprint(final Path path) {
+		final Fingerprint taken = fingerprints.remove(path);
+
+		if (null != taken) {
+			return taken;
+		}
+
+		try {
+			return Fingerprint.of(path);
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	// The digest of the content, or null if it can't be read, in which case the file is re-extracted.
+	private static String digest(final Path path, final ContentDigester digester) {
+		try {
+			return digester.digest(path);
+		} catch (final IOException e) {
+			logger.warn(String.format("Unable to digest \"%s\"; re-extracting it.", path), e);
+			return null;
+		}
+	}
+
 	/**
 	 * Flush the journal of failed status to the report.
 	 */
@@ -4,9 +4,11 @@ import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import org.apache.commons.io.TaggedIOException;
+import org.apache.commons.io.output.ProxyOutputStream;
 import org.apache.commons.io.output.TaggedOutputStream;
 import org.apache.tika.metadata.Metadata;
 import org.icij.extract.document.TikaDocument;
+import org.icij.extract.document.Utf8TextReader;
 import org.icij.extract.extractor.Extractor;
 import org.icij.task.Options;
 import org.icij.task.annotation.Option;
@@ -14,9 +16,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Writes the text or HTML output from a {@link Reader} to the filesystem.
@@ -28,7 +33,7 @@ import java.nio.file.Paths;
 		"current directory.", parameter = "path")
 @Option(name = "outputFormat", description = "Set the output format. Either \"text\" or \"HTML\". " +
 		"Defaults to text output.", parameter = "type")
-public class FileSpewer extends Spewer implements Serializable {
+public class FileSpewer extends Spewer implements PushedContentSpewer, Serializable {
 
 	private static final Logger logger = LoggerFactory.getLogger(FileSpewer.class);
 
@@ -108,6 +113,78 @@ public class FileSpewer extends Spewer implements Serializable {
 
 	@Override
 	protected void writeDocument(TikaDocument tikaDocument, TikaDocument parent, TikaDocument root, int level) throws IOException {
+		final Path contentsOutputPath = createContentsOutputPath(tikaDocument);
+		final Reader reader = tikaDocument.getReader();
+		TaggedOutputStream tagged = null;
+
+		// #copy buffers the input so there's no need to use an output buffer.
+		try (final FileChannel channel = FileChannel.open(contentsOutputPath, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			if (reader instanceof Utf8TextReader text && text.isUnread() && acceptsUtf8Bytes()) {
+				transfer(text, channel, contentsOutputPath);
+			} else {
+				tagged = new TaggedOutputStream(Channels.newOutputStream(channel));
+				copy(reader, tagged);
+			}
+		} catch (IOException e) {
+			if (null != tagged && tagged.isCauseOf(e)) {
+				throw new TaggedIOException(new IOException(String.format("Error writing output to file: \"%s\".",
+						contentsOutputPath), e), this);
+			} else {
+				throw e;
+			}
+		}
+
+		if (outputMetadata) {
+			writeMetadata(tikaDocument);
+		}
+	}
+
+	// From file to file, the bytes are copied by the system. The temporary file of the text is local, so failures
+	// are taken to be failures to write the output.
+	private void transfer(final Utf8TextReader text, final FileChannel channel, final Path contentsOutputPath)
+			throws IOException {
+		try {
+			text.transferTo(channel);
+		} catch (IOException e) {
+			throw new TaggedIOException(new IOException(String.format("Error writing output to file: \"%s\".",
+					contentsOutputPath), e), this);
+		}
+	}
+
+	/**
+	 * The text is written to the file as it's parsed, and the metadata once it's parsed, as for a document read
+	 * from its reader.
+	 */
+	@Override
+	public Writer openPushedContent(final TikaDocument root) throws IOException {
+		final Path contentsOutputPath = createContentsOutputPath(root);
+
+		// The writer encodes into a buffer of its own, so there's no need to use an output buffer either.
+		return new OutputStreamWriter(new ProxyOutputStream(Files.newOutputStream(contentsOutputPath)) {
+
+			@Override
+			protected void handleIOException(final IOException e) throws IOException {
+				throw new TaggedIOException(new IOException(String.format("Error writing output to file: \"%s\".",
+						contentsOutputPath), e), FileSpewer.this);
+			}
+		}, getOutputEncoding());
+	}
+
+	@Override
+	public void writePushed(final TikaDocument root) throws IOException {
+		writePushedDocument(root);
+		writeEmbeds(root);
+	}
+
+	@Override
+	public void writePushedDocument(final TikaDocument root) throws IOException {
+		if (outputMetadata) {
+			writeMetadata(root);
+		}
+	}
+
+	private Path createContentsOutputPath(final TikaDocument tikaDocument) throws IOException {
 		final Path outputPath = getOutputPath(tikaDocument);
 
 		// Add the output extension.
@@ -133,23 +210,35 @@ public class FileSpewer extends Spewer implements Serializable {
 			}
 		}
 
-		TaggedOutputStream tagged = null;
+		return contentsOutputPath;
+	}
 
-		// #copy buffers the input so there's no need to use an output buffer.
-		try (final OutputStream output = Files.newOutputStream(contentsOutputPath)) {
-			tagged = new TaggedOutputStream(output);
-			copy(tikaDocument.getReader(), tagged);
-		} catch (IOException e) {
-			if (null != tagged && tagged.isCauseOf(e)) {
-				throw new TaggedIOException(new IOException(String.format("Error writing output to file: \"%s\".",
-						contentsOutputPath), e), this);
-			} else {
-				throw e;
-			}
+	/**
+	 * Writes a JSON file next to where the duplicate's output would have been, naming the digest of the content
+	 * that was extracted under another path.
+	 */
+	@Override
+	public void writeAlias(final TikaDocument duplicate, final String digest) throws IOException {
+		Path outputPath = getOutputPath(duplicate);
+		outputPath = outputPath.getFileSystem().getPath(outputPath + ".alias.json");
+
+		logger.info(String.format("Outputting alias to file: \"%s\".", outputPath));
+
+		final Path outputParent = outputPath.getParent();
+		if (null != outputParent) {
+			Files.createDirectories(outputParent);
 		}
 
-		if (outputMetadata) {
-			writeMetadata(tikaDocument);
+		try (final JsonGenerator jsonGenerator = new JsonFactory().createGenerator(outputPath.toFile(), JsonEncoding.UTF8)) {
+			jsonGenerator.useDefaultPrettyPrinter();
+			jsonGenerator.writeStartObject();
+			jsonGenerator.writeStringField("path", duplicate.getPath().toString());
+			jsonGenerator.writeStringField("id", duplicate.getId());
+			jsonGenerator.writeStringField("digest", digest);
+			jsonGenerator.writeEndObject();
+			jsonGenerator.writeRaw('\n');
+		} catch (IOException e) {
+			throw new TaggedIOException(e, this);
 		}
 	}
 
@@ -0,0 +1,42 @@
+package org.icij.spewer;
+
+import org.icij.extract.document.TikaDocument;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A {@link Spewer} that takes the text of a root as it's parsed, on the parse thread, instead of reading it from the
+ * root's reader once the parse has started.
+ *
+ * <p>A spewer that writes a document's metadata before its text, or that needs the whole text at once, can't take it
+ * as it's parsed, and shouldn't implement this.
+ */
+public interface PushedContentSpewer {
+
+    /**
+     * Open the writer that the parse writes the text of the given root to. The caller closes it once the parse
+     * ends, then calls {@link #writePushed(TikaDocument)}. A failure to write the output should be thrown as a
+     * {@link org.apache.commons.io.TaggedIOException} tagged with this spewer, as when copying from a reader.
+     *
+     * @param root the root about to be parsed
+     * @return the writer of its text
+     */
+    Writer openPushedContent(TikaDocument root) throws IOException;
+
+    /**
+     * Write a root whose text was written to {@link #openPushedContent(TikaDocument)} as it was parsed, then its
+     * embeds, as {@link Spewer#write(TikaDocument)} does.
+     *
+     * @param root the parsed root
+     */
+    void writePushed(TikaDocument root) throws IOException;
+
+    /**
+     * Write what's left of a root once its text was pushed, typically its metadata, which is only complete once
+     * the parse has ended. Its embeds are written by the caller.
+     *
+     * @param root the parsed root
+     */
+    void writePushedDocument(TikaDocument root) throws IOException;
+}
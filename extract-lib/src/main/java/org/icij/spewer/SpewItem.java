@@ -5,6 +5,13 @@ import org.icij.extract.document.TikaDocument;
 /**
  * One embedded document that is ready to be written to the spewer, carrying the same arguments the
  * legacy tree walk passes to {@link Spewer#writeDocument(TikaDocument, TikaDocument, TikaDocument, int)}:
- * the embed, its immediate parent, the top-level root, and its 1-based nesting level.
+ * the embed, its immediate parent, the top-level root, and its 1-based nesting level, along with the
+ * number of bytes of text buffered for it, counted against the byte bound of a {@link SpewPool}.
  */
-public record SpewItem(TikaDocument embed, TikaDocument parent, TikaDocument root, int level) {}
+public record SpewItem(TikaDocument embed, TikaDocument parent, TikaDocument root, int level, long bytes) {
+
+    /** An embed with no buffered text, or text of an unknown size. */
+    public SpewItem(final TikaDocument embed, final TikaDocument parent, final TikaDocument root, final int level) {
+        this(embed, parent, root, level, 0L);
+    }
+}
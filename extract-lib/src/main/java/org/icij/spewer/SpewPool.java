@@ -0,0 +1,146 @@
+package org.icij.spewer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Worker threads shared by every {@link StreamingSpewCoordinator} created with it, in place of the threads each
+ * coordinator would start for its own root, most of which write a handful of embeds.
+ *
+ * <p>Roots take turns: a thread writes one embed of the root at the head of the line, which goes back to the end of
+ * the line if another of its embeds is free to be written. A root with thousands of embeds therefore doesn't hold up
+ * the roots extracted alongside it. Within a root, embeds are written in the same order as by the coordinator's own
+ * workers.
+ *
+ * <p>The pool bounds the bytes held by the embeds readied but not yet written across all roots, in place of the
+ * number of embeds each coordinator holds: {@link StreamingSpewCoordinator#ready(SpewItem)} blocks while the bound
+ * would be exceeded. Each embed counts for its text and {@link #EMBED_BYTES} more, for its document and metadata, so
+ * that a root of many tiny embeds is bounded too. An embed is always admitted when nothing is held, so that one larger
+ * than the bound doesn't block forever.
+ */
+public class SpewPool implements AutoCloseable {
+
+    /** The bytes an embed is counted for besides its text: a rough size of its document and metadata. */
+    public static final long EMBED_BYTES = 1024;
+
+    private final long maxQueuedBytes;
+    private final List<Thread> threads = new ArrayList<>();
+    // The coordinators with an embed free to be written, in turn; guarded by itself.
+    private final ArrayDeque<StreamingSpewCoordinator> turns = new ArrayDeque<>();
+    private final Set<StreamingSpewCoordinator> waiting = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Object bytesLock = new Object();
+    private long queuedBytes = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * @param threads        the number of threads writing embeds
+     * @param maxQueuedBytes the bytes held by readied embeds beyond which {@link StreamingSpewCoordinator#ready}
+     *                       blocks
+     */
+    public SpewPool(final int threads, final long maxQueuedBytes) {
+        this.maxQueuedBytes = Math.max(1, maxQueuedBytes);
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            final Thread t = new Thread(this::run, "extract-spew-pool-" + (i + 1));
+            t.setDaemon(true);
+            this.threads.add(t);
+            t.start();
+        }
+    }
+
+    /** Block until an embed with the given bytes of text can be held, then count it. */
+    void reserve(final long textBytes) throws InterruptedException {
+        final long bytes = textBytes + EMBED_BYTES;
+        synchronized (bytesLock) {
+            while (queuedBytes > 0 && queuedBytes + bytes > maxQueuedBytes && !closed) {
+                bytesLock.wait();
+            }
+            queuedBytes += bytes;
+        }
+    }
+
+    void release(final long textBytes) {
+        synchronized (bytesLock) {
+            queuedBytes -= textBytes + EMBED_BYTES;
+            bytesLock.notifyAll();
+        }
+    }
+
+    /** The bytes held by readied embeds not yet written, text and {@link #EMBED_BYTES} each. */
+    public long queuedBytes() {
+        synchronized (bytesLock) {
+            return queuedBytes;
+        }
+    }
+
+    /**
+     * Put the coordinator in line, if it has an embed free to be written and isn't in line already.
+     *
+     * @return {@code false} if the pool was closed, the coordinator's embeds then being left for the caller to write
+     */
+    boolean schedule(final StreamingSpewCoordinator coordinator) {
+        synchronized (turns) {
+            if (closed) {
+                return false;
+            }
+            if (!waiting.contains(coordinator) && coordinator.hasFree()) {
+                turns.add(coordinator);
+                waiting.add(coordinator);
+                turns.notify();
+            }
+            return true;
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                final Runnable write;
+                synchronized (turns) {
+                    while (turns.isEmpty() && !closed) {
+                        turns.wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    final StreamingSpewCoordinator coordinator = turns.poll();
+                    waiting.remove(coordinator);
+                    write = coordinator.poll();
+
+                    // Back to the end of the line, letting another thread write its next embed meanwhile.
+                    if (coordinator.hasFree()) {
+                        turns.add(coordinator);
+                        waiting.add(coordinator);
+                        turns.notify();
+                    }
+                }
+                if (null != write) {
+                    write.run();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop the threads, once no root is being extracted with the pool. Embeds readied afterwards are written on the
+     * thread readying them.
+     */
+    @Override
+    public void close() {
+        synchronized (turns) {
+            closed = true;
+            turns.clear();
+            waiting.clear();
+            turns.notifyAll();
+        }
+        synchronized (bytesLock) {
+            bytesLock.notifyAll();
+        }
+        threads.forEach(Thread::interrupt);
+    }
+}
@@ -2,6 +2,7 @@ package org.icij.spewer;
 
 import org.icij.extract.document.EmbeddedTikaDocument;
 import org.icij.extract.document.TikaDocument;
+import org.icij.extract.document.Utf8TextReader;
 import org.icij.extract.parser.ParsingReader;
 import org.icij.task.Options;
 import org.icij.task.annotation.Option;
@@ -106,12 +107,49 @@ public abstract class Spewer implements AutoCloseable, Serializable {
         // no-op by default
     }
 
+    /**
+     * Record a ROOT that was not extracted because a root with the same content was (see
+     * {@link org.icij.extract.extractor.RootDeduplicator}). The duplicate has its own path and ID and its
+     * metadata holds the shared content digest, but it has neither content nor embeds: those are only
+     * written for the copy that was extracted.
+     *
+     * <p>Default no-op: spewers that can represent an alias override this, typically to write a small
+     * record pointing from the duplicate's path to the digest.
+     *
+     * @param duplicate the root that was not extracted
+     * @param digest    the content digest it shares with the extracted root
+     */
+    public void writeAlias(final TikaDocument duplicate, final String digest) throws IOException {
+        // no-op by default
+    }
+
+    /**
+     * Write a document again, over the version written earlier with the same ID. Called by the second phase of a
+     * two-phase extraction (see {@link org.icij.extract.extractor.DeferredOcrQueue}) once a document that was
+     * written without its OCR text has been parsed again with it. Only the document itself is written: its embeds
+     * were written with the first version and haven't changed.
+     *
+     * <p>By default the document is written as it was the first time, which replaces it in spewers that key
+     * documents by ID. Spewers that append must override this to replace the earlier version.
+     *
+     * @param document the document parsed again
+     * @param parent   its parent, or {@code null} for a root
+     * @param root     its root, or {@code null} for a root
+     * @param level    its depth in the tree, 0 for a root
+     */
+    public void writeUpdate(final TikaDocument document, final TikaDocument parent, final TikaDocument root,
+                            final int level) throws IOException {
+        try {
+            writeDocument(document, parent, root, level);
+        } finally {
+            closeReaderQuietly(document);
+        }
+    }
+
     public void write(final TikaDocument document) throws IOException {
         try {
             writeDocument(document, null, null, 0);
-            for (EmbeddedTikaDocument childDocument : document.getEmbeds()) {
-                writeTree(childDocument, document, document, 1);
-            }
+            writeEmbeds(document);
         } finally {
             // Closing the root reader releases any embedded-text temp files spilled past the
             // in-memory budget (see ResourceClosingReader). Owning cleanup here means every
@@ -120,6 +158,15 @@ public abstract class Spewer implements AutoCloseable, Serializable {
         }
     }
 
+    /**
+     * Write the embeds of a root whose document was written, depth first.
+     */
+    protected void writeEmbeds(final TikaDocument root) throws IOException {
+        for (EmbeddedTikaDocument childDocument : root.getEmbeds()) {
+            writeTree(childDocument, root, root, 1);
+        }
+    }
+
     private void writeTree(final TikaDocument doc, final TikaDocument parent, TikaDocument root, final int level)
             throws IOException {
         try {
@@ -195,7 +242,21 @@ public abstract class Spewer implements AutoCloseable, Serializable {
         }
     }
 
+    /**
+     * Whether text that is already encoded in UTF-8, like that of spawned embeds (see {@link Utf8TextReader}), can
+     * be copied to the output of this spewer as bytes, which is when the output is encoded in UTF-8 too.
+     */
+    public boolean acceptsUtf8Bytes() {
+        return StandardCharsets.UTF_8.equals(outputEncoding);
+    }
+
     protected void copy(final Reader input, final OutputStream output) throws IOException {
+        if (input instanceof Utf8TextReader text && text.isUnread() && acceptsUtf8Bytes()) {
+            text.transferTo(output);
+            output.flush();
+            return;
+        }
+
         copy(input, new OutputStreamWriter(output, outputEncoding));
     }
 
@@ -1,42 +1,69 @@
 package org.icij.spewer;
 
+import org.icij.extract.document.EmbeddedTikaDocument;
 import org.icij.extract.document.TikaDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Streaming spew: writes embeds to the {@link Spewer} as they are produced by the parse, on a single
- * dedicated worker thread, instead of walking a fully-built tree afterwards.
+ * Streaming spew: writes embeds to the {@link Spewer} as they are produced by the parse, on dedicated
+ * worker threads, instead of walking a fully-built tree afterwards.
  *
  * <p>Threading: the parse thread calls {@link #promise()} (synchronously, per embed) and
  * {@link #ready(SpewItem)} (when the embed's text is buffered; the OCR completion thread does this
- * for deferred embeds). The single worker thread drains the queue and writes each embed. The
- * foreground thread calls {@link #spew(TikaDocument)}, which writes the root (driving the parse via
- * the root pipe) and then awaits every promised embed before closing the root reader.
+ * for deferred embeds). The worker threads, one by default, take the embeds in the order they were
+ * readied and write each. The foreground thread calls {@link #spew(TikaDocument)}, which writes the
+ * root (driving the parse via the root pipe) and then awaits every promised embed before closing the
+ * root reader.
  *
- * <p>The worker never blocks on OCR: a deferred embed is enqueued only AFTER its OCR future has
- * completed, so reading its reader returns immediately. The bounded queue provides backpressure
- * (the parse thread blocks in {@link #ready} when the worker lags) without deadlock, because the
- * worker can always make progress on what it dequeues.
+ * <p>With more than one worker, an embed is not written while an embed readied before it that is
+ * its ancestor or descendant is still waiting or being written, so an embed and its ancestors are
+ * written in the same order as by a single worker: a parent readied before its children is written
+ * before them. Unrelated embeds are written concurrently, the spewer being called from several
+ * threads, as it already is by the foreground and the worker.
+ *
+ * <p>With a {@link SpewPool}, the coordinator starts no thread: the pool's threads, shared by the
+ * coordinators of every root being extracted, write the embeds in the same order, taking turns with
+ * the other roots. {@link #ready} then blocks while the embeds of all roots hold more bytes than the
+ * pool allows, rather than on the number of embeds of this root.
+ *
+ * <p>The workers never block on OCR: a deferred embed is readied only AFTER its OCR future has
+ * completed, so reading its reader returns immediately. The bounded number of readied-but-unwritten
+ * embeds provides backpressure (the parse thread blocks in {@link #ready} when the workers lag)
+ * without deadlock, because the earliest of them is always free to be written.
  */
 public class StreamingSpewCoordinator implements SpewSink, AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(StreamingSpewCoordinator.class);
-    private static final Object POISON = new Object();
 
     private final Spewer spewer;
-    private final BlockingQueue<Object> queue;
+    private final int writers;
+    // The shared workers writing the embeds, or null for workers of this coordinator's own.
+    private final SpewPool pool;
+    // Bounds the embeds readied but not yet written, or null when the pool bounds their bytes instead.
+    private final Semaphore capacity;
+    // Embeds readied but not yet written, and those waiting on them; guarded by itself.
+    private final Pending pending = new Pending();
     private final AtomicLong promised = new AtomicLong();
     private final AtomicLong completed = new AtomicLong();
     private final AtomicLong writtenEmbeds = new AtomicLong();
     private final Object drainLock = new Object();
+    private final Object stubLock = new Object();
     private volatile Throwable workerError;
-    private volatile Thread worker;
+    private final List<Thread> workers = new ArrayList<>();
+    private boolean pooled = false;
     // The root the streamed embeds belong to, captured off the worker as it writes them. It drives two
     // things: writeEarlyRootStub() makes the root visible in the index as soon as the first child is
     // written (during a long parse), and on close() after an aborted parse (the foreground never
@@ -49,27 +76,61 @@ public class StreamingSpewCoordinator implements SpewSink, AutoCloseable {
     private volatile boolean closed;
 
     public StreamingSpewCoordinator(final Spewer spewer, final int queueCapacity) {
+        this(spewer, queueCapacity, 1);
+    }
+
+    /**
+     * @param queueCapacity the number of embeds readied but not yet written beyond which {@link #ready} blocks
+     * @param writers       the number of worker threads writing embeds
+     */
+    public StreamingSpewCoordinator(final Spewer spewer, final int queueCapacity, final int writers) {
+        this(spewer, queueCapacity, writers, null);
+    }
+
+    /**
+     * @param pool the workers writing embeds, shared with the coordinators of other roots, which also bound the
+     *             bytes held by the embeds readied but not yet written
+     */
+    public StreamingSpewCoordinator(final Spewer spewer, final SpewPool pool) {
+        this(spewer, 0, 1, pool);
+    }
+
+    private StreamingSpewCoordinator(final Spewer spewer, final int queueCapacity, final int writers,
+                                     final SpewPool pool) {
         this.spewer = spewer;
-        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writers = Math.max(1, writers);
+        this.pool = pool;
+        this.capacity = null == pool ? new Semaphore(Math.max(1, queueCapacity)) : null;
     }
 
     /**
-     * Start the single spew-worker thread. Idempotent: a second call while a worker is running is a
+     * Start the spew-worker threads. Idempotent: a second call while workers are running is a
      * no-op. This MUST be called before the parse begins producing embeds — i.e. before the
      * potentially long-blocking reader construction inside {@code Extractor.extract(path, sink)} — so
-     * the worker drains the bounded queue WHILE the parse runs. If the worker only started after
+     * the workers drain the bounded queue WHILE the parse runs. If they only started after
      * {@code extract()} returned, a container whose root body text is emitted late (a PST/OST emits no
      * root text — all content is in embeds) would block {@code extract()}'s first-character read while
-     * embeds fill the bounded queue with no consumer, deadlocking once the queue is full.
+     * embeds fill the bounded queue with no consumer, deadlocking once the queue is full. With a
+     * {@link SpewPool}, no thread is started: the pool's threads take turns with the other roots.
      */
     public synchronized void start() {
-        if (worker != null) {
+        if (null != pool) {
+            if (!pooled) {
+                pending.reopen();
+                pooled = true;
+            }
+            return;
+        }
+        if (!workers.isEmpty()) {
             return;
         }
-        final Thread t = new Thread(this::run, "extract-spew");
-        t.setDaemon(true);
-        worker = t;
-        t.start();
+        pending.reopen();
+        for (int i = 0; i < writers; i++) {
+            final Thread t = new Thread(this::run, 1 == writers ? "extract-spew" : "extract-spew-" + (i + 1));
+            t.setDaemon(true);
+            workers.add(t);
+            t.start();
+        }
     }
 
     @Override
@@ -79,12 +140,32 @@ public class StreamingSpewCoordinator implements SpewSink, AutoCloseable {
 
     @Override
     public void ready(final SpewItem item) {
+        if (null == pool) {
+            try {
+                capacity.acquire(); // blocks when full -> backpressure on the parse / OCR thread
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Count it as completed so awaitDrained cannot hang on a lost item.
+                signalCompleted();
+                return;
+            }
+            pending.add(item);
+            return;
+        }
         try {
-            queue.put(item); // blocks when full -> backpressure on the parse / OCR thread
+            pool.reserve(item.bytes()); // blocks when the embeds of all roots hold too much
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
-            // Count it as completed so awaitDrained cannot hang on a lost item.
             signalCompleted();
+            return;
+        }
+        if (!pending.add(item)) {
+            // Readied after the embeds were drained on close: there is no one left to write it.
+            Spewer.closeReaderQuietly(item.embed());
+            pool.release(item.bytes());
+            signalCompleted();
+        } else if (!pool.schedule(this)) {
+            writeFree(); // the pool was closed, with the extractor: write the embed here instead
         }
     }
 
@@ -94,10 +175,30 @@ public class StreamingSpewCoordinator implements SpewSink, AutoCloseable {
      * Rethrows the root parse error if any, else the first worker error.
      */
     public void spew(final TikaDocument root) throws IOException {
+        spew(root, () -> spewer.writeDocument(root, null, null, 0));
+    }
+
+    /**
+     * Foreground entry point for a root whose text was written to the spewer as it was parsed (see
+     * {@link PushedContentSpewer#openPushedContent(TikaDocument)}). The parse has ended, so only the rest of the
+     * root is written, then every promised embed is awaited as by {@link #spew(TikaDocument)}.
+     *
+     * @param pushed the coordinator's spewer, which took the pushed text
+     * @param root the parsed root
+     */
+    public void spewPushed(final PushedContentSpewer pushed, final TikaDocument root) throws IOException {
+        spew(root, () -> pushed.writePushedDocument(root));
+    }
+
+    private interface RootWrite {
+        void write() throws IOException;
+    }
+
+    private void spew(final TikaDocument root, final RootWrite rootWrite) throws IOException {
         start();
         Throwable rootError = null;
         try {
-            spewer.writeDocument(root, null, null, 0);
+            rootWrite.write();
             rootWritten = true;
         } catch (final Throwable t) {
             rootError = t;
@@ -135,40 +236,68 @@ public class StreamingSpewCoordinator implements SpewSink, AutoCloseable {
     private void run() {
         try {
             while (true) {
-                final Object o = queue.take();
-                if (o == POISON) {
+                final Pending.Node node = pending.next();
+                if (node == null) {
                     return;
                 }
-                final SpewItem item = (SpewItem) o;
-                if (seenRoot == null) {
-                    seenRoot = item.root();
-                }
-                try {
-                    // Skip children of a duplicate root, matching the legacy tree walk's gating.
-                    if (!item.root().isDuplicate()) {
-                        spewer.writeDocument(item.embed(), item.parent(), item.root(), item.level());
-                        writtenEmbeds.incrementAndGet();
-                        // Only after the first child is durably indexed: a stub must never outlive a
-                        // parse that wrote zero children (that would leave a contentless PARTIAL ghost
-                        // root on abort). writeEarlyRootStub() is idempotent, so calling it per child is
-                        // fine -- only the first call writes.
-                        writeEarlyRootStub();
-                    }
-                } catch (final Throwable t) {
-                    if (workerError == null) {
-                        workerError = t; // record the first; keep draining so awaitDrained never hangs
-                    }
-                    logger.error("streaming spew failed for embed {}", item.embed().getId(), t);
-                } finally {
-                    Spewer.closeReaderQuietly(item.embed()); // free the embed's text buffer / spill file
-                    signalCompleted();
-                }
+                write(node);
             }
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
         }
     }
 
+    /** Whether an embed is free to be written by a {@link SpewPool}. */
+    boolean hasFree() {
+        return pending.hasFree();
+    }
+
+    /** Take the earliest embed free to be written, for a {@link SpewPool} to write, or {@code null} if none is. */
+    Runnable poll() {
+        final Pending.Node node = pending.poll();
+        return null == node ? null : () -> write(node);
+    }
+
+    private void writeFree() {
+        for (Runnable write = poll(); null != write; write = poll()) {
+            write.run();
+        }
+    }
+
+    private void write(final Pending.Node node) {
+        final SpewItem item = node.item;
+        if (seenRoot == null) {
+            seenRoot = item.root();
+        }
+        try {
+            // Skip children of a duplicate root, matching the legacy tree walk's gating.
+            if (!item.root().isDuplicate()) {
+                spewer.writeDocument(item.embed(), item.parent(), item.root(), item.level());
+                writtenEmbeds.incrementAndGet();
+                // Only after the first child is durably indexed: a stub must never outlive a
+                // parse that wrote zero children (that would leave a contentless PARTIAL ghost
+                // root on abort). writeEarlyRootStub() is idempotent, so calling it per child is
+                // fine -- only the first call writes.
+                writeEarlyRootStub();
+            }
+        } catch (final Throwable t) {
+            if (workerError == null) {
+                workerError = t; // record the first; keep draining so awaitDrained never hangs
+            }
+            logger.error("streaming spew failed for embed {}", item.embed().getId(), t);
+        } finally {
+            Spewer.closeReaderQuietly(item.embed()); // free the embed's text buffer / spill file
+            pending.written(node);
+            if (null == pool) {
+                capacity.release();
+            } else {
+                pool.release(item.bytes());
+                pool.schedule(this); // the embeds waiting on this one may now be free
+            }
+            signalCompleted();
+        }
+    }
+
     /**
      * Write the container root as a contentless PARTIAL stub as soon as the first child is durably
      * indexed, so the root is visible in the index during a long parse instead of only at the end
@@ -176,17 +305,20 @@ public class StreamingSpewCoordinator implements SpewSink, AutoCloseable {
      * parse, on the worker thread. The end-of-parse real root write (same id+path) later overwrites the
      * stub with full content, and finalizeRoot marks it complete. A duplicate root needs no stub (its
      * children are skipped). The !rootWritten guard avoids clobbering an already-written real root in
-     * the degenerate case where the root body was read before the first child was drained.
+     * the degenerate case where the root body was read before the first child was drained. Locked so
+     * that, with several workers, only one writes the stub.
      */
     private void writeEarlyRootStub() {
-        final TikaDocument root = seenRoot;
-        if (rootStubWritten || rootWritten || root == null || root.isDuplicate()) {
-            return;
-        }
-        try {
-            rootStubWritten = spewer.writeRootStub(root, writtenEmbeds.get());
-        } catch (final Throwable t) {
-            logger.error("failed to write early root stub for {}", root.getId(), t);
+        synchronized (stubLock) {
+            final TikaDocument root = seenRoot;
+            if (rootStubWritten || rootWritten || root == null || root.isDuplicate()) {
+                return;
+            }
+            try {
+                rootStubWritten = spewer.writeRootStub(root, writtenEmbeds.get());
+            } catch (final Throwable t) {
+                logger.error("failed to write early root stub for {}", root.getId(), t);
+            }
         }
     }
 
@@ -211,19 +343,41 @@ public class StreamingSpewCoordinator implements SpewSink, AutoCloseable {
         }
     }
 
+    // Let the workers write what is already readied, then stop them.
     private void shutdownWorker() {
-        final Thread t = worker;
-        if (t == null) {
+        if (null != pool) {
+            synchronized (this) {
+                if (!pooled) {
+                    return;
+                }
+                pooled = false;
+            }
+            if (!pool.schedule(this)) {
+                writeFree();
+            }
+            try {
+                pending.drain();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             return;
         }
+        final List<Thread> running;
+        synchronized (this) {
+            if (workers.isEmpty()) {
+                return;
+            }
+            running = new ArrayList<>(workers);
+            workers.clear();
+        }
+        pending.close();
         try {
-            queue.put(POISON);
-            t.join();
+            for (Thread t : running) {
+                t.join();
+            }
         } catch (final InterruptedException e) {
             Thread.currentThread().interrupt();
-            t.interrupt();
-        } finally {
-            worker = null;
+            running.forEach(Thread::interrupt);
         }
     }
 
@@ -270,6 +424,124 @@ public class StreamingSpewCoordinator implements SpewSink, AutoCloseable {
         }
     }
 
+    /**
+     * The embeds readied but not yet written, in the order they were readied, each waiting on those readied before
+     * it that are its ancestors or descendants.
+     */
+    private static final class Pending {
+
+        private static final class Node {
+            private final SpewItem item;
+            private final long sequence;
+            // The embed's ancestors that may themselves be streamed, the root excluded.
+            private final List<TikaDocument> ancestors = new ArrayList<>();
+            private final List<Node> dependents = new ArrayList<>();
+            private int waiting = 0;
+
+            private Node(final SpewItem item, final long sequence) {
+                this.item = item;
+                this.sequence = sequence;
+            }
+        }
+
+        private final Map<TikaDocument, Node> byEmbed = new IdentityHashMap<>();
+        private final Map<TikaDocument, Set<Node>> byAncestor = new IdentityHashMap<>();
+        private final PriorityQueue<Node> free = new PriorityQueue<>(Comparator.comparingLong(n -> n.sequence));
+        private long sequence = 0;
+        private boolean closed = false;
+        private boolean drained = false;
+
+        /** @return {@code false} if the embeds were drained, the item then not being added */
+        synchronized boolean add(final SpewItem item) {
+            if (drained) {
+                return false;
+            }
+            final Node node = new Node(item, sequence++);
+
+            for (TikaDocument ancestor = item.parent(); ancestor instanceof EmbeddedTikaDocument embedded;
+                 ancestor = embedded.getParent()) {
+                node.ancestors.add(ancestor);
+                waitOn(node, byEmbed.get(ancestor));
+            }
+            for (Node descendant : byAncestor.getOrDefault(item.embed(), Collections.emptySet())) {
+                waitOn(node, descendant);
+            }
+
+            byEmbed.put(item.embed(), node);
+            for (TikaDocument ancestor : node.ancestors) {
+                byAncestor.computeIfAbsent(ancestor, a -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                        .add(node);
+            }
+            if (0 == node.waiting) {
+                free.add(node);
+                notifyAll();
+            }
+            return true;
+        }
+
+        private static void waitOn(final Node node, final Node earlier) {
+            if (null != earlier) {
+                earlier.dependents.add(node);
+                node.waiting++;
+            }
+        }
+
+        /**
+         * The earliest embed that is free to be written, waiting for one if need be, or {@code null} once closed
+         * with nothing left to write.
+         */
+        synchronized Node next() throws InterruptedException {
+            while (free.isEmpty() && !(closed && byEmbed.isEmpty())) {
+                wait();
+            }
+            return free.poll();
+        }
+
+        synchronized Node poll() {
+            return free.poll();
+        }
+
+        synchronized boolean hasFree() {
+            return !free.isEmpty();
+        }
+
+        synchronized void written(final Node node) {
+            byEmbed.remove(node.item.embed());
+            for (TikaDocument ancestor : node.ancestors) {
+                final Set<Node> descendants = byAncestor.get(ancestor);
+                descendants.remove(node);
+                if (descendants.isEmpty()) {
+                    byAncestor.remove(ancestor);
+                }
+            }
+            for (Node dependent : node.dependents) {
+                if (0 == --dependent.waiting) {
+                    free.add(dependent);
+                }
+            }
+            notifyAll();
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        synchronized void reopen() {
+            closed = false;
+            drained = false;
+        }
+
+        /** Wait for the embeds added so far to be written, refusing any added afterwards. */
+        synchronized void drain() throws InterruptedException {
+            closed = true;
+            while (!byEmbed.isEmpty()) {
+                wait();
+            }
+            drained = true;
+        }
+    }
+
     private static void throwAsIO(final Throwable t) throws IOException {
         if (t instanceof IOException) {
             throw (IOException) t;
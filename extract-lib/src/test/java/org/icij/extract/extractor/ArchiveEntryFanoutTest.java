@@ -0,0 +1,205 @@
+package org.icij.extract.extractor;
+
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZOutputFile;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.icij.extract.document.DigestIdentifier;
+import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.document.EmbeddedTikaDocument;
+import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.Spewer;
+import org.icij.task.Options;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * The entries of a root archive parsed with fan-out must give the same set of {embed id, digest, name, parent, text}
+ * as the serial walk, nested archives included.
+ */
+public class ArchiveEntryFanoutTest {
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String text(final int i) {
+        return ("Entry number " + i + " of the archive. ").repeat(1 + i % 7);
+    }
+
+    private static byte[] nestedZip() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < 3; i++) {
+                zos.putNextEntry(new ZipEntry("nested/n" + i + ".txt"));
+                zos.write(("Nested entry " + i).getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private Path zip(final int entries) throws Exception {
+        final Path zip = tmp.newFile("a.zip").toPath();
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            zos.putNextEntry(new ZipEntry("dir/"));
+            zos.closeEntry();
+            for (int i = 0; i < entries; i++) {
+                zos.putNextEntry(new ZipEntry("dir/f" + i + ".txt"));
+                zos.write(text(i).getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+            zos.putNextEntry(new ZipEntry("inner.zip"));
+            zos.write(nestedZip());
+            zos.closeEntry();
+        }
+        return zip;
+    }
+
+    private Path tar(final int entries) throws Exception {
+        final Path tar = tmp.newFile("a.tar").toPath();
+        try (TarArchiveOutputStream tos = new TarArchiveOutputStream(Files.newOutputStream(tar))) {
+            for (int i = 0; i < entries; i++) {
+                put(tos, "f" + i + ".txt", text(i).getBytes(StandardCharsets.UTF_8));
+            }
+            put(tos, "inner.zip", nestedZip());
+        }
+        return tar;
+    }
+
+    private static void put(final TarArchiveOutputStream tos, final String name, final byte[] bytes) throws Exception {
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(bytes.length);
+        tos.putArchiveEntry(entry);
+        tos.write(bytes);
+        tos.closeArchiveEntry();
+    }
+
+    private Extractor extractor(final boolean fanout) {
+        return new Extractor(new DocumentFactory().withIdentifier(new DigestIdentifier("SHA-384",
+                StandardCharsets.UTF_8)), Options.from(Map.of(
+                "archiveEntryFanout", String.valueOf(fanout),
+                "archiveParseParallelism", "4",
+                "ocr", "false",
+                "digestAlgorithm", "SHA-384",
+                "progressHeartbeatInterval", "0")));
+    }
+
+    private TreeSet<String> identitySet(final Extractor extractor, final Path archive) throws Exception {
+        final TikaDocument doc = extractor.extract(archive);
+        try (Reader r = doc.getReader()) {
+            Spewer.toString(r);
+        }
+        final TreeSet<String> ids = new TreeSet<>();
+        collect(doc, ids);
+        return ids;
+    }
+
+    private void collect(final TikaDocument doc, final TreeSet<String> ids) throws Exception {
+        for (final EmbeddedTikaDocument embed : doc.getEmbeds()) {
+            final String text;
+            try (Reader r = embed.getReader()) {
+                text = Spewer.toString(r).trim();
+            }
+            ids.add(embed.getId() + "|" + doc.getId() + "|"
+                    + embed.getMetadata().get("X-TIKA:digest:SHA384") + "|"
+                    + embed.getMetadata().get(TikaCoreProperties.RESOURCE_NAME_KEY) + "|" + text);
+            collect(embed, ids);
+        }
+    }
+
+    private void assertFanoutMatchesSerial(final Path archive, final int expected) throws Exception {
+        final TreeSet<String> serial;
+        try (Extractor extractor = extractor(false)) {
+            serial = identitySet(extractor, archive);
+            assertThat(extractor.archiveParseExecutorOrNull()).isNull();
+        }
+        assertThat(serial).hasSize(expected);
+
+        try (Extractor extractor = extractor(true)) {
+            for (int run = 0; run < 3; run++) {
+                assertThat(identitySet(extractor, archive)).as("identity set, run " + run).isEqualTo(serial);
+            }
+            // The entries were actually fanned out.
+            assertThat(extractor.archiveParseExecutorOrNull()).isNotNull();
+        }
+    }
+
+    @Test(timeout = 180_000)
+    public void testZipFanoutMatchesSerial() throws Exception {
+        // 40 text entries, the nested archive and its 3 entries.
+        assertFanoutMatchesSerial(zip(40), 44);
+    }
+
+    @Test(timeout = 180_000)
+    public void testTarFanoutMatchesSerial() throws Exception {
+        assertFanoutMatchesSerial(tar(40), 44);
+    }
+
+    @Test(timeout = 180_000)
+    public void testFanoutCountsEveryEntryTowardsProgress() throws Exception {
+        final Path zip = zip(20);
+        try (Extractor extractor = extractor(true)) {
+            final ExtractionProgress progress = extractor.getProgressTracker().begin(zip);
+            identitySet(extractor, zip);
+            assertThat(progress.expectedUnits()).isEqualTo(21L);
+            assertThat(progress.unitsParsed()).isEqualTo(21L);
+        }
+    }
+
+    @Test(timeout = 180_000)
+    public void testSevenZIsWalkedSerially() throws Exception {
+        final Path sevenZ = tmp.newFile("a.7z").toPath();
+        final Map<String, String> texts = new HashMap<>();
+        try (SevenZOutputFile out = new SevenZOutputFile(sevenZ.toFile())) {
+            for (int i = 0; i < 4; i++) {
+                final Path src = tmp.newFile("s" + i + ".txt").toPath();
+                Files.write(src, text(i).getBytes(StandardCharsets.UTF_8));
+                final SevenZArchiveEntry entry = out.createArchiveEntry(src.toFile(), "s" + i + ".txt");
+                out.putArchiveEntry(entry);
+                out.write(Files.readAllBytes(src));
+                out.closeArchiveEntry();
+                texts.put("s" + i + ".txt", text(i).trim());
+            }
+        }
+
+        try (Extractor extractor = extractor(true)) {
+            final TikaDocument doc = extractor.extract(sevenZ);
+            try (Reader r = doc.getReader()) {
+                Spewer.toString(r);
+            }
+            assertThat(doc.getEmbeds()).hasSize(4);
+            for (final EmbeddedTikaDocument embed : doc.getEmbeds()) {
+                try (Reader r = embed.getReader()) {
+                    assertThat(Spewer.toString(r).trim())
+                            .isEqualTo(texts.get(embed.getMetadata().get(TikaCoreProperties.RESOURCE_NAME_KEY)));
+                }
+            }
+            assertThat(extractor.archiveParseExecutorOrNull()).isNull();
+        }
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        try (Extractor extractor = new Extractor(Options.from(Map.of()))) {
+            assertThat(extractor.isArchiveEntryFanout()).isFalse();
+            assertThat(extractor.getArchiveParseParallelism()).isEqualTo(Runtime.getRuntime().availableProcessors());
+        }
+        try (Extractor extractor = new Extractor(Options.from(Map.of("archiveEntryFanout", "true",
+                "legacyUntitledNaming", "true")))) {
+            assertThat(extractor.isArchiveEntryFanout()).isFalse();
+        }
+    }
+}
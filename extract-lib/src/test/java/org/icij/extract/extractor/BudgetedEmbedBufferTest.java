@@ -2,15 +2,19 @@ package org.icij.extract.extractor;
 
 import org.apache.tika.io.TemporaryResources;
 import org.icij.extract.document.TikaDocument.ReaderGenerator;
+import org.icij.extract.document.Utf8TextReader;
 import org.icij.spewer.Spewer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -46,6 +50,28 @@ public class BudgetedEmbedBufferTest {
         assertThat(read(buffer.readerGenerator())).isEqualTo("hello");
     }
 
+    @Test
+    public void testCopyInMemoryOnlyUnderTheLimitAndBeforeSpilling() throws Exception {
+        AtomicLong reserved = new AtomicLong();
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(reserved, 1024, tmp);
+
+        // Over several segments.
+        byte[] text = new byte[BudgetedEmbedBuffer.MIN_SEGMENT_BYTES * 3 + 1];
+        Arrays.fill(text, (byte) 'a');
+        buffer.write(text);
+        buffer.close();
+
+        assertThat(buffer.copyInMemory(text.length)).isEqualTo(text);
+        assertThat(buffer.copyInMemory(text.length - 1)).isNull();
+        assertThat(reserved.get()).isEqualTo((long) text.length);
+
+        BudgetedEmbedBuffer spilled = new BudgetedEmbedBuffer(new AtomicLong(), 4, tmp);
+        spilled.write("hello world".getBytes(StandardCharsets.UTF_8));
+        spilled.close();
+
+        assertThat(spilled.copyInMemory(1024)).isNull();
+    }
+
     @Test
     public void testSpillsWhenSingleWriteExceedsBudget() throws Exception {
         AtomicLong reserved = new AtomicLong();
@@ -219,4 +245,182 @@ public class BudgetedEmbedBufferTest {
         // With budget=1024 and chunkSize=512, at most 2 buffers can stay in memory.
         assertThat(spilledCount).isGreaterThanOrEqualTo(threads - (int) (budgetBytes / chunkSize));
     }
+
+    @Test
+    public void testBufferedTextIsTransferredAsBytes() throws Exception {
+        String text = "caf\u00e9 \u65e5\u672c";
+        byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+
+        for (long budget : new long[]{1024, 4}) {
+            BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(new AtomicLong(), budget, tmp);
+            buffer.write(expected);
+            buffer.close();
+            assertThat(buffer.isSpilled()).isEqualTo(budget < expected.length);
+
+            try (Utf8TextReader reader = (Utf8TextReader) buffer.readerGenerator().generate()) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                assertThat(reader.isUnread()).isTrue();
+                assertThat(reader.transferTo(output)).isEqualTo((long) expected.length);
+                assertThat(output.toByteArray()).isEqualTo(expected);
+
+                // Transferring consumes the reader.
+                assertThat(reader.isUnread()).isFalse();
+                assertThat(reader.read()).isEqualTo(-1);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTextThatWasReadIsNotTransferred() throws Exception {
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(new AtomicLong(), 1024, tmp);
+        buffer.write("hello".getBytes(StandardCharsets.UTF_8));
+        buffer.close();
+
+        try (Utf8TextReader reader = (Utf8TextReader) buffer.readerGenerator().generate()) {
+            assertThat(reader.read()).isEqualTo('h');
+            reader.transferTo(new ByteArrayOutputStream());
+        }
+    }
+
+    @Test
+    public void testTextIsReadAcrossSegments() throws Exception {
+        AtomicLong reserved = new AtomicLong();
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(reserved, Long.MAX_VALUE, tmp);
+        StringBuilder expected = new StringBuilder();
+
+        // Three-byte characters, written a byte at a time and in arrays, so that some span two segments.
+        while (expected.length() < BudgetedEmbedBuffer.SEGMENT_BYTES) {
+            byte[] bytes = "\u65e5\u672c".getBytes(StandardCharsets.UTF_8);
+            if (expected.length() % 3 == 0) {
+                for (byte b : bytes) {
+                    buffer.write(b);
+                }
+            } else {
+                buffer.write(bytes);
+            }
+            expected.append("\u65e5\u672c");
+        }
+        buffer.close();
+
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(reserved.get()).isEqualTo((long) expected.toString().getBytes(StandardCharsets.UTF_8).length);
+        assertThat(read(buffer.readerGenerator())).isEqualTo(expected.toString());
+        assertThat(read(buffer.readerGenerator())).isEqualTo(expected.toString());
+    }
+
+    @Test
+    public void testSegmentsAreWrittenToTheSpillFile() throws Exception {
+        AtomicLong reserved = new AtomicLong();
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(reserved, 3 * BudgetedEmbedBuffer.SEGMENT_BYTES, tmp);
+        byte[] chunk = new byte[1000];
+        StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 200; i++) {
+            Arrays.fill(chunk, (byte) ('a' + i % 26));
+            buffer.write(chunk);
+            expected.append(new String(chunk, StandardCharsets.UTF_8));
+        }
+        buffer.close();
+
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(reserved.get()).isEqualTo(0L);
+        assertThat(read(buffer.readerGenerator())).isEqualTo(expected.toString());
+    }
+
+    @Test
+    public void testClosingTheReaderReturnsTheSegmentsToThePool() throws Exception {
+        AtomicLong reserved = new AtomicLong();
+        SlabPool pool = new SlabPool(4, 8);
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(reserved, 1024, tmp, () -> false, pool, null, null);
+
+        buffer.write("hello world".getBytes(StandardCharsets.UTF_8));
+        buffer.close();
+
+        assertThat(pool.stats().outstanding()).isEqualTo(3L);
+        assertThat(read(buffer.readerGenerator())).isEqualTo("hello world");
+        assertThat(pool.stats().outstanding()).isEqualTo(0L);
+        assertThat(reserved.get()).isEqualTo(0L);
+
+        try {
+            buffer.readerGenerator().generate();
+            org.junit.Assert.fail("The text of a buffer whose segments were returned should not be read again.");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage()).contains("released");
+        }
+    }
+
+    @Test
+    public void testSpillingReturnsTheSegmentsToThePool() throws Exception {
+        AtomicLong reserved = new AtomicLong();
+        SlabPool pool = new SlabPool(4, 8);
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(reserved, 6, tmp, () -> false, pool, null, null);
+
+        buffer.write("hello".getBytes(StandardCharsets.UTF_8));
+        buffer.write(" world".getBytes(StandardCharsets.UTF_8));
+        buffer.close();
+
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(pool.stats().outstanding()).isEqualTo(0L);
+        assertThat(read(buffer.readerGenerator())).isEqualTo("hello world");
+        assertThat(read(buffer.readerGenerator())).isEqualTo("hello world");
+    }
+
+    @Test
+    public void testDiscardReturnsTheSegmentsToThePool() throws Exception {
+        AtomicLong reserved = new AtomicLong();
+        SlabPool pool = new SlabPool(4, 8);
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(reserved, 1024, tmp, () -> false, pool, null, null);
+
+        buffer.write("hello".getBytes(StandardCharsets.UTF_8));
+        buffer.discard();
+
+        assertThat(pool.stats().outstanding()).isEqualTo(0L);
+        assertThat(pool.stats().idle()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSpilledTextIsCompressedAndReadTransparently() throws Exception {
+        SpillCompression compression = new SpillCompression();
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 20_000) {
+            text.append("The quick brown fox jumps over the lazy dog. ");
+        }
+        byte[] expected = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(new AtomicLong(), 4, tmp, () -> false, null,
+                compression, null);
+        buffer.write(expected);
+        buffer.close();
+
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(compression.stats().files()).isEqualTo(1L);
+        assertThat(compression.stats().textBytes()).isEqualTo((long) expected.length);
+        assertThat(compression.stats().compressedBytes()).isLessThan(expected.length / 4L);
+        assertThat(read(buffer.readerGenerator())).isEqualTo(text.toString());
+
+        try (Utf8TextReader reader = (Utf8TextReader) buffer.readerGenerator().generate()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertThat(reader.transferTo(output)).isEqualTo((long) expected.length);
+            assertThat(output.toByteArray()).isEqualTo(expected);
+        }
+        try (Utf8TextReader reader = (Utf8TextReader) buffer.readerGenerator().generate()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertThat(reader.transferTo(Channels.newChannel(output))).isEqualTo((long) expected.length);
+            assertThat(output.toByteArray()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testTextInMemoryIsNotCompressed() throws Exception {
+        SpillCompression compression = new SpillCompression();
+        BudgetedEmbedBuffer buffer = new BudgetedEmbedBuffer(new AtomicLong(), 1024, tmp, () -> false, null,
+                compression, null);
+
+        buffer.write("hello".getBytes(StandardCharsets.UTF_8));
+        buffer.close();
+
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(compression.stats().files()).isEqualTo(0L);
+        assertThat(read(buffer.readerGenerator())).isEqualTo("hello");
+    }
 }
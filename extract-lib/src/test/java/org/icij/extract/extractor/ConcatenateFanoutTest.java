@@ -0,0 +1,138 @@
+package org.icij.extract.extractor;
+
+import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.Spewer;
+import org.icij.task.Options;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * The text of a document whose embeds are concatenated in parallel must be the same, byte for byte, as when they're
+ * concatenated one after the other.
+ */
+public class ConcatenateFanoutTest {
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String text(final int i) {
+        return ("Entry number " + i + " of the archive. ").repeat(1 + (i * 37) % 200);
+    }
+
+    private static byte[] nestedZip() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < 3; i++) {
+                zos.putNextEntry(new ZipEntry("nested/n" + i + ".txt"));
+                zos.write(("Nested entry " + i).getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private Path zip(final int entries) throws Exception {
+        final Path zip = tmp.newFile("a.zip").toPath();
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (int i = 0; i < entries; i++) {
+                zos.putNextEntry(new ZipEntry("dir/f" + i + ".txt"));
+                zos.write(text(i).getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+                if (i == entries / 2) {
+                    zos.putNextEntry(new ZipEntry("inner.zip"));
+                    zos.write(nestedZip());
+                    zos.closeEntry();
+                }
+            }
+        }
+        return zip;
+    }
+
+    private Extractor extractor(final boolean fanout, final String outputFormat) {
+        return extractor(fanout, outputFormat, 64);
+    }
+
+    private Extractor extractor(final boolean fanout, final String outputFormat, final int embedMemoryBudgetMb) {
+        return new Extractor(Options.from(Map.of(
+                "embedHandling", "concatenate",
+                "outputFormat", outputFormat,
+                "concatenateFanout", String.valueOf(fanout),
+                "concatenateParallelism", "4",
+                "embedMemoryBudgetMb", String.valueOf(embedMemoryBudgetMb),
+                "ocr", "false",
+                "progressHeartbeatInterval", "0")));
+    }
+
+    private static String text(final Extractor extractor, final Path path) throws Exception {
+        final TikaDocument doc = extractor.extract(path);
+        try (Reader r = doc.getReader()) {
+            return Spewer.toString(r);
+        }
+    }
+
+    private void assertFanoutMatchesSerial(final String outputFormat) throws Exception {
+        final Path zip = zip(60);
+        final String serial;
+        try (Extractor extractor = extractor(false, outputFormat)) {
+            serial = text(extractor, zip);
+            assertThat(extractor.concatenateExecutorOrNull()).isNull();
+        }
+        assertThat(serial).contains("Nested entry 2").contains(text(59).trim());
+
+        try (Extractor extractor = extractor(true, outputFormat)) {
+            for (int run = 0; run < 3; run++) {
+                assertThat(text(extractor, zip)).as("text, run " + run).isEqualTo(serial);
+            }
+            // The embeds were actually parsed on the pool.
+            assertThat(extractor.concatenateExecutorOrNull()).isNotNull();
+        }
+    }
+
+    @Test(timeout = 180_000)
+    public void testTextMatchesSerial() throws Exception {
+        assertFanoutMatchesSerial("text");
+    }
+
+    @Test(timeout = 180_000)
+    public void testHtmlMatchesSerial() throws Exception {
+        assertFanoutMatchesSerial("html");
+    }
+
+    @Test(timeout = 180_000)
+    public void testTextMatchesSerialWithRecordingsOverflowingToDisk() throws Exception {
+        final Path zip = zip(60);
+
+        try (Extractor serial = extractor(false, "html"); Extractor fanout = extractor(true, "html", 0)) {
+            assertThat(text(fanout, zip)).isEqualTo(text(serial, zip));
+        }
+    }
+
+    @Test(timeout = 180_000)
+    public void testADocumentWithoutEmbedsIsUnchanged() throws Exception {
+        final Path file = tmp.newFile("plain.txt").toPath();
+        Files.write(file, text(3).getBytes(StandardCharsets.UTF_8));
+
+        try (Extractor serial = extractor(false, "text"); Extractor fanout = extractor(true, "text")) {
+            assertThat(text(fanout, file)).isEqualTo(text(serial, file));
+            assertThat(fanout.concatenateExecutorOrNull()).isNull();
+        }
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        try (Extractor extractor = new Extractor(Options.from(Map.of()))) {
+            assertThat(extractor.isConcatenateFanout()).isFalse();
+            assertThat(extractor.getConcatenateParallelism()).isEqualTo(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
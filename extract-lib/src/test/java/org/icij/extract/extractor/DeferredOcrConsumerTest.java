@@ -0,0 +1,148 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.metadata.Metadata;
+import org.icij.extract.document.DigestIdentifier;
+import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.document.TikaDocument;
+import org.icij.extract.ocr.OCRParser;
+import org.icij.spewer.FieldNames;
+import org.icij.spewer.Spewer;
+import org.icij.task.Options;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The output of a two-phase extraction, once its OCR queue is drained, must be the output of an extraction that
+ * OCRs documents as it goes. Without Tesseract, both have no OCR text, so the comparison is skipped.
+ */
+public class DeferredOcrConsumerTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // The last version written of each document, by ID, as spewers keyed by ID keep it.
+    private static class RecordingSpewer extends Spewer {
+        final Map<String, String> texts = new ConcurrentHashMap<>();
+        final Map<String, Metadata> metadata = new ConcurrentHashMap<>();
+
+        RecordingSpewer() { super(new FieldNames()); }
+
+        @Override
+        protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
+            texts.put(doc.getId(), Spewer.toString(doc.getReader()).trim());
+            metadata.put(doc.getId(), doc.getMetadata());
+        }
+    }
+
+    @Test
+    public void testImageAttachmentIsOcrdByTheSecondPhase() throws Exception {
+        assertEquivalent("/documents/image_attachment.eml");
+    }
+
+    @Test
+    public void testDocumentWithInlineImagesIsOcrdByTheSecondPhase() throws Exception {
+        assertEquivalent("/documents/ocr/embedded.pdf");
+    }
+
+    @Test
+    public void testQueueIsResumedAfterARestart() throws Exception {
+        Path file = resource("/documents/image_attachment.eml");
+        Path directory = tmp.newFolder().toPath();
+        RecordingSpewer spewer = new RecordingSpewer();
+
+        // The first process stops after the first phase.
+        try (Extractor extractor = twoPhase("file", directory)) {
+            extractor.extract(file, spewer);
+            assertThat(extractor.getDeferredOcrQueue().submitted()).isEqualTo(1);
+        }
+        assertThat(spewer.metadata.values().stream().anyMatch(m -> null != m.get(DeferredOcr.OCR_PENDING))).isTrue();
+
+        try (Extractor extractor = twoPhase("file", directory)) {
+            DeferredOcrConsumer consumer = new DeferredOcrConsumer(extractor, extractor.getDeferredOcrQueue(),
+                    spewer, 1);
+            consumer.start();
+            consumer.drain();
+
+            assertThat(consumer.written()).isEqualTo(1);
+            assertThat(consumer.failed()).isEqualTo(0);
+        }
+
+        assertThat(spewer.texts).isEqualTo(inline(file).texts);
+    }
+
+    private void assertEquivalent(final String resource) throws Exception {
+        assumeTrue("requires tesseract", hasTesseract());
+        Path file = resource(resource);
+        RecordingSpewer inline = inline(file);
+        RecordingSpewer twoPhase = new RecordingSpewer();
+
+        try (Extractor extractor = twoPhase("memory", null)) {
+            DeferredOcrConsumer consumer = new DeferredOcrConsumer(extractor, extractor.getDeferredOcrQueue(),
+                    twoPhase, 2);
+            consumer.start();
+            extractor.extract(file, twoPhase);
+            consumer.drain();
+
+            assertThat(extractor.getDeferredOcrQueue().submitted()).isGreaterThan(0);
+            assertThat(consumer.failed()).isEqualTo(0);
+        }
+
+        assertThat(twoPhase.texts).isEqualTo(inline.texts);
+        for (Map.Entry<String, Metadata> entry : inline.metadata.entrySet()) {
+            Metadata metadata = twoPhase.metadata.get(entry.getKey());
+            assertThat(metadata.get(DeferredOcr.OCR_PENDING)).isNull();
+            assertThat(metadata.get(Metadata.CONTENT_TYPE)).isEqualTo(entry.getValue().get(Metadata.CONTENT_TYPE));
+            assertThat(metadata.get(OCRParser.OCR_PARSER)).isEqualTo(entry.getValue().get(OCRParser.OCR_PARSER));
+        }
+    }
+
+    private RecordingSpewer inline(final Path file) throws Exception {
+        RecordingSpewer spewer = new RecordingSpewer();
+        try (Extractor extractor = new Extractor(factory(), Options.from(Map.of("ocrFanout", "false",
+                "progressHeartbeatInterval", "0")))) {
+            extractor.extract(file, spewer);
+        }
+        return spewer;
+    }
+
+    private Extractor twoPhase(final String type, final Path directory) {
+        Map<String, Object> options = new HashMap<>(Map.of("ocrQueue", type, "progressHeartbeatInterval", "0"));
+        if (null != directory) {
+            options.put("ocrQueueDirectory", directory.toString());
+        }
+        return new Extractor(factory(), Options.from(options));
+    }
+
+    private static boolean hasTesseract() {
+        try {
+            Process process = new ProcessBuilder("tesseract", "--version").redirectErrorStream(true).start();
+            process.getInputStream().readAllBytes(); // drain so the process can exit
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static DocumentFactory factory() {
+        return new DocumentFactory().withIdentifier(new DigestIdentifier("SHA-256", StandardCharsets.UTF_8));
+    }
+
+    private Path resource(final String name) throws Exception {
+        return Paths.get(getClass().getResource(name).toURI());
+    }
+}
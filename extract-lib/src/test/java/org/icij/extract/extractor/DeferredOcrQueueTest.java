@@ -0,0 +1,164 @@
+package org.icij.extract.extractor;
+
+import org.icij.extract.queue.MemoryDocumentQueue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DeferredOcrQueueTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final OcrWorkItem item = new OcrWorkItem("embed", "parent", "root", "/a.eml", 2, null,
+            Map.of("Content-Type", List.of("image/png")));
+
+    @Test
+    public void testSubmittedItemIsReadWithItsBytes() throws Exception {
+        Path bytes = tmp.newFile().toPath();
+        Files.writeString(bytes, "png", StandardCharsets.UTF_8);
+
+        try (DeferredOcrQueue queue = new DeferredOcrQueue(tmp.newFolder().toPath(), new MemoryDocumentQueue<>("ocr", 8))) {
+            queue.spool(item, bytes);
+            queue.submit(item);
+
+            String key = queue.poll(1, TimeUnit.SECONDS);
+            assertThat(key).isEqualTo(item.key());
+            assertThat(queue.read(key)).isEqualTo(item.ownedBy(queue.owner()));
+            assertThat(Files.readString(queue.input(item), StandardCharsets.UTF_8)).isEqualTo("png");
+
+            queue.complete(key);
+            assertThat(queue.read(key)).isNull();
+            assertThat(Files.exists(queue.input(item))).isFalse();
+            assertThat(queue.submitted()).isEqualTo(1);
+            assertThat(queue.completed()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testUncompletedItemsAreRecoveredByTheNextQueue() throws Exception {
+        Path directory = tmp.newFolder().toPath();
+        OcrWorkItem root = new OcrWorkItem("root", null, null, "/a.pdf", 0, "/a.pdf", Map.of());
+
+        String owner;
+
+        try (DeferredOcrQueue queue = new DeferredOcrQueue(directory, new MemoryDocumentQueue<>("ocr", 8))) {
+            owner = queue.owner();
+            queue.submit(item);
+            queue.submit(root);
+            queue.complete(queue.poll(1, TimeUnit.SECONDS));
+        }
+
+        // The process stopped with the second item still queued in memory.
+        try (DeferredOcrQueue queue = new DeferredOcrQueue(directory, new MemoryDocumentQueue<>("ocr", 8))) {
+            assertThat(queue.poll(0, TimeUnit.SECONDS)).isNull();
+            assertThat(queue.recover(Set.of())).isEqualTo(1);
+            assertThat(queue.read(queue.poll(1, TimeUnit.SECONDS))).isEqualTo(root.ownedBy(owner));
+        }
+    }
+
+    @Test
+    public void testSpooledBytesAreNotRecoveredBeforeTheItemIsPersisted() throws Exception {
+        Path bytes = tmp.newFile().toPath();
+
+        try (DeferredOcrQueue queue = new DeferredOcrQueue(tmp.newFolder().toPath(), new MemoryDocumentQueue<>("ocr", 8))) {
+            queue.spool(item, bytes);
+            assertThat(queue.recover(Set.of())).isEqualTo(0);
+
+            queue.discard(item);
+            assertThat(Files.exists(queue.input(item))).isFalse();
+        }
+    }
+
+    @Test
+    public void testPersistedItemIsRecoveredIfItsKeyIsNeverOffered() throws Exception {
+        Path directory = tmp.newFolder().toPath();
+
+        String owner;
+
+        // The process stopped after the document was written, but before the tree was done and the key offered.
+        try (DeferredOcrQueue queue = new DeferredOcrQueue(directory, new MemoryDocumentQueue<>("ocr", 8))) {
+            owner = queue.owner();
+            queue.persist(item);
+            assertThat(queue.poll(0, TimeUnit.SECONDS)).isNull();
+            assertThat(queue.submitted()).isEqualTo(0);
+        }
+
+        try (DeferredOcrQueue queue = new DeferredOcrQueue(directory, new MemoryDocumentQueue<>("ocr", 8))) {
+            assertThat(queue.recover(Set.of())).isEqualTo(1);
+            assertThat(queue.read(queue.poll(1, TimeUnit.SECONDS))).isEqualTo(item.ownedBy(owner));
+        }
+    }
+
+    @Test
+    public void testItemOfAnotherRunningProcessIsNotRecovered() throws Exception {
+        Path directory = tmp.newFolder().toPath();
+
+        try (DeferredOcrQueue first = new DeferredOcrQueue(directory, new MemoryDocumentQueue<>("first", 8));
+             DeferredOcrQueue second = new DeferredOcrQueue(directory, new MemoryDocumentQueue<>("second", 8))) {
+            // The first process persisted the item, but its tree is still being written.
+            first.persist(item);
+
+            assertThat(second.recover(Set.of())).isEqualTo(0);
+            assertThat(first.recover(Set.of())).isEqualTo(1);
+            assertThat(first.poll(1, TimeUnit.SECONDS)).isEqualTo(item.key());
+
+            // Once the first process stopped, or its lease ran out, the item is the second's to recover.
+            first.close();
+            assertThat(second.recover(Set.of())).isEqualTo(1);
+            assertThat(second.poll(1, TimeUnit.SECONDS)).isEqualTo(item.key());
+        }
+    }
+
+    @Test
+    public void testItemIsRecoveredOnceTheLeaseOfItsOwnerRanOut() throws Exception {
+        Path directory = tmp.newFolder().toPath();
+
+        try (DeferredOcrQueue first = new DeferredOcrQueue(directory, new MemoryDocumentQueue<>("first", 8));
+             DeferredOcrQueue second = new DeferredOcrQueue(directory, new MemoryDocumentQueue<>("second", 8))) {
+            first.persist(item);
+
+            // The first process stopped without closing its queue.
+            Files.setLastModifiedTime(directory.resolve(first.owner() + ".lease"),
+                    FileTime.fromMillis(System.currentTimeMillis() - 2 * DeferredOcrQueue.LEASE_MILLIS));
+
+            assertThat(second.recover(Set.of())).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testItemsPastTheCapacityWaitOnDisk() throws Exception {
+        try (DeferredOcrQueue queue = new DeferredOcrQueue(tmp.newFolder().toPath(), new MemoryDocumentQueue<>("ocr", 1))) {
+            OcrWorkItem other = new OcrWorkItem("other", "parent", "root", "/a.eml", 2, null, Map.of());
+            queue.submit(item);
+            queue.submit(other);
+
+            assertThat(queue.poll(1, TimeUnit.SECONDS)).isEqualTo(item.key());
+            assertThat(queue.poll(0, TimeUnit.SECONDS)).isNull();
+
+            assertThat(queue.recover(Set.of(item.key()))).isEqualTo(1);
+            assertThat(queue.poll(1, TimeUnit.SECONDS)).isEqualTo(other.key());
+        }
+    }
+
+    @Test
+    public void testInMemoryQueueDeletesItsDirectory() throws Exception {
+        DeferredOcrQueue queue = DeferredOcrQueue.inMemory("ocr", 8);
+        queue.submit(item);
+        Path directory = queue.getDirectory();
+
+        queue.close();
+        assertThat(Files.exists(directory)).isFalse();
+    }
+}
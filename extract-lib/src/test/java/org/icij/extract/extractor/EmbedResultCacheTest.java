@@ -0,0 +1,224 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.FieldNames;
+import org.icij.spewer.Spewer;
+import org.icij.task.Options;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class EmbedResultCacheTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static class RecordingSpewer extends Spewer {
+        final List<String> embedTexts = new CopyOnWriteArrayList<>();
+
+        RecordingSpewer() { super(new FieldNames()); }
+
+        @Override
+        protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
+            final String text = Spewer.toString(doc.getReader());
+            if (parent != null) {
+                embedTexts.add(text.trim());
+            }
+        }
+    }
+
+    @Test
+    public void testStoredResultIsReplayedWithOnlyTheParsedMetadata() throws Exception {
+        EmbedResultCache cache = new EmbedResultCache(tmp.newFolder().toPath(), 1024 * 1024, 1024);
+        Metadata before = new Metadata();
+        before.set(TikaCoreProperties.RESOURCE_NAME_KEY, "first.txt");
+        Metadata after = new Metadata();
+        after.set(TikaCoreProperties.RESOURCE_NAME_KEY, "first.txt");
+        after.set(Metadata.CONTENT_TYPE, "text/plain");
+
+        cache.put("config", "abc", before, after, "some text".getBytes(StandardCharsets.UTF_8));
+        EmbedResultCache.Entry entry = cache.get("config", "abc");
+
+        assertThat(entry.text()).isEqualTo("some text");
+        assertThat(entry.metadata()).isEqualTo(Map.of(Metadata.CONTENT_TYPE, List.of("text/plain")));
+
+        Metadata copy = new Metadata();
+        copy.set(TikaCoreProperties.RESOURCE_NAME_KEY, "second.txt");
+        entry.applyTo(copy);
+        assertThat(copy.get(TikaCoreProperties.RESOURCE_NAME_KEY)).isEqualTo("second.txt");
+        assertThat(copy.get(Metadata.CONTENT_TYPE)).isEqualTo("text/plain");
+    }
+
+    @Test
+    public void testOtherConfigurationMisses() throws Exception {
+        EmbedResultCache cache = new EmbedResultCache(tmp.newFolder().toPath(), 1024 * 1024, 1024);
+        cache.put("config", "abc", new Metadata(), new Metadata(), new byte[]{'a'});
+
+        assertThat(cache.get("other", "abc")).isNull();
+        assertThat(cache.get("config", "def")).isNull();
+        assertThat(cache.misses()).isEqualTo(2);
+        assertThat(cache.hits()).isEqualTo(0);
+    }
+
+    @Test
+    public void testTextOverTheEntryLimitIsNotStored() throws Exception {
+        EmbedResultCache cache = new EmbedResultCache(tmp.newFolder().toPath(), 1024 * 1024, 4);
+        cache.put("config", "abc", new Metadata(), new Metadata(), new byte[5]);
+
+        assertThat(cache.get("config", "abc")).isNull();
+        assertThat(cache.stores()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        Path directory = tmp.newFolder().toPath();
+        EmbedResultCache cache = new EmbedResultCache(directory, 1024 * 1024, 1024);
+        long time = System.currentTimeMillis() - 60_000;
+        for (String digest : new String[]{"a", "b", "c"}) {
+            cache.put("config", digest, new Metadata(), new Metadata(), new byte[100]);
+            // Date the entries back in the order they were stored, so that the order doesn't depend on the clock.
+            Files.setLastModifiedTime(cache.path("config", digest), FileTime.fromMillis(time += 1000));
+        }
+        long entrySize = cache.totalBytes() / 3;
+
+        // "a" is the oldest, but has just been used; "b" is now the least recently used.
+        assertThat(cache.get("config", "a")).isNotNull();
+
+        // Reopened, the cache counts the entries on disk. Storing a fourth takes it over the maximum.
+        cache = new EmbedResultCache(directory, entrySize * 3 + entrySize / 2, 1024);
+        assertThat(cache.totalBytes()).isEqualTo(entrySize * 3);
+        cache.put("config", "d", new Metadata(), new Metadata(), new byte[100]);
+
+        assertThat(cache.evictions()).isEqualTo(1);
+        assertThat(cache.get("config", "b")).isNull();
+        assertThat(cache.get("config", "a")).isNotNull();
+        assertThat(cache.get("config", "c")).isNotNull();
+        assertThat(cache.get("config", "d")).isNotNull();
+    }
+
+    @Test
+    public void testRepeatedEmbedsAreParsedOnce() throws Exception {
+        Path zip = zip("a.zip", "This is a disclaimer.", "This is a disclaimer.", "This is a disclaimer.",
+                "This is a contract.");
+        Path directory = tmp.newFolder().toPath();
+        RecordingSpewer spewer = new RecordingSpewer();
+
+        try (Extractor extractor = extractor(directory, "TEXT")) {
+            extractor.extract(zip, spewer);
+
+            EmbedResultCache cache = extractor.getEmbedResultCache();
+            assertThat(cache.stores()).isEqualTo(2);
+            assertThat(cache.hits()).isEqualTo(2);
+        }
+
+        // Every copy is still spewed, with the text the parse gave the first one.
+        assertThat(spewer.embedTexts).containsOnly("This is a disclaimer.", "This is a contract.");
+        assertThat(spewer.embedTexts).hasSize(4);
+    }
+
+    @Test
+    public void testOtherOutputFormatDoesNotReplayCachedText() throws Exception {
+        Path zip = zip("a.zip", "This is a disclaimer.");
+        Path directory = tmp.newFolder().toPath();
+
+        try (Extractor extractor = extractor(directory, "TEXT")) {
+            extractor.extract(zip, new RecordingSpewer());
+        }
+
+        try (Extractor extractor = extractor(directory, "HTML")) {
+            RecordingSpewer spewer = new RecordingSpewer();
+            extractor.extract(zip, spewer);
+
+            assertThat(extractor.getEmbedResultCache().hits()).isEqualTo(0);
+            assertThat(spewer.embedTexts.get(0)).contains("<html");
+        }
+    }
+
+    @Test
+    public void testFingerprintCoversTheWholeConfiguration() throws Exception {
+        try (Extractor extractor = fingerprinted(Map.of("ocrTimeout", "5s"));
+             Extractor same = fingerprinted(Map.of("ocrTimeout", "5s"));
+             Extractor otherOcr = fingerprinted(Map.of("ocrTimeout", "1m"));
+             Extractor otherDepth = fingerprinted(Map.of("ocrTimeout", "5s", "maxEmbedDepth", "3"))) {
+            assertThat(same.embedCacheFingerprint()).isEqualTo(extractor.embedCacheFingerprint());
+            assertThat(otherOcr.embedCacheFingerprint()).isNotEqualTo(extractor.embedCacheFingerprint());
+            assertThat(otherDepth.embedCacheFingerprint()).isNotEqualTo(extractor.embedCacheFingerprint());
+        }
+    }
+
+    @Test
+    public void testFingerprintIsComputedAgainOnceASettingChanged() throws Exception {
+        try (Extractor extractor = fingerprinted(Map.of("ocr", "false"));
+             Extractor html = fingerprinted(Map.of("ocr", "false", "outputFormat", "HTML"))) {
+            String text = extractor.embedCacheFingerprint();
+            assertThat(extractor.embedCacheFingerprint()).isSameAs(text);
+
+            extractor.setOutputFormat(Extractor.OutputFormat.HTML);
+            assertThat(extractor.embedCacheFingerprint()).isEqualTo(html.embedCacheFingerprint());
+        }
+    }
+
+    @Test
+    public void testContainersAreNotCached() throws Exception {
+        Path inner = zip("inner.zip", "This is a disclaimer.");
+        Path outer = tmp.getRoot().toPath().resolve("outer.zip");
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(outer))) {
+            for (int i = 0; i < 2; i++) {
+                zos.putNextEntry(new ZipEntry("inner" + i + ".zip"));
+                zos.write(Files.readAllBytes(inner));
+                zos.closeEntry();
+            }
+        }
+        RecordingSpewer spewer = new RecordingSpewer();
+
+        try (Extractor extractor = extractor(tmp.newFolder().toPath(), "TEXT")) {
+            extractor.extract(outer, spewer);
+
+            // Only the leaf is stored; the second inner archive is parsed again and finds its child in the cache.
+            EmbedResultCache cache = extractor.getEmbedResultCache();
+            assertThat(cache.stores()).isEqualTo(1);
+            assertThat(cache.hits()).isEqualTo(1);
+        }
+
+        assertThat(spewer.embedTexts).hasSize(4);
+    }
+
+    private Extractor extractor(final Path directory, final String outputFormat) {
+        return new Extractor(Options.from(Map.of("embedCache", directory.toString(), "ocr", "false",
+                "outputFormat", outputFormat, "progressHeartbeatInterval", "0")));
+    }
+
+    private Extractor fingerprinted(final Map<String, String> options) {
+        Map<String, String> all = new HashMap<>(options);
+        all.put("progressHeartbeatInterval", "0");
+        return new Extractor(Options.from(all));
+    }
+
+    private Path zip(final String name, final String... texts) throws IOException {
+        Path zip = tmp.getRoot().toPath().resolve(name);
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (int i = 0; i < texts.length; i++) {
+                zos.putNextEntry(new ZipEntry("f" + i + ".txt"));
+                zos.write(texts[i].getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+        }
+        return zip;
+    }
+}
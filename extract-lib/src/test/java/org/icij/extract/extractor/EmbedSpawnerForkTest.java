@@ -1,14 +1,32 @@
 package org.icij.extract.extractor;
 
+import org.apache.tika.config.TikaConfig;
 import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
 import org.icij.extract.document.DigestIdentifier;
 import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.document.EmbeddedTikaDocument;
+import org.icij.extract.document.PathIdentifier;
 import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.Spewer;
 import org.junit.Test;
+import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -87,4 +105,135 @@ public class EmbedSpawnerForkTest {
         final EmbedSpawner forked = base.fork();
         assertThat(forked.maxEmbedDepthForTest()).isEqualTo(5);
     }
+
+    @Test(timeout = 60_000)
+    public void testForksBufferTextConcurrentlyWithinTheSharedBudget() throws Exception {
+        final TikaDocument root = new DocumentFactory().withIdentifier(new PathIdentifier())
+                .create(Paths.get("/tmp/fake-root.ost"));
+        final ParseContext context = new ParseContext();
+        context.set(Parser.class, TikaConfig.getDefaultConfig().getParser());
+        final long budget = 16 * 1024;
+        final int forks = 4;
+        final int embedsPerFork = 50;
+
+        try (TemporaryResources tmp = new TemporaryResources()) {
+            final EmbedSpawner base = new EmbedSpawner(root, context, null,
+                    w -> new org.apache.tika.sax.BodyContentHandler(w), budget, tmp, () -> false);
+            final ExecutorService pool = Executors.newFixedThreadPool(forks);
+            final Map<String, String> expected = new ConcurrentHashMap<>();
+            final List<Future<?>> futures = new ArrayList<>();
+
+            for (int f = 0; f < forks; f++) {
+                final int fork = f;
+                futures.add(pool.submit(() -> {
+                    final EmbedSpawner spawner = base.fork();
+                    for (int i = 0; i < embedsPerFork; i++) {
+                        final String name = "fork" + fork + "-" + i + ".txt";
+                        // Sizes vary so that some embeds stay in memory and others spill.
+                        final String text = (name + " \u65e5\u672c ").repeat(1 + (i * 37 + fork * 11) % 200);
+                        final Metadata metadata = new Metadata();
+                        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, name);
+                        metadata.set(Metadata.CONTENT_TYPE, "text/plain; charset=UTF-8");
+                        expected.put(name, text.trim());
+                        spawner.parseEmbedded(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)),
+                                new DefaultHandler(), metadata, false);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            pool.shutdown();
+
+            assertThat(base.reservedBudget().get()).isLessThanOrEqualTo(budget);
+            assertThat(root.getEmbeds()).hasSize(forks * embedsPerFork);
+            for (EmbeddedTikaDocument embed : root.getEmbeds()) {
+                try (Reader reader = embed.getReader()) {
+                    assertThat(Spewer.toString(reader).trim())
+                            .isEqualTo(expected.get(embed.getMetadata().get(TikaCoreProperties.RESOURCE_NAME_KEY)));
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testForksSpillConcurrentlyToTheSharedArena() throws Exception {
+        final TikaDocument root = new DocumentFactory().withIdentifier(new PathIdentifier())
+                .create(Paths.get("/tmp/fake-root.ost"));
+        final ParseContext context = new ParseContext();
+        context.set(Parser.class, TikaConfig.getDefaultConfig().getParser());
+        final int forks = 4;
+        final int embedsPerFork = 50;
+
+        try (TemporaryResources tmp = new TemporaryResources()) {
+            // Small segment files, so that forks roll them over while others still append to them.
+            final SpillArena arena = new SpillArena(64 * 1024);
+            context.set(SpillArena.class, arena);
+            tmp.addResource(arena);
+
+            // No budget: every embed spills.
+            final EmbedSpawner base = new EmbedSpawner(root, context, null,
+                    w -> new org.apache.tika.sax.BodyContentHandler(w), 0, tmp, () -> false);
+            final ExecutorService pool = Executors.newFixedThreadPool(forks);
+            final Map<String, String> expected = new ConcurrentHashMap<>();
+            final List<Future<?>> futures = new ArrayList<>();
+
+            for (int f = 0; f < forks; f++) {
+                final int fork = f;
+                futures.add(pool.submit(() -> {
+                    final EmbedSpawner spawner = base.fork();
+                    for (int i = 0; i < embedsPerFork; i++) {
+                        final String name = "fork" + fork + "-" + i + ".txt";
+                        final String text = (name + " \u65e5\u672c ").repeat(1 + (i * 37 + fork * 11) % 200);
+                        final Metadata metadata = new Metadata();
+                        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, name);
+                        metadata.set(Metadata.CONTENT_TYPE, "text/plain; charset=UTF-8");
+                        expected.put(name, text.trim());
+                        spawner.parseEmbedded(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)),
+                                new DefaultHandler(), metadata, false);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            pool.shutdown();
+
+            assertThat(base.reservedBudget().get()).isEqualTo(0L);
+            assertThat(root.getEmbeds()).hasSize(forks * embedsPerFork);
+            for (EmbeddedTikaDocument embed : root.getEmbeds()) {
+                try (Reader reader = embed.getReader()) {
+                    assertThat(Spewer.toString(reader).trim())
+                            .isEqualTo(expected.get(embed.getMetadata().get(TikaCoreProperties.RESOURCE_NAME_KEY)));
+                }
+            }
+
+            // Every file but the current one is deleted once the embeds' readers are closed.
+            assertThat(arena.filesCreated()).isGreaterThan(1L);
+            assertThat(arena.filesDeleted()).isEqualTo(arena.filesCreated() - 1);
+        }
+    }
+
+    @Test
+    public void testForksForNamelessChildrenAreNamedInContainerOrder() {
+        final TikaDocument root = new DocumentFactory().withIdentifier(new PathIdentifier())
+                .create(Paths.get("/tmp/fake-root.mbox"));
+        final EmbedSpawner base = new EmbedSpawner(root, new ParseContext(), null,
+                w -> new org.apache.tika.sax.BodyContentHandler(w),
+                64L * 1024 * 1024, new TemporaryResources(), () -> false);
+        final Metadata named = new Metadata();
+        named.set(TikaCoreProperties.RESOURCE_NAME_KEY, "named.txt");
+
+        final EmbedSpawner first = base.forkFor(new Metadata());
+        base.forkFor(named);
+        final EmbedSpawner second = base.forkFor(new Metadata());
+
+        // Whichever fork gets to its child first, each is named after the child's place among its nameless siblings.
+        assertThat(second.nextUntitledNameForTest()).isEqualTo(EmbedSpawner.untitledName(root.getId(), 1));
+        assertThat(first.nextUntitledNameForTest()).isEqualTo(EmbedSpawner.untitledName(root.getId(), 0));
+        // A named child takes no ordinal.
+        assertThat(base.nextUntitledNameForTest()).isEqualTo(EmbedSpawner.untitledName(root.getId(), 2));
+    }
 }
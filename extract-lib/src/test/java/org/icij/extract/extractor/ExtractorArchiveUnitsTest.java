@@ -1,9 +1,14 @@
 package org.icij.extract.extractor;
 
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZOutputFile;
+import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.Spewer;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -15,32 +20,67 @@ import static org.fest.assertions.Assertions.assertThat;
 public class ExtractorArchiveUnitsTest {
     @Rule public TemporaryFolder tmp = new TemporaryFolder();
 
-    @Test public void testApplyArchiveUnitCountSetsZipEntryTotal() throws Exception {
+    // Runs a full SPAWN extraction with live progress, as doExtract does, and returns the root text.
+    private String extract(final Extractor extractor, final Path path) throws Exception {
+        final TikaDocument document = extractor.extract(path);
+        try (Reader reader = document.getReader()) {
+            return Spewer.toString(reader);
+        }
+    }
+
+    @Test public void testZipEntryTotalComesFromTheParse() throws Exception {
         Path zip = tmp.newFile("a.zip").toPath();
         try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            zos.putNextEntry(new ZipEntry("dir/"));        // directory entry: must NOT be counted
+            zos.closeEntry();
             for (int i = 0; i < 4; i++) {
-                zos.putNextEntry(new ZipEntry("f" + i + ".txt"));
+                zos.putNextEntry(new ZipEntry("dir/f" + i + ".txt"));
                 zos.write(("v" + i).getBytes(StandardCharsets.UTF_8));
                 zos.closeEntry();
             }
         }
-        ExtractionProgress progress = new ExtractionProgress(zip, 0L);
-        new Extractor().applyArchiveUnitCount(zip, progress);
-        assertThat(progress.expectedUnits()).isEqualTo(4L);
+        try (Extractor extractor = new Extractor()) {
+            ExtractionProgress progress = extractor.getProgressTracker().begin(zip);
+            extract(extractor, zip);
+            assertThat(progress.expectedUnits()).isEqualTo(4L);
+            // Every entry was still parsed from the catalog-backed stream.
+            assertThat(progress.unitsParsed()).isEqualTo(4L);
+        }
     }
 
-    @Test public void testApplyArchiveUnitCountLeavesNonArchiveUnknown() throws Exception {
+    @Test public void testSevenZEntryTotalComesFromTheParse() throws Exception {
+        Path sevenZ = tmp.newFile("a.7z").toPath();
+        try (SevenZOutputFile out = new SevenZOutputFile(sevenZ.toFile())) {
+            for (int i = 0; i < 2; i++) {
+                Path src = tmp.newFile("s" + i + ".txt").toPath();
+                Files.write(src, ("x" + i).getBytes(StandardCharsets.UTF_8));
+                SevenZArchiveEntry e = out.createArchiveEntry(src.toFile(), "s" + i + ".txt");
+                out.putArchiveEntry(e);
+                out.write(Files.readAllBytes(src));
+                out.closeArchiveEntry();
+            }
+        }
+        try (Extractor extractor = new Extractor()) {
+            ExtractionProgress progress = extractor.getProgressTracker().begin(sevenZ);
+            extract(extractor, sevenZ);
+            assertThat(progress.expectedUnits()).isEqualTo(2L);
+            assertThat(progress.unitsParsed()).isEqualTo(2L);
+        }
+    }
+
+    @Test public void testNonArchiveLeavesTotalUnknown() throws Exception {
         Path txt = tmp.newFile("plain.txt").toPath();
         Files.write(txt, "hi".getBytes(StandardCharsets.UTF_8));
-        ExtractionProgress progress = new ExtractionProgress(txt, 0L);
-        new Extractor().applyArchiveUnitCount(txt, progress);
-        assertThat(progress.expectedUnits()).isEqualTo(-1L);
+        try (Extractor extractor = new Extractor()) {
+            ExtractionProgress progress = extractor.getProgressTracker().begin(txt);
+            extract(extractor, txt);
+            assertThat(progress.expectedUnits()).isEqualTo(-1L);
+        }
     }
 
-    @Test public void testApplyArchiveUnitCountLeavesOoxmlContainerUnknown() throws Exception {
+    @Test public void testOoxmlContainerLeavesTotalUnknown() throws Exception {
         // docx/xlsx/pptx are ZIP containers parsed by Tika's OOXML parser, not PackageParser, so
-        // the internal ZIP parts are not depth-1 embeds: pre-counting them would give a wrong
-        // expectedUnits denominator. Must fall back to the count-only heartbeat.
+        // the internal ZIP parts are not depth-1 embeds and must not become the denominator.
         Path docx = tmp.newFile("fake.docx").toPath();
         try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(docx))) {
             zos.putNextEntry(new ZipEntry("[Content_Types].xml"));
@@ -50,8 +90,14 @@ public class ExtractorArchiveUnitsTest {
             zos.write("<document/>".getBytes(StandardCharsets.UTF_8));
             zos.closeEntry();
         }
-        ExtractionProgress progress = new ExtractionProgress(docx, 0L);
-        new Extractor().applyArchiveUnitCount(docx, progress);
-        assertThat(progress.expectedUnits()).isEqualTo(-1L);
+        try (Extractor extractor = new Extractor()) {
+            ExtractionProgress progress = extractor.getProgressTracker().begin(docx);
+            try {
+                extract(extractor, docx);
+            } catch (Exception ignored) {
+                // A fake docx may fail to parse; only the denominator matters here.
+            }
+            assertThat(progress.expectedUnits()).isEqualTo(-1L);
+        }
     }
 }
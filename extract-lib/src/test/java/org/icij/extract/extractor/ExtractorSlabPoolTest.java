@@ -0,0 +1,85 @@
+package org.icij.extract.extractor;
+
+import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.FieldNames;
+import org.icij.spewer.Spewer;
+import org.icij.task.Options;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Every segment that an embed buffer borrows from the extractor's pool must be back in it once the embed is written,
+ * whichever way the tree is spewed: a segment still outstanding after an extraction is a leak.
+ */
+public class ExtractorSlabPoolTest {
+
+    private static final String FIXTURE = "/documents/recursive_embedded.docx";
+
+    private static class TextSpewer extends Spewer {
+        final List<String> texts = Collections.synchronizedList(new ArrayList<>());
+        TextSpewer() { super(new FieldNames()); }
+        @Override
+        protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
+            texts.add(Spewer.toString(doc.getReader()));
+        }
+    }
+
+    private Path fixture() {
+        return Paths.get(getClass().getResource(FIXTURE).getPath());
+    }
+
+    private void assertNoSegmentIsOutstanding(final String streamingSpew) throws Exception {
+        TextSpewer spewer = new TextSpewer();
+        try (Extractor extractor = new Extractor(Options.from(Map.of("embedSlabPool", "true",
+                "streamingSpew", streamingSpew, "progressHeartbeatInterval", "0")))) {
+            extractor.extract(fixture(), spewer);
+
+            SlabPool.Stats stats = extractor.slabPoolOrNull().stats();
+            assertThat(stats.borrowed()).isGreaterThan(0L);
+            assertThat(stats.outstanding()).isEqualTo(0L);
+        }
+        assertThat(spewer.texts.size()).isGreaterThan(1);
+    }
+
+    @Test
+    public void testSegmentsAreReturnedByAStreamingSpew() throws Exception {
+        assertNoSegmentIsOutstanding("true");
+    }
+
+    @Test
+    public void testSegmentsAreReturnedByATreeWalk() throws Exception {
+        assertNoSegmentIsOutstanding("false");
+    }
+
+    @Test
+    public void testSegmentsAreReusedAcrossExtractions() throws Exception {
+        try (Extractor extractor = new Extractor(Options.from(Map.of(
+                "embedSlabPool", "true", "progressHeartbeatInterval", "0")))) {
+            extractor.extract(fixture(), new TextSpewer());
+            long allocated = extractor.slabPoolOrNull().stats().allocated();
+
+            extractor.extract(fixture(), new TextSpewer());
+            SlabPool.Stats stats = extractor.slabPoolOrNull().stats();
+            assertThat(stats.allocated()).isEqualTo(allocated);
+            assertThat(stats.reuseRatio()).isGreaterThan(0.0);
+        }
+    }
+
+    @Test
+    public void testThePoolIsOffByDefault() throws Exception {
+        try (Extractor extractor = new Extractor(Options.from(Map.of("progressHeartbeatInterval", "0")))) {
+            assertThat(extractor.isEmbedSlabPool()).isFalse();
+            extractor.extract(fixture(), new TextSpewer());
+            assertThat(extractor.slabPoolOrNull()).isNull();
+        }
+    }
+}
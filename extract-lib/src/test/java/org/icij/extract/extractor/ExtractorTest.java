@@ -1,6 +1,7 @@
 package org.icij.extract.extractor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.TaggedIOException;
 import org.apache.tika.Tika;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.EncryptedDocumentException;
@@ -9,6 +10,7 @@ import org.apache.tika.mime.MediaType;
 import org.apache.tika.parser.CompositeParser;
 import org.apache.tika.parser.ParseContext;
 import org.apache.tika.parser.Parser;
+import org.icij.extract.document.DigestIdentifier;
 import org.icij.extract.document.DocumentFactory;
 import org.icij.extract.document.EmbeddedTikaDocument;
 import org.icij.extract.document.PathIdentifier;
@@ -19,6 +21,7 @@ import org.icij.extract.ocr.Tess4JOCRParser;
 import org.icij.spewer.FieldNames;
 import org.icij.spewer.FileSpewer;
 import org.icij.spewer.PrintStreamSpewer;
+import org.icij.spewer.PushedContentSpewer;
 import org.icij.spewer.Spewer;
 import org.icij.task.Options;
 import org.icij.test.CauseMatcher;
@@ -35,16 +38,20 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.tika.parser.pdf.PDFParserConfig;
@@ -605,6 +612,29 @@ public class ExtractorTest {
 		assertThat(pages.get(1)).isEqualTo(expectedPage);
 	}
 
+	@Test
+	public void testPageRangeExtractionForPdf() throws Exception {
+        //GIVEN
+        Extractor extractor = aBasicExtractor();
+		Path pdf = Paths.get(getClass().getResource("/documents/ocr/embedded.pdf").getPath());
+		List<String> pages = extractor.extractPages(pdf);
+        //WHEN
+		PageRange second = extractor.extractPageRange(pdf, 2, 2);
+		PageRange all = extractor.extractPageRange(pdf, 1, 10);
+		PageRange past = extractor.extractPageRange(pdf, 3, 4);
+        //THEN
+		assertThat(second.firstPage()).isEqualTo(2);
+		assertThat(second.pages()).isEqualTo(pages.subList(1, 2));
+		assertThat(all.pages()).isEqualTo(pages);
+		assertThat(all.lastPage()).isEqualTo(2);
+		assertThat(past.pages()).isEmpty();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPageRangeMustStartAtTheFirstPage() throws Exception {
+		aBasicExtractor().extractPageRange(Paths.get(getClass().getResource("/documents/ocr/embedded.pdf").getPath()), 0, 1);
+	}
+
 	@Test
 	public void testPageExtractionForEmbeddedPdf() throws Exception {
         //GIVEN
@@ -716,6 +746,147 @@ public class ExtractorTest {
 		assertThat(pageIndices.extractor()).isEqualTo("Tika 3.0.1");
 	}
 
+	@Test
+	public void testPageIndicesAreSavedByTheExtraction() throws Exception {
+		for (String resource : List.of("/documents/ocr/embedded.pdf", "/documents/ocr/embedded_doc.eml")) {
+			//GIVEN
+			Path path = Paths.get(getClass().getResource(resource).getPath());
+			Extractor extractor = new Extractor(new DocumentFactory().withIdentifier(
+					new DigestIdentifier("SHA-256", StandardCharsets.UTF_8)));
+			extractor.setEmbedOutputPath(folder.getRoot().toPath());
+			List<String> rootIds = new ArrayList<>();
+			//WHEN
+			extractor.extract(path, new Spewer(new FieldNames()) {
+				@Override
+				protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
+					Spewer.toString(doc.getReader());
+					if (null == root) {
+						rootIds.add(doc.getId());
+					}
+				}
+			});
+			//THEN
+			Path cachedPagesFile = ArtifactUtils.getEmbeddedPath(folder.getRoot().toPath(), rootIds.get(0)).resolve("pages.json");
+			assertThat(cachedPagesFile.toFile()).exists();
+			assertThat(new ObjectMapper().readValue(cachedPagesFile.toFile(), PageIndices.class))
+					.isEqualTo(extractor.extractPageIndices(path));
+			assertThat(extractor.extractPageIndices(path, metadata -> true, rootIds.get(0)))
+					.isEqualTo(extractor.extractPageIndices(path));
+		}
+	}
+
+	@Test
+	public void testPushedContentIsTheTextOfTheReader() throws Exception {
+		Path path = Paths.get(getClass().getResource("/documents/ocr/embedded_doc.eml").getPath());
+
+		for (String format : List.of("TEXT", "HTML")) {
+			for (String streaming : List.of("true", "false")) {
+				//GIVEN
+				Map<String, Object> options = Map.of("outputFormat", format, "streamingSpew", streaming,
+						"progressHeartbeatInterval", "0");
+				RecordingSpewer read = new RecordingSpewer();
+				PushedRecordingSpewer pushed = new PushedRecordingSpewer();
+				//WHEN
+				try (Extractor extractor = new Extractor(digestFactory(), Options.from(options))) {
+					extractor.extract(path, read);
+				}
+				Map<String, Object> pushOptions = new HashMap<>(options);
+				pushOptions.put("pushContent", "true");
+				try (Extractor extractor = new Extractor(digestFactory(), Options.from(pushOptions))) {
+					extractor.extract(path, pushed);
+				}
+				//THEN
+				assertThat(pushed.pushedRoots).isEqualTo(1);
+				assertThat(pushed.texts.size()).isGreaterThan(1);
+				assertThat(pushed.texts).isEqualTo(read.texts);
+			}
+		}
+	}
+
+	@Test
+	public void testPageIndicesAreSavedByAPushedExtraction() throws Exception {
+		//GIVEN
+		Path path = Paths.get(getClass().getResource("/documents/ocr/embedded.pdf").getPath());
+		Extractor extractor = new Extractor(digestFactory(), Options.from(Map.of("pushContent", "true")));
+		extractor.setEmbedOutputPath(folder.getRoot().toPath());
+		PushedRecordingSpewer spewer = new PushedRecordingSpewer();
+		//WHEN
+		extractor.extract(path, spewer);
+		//THEN
+		assertThat(spewer.pushedRoots).isEqualTo(1);
+		Path cachedPagesFile = ArtifactUtils.getEmbeddedPath(folder.getRoot().toPath(), spewer.rootId).resolve("pages.json");
+		assertThat(new ObjectMapper().readValue(cachedPagesFile.toFile(), PageIndices.class))
+				.isEqualTo(extractor.extractPageIndices(path));
+	}
+
+	@Test
+	public void testPushedOutputFailureIsAnOutputFailure() throws Exception {
+		//GIVEN
+		Path path = Paths.get(getClass().getResource("/documents/ocr/embedded_doc.eml").getPath());
+		Extractor extractor = new Extractor(digestFactory(), Options.from(Map.of("pushContent", "true")));
+		Spewer spewer = new PushedRecordingSpewer() {
+			@Override
+			public Writer openPushedContent(TikaDocument root) {
+				return new Writer() {
+					@Override
+					public void write(char[] chars, int off, int len) throws IOException {
+						throw new TaggedIOException(new IOException("Disk full."), getSpewer());
+					}
+					@Override public void flush() {}
+					@Override public void close() {}
+				};
+			}
+			private Spewer getSpewer() { return this; }
+		};
+		//THEN
+		thrown.expect(TaggedIOException.class);
+		//WHEN
+		extractor.extract(path, spewer);
+	}
+
+	// Records the text of each document by ID.
+	private static class RecordingSpewer extends Spewer {
+		final Map<String, String> texts = new ConcurrentHashMap<>();
+
+		RecordingSpewer() {
+			super(new FieldNames());
+		}
+
+		@Override
+		protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
+			texts.put(doc.getId(), Spewer.toString(doc.getReader()));
+		}
+	}
+
+	// Records the text of the root as it's pushed.
+	private static class PushedRecordingSpewer extends RecordingSpewer implements PushedContentSpewer {
+		private final StringWriter pushed = new StringWriter();
+		int pushedRoots = 0;
+		String rootId = null;
+
+		@Override
+		public Writer openPushedContent(TikaDocument root) throws IOException {
+			return pushed;
+		}
+
+		@Override
+		public void writePushed(TikaDocument root) throws IOException {
+			writePushedDocument(root);
+			writeEmbeds(root);
+		}
+
+		@Override
+		public void writePushedDocument(TikaDocument root) {
+			texts.put(root.getId(), pushed.toString());
+			rootId = root.getId();
+			pushedRoots++;
+		}
+	}
+
+	private static DocumentFactory digestFactory() {
+		return new DocumentFactory().withIdentifier(new DigestIdentifier("SHA-256", StandardCharsets.UTF_8));
+	}
+
 	@Test
 	public void testOcrTypeFromOption() {
         //GIVEN
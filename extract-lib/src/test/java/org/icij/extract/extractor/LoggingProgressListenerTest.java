@@ -75,6 +75,31 @@ public class LoggingProgressListenerTest {
         assertThat(appender.list).hasSize(2);
     }
 
+    @Test public void testLogsTheSlabPoolStatisticsAfterTheFiles() {
+        Logger log = (Logger) LoggerFactory.getLogger(LoggingProgressListener.class);
+        ch.qos.logback.classic.Level originalLevel = log.getLevel();
+        ListAppender<ch.qos.logback.classic.spi.ILoggingEvent> appender =
+            new ListAppender<>();
+        appender.start();
+        log.addAppender(appender);
+        log.setLevel(ch.qos.logback.classic.Level.INFO);
+
+        SlabPool pool = new SlabPool(8, 2);
+        pool.borrow();
+        LoggingProgressListener listener = new LoggingProgressListener(() -> 5000L, pool::stats);
+        List<ExtractionProgress> inFlight = new ArrayList<>();
+        inFlight.add(new ExtractionProgress(Paths.get("/file1.ost"), 0L));
+        listener.onHeartbeat(inFlight);
+
+        log.detachAppender(appender);
+        if (originalLevel != null) {
+            log.setLevel(originalLevel);
+        }
+        assertThat(appender.list).hasSize(2);
+        assertThat(appender.list.get(1).getFormattedMessage())
+            .isEqualTo("Embed text segments: 1 segments borrowed (0% reused), 1 outstanding, 0 idle, 0 dropped");
+    }
+
     @Test public void testFormatLineShowsEstimateWhenUnitsKnown() {
         ExtractionProgress p = new ExtractionProgress(Paths.get("/foo.ost"), 0L);
         for (int i = 0; i < 300; i++) p.incrementEmbeds();   // 300 embeds so far
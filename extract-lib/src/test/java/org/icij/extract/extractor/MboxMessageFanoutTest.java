@@ -0,0 +1,131 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.icij.extract.document.DigestIdentifier;
+import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.document.EmbeddedTikaDocument;
+import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.Spewer;
+import org.icij.task.Options;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * The messages of a root mbox parsed with fan-out must give the same set of {embed id, digest, name, parent, text}
+ * as the serial walk, attachments included.
+ */
+public class MboxMessageFanoutTest {
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static String message(final int i) {
+        final StringBuilder message = new StringBuilder()
+                .append("From sender").append(i).append("@example.org Mon Jan  1 00:00:00 2024\n")
+                .append("From: sender").append(i).append("@example.org\n")
+                .append("To: recipient@example.org\n")
+                .append("Subject: Message ").append(i).append('\n')
+                .append("Message-ID: <").append(i).append("@example.org>\n");
+
+        if (i % 5 != 0) {
+            return message.append("Content-Type: text/plain; charset=UTF-8\n\n")
+                    .append(("Body of message " + i + ".\n").repeat(1 + i % 3)).append('\n').toString();
+        }
+        return message.append("MIME-Version: 1.0\n")
+                .append("Content-Type: multipart/mixed; boundary=\"b").append(i).append("\"\n\n")
+                .append("--b").append(i).append('\n')
+                .append("Content-Type: text/plain; charset=UTF-8\n\n")
+                .append("Body of message ").append(i).append(" with an attachment.\n")
+                .append("--b").append(i).append('\n')
+                .append("Content-Type: text/plain; name=\"a").append(i).append(".txt\"\n")
+                .append("Content-Disposition: attachment; filename=\"a").append(i).append(".txt\"\n")
+                .append("Content-Transfer-Encoding: base64\n\n")
+                .append(Base64.getEncoder().encodeToString(("Attachment of message " + i)
+                        .getBytes(StandardCharsets.UTF_8))).append('\n')
+                .append("--b").append(i).append("--\n\n").toString();
+    }
+
+    private Path mbox(final int messages) throws Exception {
+        final Path mbox = tmp.newFile("a.mbox").toPath();
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            content.append(message(i));
+        }
+        Files.write(mbox, content.toString().getBytes(StandardCharsets.UTF_8));
+        return mbox;
+    }
+
+    private Extractor extractor(final boolean fanout) {
+        return new Extractor(new DocumentFactory().withIdentifier(new DigestIdentifier("SHA-384",
+                StandardCharsets.UTF_8)), Options.from(Map.of(
+                "mboxMessageFanout", String.valueOf(fanout),
+                "archiveParseParallelism", "4",
+                "ocr", "false",
+                "digestAlgorithm", "SHA-384",
+                "progressHeartbeatInterval", "0")));
+    }
+
+    private TreeSet<String> identitySet(final Extractor extractor, final Path mbox) throws Exception {
+        final TikaDocument doc = extractor.extract(mbox);
+        try (Reader r = doc.getReader()) {
+            Spewer.toString(r);
+        }
+        final TreeSet<String> ids = new TreeSet<>();
+        collect(doc, ids);
+        return ids;
+    }
+
+    private void collect(final TikaDocument doc, final TreeSet<String> ids) throws Exception {
+        for (final EmbeddedTikaDocument embed : doc.getEmbeds()) {
+            final String text;
+            try (Reader r = embed.getReader()) {
+                text = Spewer.toString(r).trim();
+            }
+            ids.add(embed.getId() + "|" + doc.getId() + "|"
+                    + embed.getMetadata().get("X-TIKA:digest:SHA384") + "|"
+                    + embed.getMetadata().get(TikaCoreProperties.RESOURCE_NAME_KEY) + "|" + text);
+            collect(embed, ids);
+        }
+    }
+
+    @Test(timeout = 180_000)
+    public void testFanoutMatchesSerial() throws Exception {
+        final Path mbox = mbox(60);
+        final TreeSet<String> serial;
+        try (Extractor extractor = extractor(false)) {
+            serial = identitySet(extractor, mbox);
+            assertThat(extractor.archiveParseExecutorOrNull()).isNull();
+        }
+
+        // 60 messages, and the attachments of every fifth.
+        assertThat(serial.size()).isGreaterThanOrEqualTo(72);
+
+        try (Extractor extractor = extractor(true)) {
+            for (int run = 0; run < 3; run++) {
+                assertThat(identitySet(extractor, mbox)).as("identity set, run " + run).isEqualTo(serial);
+            }
+            // The messages were actually fanned out.
+            assertThat(extractor.archiveParseExecutorOrNull()).isNotNull();
+        }
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        try (Extractor extractor = new Extractor(Options.from(Map.of()))) {
+            assertThat(extractor.isMboxMessageFanout()).isFalse();
+        }
+        try (Extractor extractor = new Extractor(Options.from(Map.of("mboxMessageFanout", "true",
+                "legacyUntitledNaming", "true")))) {
+            assertThat(extractor.isMboxMessageFanout()).isFalse();
+        }
+    }
+}
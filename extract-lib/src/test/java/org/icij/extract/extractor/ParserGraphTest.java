@@ -0,0 +1,94 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.DigestingParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.ocr.TesseractOCRConfig;
+import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.Spewer;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParserGraphTest {
+
+    @Test
+    public void testGraphIsReusedAcrossCalls() {
+        Extractor extractor = new Extractor();
+        assertThat(extractor.parserGraph()).isSameAs(extractor.parserGraph());
+    }
+
+    @Test
+    public void testGraphIsRebuiltWhenDigesterChanges() {
+        Extractor extractor = new Extractor();
+        ParserGraph before = extractor.parserGraph();
+
+        extractor.setDigestAlgorithm("SHA-1");
+
+        assertThat(extractor.parserGraph()).isNotSameAs(before);
+    }
+
+    @Test
+    public void testGraphIsRebuiltWhenParsersChange() {
+        Extractor extractor = new Extractor();
+        ParserGraph before = extractor.parserGraph();
+
+        extractor.disableOcr();
+
+        assertThat(extractor.parserGraph()).isNotSameAs(before);
+    }
+
+    @Test
+    public void testDigestingWrapperOnlyWithDigester() {
+        Parser base = TikaConfig.getDefaultConfig().getParser();
+
+        assertThat(ParserGraph.build(base, null).parser() instanceof DigestingParser).isFalse();
+        ParserGraph digesting = ParserGraph.build(base, new UpdatableDigester("prj", "SHA-256"));
+        assertThat(digesting.parser()).isInstanceOf(DigestingParser.class);
+        assertThat(digesting.autoDetectParser()).isNotSameAs(digesting.parser());
+    }
+
+    @Test
+    public void testMediaTypeMapIsResolvedOncePerOcrConfig() {
+        CompositeParser base = (CompositeParser) TikaConfig.getDefaultConfig().getParser();
+        ParserGraph.MemoizedCompositeParser memoized = new ParserGraph.MemoizedCompositeParser(
+                base.getMediaTypeRegistry(), base.getAllComponentParsers());
+        TesseractOCRConfig ocrConfig = new TesseractOCRConfig();
+        ParseContext first = new ParseContext();
+        first.set(TesseractOCRConfig.class, ocrConfig);
+        ParseContext second = new ParseContext();
+        second.set(TesseractOCRConfig.class, ocrConfig);
+
+        Map<MediaType, Parser> parsers = memoized.getParsers(first);
+
+        assertThat(memoized.getParsers(second)).isSameAs(parsers);
+        assertThat(memoized.getParsers(new ParseContext())).isNotSameAs(parsers);
+        assertThat(parsers).isEqualTo(base.getParsers(first));
+    }
+
+    @Test
+    public void testSharedGraphExtractsTheSameTextTwice() throws Exception {
+        Extractor extractor = new Extractor();
+        extractor.disableOcr();
+
+        String first = extractText(extractor);
+        String second = extractText(extractor);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(first).contains("This is a test.");
+    }
+
+    private String extractText(final Extractor extractor) throws Exception {
+        TikaDocument document = extractor.extract(Paths.get(getClass().getResource("/documents/text/plain.txt").toURI()));
+        try (Reader reader = document.getReader()) {
+            return Spewer.toString(reader);
+        }
+    }
+}
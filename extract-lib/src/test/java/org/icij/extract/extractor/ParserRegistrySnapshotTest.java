@@ -0,0 +1,104 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.CompositeParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.parser.pdf.PDFParser;
+import org.icij.extract.document.TikaDocument;
+import org.icij.spewer.Spewer;
+import org.icij.task.Options;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ParserRegistrySnapshotTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testSnapshotIsTakenThenUsed() throws Exception {
+        Path file = tmp.getRoot().toPath().resolve("parsers.json");
+
+        assertThat(ParserRegistrySnapshot.defaultParser(file)).isSameAs(TikaConfig.getDefaultConfig().getParser());
+        assertThat(Files.exists(file)).isTrue();
+
+        Parser lazy = ParserRegistrySnapshot.defaultParser(file);
+        assertThat(((CompositeParser) lazy).getAllComponentParsers().stream()
+                .allMatch(p -> p instanceof ParserRegistrySnapshot.LazyParser)).isTrue();
+    }
+
+    @Test
+    public void testLazyParsersResolveMediaTypesLikeTheDefaultParsers() throws Exception {
+        CompositeParser eager = (CompositeParser) TikaConfig.getDefaultConfig().getParser();
+        CompositeParser lazy = ParserRegistrySnapshot.of("test", eager).toParser();
+        ParseContext context = new ParseContext();
+
+        assertThat(classes(lazy.getParsers(context))).isEqualTo(classes(eager.getParsers(context)));
+        assertThat(lazy.getAllComponentParsers().stream()
+                .noneMatch(p -> ((ParserRegistrySnapshot.LazyParser) p).isLoaded())).isTrue();
+    }
+
+    @Test
+    public void testLazyParserIsCreatedOnFirstParse() throws Exception {
+        ParserRegistrySnapshot.LazyParser lazy = new ParserRegistrySnapshot.LazyParser(PDFParser.class.getName(),
+                Set.of(MediaType.application("pdf")));
+
+        assertThat(ParserRegistrySnapshot.parserClass(lazy)).isEqualTo(PDFParser.class);
+        assertThat(lazy.isLoaded()).isFalse();
+
+        assertThat(lazy.getParser()).isInstanceOf(PDFParser.class);
+        assertThat(lazy.getParser()).isSameAs(lazy.getParser());
+    }
+
+    @Test
+    public void testStaleSnapshotIsTakenAgain() throws Exception {
+        Path file = tmp.getRoot().toPath().resolve("parsers.json");
+        new ParserRegistrySnapshot("stale", List.of()).write(file);
+
+        assertThat(ParserRegistrySnapshot.defaultParser(file)).isSameAs(TikaConfig.getDefaultConfig().getParser());
+        assertThat(ParserRegistrySnapshot.read(file).fingerprint()).isEqualTo(ParserRegistrySnapshot.fingerprint());
+    }
+
+    @Test
+    public void testExtractionFromASnapshotIsTheSame() throws Exception {
+        Path snapshot = tmp.getRoot().toPath().resolve("parsers.json");
+        Path pdf = Paths.get(getClass().getResource("/documents/ocr/embedded.pdf").toURI());
+        String expected = text(new Extractor(), pdf);
+
+        // The first extractor takes the snapshot, the second uses it.
+        for (int i = 0; i < 2; i++) {
+            assertThat(text(new Extractor(Options.from(Map.of("parserSnapshot", snapshot.toString()))), pdf))
+                    .isEqualTo(expected);
+        }
+    }
+
+    private static String text(final Extractor extractor, final Path path) throws Exception {
+        try (extractor) {
+            TikaDocument document = extractor.extract(path);
+            try (Reader reader = document.getReader()) {
+                return Spewer.toString(reader);
+            }
+        }
+    }
+
+    private static Map<String, String> classes(final Map<MediaType, Parser> parsers) {
+        Map<String, String> classes = new TreeMap<>();
+        parsers.forEach((type, parser) -> classes.put(type.toString(),
+                ParserRegistrySnapshot.parserClass(parser).getName()));
+        return classes;
+    }
+}
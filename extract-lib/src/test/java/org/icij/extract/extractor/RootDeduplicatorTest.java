@@ -0,0 +1,134 @@
+package org.icij.extract.extractor;
+
+import org.icij.extract.document.TikaDocument;
+import org.icij.extract.queue.MemoryDocumentSet;
+import org.icij.spewer.FieldNames;
+import org.icij.spewer.Spewer;
+import org.icij.task.Options;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RootDeduplicatorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static class RecordingSpewer extends Spewer {
+        final List<Path> written = new CopyOnWriteArrayList<>();
+        final List<String> aliases = new CopyOnWriteArrayList<>();
+        boolean fail = false;
+
+        RecordingSpewer() { super(new FieldNames()); }
+
+        @Override
+        protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
+            Spewer.toString(doc.getReader());
+            if (fail) {
+                throw new IOException("simulated write failure");
+            }
+            written.add(doc.getPath());
+        }
+
+        @Override
+        public void writeAlias(TikaDocument duplicate, String digest) {
+            aliases.add(duplicate.getPath() + "=" + digest);
+        }
+    }
+
+    @Test
+    public void testDigestIsADuplicateOnceRecorded() {
+        RootDeduplicator deduplicator = new RootDeduplicator(new MemoryDocumentSet<>("test"));
+
+        assertThat(deduplicator.isDuplicate("abc")).isFalse();
+        assertThat(deduplicator.isDuplicate("abc")).isFalse();
+        deduplicator.record("abc");
+
+        assertThat(deduplicator.isDuplicate("abc")).isTrue();
+        assertThat(deduplicator.isDuplicate("def")).isFalse();
+        assertThat(deduplicator.extracted()).isEqualTo(1);
+        assertThat(deduplicator.aliased()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDuplicateRootIsAliasedInsteadOfExtracted() throws Exception {
+        Path first = write("first.txt", "This is the same content.");
+        Path second = write("second.txt", "This is the same content.");
+        Path other = write("other.txt", "This is other content.");
+        RecordingSpewer spewer = new RecordingSpewer();
+
+        try (Extractor extractor = extractor()) {
+            extractor.extract(first, spewer);
+            extractor.extract(second, spewer);
+            extractor.extract(other, spewer);
+
+            assertThat(extractor.getRootDeduplicator().aliased()).isEqualTo(1);
+        }
+
+        assertThat(spewer.written).containsOnly(first, other);
+        assertThat(spewer.aliases).hasSize(1);
+        assertThat(spewer.aliases.get(0)).startsWith(second + "=");
+    }
+
+    @Test
+    public void testDigestOfDeduplicatedRootMatchesTheParseDigest() throws Exception {
+        Path path = write("plain.txt", "This is a test.");
+        TikaDocument parsed;
+
+        try (Extractor extractor = new Extractor(Options.from(Map.of("progressHeartbeatInterval", "0")))) {
+            parsed = extractor.extract(path);
+            Spewer.toString(parsed.getReader());
+        }
+
+        RecordingSpewer spewer = new RecordingSpewer();
+        try (Extractor extractor = extractor()) {
+            extractor.extract(path, spewer);
+            extractor.extract(path, spewer);
+        }
+
+        // The root was digested once, up front; the alias carries the same ID the parse would have given.
+        assertThat(spewer.aliases).containsOnly(path + "=" + parsed.getId());
+    }
+
+    @Test
+    public void testFailedExtractionDoesNotRecordTheDigest() throws Exception {
+        Path first = write("first.txt", "This is the same content.");
+        Path second = write("second.txt", "This is the same content.");
+        RecordingSpewer spewer = new RecordingSpewer();
+
+        try (Extractor extractor = extractor()) {
+            spewer.fail = true;
+            try {
+                extractor.extract(first, spewer);
+                org.junit.Assert.fail("expected the write failure to propagate");
+            } catch (IOException expected) {
+                assertThat(expected.getMessage()).contains("simulated write failure");
+            }
+
+            spewer.fail = false;
+            extractor.extract(second, spewer);
+        }
+
+        // The copy that failed is not an original: the next copy is extracted rather than aliased to nothing.
+        assertThat(spewer.written).containsOnly(second);
+        assertThat(spewer.aliases).isEmpty();
+    }
+
+    private Extractor extractor() {
+        return new Extractor(Options.from(Map.of("dedupRoots", "memory", "progressHeartbeatInterval", "0")));
+    }
+
+    private Path write(final String name, final String content) throws IOException {
+        return Files.write(tmp.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,104 @@
+package org.icij.extract.extractor;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.io.TemporaryResources;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SinglePassDigesterTest {
+
+    private static final String KEY = "X-TIKA:digest:SHA256";
+    private static final int MARK_LIMIT = 64;
+
+    @Test
+    public void testAlgorithmNamesAreNormalized() {
+        assertThat(SinglePassDigester.javaAlgorithmName("SHA256")).isEqualTo("SHA-256");
+        assertThat(SinglePassDigester.javaAlgorithmName("sha-256")).isEqualTo("SHA-256");
+        assertThat(SinglePassDigester.javaAlgorithmName("SHA1")).isEqualTo("SHA-1");
+        assertThat(SinglePassDigester.javaAlgorithmName("MD5")).isEqualTo("MD5");
+    }
+
+    @Test
+    public void testTeeSetsTheDigestOnceTheStreamIsRead() throws Exception {
+        final byte[] bytes = randomBytes(1000);
+        final SinglePassDigester digester = new SinglePassDigester(MARK_LIMIT, "prj", "SHA256");
+        final Metadata metadata = new Metadata();
+
+        try (TikaInputStream tee = digester.teeing(TikaInputStream.get(new ByteArrayInputStream(bytes)), metadata)) {
+            IOUtils.read(tee, new byte[500]);
+            assertThat(metadata.get(KEY)).isNull();
+            IOUtils.toByteArray(tee);
+        }
+
+        assertThat(metadata.get(KEY)).isEqualTo(twoPassDigest(bytes));
+    }
+
+    @Test
+    public void testDigestOverTheMarkLimitIsUnchanged() throws Exception {
+        final byte[] bytes = randomBytes(10 * MARK_LIMIT);
+        final SinglePassDigester digester = new SinglePassDigester(MARK_LIMIT, "prj", "SHA-256");
+        final Metadata metadata = new Metadata();
+
+        try (TikaInputStream tee = digester.teeing(TikaInputStream.get(new ByteArrayInputStream(bytes)), metadata)) {
+            digester.digest(tee, metadata, new ParseContext());
+
+            // The parser still sees every byte after the digester's spool.
+            assertThat(IOUtils.toByteArray(tee)).isEqualTo(bytes);
+        }
+
+        assertThat(metadata.get(KEY)).isEqualTo(twoPassDigest(bytes));
+    }
+
+    @Test
+    public void testDigestUnderTheMarkLimitIsUnchanged() throws Exception {
+        final byte[] bytes = randomBytes(MARK_LIMIT / 2);
+        final SinglePassDigester digester = new SinglePassDigester(MARK_LIMIT, "prj", "SHA-256");
+        final Metadata metadata = new Metadata();
+
+        try (TikaInputStream tee = digester.teeing(TikaInputStream.get(new ByteArrayInputStream(bytes)), metadata)) {
+            digester.digest(tee, metadata, new ParseContext());
+            assertThat(IOUtils.toByteArray(tee)).isEqualTo(bytes);
+        }
+
+        assertThat(metadata.get(KEY)).isEqualTo(twoPassDigest(bytes));
+    }
+
+    @Test
+    public void testFileBackedStreamsAreNotTeed() throws Exception {
+        final SinglePassDigester digester = new SinglePassDigester(MARK_LIMIT, "prj", "SHA-256");
+
+        try (TemporaryResources tmp = new TemporaryResources()) {
+            final Path file = tmp.createTempFile();
+            Files.write(file, randomBytes(10));
+
+            try (TikaInputStream tis = TikaInputStream.get(file)) {
+                assertThat(digester.teeing(tis, new Metadata())).isSameAs(tis);
+            }
+        }
+    }
+
+    private static String twoPassDigest(final byte[] bytes) throws Exception {
+        final Metadata metadata = new Metadata();
+
+        try (TikaInputStream tis = TikaInputStream.get(new ByteArrayInputStream(bytes))) {
+            new UpdatableDigester(MARK_LIMIT, "prj", "SHA-256").digest(tis, metadata, new ParseContext());
+        }
+
+        return metadata.get(KEY);
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
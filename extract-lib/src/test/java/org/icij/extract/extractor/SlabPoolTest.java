@@ -0,0 +1,62 @@
+package org.icij.extract.extractor;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SlabPoolTest {
+
+    @Test
+    public void testReturnedSlabsAreReused() {
+        final SlabPool pool = new SlabPool(8, 2);
+
+        final byte[] slab = pool.borrow();
+        pool.release(slab);
+
+        assertThat(pool.borrow()).isSameAs(slab);
+        assertThat(pool.stats().borrowed()).isEqualTo(2L);
+        assertThat(pool.stats().allocated()).isEqualTo(1L);
+        assertThat(pool.stats().reuseRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void testSlabsReturnedToAFullPoolAreDropped() {
+        final SlabPool pool = new SlabPool(8, 2);
+        final byte[][] slabs = {pool.borrow(), pool.borrow(), pool.borrow()};
+
+        for (byte[] slab : slabs) {
+            pool.release(slab);
+        }
+
+        assertThat(pool.stats().idle()).isEqualTo(2);
+        assertThat(pool.stats().dropped()).isEqualTo(1L);
+        assertThat(pool.stats().outstanding()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testSlabsNotReturnedAreOutstanding() {
+        final SlabPool pool = new SlabPool(8, 2);
+
+        pool.release(pool.borrow());
+        pool.borrow();
+
+        assertThat(pool.stats().outstanding()).isEqualTo(1L);
+        assertThat(pool.stats().toString()).isEqualTo("2 segments borrowed (50% reused), 1 outstanding, 0 idle, " +
+                "0 dropped");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSegmentsOfAnotherSizeAreRefused() {
+        new SlabPool(8, 2).release(new byte[16]);
+    }
+
+    @Test
+    public void testPoolOfBytesHoldsAtLeastOneSlab() {
+        assertThat(SlabPool.ofBytes(0).stats().idle()).isEqualTo(0);
+        assertThat(SlabPool.ofBytes(0).slabBytes()).isEqualTo(SlabPool.SLAB_BYTES);
+
+        final SlabPool pool = SlabPool.ofBytes(0);
+        pool.release(pool.borrow());
+        assertThat(pool.stats().idle()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,125 @@
+package org.icij.extract.extractor;
+
+import org.icij.extract.document.Utf8TextReader;
+import org.icij.spewer.Spewer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SpillArenaTest {
+
+    private SpillArena arena;
+
+    @Before public void setUp() { arena = new SpillArena(256 * 1024); }
+    @After public void tearDown() { arena.close(); }
+
+    private static String read(final SpillArena.Spill spill) throws Exception {
+        try (Reader reader = Utf8TextReader.of(spill.extents(), false, spill::release)) {
+            return Spewer.toString(reader);
+        }
+    }
+
+    private static String text(final int worker, final int i) {
+        return ("worker " + worker + " text " + i + " \u65e5\u672c ").repeat(1 + (i * 37 + worker * 11) % 2000);
+    }
+
+    @Test(timeout = 60_000)
+    public void testConcurrentSpillsAreReadBackAndTheirFilesDeleted() throws Exception {
+        final int workers = 8;
+        final int spillsPerWorker = 40;
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        final List<Future<List<SpillArena.Spill>>> futures = new ArrayList<>();
+
+        try {
+            for (int w = 0; w < workers; w++) {
+                final int worker = w;
+                futures.add(executor.submit((Callable<List<SpillArena.Spill>>) () -> {
+                    final List<SpillArena.Spill> spills = new ArrayList<>();
+                    for (int i = 0; i < spillsPerWorker; i++) {
+                        final byte[] bytes = text(worker, i).getBytes(StandardCharsets.UTF_8);
+                        final SpillArena.Spill spill = arena.open(null);
+
+                        // Single bytes, small arrays and arrays larger than a chunk.
+                        spill.write(bytes[0]);
+                        spill.write(bytes, 1, Math.min(100, bytes.length - 1));
+                        if (bytes.length > 101) {
+                            spill.write(bytes, 101, bytes.length - 101);
+                        }
+                        spill.close();
+                        spills.add(spill);
+                    }
+                    return spills;
+                }));
+            }
+
+            for (int w = 0; w < workers; w++) {
+                final List<SpillArena.Spill> spills = futures.get(w).get();
+                for (int i = 0; i < spillsPerWorker; i++) {
+                    assertThat(read(spills.get(i))).isEqualTo(text(w, i));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(arena.filesCreated()).isGreaterThan(1L);
+        // The current file is only deleted with the arena.
+        assertThat(arena.filesDeleted()).isEqualTo(arena.filesCreated() - 1);
+        arena.close();
+        assertThat(arena.filesDeleted()).isEqualTo(arena.filesCreated());
+    }
+
+    @Test
+    public void testAFileIsKeptUntilItsLastSpillIsReleased() throws Exception {
+        final SpillArena small = new SpillArena(16);
+        try {
+            final SpillArena.Spill first = small.open(null);
+            first.write("0123456789".getBytes(StandardCharsets.UTF_8));
+            first.close();
+            final SpillArena.Spill second = small.open(null);
+            second.write("abcdefghij".getBytes(StandardCharsets.UTF_8));
+            second.close();
+
+            // The second spill filled the file, which was retired.
+            assertThat(small.filesCreated()).isEqualTo(1L);
+            assertThat(read(first)).isEqualTo("0123456789");
+            assertThat(small.filesDeleted()).isEqualTo(0L);
+            assertThat(read(second)).isEqualTo("abcdefghij");
+            assertThat(small.filesDeleted()).isEqualTo(1L);
+        } finally {
+            small.close();
+        }
+    }
+
+    @Test
+    public void testAChannelClosedByAnInterruptedReaderIsOpenedAgain() throws Exception {
+        final SpillArena.Spill first = arena.open(null);
+        first.write("first".getBytes(StandardCharsets.UTF_8));
+        first.close();
+        final SpillArena.Spill second = arena.open(null);
+        second.write("second".getBytes(StandardCharsets.UTF_8));
+        second.close();
+
+        Thread.currentThread().interrupt();
+        try (Reader reader = Utf8TextReader.of(first.extents(), false, first::release)) {
+            reader.read();
+        } catch (java.nio.channels.ClosedByInterruptException expected) {
+            // the channel is closed for every thread
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertThat(read(second)).isEqualTo("second");
+    }
+}
@@ -0,0 +1,72 @@
+package org.icij.extract.extractor;
+
+import org.apache.tika.io.TemporaryResources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SpoolHandOffTest {
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    private TemporaryResources tmp;
+
+    @Before public void setUp() { tmp = new TemporaryResources(); }
+    @After public void tearDown() throws Exception { tmp.close(); }
+
+    private Path spool(final String text) throws Exception {
+        final Path spooled = folder.newFile().toPath();
+        Files.write(spooled, text.getBytes(StandardCharsets.UTF_8));
+        return spooled;
+    }
+
+    @Test
+    public void testTheHandOffOutlivesTheSpool() throws Exception {
+        final Path spooled = spool("image bytes");
+        final SpoolHandOff handOff = SpoolHandOff.of(spooled, true, tmp);
+
+        Files.delete(spooled);
+        assertThat(new String(Files.readAllBytes(handOff.path()), StandardCharsets.UTF_8)).isEqualTo("image bytes");
+        handOff.close();
+    }
+
+    @Test
+    public void testASpoolThatMayNotBeLinkedIsCopiedElsewhere() throws Exception {
+        final Path spooled = spool("input file");
+        final SpoolHandOff handOff = SpoolHandOff.of(spooled, false, tmp);
+
+        assertThat(handOff.path().getParent()).isNotEqualTo(spooled.getParent());
+        assertThat(new String(Files.readAllBytes(handOff.path()), StandardCharsets.UTF_8)).isEqualTo("input file");
+        handOff.close();
+        assertThat(Files.exists(spooled)).isTrue();
+    }
+
+    @Test
+    public void testTheFileIsDeletedWithTheLastRelease() throws Exception {
+        final SpoolHandOff handOff = SpoolHandOff.of(new ByteArrayInputStream(new byte[]{1, 2, 3}), tmp);
+        final SpoolHandOff task = handOff.retain();
+
+        assertThat(Files.size(handOff.path())).isEqualTo(3L);
+        handOff.close();
+        assertThat(Files.exists(task.path())).isTrue();
+        task.close();
+        assertThat(Files.exists(task.path())).isFalse();
+    }
+
+    @Test
+    public void testTheFileIsDeletedWithTheTemporaryResources() throws Exception {
+        final SpoolHandOff handOff = SpoolHandOff.of(spool("never released"), true, tmp);
+
+        tmp.close();
+        assertThat(Files.exists(handOff.path())).isFalse();
+    }
+}
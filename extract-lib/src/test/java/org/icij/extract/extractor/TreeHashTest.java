@@ -0,0 +1,146 @@
+package org.icij.extract.extractor;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.icij.task.Options;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TreeHashTest {
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // Known answers, computed independently from the RFC 6962 tree shape over SHA-256.
+    private static final String EMPTY = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final String ABC = "609f6e36d2405585188d5cfd761f407c7cc46a7d3f314c88270469dde315fcd1";
+    private static final String ALPHABET_IN_4_BYTE_CHUNKS =
+            "0d3e83e16b6f8556fa2f1fa0b4bc80ff178313bdf6e4fbedc0dde52c6d169260";
+    private static final String RAMP_IN_1K_CHUNKS = "89557fa840da39c6abf41aac9f87f96a3b23b6a6db6d54db821a25c24d729a03";
+
+    // 10 chunks of 1KB: an unbalanced tree.
+    private static byte[] ramp() {
+        final byte[] bytes = new byte[10240];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private Path file(final byte[] bytes) throws Exception {
+        final Path path = tmp.newFile().toPath();
+        Files.write(path, bytes);
+        return path;
+    }
+
+    @Test public void testKnownAnswers() throws Exception {
+        assertThat(Hex.encodeHexString(new TreeHash("TREE-SHA-256").hash(new ByteArrayInputStream(new byte[0]))))
+                .isEqualTo(EMPTY);
+        assertThat(Hex.encodeHexString(new TreeHash("TREE-SHA-256").hash(file("abc".getBytes(StandardCharsets.US_ASCII)), 4, () -> executor)))
+                .isEqualTo(ABC);
+        assertThat(Hex.encodeHexString(new TreeHash("TREE-SHA256", 4).hash(new ByteArrayInputStream(
+                "abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII))))).isEqualTo(ALPHABET_IN_4_BYTE_CHUNKS);
+    }
+
+    @Test public void testResultDoesNotDependOnThreadCount() throws Exception {
+        final Path path = file(ramp());
+        final TreeHash treeHash = new TreeHash("TREE-SHA-256", 1024);
+
+        for (int parallelism : new int[] {1, 2, 3, 8, 64}) {
+            assertThat(Hex.encodeHexString(treeHash.hash(path, parallelism, () -> executor))).isEqualTo(RAMP_IN_1K_CHUNKS);
+        }
+        assertThat(Hex.encodeHexString(treeHash.hash(new ByteArrayInputStream(ramp())))).isEqualTo(RAMP_IN_1K_CHUNKS);
+    }
+
+    @Test public void testStreamIsReadInBuffersSmallerThanAChunk() throws Exception {
+        final byte[] bytes = new byte[300_000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        final TreeHash treeHash = new TreeHash("TREE-SHA-256", 100_000);
+
+        assertThat(treeHash.hash(new ByteArrayInputStream(bytes)))
+                .isEqualTo(treeHash.hash(file(bytes), 1, () -> executor));
+    }
+
+    @Test(timeout = 10_000) public void testFileIsHashedWhileTheSharedExecutorIsBusy() throws Exception {
+        final ExecutorService busy = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            busy.submit(() -> {
+                release.await();
+                return null;
+            });
+            assertThat(Hex.encodeHexString(new TreeHash("TREE-SHA-256", 1024).hash(file(ramp()), 4, () -> busy)))
+                    .isEqualTo(RAMP_IN_1K_CHUNKS);
+        } finally {
+            release.countDown();
+            busy.shutdownNow();
+        }
+    }
+
+    @Test public void testEmptyFile() throws Exception {
+        assertThat(Hex.encodeHexString(new TreeHash("TREE-SHA-256").hash(file(new byte[0]), 4, () -> executor))).isEqualTo(EMPTY);
+    }
+
+    @Test public void testDigesterGivesTheSameHashForFilesAndStreams() throws Exception {
+        final TreeHashDigester digester = new TreeHashDigester(new TreeHash("TREE-SHA-256", 1024), "TREE-SHA-256", 4,
+                () -> executor);
+        final Metadata fromFile = new Metadata();
+        final Metadata fromSmallStream = new Metadata();
+        final Metadata fromLargeStream = new Metadata();
+        final byte[] small = new byte[100];
+
+        try (TikaInputStream tis = TikaInputStream.get(file(ramp()))) {
+            digester.digest(tis, fromFile, new ParseContext());
+        }
+        try (TikaInputStream tis = TikaInputStream.get(new ByteArrayInputStream(small))) {
+            digester.digest(tis, fromSmallStream, new ParseContext());
+            // The stream is left readable from the start for the parser.
+            assertThat(tis.readAllBytes()).isEqualTo(small);
+        }
+        try (TikaInputStream tis = TikaInputStream.get(new ByteArrayInputStream(ramp()))) {
+            digester.digest(tis, fromLargeStream, new ParseContext());
+            assertThat(tis.readAllBytes()).isEqualTo(ramp());
+        }
+
+        assertThat(fromFile.get("X-TIKA:digest:TREESHA256")).isEqualTo(RAMP_IN_1K_CHUNKS);
+        assertThat(fromLargeStream.get("X-TIKA:digest:TREESHA256")).isEqualTo(RAMP_IN_1K_CHUNKS);
+        assertThat(fromSmallStream.get("X-TIKA:digest:TREESHA256"))
+                .isEqualTo(Hex.encodeHexString(new TreeHash("TREE-SHA-256", 1024).hash(new ByteArrayInputStream(small))));
+    }
+
+    @Test public void testExtractorOptions() {
+        final Extractor extractor = new Extractor(Options.from(Map.of("digestAlgorithm", "TREE-SHA-256",
+                "treeHashParallelism", "3")));
+
+        assertThat(extractor.getDigester()).isInstanceOf(TreeHashDigester.class);
+        assertThat(extractor.getTreeHashParallelism()).isEqualTo(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testProjectNameIsRejectedWithTreeHash() {
+        new Extractor(Options.from(Map.of("digestAlgorithm", "TREE-SHA-256", "digestProjectName", "prj")));
+    }
+}
@@ -0,0 +1,110 @@
+package org.icij.extract.extractor;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class UpdatableInputStreamDigesterTest {
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final String KEY = "X-TIKA:digest:SHA256";
+
+    // A small mark limit and map window, so that files up to 100 bytes are digested from the stream and longer ones
+    // span several windows. Files digested are counted.
+    private final AtomicInteger filesDigested = new AtomicInteger();
+    private final UpdatableInputStreamDigester digester = new UpdatableInputStreamDigester(100, "SHA-256", "SHA256",
+            Hex::encodeHexString) {
+        @Override
+        protected String getDigestUpdateModifier() {
+            return "prj";
+        }
+
+        @Override
+        int getMapWindowSize() {
+            return 1000;
+        }
+
+        @Override
+        void digestFile(final File f, final Metadata m) throws IOException {
+            filesDigested.incrementAndGet();
+            super.digestFile(f, m);
+        }
+    };
+
+    private static String expected(final byte[] bytes) throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update("prj".getBytes(StandardCharsets.UTF_8));
+        return Hex.encodeHexString(digest.digest(bytes));
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test public void testMappedFileDigestMatchesTheStreamDigest() throws Exception {
+        for (int length : new int[] {0, 50, 100, 1000, 5500}) {
+            final byte[] bytes = randomBytes(length);
+            final Path file = tmp.newFile().toPath();
+            final Metadata fromFile = new Metadata();
+            final Metadata fromStream = new Metadata();
+
+            Files.write(file, bytes);
+            try (TikaInputStream tis = TikaInputStream.get(file)) {
+                digester.digest(tis, fromFile, new ParseContext());
+                // The stream is left untouched for the parser.
+                assertThat(tis.readAllBytes()).isEqualTo(bytes);
+            }
+            try (TikaInputStream tis = TikaInputStream.get(new ByteArrayInputStream(bytes))) {
+                digester.digest(tis, fromStream, new ParseContext());
+            }
+
+            assertThat(fromFile.get(KEY)).isEqualTo(expected(bytes));
+            assertThat(fromStream.get(KEY)).isEqualTo(fromFile.get(KEY));
+        }
+    }
+
+    @Test public void testSpooledFileIsNotReadAgainWhenTeed() throws Exception {
+        final byte[] bytes = randomBytes(5500);
+        final Metadata metadata = new Metadata();
+
+        // A value set before is replaced by the tee's, not taken for it.
+        metadata.set(KEY, "stale");
+        try (TikaInputStream tis = digester.teeing(new ByteArrayInputStream(bytes), metadata)) {
+            digester.digest(tis, metadata, new ParseContext());
+            assertThat(tis.readAllBytes()).isEqualTo(bytes);
+        }
+
+        assertThat(filesDigested.get()).isEqualTo(0);
+        assertThat(metadata.get(KEY)).isEqualTo(expected(bytes));
+    }
+
+    @Test public void testSpooledFileIsReadWhenNotTeed() throws Exception {
+        final byte[] bytes = randomBytes(5500);
+        final Metadata metadata = new Metadata();
+
+        try (TikaInputStream tis = TikaInputStream.get(new ByteArrayInputStream(bytes))) {
+            digester.digest(tis, metadata, new ParseContext());
+        }
+
+        assertThat(filesDigested.get()).isEqualTo(1);
+        assertThat(metadata.get(KEY)).isEqualTo(expected(bytes));
+    }
+}
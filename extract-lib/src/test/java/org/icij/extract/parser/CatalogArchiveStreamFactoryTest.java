@@ -0,0 +1,203 @@
+package org.icij.extract.parser;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CatalogArchiveStreamFactoryTest {
+    @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path zipWith(final String name, final int files) throws Exception {
+        Path zip = tmp.newFile(name).toPath();
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+            for (int i = 0; i < files; i++) {
+                zos.putNextEntry(new ZipEntry("f" + i + ".txt"));
+                zos.write(("hello" + i).getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+    private Path tarWith(final String name, final int files) throws Exception {
+        Path tar = tmp.newFile(name).toPath();
+        try (TarArchiveOutputStream tos = new TarArchiveOutputStream(Files.newOutputStream(tar))) {
+            for (int i = 0; i < files; i++) {
+                final byte[] bytes = ("hello" + i).repeat(i + 1).getBytes(StandardCharsets.UTF_8);
+                final TarArchiveEntry entry = new TarArchiveEntry("f" + i + ".txt");
+                entry.setSize(bytes.length);
+                tos.putArchiveEntry(entry);
+                tos.write(bytes);
+                tos.closeArchiveEntry();
+            }
+        }
+        return tar;
+    }
+
+    // Walks the archive, handing off every entry, and only reads them once the walk is over.
+    private Map<String, String> handOffAll(final ArchiveInputStream<? extends ArchiveEntry> ais) throws Exception {
+        final Map<String, InputStream> handedOff = new TreeMap<>();
+        ArchiveEntry entry;
+        while (null != (entry = ais.getNextEntry())) {
+            handedOff.put(entry.getName(), ((CatalogArchiveStreamFactory.EntryHandOff) ais).handOff());
+            assertThat(ais.read()).isEqualTo(-1);
+        }
+
+        final Map<String, String> contents = new TreeMap<>();
+        for (Map.Entry<String, InputStream> e : handedOff.entrySet()) {
+            try (InputStream in = e.getValue()) {
+                contents.put(e.getKey(), IOUtils.toString(in, StandardCharsets.UTF_8));
+            }
+        }
+        return contents;
+    }
+
+    private List<String> read(final ArchiveInputStream<? extends ArchiveEntry> ais) throws Exception {
+        final List<String> contents = new ArrayList<>();
+        ArchiveEntry entry;
+        while (null != (entry = ais.getNextEntry())) {
+            contents.add(entry.getName() + "=" + IOUtils.toString(ais, StandardCharsets.UTF_8));
+        }
+        return contents;
+    }
+
+    @Test public void testFirstStreamIsReadFromTheCatalogAndCounted() throws Exception {
+        final Path zip = zipWith("a.zip", 3);
+        final AtomicLong units = new AtomicLong(-1);
+        final ArchiveStreamFactory factory = new CatalogArchiveStreamFactory(zip, units::set);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(zip));
+             ArchiveInputStream<? extends ArchiveEntry> ais = factory.createArchiveInputStream(in)) {
+            assertThat(ais).isInstanceOf(CatalogArchiveStreamFactory.ZipCatalogInputStream.class);
+            assertThat(units.get()).isEqualTo(3L);
+            assertThat(read(ais)).containsExactly("f0.txt=hello0", "f1.txt=hello1", "f2.txt=hello2");
+        }
+    }
+
+    @Test public void testLaterStreamsAreStreamedAsBefore() throws Exception {
+        final Path zip = zipWith("a.zip", 1);
+        final Path nested = zipWith("b.zip", 2);
+        final AtomicLong units = new AtomicLong(-1);
+        final ArchiveStreamFactory factory = new CatalogArchiveStreamFactory(zip, units::set);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(zip))) {
+            factory.createArchiveInputStream(in).close();
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(nested));
+             ArchiveInputStream<? extends ArchiveEntry> ais = factory.createArchiveInputStream(in)) {
+            assertThat(ais).isInstanceOf(ZipArchiveInputStream.class);
+            assertThat(read(ais)).containsExactly("f0.txt=hello0", "f1.txt=hello1");
+        }
+        assertThat(units.get()).isEqualTo(1L);
+    }
+
+    @Test public void testUnreadableCatalogFallsBackToStreaming() throws Exception {
+        // Cut off the central directory: the local entries can still be streamed.
+        final Path zip = zipWith("a.zip", 2);
+        final byte[] bytes = Files.readAllBytes(zip);
+        final Path truncated = tmp.newFile("truncated.zip").toPath();
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 30));
+        final AtomicLong units = new AtomicLong(-1);
+        final ArchiveStreamFactory factory = new CatalogArchiveStreamFactory(truncated, units::set);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(truncated));
+             ArchiveInputStream<? extends ArchiveEntry> ais = factory.createArchiveInputStream(in)) {
+            assertThat(ais).isInstanceOf(ZipArchiveInputStream.class);
+            assertThat(read(ais)).containsExactly("f0.txt=hello0", "f1.txt=hello1");
+        }
+        assertThat(units.get()).isEqualTo(-1L);
+    }
+
+    @Test public void testZipEntriesAreHandedOffToBeReadLater() throws Exception {
+        final Path zip = zipWith("a.zip", 3);
+        final ArchiveEntryFanout fanout = new ArchiveEntryFanout(null, 1, () -> null);
+        final ArchiveStreamFactory factory = new CatalogArchiveStreamFactory(zip, units -> {}, fanout);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(zip));
+             ArchiveInputStream<? extends ArchiveEntry> ais = factory.createArchiveInputStream(in)) {
+            assertThat(handOffAll(ais)).isEqualTo(Map.of("f0.txt", "hello0", "f1.txt", "hello1", "f2.txt", "hello2"));
+        }
+    }
+
+    @Test public void testTarIsReadFromItsHeadersOnlyForAFanout() throws Exception {
+        final Path tar = tarWith("a.tar", 3);
+        final AtomicLong units = new AtomicLong(-1);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(tar));
+             ArchiveInputStream<? extends ArchiveEntry> ais =
+                     new CatalogArchiveStreamFactory(tar, units::set).createArchiveInputStream(in)) {
+            assertThat(ais).isInstanceOf(TarArchiveInputStream.class);
+        }
+        assertThat(units.get()).isEqualTo(-1L);
+
+        final ArchiveEntryFanout fanout = new ArchiveEntryFanout(null, 1, () -> null);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(tar));
+             ArchiveInputStream<? extends ArchiveEntry> ais =
+                     new CatalogArchiveStreamFactory(tar, units::set, fanout).createArchiveInputStream(in)) {
+            assertThat(ais).isInstanceOf(CatalogArchiveStreamFactory.TarCatalogInputStream.class);
+            assertThat(units.get()).isEqualTo(3L);
+            assertThat(handOffAll(ais)).isEqualTo(Map.of("f0.txt", "hello0", "f1.txt", "hello1hello1",
+                    "f2.txt", "hello2hello2hello2"));
+        }
+    }
+
+    @Test public void testTarEntriesThatAreNotHandedOffAreStreamed() throws Exception {
+        final Path tar = tarWith("a.tar", 2);
+        final ArchiveEntryFanout fanout = new ArchiveEntryFanout(null, 1, () -> null);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(tar));
+             ArchiveInputStream<? extends ArchiveEntry> ais =
+                     new CatalogArchiveStreamFactory(tar, units -> {}, fanout).createArchiveInputStream(in)) {
+            assertThat(read(ais)).containsExactly("f0.txt=hello0", "f1.txt=hello1hello1");
+        }
+    }
+
+    @Test public void testTarChannelClosedByAnInterruptedReaderIsOpenedAgain() throws Exception {
+        final Path tar = tarWith("a.tar", 2);
+        final ArchiveEntryFanout fanout = new ArchiveEntryFanout(null, 1, () -> null);
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(tar));
+             ArchiveInputStream<? extends ArchiveEntry> ais =
+                     new CatalogArchiveStreamFactory(tar, units -> {}, fanout).createArchiveInputStream(in)) {
+            ais.getNextEntry();
+            final InputStream first = ((CatalogArchiveStreamFactory.EntryHandOff) ais).handOff();
+            ais.getNextEntry();
+            final InputStream second = ((CatalogArchiveStreamFactory.EntryHandOff) ais).handOff();
+
+            Thread.currentThread().interrupt();
+            try {
+                first.read();
+            } catch (java.nio.channels.ClosedByInterruptException expected) {
+                // the channel is closed for every entry
+            } finally {
+                Thread.interrupted();
+            }
+
+            assertThat(IOUtils.toString(second, StandardCharsets.UTF_8)).isEqualTo("hello1hello1");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.icij.extract.parser;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CharRingBufferTest {
+
+    @Test(timeout = 10_000)
+    public void testCharactersAreReadInOrderAcrossTheEndOfTheBuffer() throws Exception {
+        final CharRingBuffer buffer = new CharRingBuffer(7);
+        final StringBuilder expected = new StringBuilder();
+
+        for (int i = 0; i < 10_000; i++) {
+            expected.append((char) ('a' + i % 26));
+        }
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> writing = executor.submit(() -> {
+                try (Writer writer = buffer.writer()) {
+                    final String text = expected.toString();
+                    for (int i = 0; i < text.length(); i += 13) {
+                        if (i % 2 == 0) {
+                            writer.write(text, i, Math.min(13, text.length() - i));
+                        } else {
+                            writer.write(text.substring(i, Math.min(i + 13, text.length())).toCharArray());
+                        }
+                    }
+                }
+                return null;
+            });
+
+            final StringBuilder actual = new StringBuilder();
+            final Reader reader = buffer.reader();
+            final char[] chars = new char[5];
+            int n;
+
+            while ((n = reader.read(chars, 0, chars.length)) != -1) {
+                actual.append(chars, 0, n);
+            }
+
+            writing.get();
+            assertThat(actual.toString()).isEqualTo(expected.toString());
+            assertThat(reader.read()).isEqualTo(-1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRemainingCharactersAreReadAfterTheWriterIsClosed() throws Exception {
+        final CharRingBuffer buffer = new CharRingBuffer(4);
+
+        buffer.writer().write("abc");
+        buffer.writer().close();
+        buffer.awaitReadable();
+
+        assertThat(buffer.reader().read()).isEqualTo('a');
+        assertThat(buffer.reader().read(new char[4], 0, 4)).isEqualTo(2);
+        assertThat(buffer.reader().read()).isEqualTo(-1);
+    }
+
+    @Test(timeout = 10_000)
+    public void testClosingTheReaderUnblocksTheWriter() throws Exception {
+        final CharRingBuffer buffer = new CharRingBuffer(4);
+        final CountDownLatch failed = new CountDownLatch(1);
+
+        final Thread writing = new Thread(() -> {
+            try {
+                buffer.writer().write("more than four characters");
+            } catch (IOException e) {
+                failed.countDown();
+            }
+        });
+
+        writing.start();
+        buffer.awaitReadable();
+        buffer.reader().close();
+
+        assertThat(failed.await(5, TimeUnit.SECONDS)).isTrue();
+        writing.join();
+    }
+
+    @Test
+    public void testWaitingForTheFirstCharacterFailsIfInterrupted() throws Exception {
+        final CharRingBuffer buffer = new CharRingBuffer();
+
+        buffer.writer().write('a');
+        Thread.currentThread().interrupt();
+
+        try {
+            buffer.awaitReadable();
+            fail("The wait should have been interrupted.");
+        } catch (InterruptedIOException e) {
+            assertThat(Thread.currentThread().isInterrupted()).isFalse();
+        }
+    }
+}
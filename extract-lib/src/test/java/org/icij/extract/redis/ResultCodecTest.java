@@ -1,11 +1,14 @@
 package org.icij.extract.redis;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.icij.extract.extractor.ExtractionStatus;
+import org.icij.extract.report.Fingerprint;
 import org.icij.extract.report.Report;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -53,4 +56,31 @@ public class ResultCodecTest {
         assertThat(decoded.getException().isPresent()).isTrue();
         assertThat(decoded.getException().get().getMessage()).isEqualTo("boom");
     }
+
+    @Test
+    public void testFingerprintRoundTrips() throws IOException {
+        final Fingerprint fingerprint = new Fingerprint(1024, 1700000000000L, "abcdef");
+        final Report decoded = roundTrip(new Report(ExtractionStatus.FAILURE_TIMEOUT, new RuntimeException("boom"),
+                fingerprint));
+
+        assertThat(decoded.getStatus()).isEqualTo(ExtractionStatus.FAILURE_TIMEOUT);
+        assertThat(decoded.getFingerprint().get()).isEqualTo(fingerprint);
+        assertThat(decoded.getException().get().getMessage()).isEqualTo("boom");
+    }
+
+    @Test
+    public void testFingerprintWithoutDigestRoundTrips() throws IOException {
+        final Fingerprint fingerprint = new Fingerprint(1024, 1700000000000L);
+
+        assertThat(roundTrip(new Report(ExtractionStatus.SUCCESS, null, fingerprint)).getFingerprint().get())
+                .isEqualTo(fingerprint);
+    }
+
+    @Test
+    public void testValueWithoutFingerprintDecodes() {
+        final Report decoded = (Report) decoder.decode(Unpooled.copiedBuffer("11", StandardCharsets.US_ASCII), null);
+
+        assertThat(decoded.getStatus()).isEqualTo(ExtractionStatus.FAILURE_TIMEOUT);
+        assertThat(decoded.getFingerprint().isPresent()).isFalse();
+    }
 }
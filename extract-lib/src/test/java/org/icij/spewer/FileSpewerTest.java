@@ -3,6 +3,7 @@ package org.icij.spewer;
 import org.icij.extract.document.DocumentFactory;
 import org.icij.extract.document.PathIdentifier;
 import org.icij.extract.document.TikaDocument;
+import org.icij.extract.document.Utf8TextReader;
 import org.icij.extract.extractor.Extractor;
 import org.junit.Before;
 import org.junit.Rule;
@@ -11,7 +12,10 @@ import org.junit.rules.TemporaryFolder;
 
 import java.io.StringReader;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 import static java.nio.file.Files.readAllLines;
 import static java.nio.file.Paths.get;
@@ -54,6 +58,26 @@ public class FileSpewerTest {
                 contains("This is a test.");
     }
 
+    @Test
+    public void test_spew_utf8_text_as_bytes_or_in_the_output_encoding() throws Exception {
+        final Path spilled = folder.newFile("spilled").toPath();
+        Files.write(spilled, "caf\u00e9".getBytes(StandardCharsets.UTF_8));
+
+        for (Charset charset : List.of(StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1)) {
+            fileSpewer.setOutputEncoding(charset);
+            for (Utf8TextReader reader : List.of(Utf8TextReader.of(spilled),
+                    Utf8TextReader.of("caf\u00e9".getBytes(StandardCharsets.UTF_8)))) {
+                final TikaDocument tikaDocument = factory.create("test.txt");
+                tikaDocument.setReader(reader);
+
+                fileSpewer.writeDocument(tikaDocument, null, null, 0);
+
+                assertThat(Files.readAllBytes(folder.getRoot().toPath().resolve("test.txt.txt")))
+                        .isEqualTo("caf\u00e9".getBytes(charset));
+            }
+        }
+    }
+
     @Before
     public void setUp() {
         fileSpewer.setOutputDirectory(folder.getRoot().toPath());
@@ -0,0 +1,214 @@
+package org.icij.spewer;
+
+import org.apache.tika.metadata.Metadata;
+import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.document.EmbeddedTikaDocument;
+import org.icij.extract.document.PathIdentifier;
+import org.icij.extract.document.TikaDocument;
+import org.icij.extract.extractor.Extractor;
+import org.icij.task.Options;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SpewPoolTest {
+
+    // A slow sink, recording the order of writes and the most bytes held by the pool while writing.
+    private static class SlowSpewer extends Spewer {
+        final List<TikaDocument> written = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger roots = new AtomicInteger();
+        final AtomicLong maxQueuedBytes = new AtomicLong();
+        volatile SpewPool pool;
+
+        SlowSpewer() { super(new FieldNames()); }
+
+        @Override
+        protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
+            if (parent == null) {
+                roots.incrementAndGet();
+                return;
+            }
+            maxQueuedBytes.accumulateAndGet(pool.queuedBytes(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.add(doc);
+        }
+    }
+
+    private static TikaDocument root(final String name) {
+        final TikaDocument root = new DocumentFactory().withIdentifier(new PathIdentifier()).create(Paths.get(name));
+        root.setReader(new StringReader(name));
+        return root;
+    }
+
+    // Extract a root of n embeds of the given size, in a random tree, readied parents first.
+    private static List<EmbeddedTikaDocument> extract(final SlowSpewer spewer, final SpewPool pool, final String name,
+                                                      final int n, final long bytes) throws Exception {
+        final TikaDocument root = root(name);
+        final Random random = new Random(name.hashCode());
+        final List<EmbeddedTikaDocument> embeds = new ArrayList<>();
+        try (StreamingSpewCoordinator coord = new StreamingSpewCoordinator(spewer, pool)) {
+            coord.start();
+            for (int i = 0; i < n; i++) {
+                final TikaDocument parent = embeds.isEmpty() || random.nextInt(3) == 0 ? root
+                        : embeds.get(random.nextInt(embeds.size()));
+                final EmbeddedTikaDocument embed = parent.newDetachedEmbed(new Metadata());
+                embed.setReader(new StringReader("e" + i));
+                embeds.add(embed);
+                coord.promise();
+                coord.ready(new SpewItem(embed, parent, root, 1, bytes));
+            }
+            coord.spew(root);
+        }
+        return embeds;
+    }
+
+    @Test(timeout = 60_000)
+    public void testEveryRootIsWrittenWithItsEmbedsAfterTheirAncestors() throws Exception {
+        final SlowSpewer spewer = new SlowSpewer();
+        final ExecutorService roots = Executors.newFixedThreadPool(8);
+        final List<Future<List<EmbeddedTikaDocument>>> futures = new ArrayList<>();
+
+        try (SpewPool pool = new SpewPool(4, 1024 * 1024)) {
+            spewer.pool = pool;
+            for (int i = 0; i < 20; i++) {
+                final String name = "root-" + i;
+                futures.add(roots.submit(() -> extract(spewer, pool, name, 50, 10)));
+            }
+            final Map<TikaDocument, Integer> writtenAt = new IdentityHashMap<>();
+            final List<EmbeddedTikaDocument> embeds = new ArrayList<>();
+            for (Future<List<EmbeddedTikaDocument>> future : futures) {
+                embeds.addAll(future.get());
+            }
+            for (int i = 0; i < spewer.written.size(); i++) {
+                writtenAt.put(spewer.written.get(i), i);
+            }
+
+            assertThat(spewer.roots.get()).isEqualTo(20);
+            assertThat(spewer.written).hasSize(1000);
+            for (EmbeddedTikaDocument embed : embeds) {
+                if (embed.getParent() instanceof EmbeddedTikaDocument parent) {
+                    assertThat(writtenAt.get(parent)).isLessThan(writtenAt.get(embed));
+                }
+            }
+            assertThat(pool.queuedBytes()).isEqualTo(0L);
+        } finally {
+            roots.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testTheTextHeldByAllRootsIsBounded() throws Exception {
+        final SlowSpewer spewer = new SlowSpewer();
+        final ExecutorService roots = Executors.newFixedThreadPool(4);
+
+        try (SpewPool pool = new SpewPool(2, 10 * (1_000 + SpewPool.EMBED_BYTES))) {
+            spewer.pool = pool;
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final String name = "root-" + i;
+                futures.add(roots.submit(() -> extract(spewer, pool, name, 100, 1_000)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            assertThat(spewer.written).hasSize(400);
+            assertThat(spewer.maxQueuedBytes.get()).isLessThanOrEqualTo(10 * (1_000 + SpewPool.EMBED_BYTES));
+            assertThat(pool.queuedBytes()).isEqualTo(0L);
+        } finally {
+            roots.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testEmbedsWithoutTextAreBoundedByTheBytesToo() throws Exception {
+        final SlowSpewer spewer = new SlowSpewer();
+
+        // Far more embeds than the bound holds, and no count bound per root.
+        try (SpewPool pool = new SpewPool(1, 5 * SpewPool.EMBED_BYTES)) {
+            spewer.pool = pool;
+            extract(spewer, pool, "root", 200, 0);
+
+            assertThat(spewer.written).hasSize(200);
+            assertThat(spewer.maxQueuedBytes.get()).isLessThanOrEqualTo(5 * SpewPool.EMBED_BYTES);
+            assertThat(pool.queuedBytes()).isEqualTo(0L);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testAnEmbedLargerThanTheBoundIsWritten() throws Exception {
+        final SlowSpewer spewer = new SlowSpewer();
+
+        try (SpewPool pool = new SpewPool(1, 10)) {
+            spewer.pool = pool;
+            extract(spewer, pool, "root", 3, 1_000);
+        }
+        assertThat(spewer.written).hasSize(3);
+    }
+
+    @Test(timeout = 60_000)
+    public void testSmallRootsAreNotHeldUpByALargeOne() throws Exception {
+        final SlowSpewer spewer = new SlowSpewer();
+        final ExecutorService roots = Executors.newFixedThreadPool(2);
+
+        try (SpewPool pool = new SpewPool(1, Long.MAX_VALUE)) {
+            spewer.pool = pool;
+            final Future<?> large = roots.submit(() -> extract(spewer, pool, "large", 1_000, 0));
+            while (spewer.written.isEmpty()) {
+                Thread.sleep(1);
+            }
+            roots.submit(() -> extract(spewer, pool, "small", 5, 0)).get();
+
+            // The small root took turns with the large one rather than waiting for all of its embeds.
+            assertThat(large.isDone()).isFalse();
+            large.get();
+            assertThat(spewer.written).hasSize(1_005);
+        } finally {
+            roots.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testEmbedsReadiedAfterThePoolIsClosedAreWrittenByTheReadyingThread() throws Exception {
+        final SlowSpewer spewer = new SlowSpewer();
+        final SpewPool pool = new SpewPool(1, 1024);
+        spewer.pool = pool;
+        pool.close();
+
+        extract(spewer, pool, "root", 10, 10);
+        assertThat(spewer.written).hasSize(10);
+        assertThat(pool.queuedBytes()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        try (Extractor extractor = new Extractor(Options.from(Map.of()))) {
+            assertThat(extractor.getSpewPoolThreads()).isEqualTo(0);
+            assertThat(extractor.getSpewPoolQueueBytes()).isEqualTo(256L * 1024 * 1024);
+        }
+        try (Extractor extractor = new Extractor(Options.from(Map.of("spewPoolThreads", "4",
+                "spewPoolQueueBytes", "1048576")))) {
+            assertThat(extractor.getSpewPoolThreads()).isEqualTo(4);
+            assertThat(extractor.getSpewPoolQueueBytes()).isEqualTo(1024L * 1024);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.icij.spewer;
+
+import org.apache.tika.metadata.Metadata;
+import org.icij.extract.document.DocumentFactory;
+import org.icij.extract.document.EmbeddedTikaDocument;
+import org.icij.extract.document.PathIdentifier;
+import org.icij.extract.document.TikaDocument;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * With several writers, embeds are written concurrently, but never before an ancestor readied before them nor at
+ * the same time as one.
+ */
+public class StreamingSpewWritersTest {
+
+    // A slow sink, which records the order of writes, the embeds being written and the most written at once.
+    private static class SlowSpewer extends Spewer {
+        final List<TikaDocument> written = Collections.synchronizedList(new ArrayList<>());
+        final Map<TikaDocument, Boolean> writing = Collections.synchronizedMap(new IdentityHashMap<>());
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        volatile boolean overlapped = false;
+
+        SlowSpewer() { super(new FieldNames()); }
+
+        @Override
+        protected void writeDocument(TikaDocument doc, TikaDocument parent, TikaDocument root, int level) throws IOException {
+            if (parent == null) {
+                return;
+            }
+            for (TikaDocument a = parent; a instanceof EmbeddedTikaDocument e; a = e.getParent()) {
+                if (writing.containsKey(a)) {
+                    overlapped = true;
+                }
+            }
+            writing.put(doc, true);
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+                writing.remove(doc);
+            }
+            written.add(doc);
+        }
+    }
+
+    private static TikaDocument root() {
+        final TikaDocument root = new DocumentFactory().withIdentifier(new PathIdentifier()).create(Paths.get("root"));
+        root.setReader(new StringReader("root"));
+        return root;
+    }
+
+    // A random tree of embeds, each readied after its parent, as with deferred embeds, or before it, as with
+    // embeds parsed inside their parent.
+    private static List<EmbeddedTikaDocument> spew(final StreamingSpewCoordinator coord, final TikaDocument root,
+                                                   final int n, final long seed) throws Exception {
+        final Random random = new Random(seed);
+        final List<EmbeddedTikaDocument> embeds = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            final TikaDocument parent = embeds.isEmpty() || random.nextInt(4) == 0 ? root
+                    : embeds.get(random.nextInt(embeds.size()));
+            final EmbeddedTikaDocument embed = parent.newDetachedEmbed(new Metadata());
+            embed.setReader(new StringReader("e" + i));
+            embeds.add(embed);
+            coord.promise();
+        }
+        final List<EmbeddedTikaDocument> readied = new ArrayList<>(embeds);
+        Collections.shuffle(readied, random);
+        for (EmbeddedTikaDocument embed : readied) {
+            coord.ready(new SpewItem(embed, embed.getParent(), root, 1));
+        }
+        coord.spew(root);
+        return readied;
+    }
+
+    private static void assertAncestorsFirst(final List<EmbeddedTikaDocument> readied, final List<TikaDocument> written) {
+        final Map<TikaDocument, Integer> readyAt = new IdentityHashMap<>();
+        final Map<TikaDocument, Integer> writtenAt = new IdentityHashMap<>();
+        for (int i = 0; i < readied.size(); i++) {
+            readyAt.put(readied.get(i), i);
+        }
+        for (int i = 0; i < written.size(); i++) {
+            writtenAt.put(written.get(i), i);
+        }
+        for (EmbeddedTikaDocument embed : readied) {
+            for (TikaDocument a = embed.getParent(); a instanceof EmbeddedTikaDocument e; a = e.getParent()) {
+                final boolean ancestorFirst = readyAt.get(a) < readyAt.get(embed);
+                assertThat(writtenAt.get(a) < writtenAt.get(embed)).as("ancestor written first").isEqualTo(ancestorFirst);
+            }
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testAnEmbedAndItsAncestorsAreWrittenInTheOrderTheyWereReadied() throws Exception {
+        for (long seed = 0; seed < 5; seed++) {
+            final SlowSpewer spewer = new SlowSpewer();
+            final List<EmbeddedTikaDocument> readied;
+            try (StreamingSpewCoordinator coord = new StreamingSpewCoordinator(spewer, 1000, 4)) {
+                readied = spew(coord, root(), 200, seed);
+            }
+            assertThat(spewer.written).hasSize(200);
+            assertThat(spewer.overlapped).isFalse();
+            assertAncestorsFirst(readied, spewer.written);
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void testAWriterWritesInTheOrderEmbedsWereReadied() throws Exception {
+        final SlowSpewer spewer = new SlowSpewer();
+        final List<EmbeddedTikaDocument> readied;
+        try (StreamingSpewCoordinator coord = new StreamingSpewCoordinator(spewer, 1000)) {
+            readied = spew(coord, root(), 100, 42);
+        }
+        assertThat(spewer.written).isEqualTo(new ArrayList<TikaDocument>(readied));
+        assertThat(spewer.maxConcurrent.get()).isEqualTo(1);
+    }
+
+    @Test(timeout = 60_000)
+    public void testUnrelatedEmbedsAreWrittenConcurrentlyWithinTheBound() throws Exception {
+        final SlowSpewer spewer = new SlowSpewer();
+        final TikaDocument root = root();
+        final int n = 200;
+        try (StreamingSpewCoordinator coord = new StreamingSpewCoordinator(spewer, 4, 4)) {
+            for (int i = 0; i < n; i++) {
+                coord.promise();
+            }
+            final Thread producer = new Thread(() -> {
+                for (int i = 0; i < n; i++) {
+                    final EmbeddedTikaDocument embed = root.newDetachedEmbed(new Metadata());
+                    embed.setReader(new StringReader("e" + i));
+                    coord.ready(new SpewItem(embed, root, root, 1));
+                }
+            }, "test-producer");
+            producer.start();
+            coord.spew(root);
+            producer.join();
+        }
+        assertThat(spewer.written).hasSize(n);
+        assertThat(spewer.maxConcurrent.get()).isGreaterThan(1);
+        assertThat(spewer.maxConcurrent.get()).isLessThanOrEqualTo(4);
+    }
+}